@@ -0,0 +1,66 @@
+package com.wmx.quartzjdbc.benchmarks;
+
+import com.wmx.quartzjdbc.QuartzjdbcApplication;
+import com.wmx.quartzjdbc.jobs.RequestJob;
+import com.wmx.quartzjdbc.pojo.SchedulerEntity;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 基准测试使用的 Spring 容器：h2DB 环境 + 独立的内存 h2 数据库，不启动 web 服务.
+ * 参数通过命令行参数传入，优先级高于 application.yml.
+ *
+ * @author wangmaoxiong
+ */
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * @param autoStartup ：调度器是否启动（只测注册时不启动，避免触发作业干扰结果）
+     * @param extraArgs   ：额外的配置，如 --spring.quartz.properties.org.quartz.threadPool.threadCount=50
+     * @return
+     */
+    public static ConfigurableApplicationContext start(boolean autoStartup, String... extraArgs) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--spring.profiles.active=h2DB",
+                "--spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "--spring.h2.console.enabled=false",
+                "--spring.quartz.auto-startup=" + autoStartup,
+                "--spring.quartz.startup-delay=0s",
+                "--spring.quartz.jdbc.initialize-schema=always",
+                //使用本项目的建表脚本，除 quartz 自带的表外还有作业历史、租约、热层等表及索引
+                "--spring.quartz.jdbc.schema=classpath:sql/tables_h2.sql",
+                //调度器未启动时工作线程也已创建，设为守护线程，否则 jmh 的子进程退出时要等待超时
+                "--spring.quartz.properties.org.quartz.threadPool.makeThreadsDaemons=true",
+                //白名单中加入基准测试自己的作业类
+                "--quartzjdbc.job.allowed-classes=" + RequestJob.class.getName()
+                        + "," + TriggerAcquisitionBenchmark.CountingJob.class.getName(),
+                "--logging.level.root=WARN"));
+        args.addAll(Arrays.asList(extraArgs));
+        return new SpringApplicationBuilder(QuartzjdbcApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(new String[0]));
+    }
+
+    /**
+     * 构建一个注册用的调度实体，cron 表达式默认为很久以后才触发
+     */
+    public static SchedulerEntity entity(String jobGroup, String jobName, String jobClassName, String cron) {
+        SchedulerEntity schedulerEntity = new SchedulerEntity();
+        schedulerEntity.setJob_group(jobGroup);
+        schedulerEntity.setJob_name(jobName);
+        schedulerEntity.setJob_class_name(jobClassName);
+        schedulerEntity.setTrigger_group(jobGroup);
+        schedulerEntity.setTrigger_name(jobName);
+        schedulerEntity.setCron_expression(cron == null ? "0 0 0 1 1 ? 2099" : cron);
+        return schedulerEntity;
+    }
+}
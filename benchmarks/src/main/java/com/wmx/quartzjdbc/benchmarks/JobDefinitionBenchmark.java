@@ -0,0 +1,67 @@
+package com.wmx.quartzjdbc.benchmarks;
+
+import com.wmx.quartzjdbc.jobs.RequestJob;
+import com.wmx.quartzjdbc.pojo.SchedulerEntity;
+import com.wmx.quartzjdbc.service.SchedulerService;
+import org.openjdk.jmh.annotations.*;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Trigger;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SchedulerService 内部 getJobDetail、getTrigger 构建 JobDetail 与 Trigger 的耗时.
+ * 两个方法是私有的，这里通过 MethodHandle 调用，调用本身的开销可以忽略.
+ *
+ * @author wangmaoxiong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobDefinitionBenchmark {
+    private ConfigurableApplicationContext context;
+    private SchedulerService schedulerService;
+    private MethodHandle getJobDetail;
+    private MethodHandle getTrigger;
+    private SchedulerEntity schedulerEntity;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = BenchmarkContext.start(false);
+        schedulerService = context.getBean(SchedulerService.class);
+        Method jobDetailMethod = SchedulerService.class.getDeclaredMethod("getJobDetail", SchedulerEntity.class);
+        jobDetailMethod.setAccessible(true);
+        getJobDetail = MethodHandles.lookup().unreflect(jobDetailMethod);
+        Method triggerMethod = SchedulerService.class.getDeclaredMethod("getTrigger", SchedulerEntity.class, JobKey.class);
+        triggerMethod.setAccessible(true);
+        getTrigger = MethodHandles.lookup().unreflect(triggerMethod);
+
+        schedulerEntity = BenchmarkContext.entity("defGroup", "def-1", RequestJob.class.getName(), "0 0/5 * * * ?");
+        schedulerEntity.setJob_data(Collections.singletonMap("url", "http://localhost:8080/"));
+        schedulerEntity.setTrigger_data(Collections.singletonMap("url", "http://localhost:8080/"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public JobDetail getJobDetail() throws Throwable {
+        return (JobDetail) getJobDetail.invoke(schedulerService, schedulerEntity);
+    }
+
+    @Benchmark
+    public Trigger getTrigger() throws Throwable {
+        return (Trigger) getTrigger.invoke(schedulerService, schedulerEntity, (JobKey) null);
+    }
+}
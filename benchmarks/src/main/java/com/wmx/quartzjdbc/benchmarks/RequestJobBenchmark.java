@@ -0,0 +1,91 @@
+package com.wmx.quartzjdbc.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import com.wmx.quartzjdbc.jobs.RequestJob;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.openjdk.jmh.annotations.*;
+import org.quartz.*;
+import org.quartz.impl.JobExecutionContextImpl;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RequestJob 相对于直接发送 http 请求的额外开销，请求发往本地的桩服务器（JDK 自带 HttpServer，固定返回 200）.
+ * baselineOkHttp 为同一个 OkHttpClient 直接发送请求的耗时，两者之差即 RequestJob 本身（日志、RestTemplate、指标）的开销.
+ *
+ * @author wangmaoxiong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class RequestJobBenchmark {
+    private static final byte[] BODY = "ok".getBytes(StandardCharsets.UTF_8);
+
+    private ConfigurableApplicationContext context;
+    private HttpServer server;
+    private RequestJob requestJob;
+    private OkHttpClient okHttpClient;
+    private JobExecutionContext jobExecutionContext;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stub";
+
+        context = BenchmarkContext.start(false, "--logging.level.com.wmx.quartzjdbc.jobs=WARN");
+        requestJob = context.getBean(RequestJob.class);
+        okHttpClient = context.getBean(OkHttpClient.class);
+
+        JobDetail jobDetail = JobBuilder.newJob(RequestJob.class)
+                .withIdentity("req-1", "reqGroup")
+                .usingJobData("url", url)
+                .build();
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger()
+                .withIdentity("req-1", "reqGroup")
+                .forJob(jobDetail)
+                .withSchedule(CronScheduleBuilder.cronSchedule("0/1 * * * * ?"))
+                .build();
+        Date now = new Date();
+        TriggerFiredBundle bundle = new TriggerFiredBundle(jobDetail, trigger, null, false, now, now, null, null);
+        jobExecutionContext = new JobExecutionContextImpl(context.getBean("scheduler", Scheduler.class), bundle, requestJob);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public void requestJob() throws JobExecutionException {
+        requestJob.execute(jobExecutionContext);
+    }
+
+    @Benchmark
+    public int baselineOkHttp() throws IOException {
+        try (Response response = okHttpClient.newCall(new Request.Builder().url(url).get().build()).execute()) {
+            return response.code();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.wmx.quartzjdbc.benchmarks;
+
+import com.wmx.quartzjdbc.jobs.RequestJob;
+import com.wmx.quartzjdbc.pojo.BatchResult;
+import com.wmx.quartzjdbc.pojo.SchedulerEntity;
+import com.wmx.quartzjdbc.service.SchedulerService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link SchedulerService#scheduleJob} 与批量注册 {@link SchedulerService#scheduleJobs} 的吞吐量（内存 h2 + JobStoreTX）.
+ * 结果的单位都是"每秒注册的作业数"，两者可以直接对比.
+ *
+ * @author wangmaoxiong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ScheduleJobBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private SchedulerService schedulerService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.start(false);
+        schedulerService = context.getBean(SchedulerService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void scheduleJob() throws Exception {
+        schedulerService.scheduleJob(this.nextEntity());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public BatchResult scheduleJobs() {
+        List<SchedulerEntity> list = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            list.add(this.nextEntity());
+        }
+        return schedulerService.scheduleJobs(list, BATCH_SIZE);
+    }
+
+    private SchedulerEntity nextEntity() {
+        String name = "bench-" + sequence.incrementAndGet();
+        return BenchmarkContext.entity("benchGroup", name, RequestJob.class.getName(), null);
+    }
+}
@@ -0,0 +1,76 @@
+package com.wmx.quartzjdbc.benchmarks;
+
+import com.wmx.quartzjdbc.pojo.SchedulerEntity;
+import com.wmx.quartzjdbc.service.SchedulerService;
+import org.openjdk.jmh.annotations.*;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 触发器获取与触发速率：注册 triggerCount 个每秒触发一次的 cron 触发器，测量调度器每秒实际执行的作业数.
+ * 每次基准调用等待一次作业执行，所以吞吐量即"每秒触发次数"。理想值为 triggerCount，低于它说明获取/触发跟不上.
+ *
+ * @author wangmaoxiong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class TriggerAcquisitionBenchmark {
+    /**
+     * 作业每执行一次释放一个许可
+     */
+    static final Semaphore FIRED = new Semaphore(0);
+
+    @Param({"1000", "5000"})
+    public int triggerCount;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.start(true);
+        SchedulerService schedulerService = context.getBean(SchedulerService.class);
+        List<SchedulerEntity> list = new ArrayList<>(triggerCount);
+        for (int i = 0; i < triggerCount; i++) {
+            list.add(BenchmarkContext.entity("fireGroup", "fire-" + i, CountingJob.class.getName(), "* * * * * ?"));
+        }
+        schedulerService.scheduleJobs(list, 1000);
+    }
+
+    /**
+     * 丢弃上一次迭代（以及注册期间、迭代之间）积累的许可，否则这些许可会被立即获取，把吞吐量算高
+     */
+    @Setup(Level.Iteration)
+    public void drainPermits() {
+        FIRED.drainPermits();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void fire() throws InterruptedException {
+        FIRED.acquire();
+    }
+
+    /**
+     * 空作业，只计数
+     */
+    public static class CountingJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+            FIRED.release();
+        }
+    }
+}
@@ -2,11 +2,15 @@ package com.wmx.quartzjdbc;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
+ * {@link EnableScheduling} 用于定时调节触发器批量获取，见 {@link com.wmx.quartzjdbc.config.BatchAcquisitionTuner}
+ *
  * @author wangmaoxiong
  */
 @SpringBootApplication
+@EnableScheduling
 public class QuartzjdbcApplication {
 
     public static void main(String[] args) {
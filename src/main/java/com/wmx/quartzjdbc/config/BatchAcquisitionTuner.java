@@ -0,0 +1,247 @@
+package com.wmx.quartzjdbc.config;
+
+import com.wmx.quartzjdbc.service.SchedulerQueryService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.core.QuartzScheduler;
+import org.quartz.core.QuartzSchedulerResources;
+import org.quartz.core.QuartzSchedulerThread;
+import org.quartz.impl.StdScheduler;
+import org.quartz.impl.jdbcjobstore.JobStoreSupport;
+import org.quartz.impl.jdbcjobstore.Semaphore;
+import org.quartz.impl.jdbcjobstore.SimpleSemaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 触发器批量获取的自适应调节.
+ * <p>
+ * quartz 调度线程每次循环从数据库获取最多 batchTriggerAcquisitionMaxCount 个触发器（默认 1 个），
+ * 并且只获取 now + idleWaitTime + batchTriggerAcquisitionFireAheadTimeWindow（默认 0）之前到期的。
+ * 到期的触发器很多时，每获取一个触发器就要一次查询 + 更新，调度线程跟不上，作业开始迟到.
+ * <p>
+ * 加锁的代价：JobStoreSupport.acquireNextTriggers 只有在 acquireTriggersWithinLock=true 或者一次获取多个（maxCount > 1）时
+ * 才先锁住 TRIGGER_ACCESS，批量为 1 时不加锁。集群模式下 TRIGGER_ACCESS 默认是 QRTZ_LOCKS 行锁，批量大于 1 会让每次获取都变成
+ * 整个集群串行的 select ... for update，正是 {@link OptimisticSemaphore}、{@link LeaseSemaphore} 要去掉的争用。所以：
+ * 1、lockHandler 为 OptimisticSemaphore、LeaseSemaphore（获取触发器只锁本 JVM）或者非集群的 SimpleSemaphore 时才调节；
+ * 2、其它锁（集群默认的 StdRowLockSemaphore 等）只输出指标，批量保持 quartz 配置中的值.
+ * LeaseSemaphore 在租约生效之前仍使用行锁，这段时间批量大于 1 同样会加行锁.
+ * <p>
+ * 这里每隔 quartzjdbc.acquisition.interval 对每个分片观察一次：
+ * backlog：即将到期（now + 当前提前窗口 + 1 秒内）仍处于 WAITING 状态的触发器个数；
+ * idle：线程池空闲线程数.
+ * 批量大小向 min(backlog, idle) 靠拢（每次走一半，避免来回震荡），并限制在 [min-batch-size, max-batch-size] 之间：
+ * 没有空闲线程时一次获取多个也无法执行，只会让触发器停留在 ACQUIRED 状态，集群中其它节点也拿不到；
+ * 提前窗口随批量大小线性变化，批量为 min-batch-size 时为 0，为 max-batch-size 时为 max-fire-ahead-window.
+ * <p>
+ * 调整通过反射修改 {@link QuartzSchedulerResources} 的 maxBatchSize、batchTimeWindow。这两个字段不是 volatile，
+ * 写入时持有调度线程（QuartzSchedulerThread）的 sigLock，调度线程每次循环开始都会进入 sigLock，所以下一次循环一定能读到新值；
+ * 取不到 sigLock 时不做调节.
+ * quartzjdbc.acquisition.adaptive 默认为 false，只输出指标，使用 quartz 配置中的固定值.
+ * <p>
+ * 指标（scheduler 标签为分片名称）：
+ * quartz.acquisition.batch.size：当前的批量大小
+ * quartz.acquisition.fire.ahead.window：当前的提前窗口（毫秒）
+ * quartz.acquisition.backlog：最近一次观察到的即将到期的触发器个数
+ * quartz.jobs.fired.rate：最近一个观察周期内每秒触发的作业数
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class BatchAcquisitionTuner {
+    private static Logger logger = LoggerFactory.getLogger(BatchAcquisitionTuner.class);
+
+    @Resource
+    private SchedulerShards schedulerShards;
+
+    @Resource
+    private SchedulerQueryService schedulerQueryService;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${quartzjdbc.acquisition.adaptive:false}")
+    private boolean adaptive;
+
+    @Value("${quartzjdbc.acquisition.min-batch-size:1}")
+    private int minBatchSize;
+
+    @Value("${quartzjdbc.acquisition.max-batch-size:50}")
+    private int maxBatchSize;
+
+    @Value("${quartzjdbc.acquisition.max-fire-ahead-window:1000}")
+    private long maxFireAheadWindow;
+
+    private final List<Tuning> tunings = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        minBatchSize = Math.max(minBatchSize, 1);
+        maxBatchSize = Math.max(maxBatchSize, minBatchSize);
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            QuartzSchedulerResources resources = resources(scheduler);
+            //热层的触发器在内存中，不查询数据库统计积压
+            if (resources == null || resources.getJobStore() instanceof HotTierJobStore) {
+                continue;
+            }
+            Tuning tuning = new Tuning(scheduler, resources, adaptive ? sigLock(scheduler, resources) : null);
+            tunings.add(tuning);
+            String schedulerName = resources.getName();
+            Gauge.builder("quartz.acquisition.batch.size", resources, QuartzSchedulerResources::getMaxBatchSize)
+                    .tag("scheduler", schedulerName)
+                    .register(meterRegistry);
+            Gauge.builder("quartz.acquisition.fire.ahead.window", resources, QuartzSchedulerResources::getBatchTimeWindow)
+                    .tag("scheduler", schedulerName)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("quartz.acquisition.backlog", tuning, t -> t.backlog)
+                    .tag("scheduler", schedulerName)
+                    .register(meterRegistry);
+            Gauge.builder("quartz.jobs.fired.rate", tuning, t -> t.firedPerSecond)
+                    .tag("scheduler", schedulerName)
+                    .description("jobs fired per second during the last observation interval")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${quartzjdbc.acquisition.interval:5000}",
+            initialDelayString = "${quartzjdbc.acquisition.interval:5000}")
+    public void tune() {
+        for (Tuning tuning : tunings) {
+            try {
+                this.tune(tuning);
+            } catch (Exception e) {
+                logger.warn("调节触发器批量获取失败，scheduler={}：{}", tuning.resources.getName(), e.getMessage());
+            }
+        }
+    }
+
+    private void tune(Tuning tuning) throws SchedulerException {
+        Scheduler scheduler = tuning.scheduler;
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int executed = scheduler.getMetaData().getNumberOfJobsExecuted();
+        if (tuning.lastObserved > 0 && now > tuning.lastObserved) {
+            tuning.firedPerSecond = (executed - tuning.lastExecuted) * 1000.0 / (now - tuning.lastObserved);
+        }
+        tuning.lastExecuted = executed;
+        tuning.lastObserved = now;
+
+        QuartzSchedulerResources resources = tuning.resources;
+        tuning.backlog = schedulerQueryService.countDueTriggers(resources.getName(), now + resources.getBatchTimeWindow() + 1000L);
+        if (tuning.sigLock == null || scheduler.isInStandbyMode()) {
+            return;
+        }
+        int idle = scheduler.getMetaData().getThreadPoolSize() - scheduler.getCurrentlyExecutingJobs().size();
+        int current = resources.getMaxBatchSize();
+        int target = clamp((int) Math.min(tuning.backlog, Math.max(idle, 0)), minBatchSize, maxBatchSize);
+        //每次向目标值走一半，向上取整，保证最终能到达目标值
+        int next = current < target ? current + (target - current + 1) / 2 : current - (current - target + 1) / 2;
+        next = clamp(next, minBatchSize, maxBatchSize);
+        long window = maxBatchSize == minBatchSize ? 0 : maxFireAheadWindow * (next - minBatchSize) / (maxBatchSize - minBatchSize);
+        if (next != current || window != resources.getBatchTimeWindow()) {
+            synchronized (tuning.sigLock) {
+                resources.setMaxBatchSize(next);
+                resources.setBatchTimeWindow(window);
+            }
+            logger.info("scheduler={},backlog={},idle={},batchSize {} -> {},fireAheadWindow={}ms",
+                    resources.getName(), tuning.backlog, idle, current, next, window);
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * 通过反射取得调度器内部的 QuartzSchedulerResources：StdScheduler.sched -> QuartzScheduler.resources.
+     * 不是 StdScheduler（如 RemoteScheduler）或者 quartz 版本变化导致字段不存在时返回 null，不做调节.
+     */
+    private static QuartzSchedulerResources resources(Scheduler scheduler) {
+        if (!(scheduler instanceof StdScheduler)) {
+            logger.warn("{} 不是 StdScheduler，不调节触发器批量获取", scheduler.getClass().getName());
+            return null;
+        }
+        QuartzScheduler quartzScheduler = (QuartzScheduler) readField(StdScheduler.class, "sched", scheduler);
+        QuartzSchedulerResources resources = (QuartzSchedulerResources) readField(QuartzScheduler.class, "resources", quartzScheduler);
+        if (resources == null) {
+            logger.warn("无法取得 QuartzSchedulerResources，不调节触发器批量获取");
+        }
+        return resources;
+    }
+
+    /**
+     * 可以调节时返回调度线程的 sigLock，否则返回 null：获取触发器时会加 QRTZ_LOCKS 行锁，或者反射失败
+     */
+    private static Object sigLock(Scheduler scheduler, QuartzSchedulerResources resources) {
+        String schedulerName = resources.getName();
+        if (resources.getJobStore() instanceof JobStoreSupport) {
+            Semaphore lockHandler = (Semaphore) readField(JobStoreSupport.class, "lockHandler", resources.getJobStore());
+            if (!(lockHandler instanceof OptimisticSemaphore) && !(lockHandler instanceof SimpleSemaphore)) {
+                logger.warn("scheduler={} 的 lockHandler 为 {}，一次获取多个触发器会加 QRTZ_LOCKS 行锁，不调节批量获取，" +
+                                "需要调节时配置 org.quartz.jobStore.lockHandler.class 为 OptimisticSemaphore 或者 LeaseSemaphore",
+                        schedulerName, lockHandler == null ? null : lockHandler.getClass().getName());
+                return null;
+            }
+        }
+        QuartzScheduler quartzScheduler = (QuartzScheduler) readField(StdScheduler.class, "sched", scheduler);
+        QuartzSchedulerThread schedThread = (QuartzSchedulerThread) readField(QuartzScheduler.class, "schedThread", quartzScheduler);
+        Object sigLock = readField(QuartzSchedulerThread.class, "sigLock", schedThread);
+        if (sigLock == null) {
+            logger.warn("无法取得 scheduler={} 调度线程的 sigLock，不调节触发器批量获取", schedulerName);
+        }
+        return sigLock;
+    }
+
+    /**
+     * 读取私有字段，字段不存在（quartz 版本变化）或者对象为 null 时返回 null
+     */
+    private static Object readField(Class<?> type, String name, Object target) {
+        if (target == null) {
+            return null;
+        }
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(target);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("无法读取 {}.{}：{}", type.getSimpleName(), name, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * 单个分片的观察状态
+     */
+    private static class Tuning {
+        private final Scheduler scheduler;
+        private final QuartzSchedulerResources resources;
+        /**
+         * 调度线程的 sigLock，为 null 时不调节
+         */
+        private final Object sigLock;
+        private volatile long backlog;
+        private volatile double firedPerSecond;
+        private int lastExecuted;
+        private long lastObserved;
+
+        Tuning(Scheduler scheduler, QuartzSchedulerResources resources, Object sigLock) {
+            this.scheduler = scheduler;
+            this.resources = resources;
+            this.sigLock = sigLock;
+        }
+    }
+}
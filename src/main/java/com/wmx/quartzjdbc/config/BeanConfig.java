@@ -1,6 +1,11 @@
 package com.wmx.quartzjdbc.config;
 
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.quartz.Scheduler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.quartz.QuartzAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -9,6 +14,11 @@ import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author wangmaoxiong
@@ -30,17 +40,57 @@ public class BeanConfig {
         return schedulerFactoryBean.getScheduler();
     }
 
+    /**
+     * 共享的 OkHttpClient 实例，同步的 RestTemplate 与异步的 enqueue 调用共用同一个连接池与调度器(Dispatcher).
+     * 连接池、并发数、超时时间见配置 quartzjdbc.okhttp.*
+     * <p>
+     * OkHttp 默认的连接池只保留 5 个空闲连接，大量作业请求同几个主机时连接会被反复关闭、新建；
+     * Dispatcher 默认对每个主机最多 5 个并发的异步请求，超出的在队列中等待.
+     * 开启 http2 后 https 请求通过 ALPN 协商 h2，同一个主机的请求复用一个连接（多路复用）；
+     * 明文 http 的服务端支持 h2c 时可以开启 http2-prior-knowledge，此时只能请求支持 h2c 的服务.
+     *
+     * @return
+     */
+    @Bean
+    public OkHttpClient okHttpClient(@Value("${quartzjdbc.okhttp.connect-timeout:30s}") Duration connectTimeout,
+                                     @Value("${quartzjdbc.okhttp.read-timeout:120s}") Duration readTimeout,
+                                     @Value("${quartzjdbc.okhttp.max-idle-connections:50}") int maxIdleConnections,
+                                     @Value("${quartzjdbc.okhttp.keep-alive:5m}") Duration keepAlive,
+                                     @Value("${quartzjdbc.okhttp.max-requests:256}") int maxRequests,
+                                     @Value("${quartzjdbc.okhttp.max-requests-per-host:32}") int maxRequestsPerHost,
+                                     @Value("${quartzjdbc.okhttp.http2:true}") boolean http2,
+                                     @Value("${quartzjdbc.okhttp.http2-prior-knowledge:false}") boolean http2PriorKnowledge) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        List<Protocol> protocols;
+        if (http2PriorKnowledge) {
+            protocols = Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE);
+        } else if (http2) {
+            protocols = Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+        } else {
+            protocols = Collections.singletonList(Protocol.HTTP_1_1);
+        }
+        return new OkHttpClient.Builder()
+                .connectTimeout(connectTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .protocols(protocols)
+                //同步请求不经过 Dispatcher 的限制，按相同的上限对同步请求限流，等待许可的时间不超过连接超时时间
+                .addInterceptor(new HostConcurrencyInterceptor(maxRequestsPerHost, connectTimeout.toMillis()))
+                .build();
+    }
+
     /**
      * 设置 http 连接工厂，然后将 RestTemplate 实例交由 Spring 容器管理
      *
      * @return
      */
     @Bean
-    public RestTemplate restTemplate() {
-        //先设置 http 连接工厂的连接超时时间为 30 秒，读取超时时间为 120 秒
-        OkHttp3ClientHttpRequestFactory okRequestFactory = new OkHttp3ClientHttpRequestFactory();
-        okRequestFactory.setConnectTimeout(30 * 1000);
-        okRequestFactory.setReadTimeout(120 * 1000);
+    public RestTemplate restTemplate(OkHttpClient okHttpClient) {
+        //http 连接工厂直接使用上面共享的 OkHttpClient，超时时间以它为准
+        OkHttp3ClientHttpRequestFactory okRequestFactory = new OkHttp3ClientHttpRequestFactory(okHttpClient);
         return new RestTemplate(okRequestFactory);
     }
 }
@@ -0,0 +1,142 @@
+package com.wmx.quartzjdbc.config;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 按作业组的配置，如打散窗口、触发器优先级、独立线程池大小、错过触发策略，配置格式为 "作业组=值"，多个使用逗号分隔：
+ * <pre>
+ * reqJobGroup=60,tenant.*=300
+ * </pre>
+ * 以 * 结尾表示前缀匹配。查找时先精确匹配，再按最长的前缀匹配.
+ *
+ * @author wangmaoxiong
+ */
+public class GroupSettings<T> {
+    private static Logger logger = LoggerFactory.getLogger(GroupSettings.class);
+
+    /**
+     * 配置中的顺序：组（或者前缀*） -> 值
+     */
+    private final Map<String, T> settings = new LinkedHashMap<>();
+    private final Map<String, T> exact = new HashMap<>();
+    private final Map<String, T> prefixValues = new HashMap<>();
+    /**
+     * 前缀，按长度从长到短
+     */
+    private final List<String> prefixes = new ArrayList<>();
+
+    /**
+     * 解析整数配置，无效的项输出警告后忽略.
+     *
+     * @param configs      ：@Value 注入的逗号分隔的配置
+     * @param propertyName ：配置名称，用于警告信息
+     * @return
+     */
+    public static GroupSettings<Integer> parse(String[] configs, String propertyName) {
+        return parse(configs, propertyName, Integer::parseInt);
+    }
+
+    /**
+     * 解析配置，无效的项输出警告后忽略.
+     *
+     * @param configs      ：@Value 注入的逗号分隔的配置
+     * @param propertyName ：配置名称，用于警告信息
+     * @param parser       ：把值转换为 T，值无效时抛出 IllegalArgumentException
+     * @return
+     */
+    public static <T> GroupSettings<T> parse(String[] configs, String propertyName, Function<String, T> parser) {
+        GroupSettings<T> groupSettings = new GroupSettings<>();
+        if (configs == null) {
+            return groupSettings;
+        }
+        for (String config : configs) {
+            if (StringUtils.isBlank(config)) {
+                continue;
+            }
+            String[] pair = StringUtils.split(config, "=");
+            try {
+                if (pair == null || pair.length != 2 || StringUtils.isBlank(pair[0])) {
+                    throw new IllegalArgumentException(config);
+                }
+                groupSettings.put(pair[0].trim(), parser.apply(pair[1].trim()));
+            } catch (IllegalArgumentException e) {
+                logger.warn("{} 配置无效，应为 作业组=值：{}", propertyName, config);
+            }
+        }
+        return groupSettings;
+    }
+
+    private void put(String group, T value) {
+        settings.put(group, value);
+        if (group.endsWith("*")) {
+            String prefix = group.substring(0, group.length() - 1);
+            if (prefixValues.put(prefix, value) == null) {
+                prefixes.add(prefix);
+                prefixes.sort(Comparator.comparingInt(String::length).reversed());
+            }
+        } else {
+            exact.put(group, value);
+        }
+    }
+
+    /**
+     * 作业组的配置，没有匹配项时返回 null
+     */
+    public T get(String group) {
+        if (group == null) {
+            return null;
+        }
+        T value = exact.get(group);
+        if (value != null) {
+            return value;
+        }
+        for (String prefix : prefixes) {
+            if (group.startsWith(prefix)) {
+                return prefixValues.get(prefix);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 作业组的配置，没有匹配项时返回 defaultValue
+     */
+    public T get(String group, T defaultValue) {
+        T value = this.get(group);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * 匹配作业组的配置项（即配置中 = 左边的部分，前缀带 *），没有匹配项时返回 null
+     */
+    public String match(String group) {
+        if (group == null) {
+            return null;
+        }
+        if (exact.containsKey(group)) {
+            return group;
+        }
+        for (String prefix : prefixes) {
+            if (group.startsWith(prefix)) {
+                return prefix + "*";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 所有配置项，按配置中的顺序
+     */
+    public Map<String, T> asMap() {
+        return Collections.unmodifiableMap(settings);
+    }
+
+    public boolean isEmpty() {
+        return settings.isEmpty();
+    }
+}
@@ -0,0 +1,145 @@
+package com.wmx.quartzjdbc.config;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 限制对同一个主机的并发同步请求数.
+ * <p>
+ * OkHttp 的 Dispatcher.maxRequestsPerHost 只对 enqueue 的异步请求生效，RestTemplate 的同步请求不受限制，
+ * 大量 RequestJob 同时触发时会对同一个主机发起几百个并发请求。这里对同步请求按相同的上限限流：
+ * 超过上限时等待，等待 acquireTimeout 毫秒后仍拿不到许可则请求失败（IOException），不会无限占用 quartz 工作线程.
+ * <p>
+ * 许可在响应体关闭时（读完响应体后由调用方关闭，RestTemplate 会自动关闭）才释放，而不是收到响应头时，
+ * 读取响应体期间请求仍然占用着与该主机的连接.
+ * 异步请求在构建时加上标记 {@link Mode#ASYNC}，它们已经由 Dispatcher 按主机限制，这里不再重复限流.
+ *
+ * @author wangmaoxiong
+ */
+public class HostConcurrencyInterceptor implements Interceptor {
+    private final int maxRequestsPerHost;
+    private final long acquireTimeoutMillis;
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    /**
+     * 请求的发送方式，通过 Request.Builder.tag(Mode.class, Mode.ASYNC) 标记
+     */
+    public enum Mode {
+        /**
+         * 通过 enqueue 发送，受 Dispatcher 限制
+         */
+        ASYNC
+    }
+
+    public HostConcurrencyInterceptor(int maxRequestsPerHost, long acquireTimeoutMillis) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.tag(Mode.class) == Mode.ASYNC) {
+            return chain.proceed(request);
+        }
+        String host = request.url().host() + ":" + request.url().port();
+        Semaphore semaphore = permits.computeIfAbsent(host, k -> new Semaphore(maxRequestsPerHost));
+        try {
+            if (!semaphore.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("too many concurrent requests to " + host + ", limit " + maxRequestsPerHost);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for " + host);
+        }
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException | Error e) {
+            semaphore.release();
+            throw e;
+        }
+        if (response.body() == null) {
+            semaphore.release();
+            return response;
+        }
+        return response.newBuilder().body(new PermitBody(response.body(), semaphore)).build();
+    }
+
+    /**
+     * 各主机正在进行的同步请求数
+     */
+    public int inFlight(String host) {
+        Semaphore semaphore = permits.get(host);
+        return semaphore == null ? 0 : maxRequestsPerHost - semaphore.availablePermits();
+    }
+
+    /**
+     * 关闭时（直接关闭，或者关闭它的 source）释放许可的响应体，只释放一次
+     */
+    private static class PermitBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final BufferedSource source;
+
+        PermitBody(ResponseBody delegate, Semaphore semaphore) {
+            this.delegate = delegate;
+            this.semaphore = semaphore;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.wmx.quartzjdbc.config;
+
+import com.wmx.quartzjdbc.service.HotTierStore;
+import org.quartz.JobDetail;
+import org.quartz.JobPersistenceException;
+import org.quartz.ObjectAlreadyExistsException;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.TriggerKey;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredResult;
+import org.springframework.dao.DataAccessException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 热层调度器的 JobStore：触发器保存在内存中（{@link RAMJobStore}），获取、触发、完成都不访问数据库.
+ * <p>
+ * 作业与触发器的定义（注册、修改、删除、暂停、恢复）同步写入 QRTZ_HOT_TRIGGERS 表，重启、节点切换后由 {@link HotTierStore} 从表中恢复；
+ * 每次触发后的上次、下次触发时间只交给 {@link HotTierStore} 在内存中合并，由后台任务批量写入（write-behind），
+ * 几秒触发一次的作业每个刷新周期只写一次，而不是每次触发都更新 QRTZ_TRIGGERS、插入删除 QRTZ_FIRED_TRIGGERS.
+ * <p>
+ * 由 quartz 实例化（{@link SchedulerShards} 创建热层调度器时通过 org.quartz.jobStore.class 指定），
+ * 按调度器名称登记，由 {@link HotTierStore} 初始化时绑定.
+ *
+ * @author wangmaoxiong
+ */
+public class HotTierJobStore extends RAMJobStore {
+    private static final Map<String, HotTierJobStore> INSTANCES = new ConcurrentHashMap<>();
+
+    private volatile HotTierStore hotTierStore;
+    private String instanceId = "";
+    /**
+     * 当前线程正在从数据库恢复定义，不再写回数据库
+     */
+    private final ThreadLocal<Boolean> replaying = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /**
+     * 不是热层调度器时返回 null
+     */
+    public static HotTierJobStore get(String schedName) {
+        return schedName == null ? null : INSTANCES.get(schedName);
+    }
+
+    @Override
+    public void setInstanceName(String schedName) {
+        super.setInstanceName(schedName);
+        INSTANCES.put(schedName, this);
+    }
+
+    @Override
+    public void setInstanceId(String instanceId) {
+        super.setInstanceId(instanceId);
+        this.instanceId = instanceId == null ? "" : instanceId;
+    }
+
+    /**
+     * 触发记录 id（即 JobExecutionContext.getFireInstanceId，执行历史的 ENTRY_ID）加上节点的 instanceId 前缀，与 JobStoreSupport 相同.
+     * RAMJobStore 只用一个以启动时间为初值的计数器，热层调度器在每个节点上同名，归属切换、重启后两个节点的计数区间可能重叠，
+     * 执行历史 (SCHED_NAME, ENTRY_ID) 主键冲突.
+     */
+    @Override
+    protected String getFiredTriggerRecordId() {
+        return instanceId + super.getFiredTriggerRecordId();
+    }
+
+    public void bind(HotTierStore hotTierStore) {
+        this.hotTierStore = hotTierStore;
+    }
+
+    /**
+     * 在当前线程执行调度器操作，期间对 JobStore 的修改不写入数据库（数据本来就来自数据库）
+     */
+    public void replay(Replay replay) throws SchedulerException {
+        replaying.set(Boolean.TRUE);
+        try {
+            replay.run();
+        } finally {
+            replaying.remove();
+        }
+    }
+
+    @Override
+    public void storeJob(JobDetail newJob, boolean replaceExisting) throws ObjectAlreadyExistsException {
+        super.storeJob(newJob, replaceExisting);
+        if (writable()) {
+            //作业参数、描述变化，该作业的每个触发器一行，都要更新
+            for (OperableTrigger trigger : getTriggersForJob(newJob.getKey())) {
+                hotTierStore.save(trigger, newJob, getTriggerStateQuietly(trigger.getKey()));
+            }
+        }
+    }
+
+    @Override
+    public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws JobPersistenceException {
+        super.storeTrigger(newTrigger, replaceExisting);
+        if (writable()) {
+            try {
+                hotTierStore.save(newTrigger, retrieveJob(newTrigger.getJobKey()), getTriggerStateQuietly(newTrigger.getKey()));
+            } catch (DataAccessException | IllegalArgumentException e) {
+                //内存中已经注册，重新注册（替换）即可再次写入
+                throw new JobPersistenceException("hot tier trigger " + newTrigger.getKey() + " is not persisted: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public boolean replaceTrigger(TriggerKey triggerKey, OperableTrigger newTrigger) throws JobPersistenceException {
+        //新触发器由 super 内部调用 storeTrigger 写入，名称变化时删除原来的行
+        boolean replaced = super.replaceTrigger(triggerKey, newTrigger);
+        if (replaced && writable() && !triggerKey.equals(newTrigger.getKey())) {
+            hotTierStore.delete(triggerKey);
+        }
+        return replaced;
+    }
+
+    /**
+     * removeJob、removeJobs、removeTriggers、clearAllSchedulingData 以及触发器结束时都经过这里
+     */
+    @Override
+    public boolean removeTrigger(TriggerKey triggerKey) {
+        boolean removed = super.removeTrigger(triggerKey);
+        if (removed && writable()) {
+            hotTierStore.delete(triggerKey);
+        }
+        return removed;
+    }
+
+    /**
+     * pauseJob、pauseJobs、pauseTriggers、pauseAll 都经过这里
+     */
+    @Override
+    public void pauseTrigger(TriggerKey triggerKey) {
+        super.pauseTrigger(triggerKey);
+        if (writable()) {
+            hotTierStore.updateState(triggerKey, getTriggerStateQuietly(triggerKey));
+        }
+    }
+
+    /**
+     * resumeJob、resumeJobs、resumeTriggers、resumeAll 都经过这里
+     */
+    @Override
+    public void resumeTrigger(TriggerKey triggerKey) {
+        super.resumeTrigger(triggerKey);
+        if (writable()) {
+            hotTierStore.updateState(triggerKey, getTriggerStateQuietly(triggerKey));
+        }
+    }
+
+    @Override
+    public List<TriggerFiredResult> triggersFired(List<OperableTrigger> firedTriggers) {
+        List<TriggerFiredResult> results = super.triggersFired(firedTriggers);
+        HotTierStore store = hotTierStore;
+        if (store != null) {
+            for (TriggerFiredResult result : results) {
+                if (result.getTriggerFiredBundle() != null) {
+                    store.recordFire(result.getTriggerFiredBundle().getTrigger());
+                }
+            }
+        }
+        return results;
+    }
+
+    private boolean writable() {
+        return hotTierStore != null && !replaying.get();
+    }
+
+    private TriggerState getTriggerStateQuietly(TriggerKey triggerKey) {
+        try {
+            return getTriggerState(triggerKey);
+        } catch (JobPersistenceException e) {
+            return TriggerState.NORMAL;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Replay {
+        void run() throws SchedulerException;
+    }
+}
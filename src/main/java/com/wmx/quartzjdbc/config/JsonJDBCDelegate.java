@@ -0,0 +1,314 @@
+package com.wmx.quartzjdbc.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.TriggerKey;
+import org.quartz.impl.jdbcjobstore.StdJDBCDelegate;
+import org.quartz.spi.OperableTrigger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以 json 格式保存 JobDataMap 的数据库代理，通过 org.quartz.jobStore.driverDelegateClass 配置.
+ * <p>
+ * StdJDBCDelegate 使用 java 序列化把 JobDataMap 写入 qrtz_job_details、qrtz_triggers 的 JOB_DATA 字段，
+ * 一个只有 url 参数的作业也要 400 多个字节，并且每次读取都要反序列化。这里改为写入 json（如 {"url":"http://..."}），
+ * 行更小、解析更快，查询接口也可以直接返回可读的参数.
+ * <p>
+ * 兼容规则：
+ * 1、只有值全部为 json 能原样还原的类型（字符串、布尔、Integer、超出 int 范围的 Long、Double、null，以及由它们组成的 Map、List）时才写 json，
+ * 否则仍使用 java 序列化，保证作业读到的值类型与写入时一致（如 JobDataMap.getLong 需要 Long 类型）；
+ * 2、读取时根据首字节判断格式：'{' 为 json，否则按 java 序列化读取，所以已有的数据不需要迁移；
+ * 3、org.quartz.jobStore.useProperties=true 时保持 StdJDBCDelegate 原来的行为.
+ * <p>
+ * 注意写入 json 后不能再切换回 StdJDBCDelegate，它无法读取 json 格式的数据。
+ * <p>
+ * 适用的数据库：mysql、h2（原来使用 StdJDBCDelegate）与 postgresql（原来使用 PostgreSQLDelegate）。
+ * 读取 BLOB 字段一律使用 ResultSet.getBytes，与 PostgreSQLDelegate 读取 bytea 的方式相同（useProperties=true 时也是），所以可以代替它.
+ * oracle（OracleDelegate）、sql server（MSSQLDelegate）等 quartz 提供了专用代理的其它数据库不能配置本类，否则这些代理对 BLOB 的特殊处理会丢失，
+ * 应继续使用各自的代理：JobDataMap 仍然使用 java 序列化，{@link OptimisticSemaphore}、{@link LeaseSemaphore} 依赖本类也不能使用.
+ * <p>
+ * 调度器配置了 {@link LeaseSemaphore} 并且租约生效时，获取触发器、处理错过触发只返回本节点持有租约的切片中的触发器（见 {@link SliceLeases}）.
+ * 切片按触发器所属作业的 hash 划分，无法写成通用的 sql 条件，所以查询时同时读出作业名称与组名，
+ * 最多读 切片总数 / 持有切片数 倍的行，边读边过滤.
+ * <p>
+ * 调度器配置了 {@link OptimisticSemaphore}（或其子类 LeaseSemaphore）时，获取触发器的条件更新在 TRIGGER_STATE = 'WAITING' 之外
+ * 再比较 NEXT_FIRE_TIME：quartz 获取触发器时先 selectTrigger 读出触发器、再 updateTriggerStateFromOtherState(ACQUIRED, WAITING)，
+ * 这里记住当前线程最近一次读到的下次触发时间，更新时作为条件，成功与冲突的次数记入 {@link TriggerClaims}；
+ * 错过触发处理更新触发器时同样以读到的状态与下次触发时间为条件，见 {@link #updateTrigger(Connection, OperableTrigger, String, JobDetail)}.
+ *
+ * @author wangmaoxiong
+ */
+public class JsonJDBCDelegate extends StdJDBCDelegate {
+    private static Logger logger = LoggerFactory.getLogger(JsonJDBCDelegate.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final byte JSON_START = '{';
+    /**
+     * 租约模式下多查的最大倍数
+     */
+    private static final int MAX_OVER_FETCH = 20;
+    private static final String UPDATE_TRIGGER_STATE_FROM_STATE_AND_FIRE_TIME = "UPDATE {0}TRIGGERS SET TRIGGER_STATE = ?"
+            + " WHERE SCHED_NAME = {1} AND TRIGGER_NAME = ? AND TRIGGER_GROUP = ? AND TRIGGER_STATE = ? AND NEXT_FIRE_TIME = ?";
+    /**
+     * 与 StdJDBCDelegate 的 SELECT_NEXT_TRIGGER_TO_ACQUIRE、SELECT_MISFIRED_TRIGGERS_IN_STATE 相同，多读出作业名称与组名用于按切片过滤
+     */
+    private static final String SELECT_NEXT_TRIGGER_TO_ACQUIRE_WITH_JOB = "SELECT TRIGGER_NAME, TRIGGER_GROUP, JOB_NAME, JOB_GROUP FROM {0}TRIGGERS"
+            + " WHERE SCHED_NAME = {1} AND TRIGGER_STATE = ? AND NEXT_FIRE_TIME <= ? AND (MISFIRE_INSTR = -1 OR (MISFIRE_INSTR != -1 AND NEXT_FIRE_TIME >= ?))"
+            + " ORDER BY NEXT_FIRE_TIME ASC, PRIORITY DESC";
+    private static final String SELECT_MISFIRED_TRIGGERS_IN_STATE_WITH_JOB = "SELECT TRIGGER_NAME, TRIGGER_GROUP, JOB_NAME, JOB_GROUP FROM {0}TRIGGERS"
+            + " WHERE SCHED_NAME = {1} AND MISFIRE_INSTR <> -1 AND NEXT_FIRE_TIME < ? AND TRIGGER_STATE = ? ORDER BY NEXT_FIRE_TIME ASC, PRIORITY DESC";
+
+    /**
+     * 当前线程最近一次 selectTrigger 读到的触发器与它的下次触发时间
+     */
+    private final ThreadLocal<Object[]> lastSelected = new ThreadLocal<>();
+
+    @Override
+    protected ByteArrayOutputStream serializeJobData(JobDataMap data) throws IOException {
+        if (canUseProperties() || data == null || !isJsonValue(data.getWrappedMap())) {
+            return super.serializeJobData(data);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OBJECT_MAPPER.writeValue(baos, data.getWrappedMap());
+        return baos;
+    }
+
+    @Override
+    protected Object getObjectFromBlob(ResultSet rs, String colName) throws ClassNotFoundException, IOException, SQLException {
+        byte[] bytes = rs.getBytes(colName);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == JSON_START) {
+            return OBJECT_MAPPER.readValue(bytes, LinkedHashMap.class);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    /**
+     * useProperties=true 时 StdJDBCDelegate 使用 ResultSet.getBlob 读取，postgres 的 bytea 不支持，这里与 PostgreSQLDelegate 一样使用 getBytes
+     */
+    @Override
+    protected Object getJobDataFromBlob(ResultSet rs, String colName) throws ClassNotFoundException, IOException, SQLException {
+        if (canUseProperties()) {
+            byte[] bytes = rs.getBytes(colName);
+            return bytes == null || bytes.length == 0 ? null : new ByteArrayInputStream(bytes);
+        }
+        return getObjectFromBlob(rs, colName);
+    }
+
+    @Override
+    public List<TriggerKey> selectTriggerToAcquire(Connection conn, long noLaterThan, long noEarlierThan, int maxCount) throws SQLException {
+        SliceLeases leases = SliceLeases.get(schedName);
+        if (leases == null || !leases.isActive()) {
+            return super.selectTriggerToAcquire(conn, noLaterThan, noEarlierThan, maxCount);
+        }
+        List<TriggerKey> keys = new ArrayList<>();
+        if (leases.getOwnedCount() == 0) {
+            return keys;
+        }
+        maxCount = Math.max(maxCount, 1);
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(rtp(SELECT_NEXT_TRIGGER_TO_ACQUIRE_WITH_JOB));
+            int maxRows = overFetch(leases, maxCount);
+            ps.setMaxRows(maxRows);
+            ps.setFetchSize(maxRows);
+            ps.setString(1, STATE_WAITING);
+            ps.setBigDecimal(2, new BigDecimal(String.valueOf(noLaterThan)));
+            ps.setBigDecimal(3, new BigDecimal(String.valueOf(noEarlierThan)));
+            rs = ps.executeQuery();
+            while (rs.next() && keys.size() < maxCount) {
+                if (leases.owns(JobKey.jobKey(rs.getString(COL_JOB_NAME), rs.getString(COL_JOB_GROUP)))) {
+                    keys.add(TriggerKey.triggerKey(rs.getString(COL_TRIGGER_NAME), rs.getString(COL_TRIGGER_GROUP)));
+                }
+            }
+            return keys;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(ps);
+        }
+    }
+
+    @Override
+    public boolean hasMisfiredTriggersInState(Connection conn, String state, long ts, int count, List<TriggerKey> resultList) throws SQLException {
+        SliceLeases leases = SliceLeases.get(schedName);
+        if (leases == null || !leases.isActive()) {
+            return super.hasMisfiredTriggersInState(conn, state, ts, count, resultList);
+        }
+        if (leases.getOwnedCount() == 0) {
+            return false;
+        }
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(rtp(SELECT_MISFIRED_TRIGGERS_IN_STATE_WITH_JOB));
+            //多读的部分全部属于其它节点时不再报告还有更多，否则 MisfireHandler 会立即重新扫描同一批触发器
+            if (count > 0) {
+                ps.setMaxRows(overFetch(leases, count + 1));
+            }
+            ps.setBigDecimal(1, new BigDecimal(String.valueOf(ts)));
+            ps.setString(2, state);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                if (!leases.owns(JobKey.jobKey(rs.getString(COL_JOB_NAME), rs.getString(COL_JOB_GROUP)))) {
+                    continue;
+                }
+                if (resultList.size() == count) {
+                    return true;
+                }
+                resultList.add(TriggerKey.triggerKey(rs.getString(COL_TRIGGER_NAME), rs.getString(COL_TRIGGER_GROUP)));
+            }
+            return false;
+        } finally {
+            closeResultSet(rs);
+            closeStatement(ps);
+        }
+    }
+
+    @Override
+    public OperableTrigger selectTrigger(Connection conn, TriggerKey triggerKey) throws SQLException, ClassNotFoundException, IOException, JobPersistenceException {
+        OperableTrigger trigger = super.selectTrigger(conn, triggerKey);
+        if (TriggerClaims.get(schedName) != null) {
+            lastSelected.set(trigger == null || trigger.getNextFireTime() == null ? null
+                    : new Object[]{triggerKey, trigger.getNextFireTime().getTime()});
+        }
+        return trigger;
+    }
+
+    @Override
+    public int updateTriggerStateFromOtherState(Connection conn, TriggerKey triggerKey, String newState, String oldState) throws SQLException {
+        TriggerClaims claims = TriggerClaims.get(schedName);
+        if (claims == null || !STATE_ACQUIRED.equals(newState) || !STATE_WAITING.equals(oldState)) {
+            return super.updateTriggerStateFromOtherState(conn, triggerKey, newState, oldState);
+        }
+        Object[] selected = lastSelected.get();
+        lastSelected.remove();
+        int updated;
+        if (selected == null || !triggerKey.equals(selected[0])) {
+            updated = super.updateTriggerStateFromOtherState(conn, triggerKey, newState, oldState);
+        } else {
+            updated = this.updateTriggerStateIfUnchanged(conn, triggerKey, newState, oldState, (Long) selected[1]);
+        }
+        claims.record(updated > 0);
+        return updated;
+    }
+
+    /**
+     * 错过触发处理（JobStoreSupport.recoverMisfiredJobs）更新刚读出的触发器时，先以 TRIGGER_STATE = 'WAITING' 与读到的 NEXT_FIRE_TIME 为条件
+     * 更新一次状态（值不变，同时锁住这一行），更新行数为 0 说明读出之后已经被其它节点获取（ACQUIRED）或者已经触发过，放弃本次处理，
+     * 否则 quartz 会用 WAITING 覆盖其它节点刚获取的状态.
+     */
+    @Override
+    public int updateTrigger(Connection conn, OperableTrigger trigger, String state, JobDetail jobDetail) throws SQLException, IOException {
+        Object[] selected = lastSelected.get();
+        if (selected != null && trigger.getKey().equals(selected[0]) && OptimisticSemaphore.calledFrom(OptimisticSemaphore.RECOVER_MISFIRED_JOBS)) {
+            lastSelected.remove();
+            if (this.updateTriggerStateIfUnchanged(conn, trigger.getKey(), STATE_WAITING, STATE_WAITING, (Long) selected[1]) == 0) {
+                logger.debug("触发器 {} 在错过触发处理期间已经被获取或者触发，放弃本次处理", trigger.getKey());
+                return 0;
+            }
+        }
+        return super.updateTrigger(conn, trigger, state, jobDetail);
+    }
+
+    private int updateTriggerStateIfUnchanged(Connection conn, TriggerKey triggerKey, String newState, String oldState, long nextFireTime) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(rtp(UPDATE_TRIGGER_STATE_FROM_STATE_AND_FIRE_TIME));
+            ps.setString(1, newState);
+            ps.setString(2, triggerKey.getName());
+            ps.setString(3, triggerKey.getGroup());
+            ps.setString(4, oldState);
+            ps.setBigDecimal(5, new BigDecimal(String.valueOf(nextFireTime)));
+            return ps.executeUpdate();
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    private static int overFetch(SliceLeases leases, int count) {
+        int factor = (int) Math.ceil((double) leases.getSlices() / Math.max(leases.getOwnedCount(), 1));
+        return count <= 0 ? count : (int) Math.min((long) count * Math.min(factor, MAX_OVER_FETCH), Integer.MAX_VALUE);
+    }
+
+    /**
+     * 将 JOB_DATA 字段的内容转为 Map，json 与 java 序列化两种格式都支持，用于查询接口返回可读的参数.
+     *
+     * @param bytes ：JOB_DATA 字段的值
+     * @return 无法解析时原样返回字节数组
+     */
+    public static Object readJobData(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            if (bytes[0] == JSON_START) {
+                return OBJECT_MAPPER.readValue(bytes, LinkedHashMap.class);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                Object object = in.readObject();
+                return object instanceof JobDataMap ? ((JobDataMap) object).getWrappedMap() : object;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            logger.warn("JOB_DATA 无法解析，返回原始字节：{}", e.getMessage());
+            return bytes;
+        }
+    }
+
+    /**
+     * 判断值写成 json 后能否原样读回（jackson 默认把整数读为 Integer/Long/BigInteger，小数读为 Double）
+     */
+    private static boolean isJsonValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean
+                || value instanceof Integer || value instanceof Double) {
+            return true;
+        }
+        if (value instanceof Long) {
+            long longValue = (Long) value;
+            return longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE;
+        }
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).bitLength() >= Long.SIZE;
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String) || !isJsonValue(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof List) {
+            for (Object element : (Collection<?>) value) {
+                if (!isJsonValue(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,280 @@
+package com.wmx.quartzjdbc.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 触发器切片租约的申请、续约与重新分配.
+ * <p>
+ * 启用方式：集群配置（isClustered: true）中增加 org.quartz.jobStore.lockHandler.class: com.wmx.quartzjdbc.config.LeaseSemaphore，
+ * driverDelegateClass 使用 {@link JsonJDBCDelegate}，并创建 QRTZ_LEASES 表。没有配置 LeaseSemaphore 的调度器不受影响.
+ * <p>
+ * 每个调度器（分片）的触发器分为 quartzjdbc.lease.slices 个切片，QRTZ_LEASES 中每个切片一行（OWNER 为持有者的 instanceId，EXPIRES 为到期时间）.
+ * 由独立的后台线程 lease-coordinator 每隔 renew-interval（默认等于 clusterCheckinInterval）毫秒续约，不占用 spring 的定时任务线程：
+ * 1、续约本节点仍然有效的租约，有效期为 ttl（默认 3 倍 renew-interval）；
+ * 2、存活节点数 = QRTZ_SCHEDULER_STATE 中 2 个签到周期内签到过的节点与持有有效租约的节点之和，每个节点的份额为 ceil(切片数 / 存活节点数)；
+ * 3、不足份额时申请已经过期、或者被释放的切片（优先申请自己原来持有的），update ... where EXPIRES = 读到的值，多个节点同时申请时只有一个成功；
+ * 4、超过份额时（有新节点加入）释放多出的切片，先停止在本节点获取这些切片的触发器，再写入数据库.
+ * 节点宕机后它的租约在 ttl 之后过期，由其它节点在下一次续约时接管；正常关闭时立即释放所有租约.
+ * 本节点在到期时间前 clock-skew 毫秒就停止获取这些切片的触发器，节点之间的时钟偏差不超过这个值时，接管的节点按自己的时钟判断过期时原来的节点已经停止.
+ * <p>
+ * 所有节点的 slices 配置必须相同。指标：quartz.cluster.lease.owned（持有的切片数），
+ * quartz.cluster.lease.claimed/released（申请、释放的切片数），scheduler 标签为分片名称.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class LeaseCoordinator {
+    private static Logger logger = LoggerFactory.getLogger(LeaseCoordinator.class);
+
+    @Resource
+    private SchedulerShards schedulerShards;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${quartzjdbc.lease.slices:64}")
+    private int slices;
+
+    @Value("${quartzjdbc.lease.renew-interval:${spring.quartz.properties.org.quartz.jobStore.clusterCheckinInterval:7500}}")
+    private long renewInterval;
+
+    /**
+     * 租约有效期（毫秒），小于等于 0 时为 3 倍 renew-interval
+     */
+    @Value("${quartzjdbc.lease.ttl:0}")
+    private long ttl;
+
+    /**
+     * 节点之间允许的时钟偏差（毫秒），本节点提前这么久停止使用租约，不超过 ttl 的一半
+     */
+    @Value("${quartzjdbc.lease.clock-skew:2000}")
+    private long clockSkew;
+
+    @Value("${spring.quartz.properties.org.quartz.jobStore.tablePrefix:QRTZ_}")
+    private String tablePrefix;
+
+    /**
+     * 租约表不存在时为 false，所有调度器按 quartz 原来的方式加锁
+     */
+    private volatile boolean available = true;
+    private final Set<String> initialized = new HashSet<>();
+    private ScheduledExecutorService renewer;
+
+    @PostConstruct
+    public void init() {
+        slices = Math.max(slices, 1);
+        ttl = ttl > 0 ? ttl : renewInterval * 3;
+        clockSkew = Math.min(Math.max(clockSkew, 0), ttl / 2);
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            SliceLeases leases = leasesOf(scheduler);
+            if (leases != null) {
+                Gauge.builder("quartz.cluster.lease.owned", leases, SliceLeases::getOwnedCount)
+                        .description("trigger slices leased by this node")
+                        .tag("scheduler", leases.getSchedName())
+                        .register(meterRegistry);
+            }
+        }
+        this.renew();
+        renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lease-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewer.scheduleWithFixedDelay(this::renewQuietly, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 后台线程中抛出异常会停止后续的续约，这里全部记录下来
+     */
+    private void renewQuietly() {
+        try {
+            this.renew();
+        } catch (RuntimeException e) {
+            logger.error("租约续约失败", e);
+        }
+    }
+
+    public void renew() {
+        if (!available) {
+            return;
+        }
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            SliceLeases leases = leasesOf(scheduler);
+            if (leases == null) {
+                continue;
+            }
+            try {
+                this.renew(leases, scheduler.getSchedulerInstanceId());
+            } catch (BadSqlGrammarException e) {
+                logger.warn("租约表 {}LEASES 不可用，集群仍使用 QRTZ_LOCKS 行锁：{}", tablePrefix, e.getMessage());
+                available = false;
+                leases.deactivate();
+                return;
+            } catch (DataAccessException | SchedulerException e) {
+                //已经持有的租约在有效期内继续使用，过期后不再获取这些切片的触发器
+                logger.error("调度器 {} 续约失败", leases.getSchedName(), e);
+            }
+        }
+    }
+
+    /**
+     * 正常关闭时释放本节点的租约，其它节点下一次续约时即可接管，不必等待过期
+     */
+    @PreDestroy
+    public void release() throws InterruptedException {
+        if (renewer != null) {
+            //等待正在进行的续约结束，避免释放之后又申请
+            renewer.shutdown();
+            renewer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        if (!available) {
+            return;
+        }
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            SliceLeases leases = leasesOf(scheduler);
+            if (leases == null) {
+                continue;
+            }
+            leases.deactivate();
+            try {
+                jdbcTemplate.update("update " + table() + " set OWNER = null, EXPIRES = 0 where SCHED_NAME = ? and OWNER = ?",
+                        leases.getSchedName(), scheduler.getSchedulerInstanceId());
+            } catch (DataAccessException | SchedulerException e) {
+                logger.warn("调度器 {} 释放租约失败，等待租约过期后由其它节点接管：{}", leases.getSchedName(), e.getMessage());
+            }
+        }
+    }
+
+    private void renew(SliceLeases leases, String instanceId) {
+        String schedName = leases.getSchedName();
+        if (!initialized.contains(schedName)) {
+            this.insertSlices(schedName);
+            initialized.add(schedName);
+        }
+        long now = System.currentTimeMillis();
+        long expires = now + ttl;
+        jdbcTemplate.update("update " + table() + " set EXPIRES = ? where SCHED_NAME = ? and OWNER = ? and EXPIRES > ? and SLICE_ID < ?",
+                expires, schedName, instanceId, now, slices);
+
+        BitSet owned = new BitSet(slices);
+        //可以申请的切片：自己原来持有但已经过期的排在前面，减少切片在节点之间的迁移
+        List<Map<String, Object>> free = new ArrayList<>();
+        Set<String> liveOwners = new HashSet<>();
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("select SLICE_ID, OWNER, EXPIRES from " + table()
+                + " where SCHED_NAME = ? and SLICE_ID < ? order by SLICE_ID", schedName, slices);
+        for (Map<String, Object> row : rows) {
+            String owner = (String) row.get("OWNER");
+            long rowExpires = ((Number) row.get("EXPIRES")).longValue();
+            if (rowExpires > now) {
+                liveOwners.add(owner);
+                if (instanceId.equals(owner)) {
+                    owned.set(((Number) row.get("SLICE_ID")).intValue());
+                }
+            } else if (instanceId.equals(owner)) {
+                free.add(0, row);
+            } else {
+                free.add(row);
+            }
+        }
+        liveOwners.addAll(this.checkedInInstances(schedName, now));
+        liveOwners.add(instanceId);
+        int share = (slices + liveOwners.size() - 1) / liveOwners.size();
+
+        int claimed = 0;
+        for (Iterator<Map<String, Object>> it = free.iterator(); it.hasNext() && owned.cardinality() < share; ) {
+            Map<String, Object> row = it.next();
+            int slice = ((Number) row.get("SLICE_ID")).intValue();
+            int updated = jdbcTemplate.update("update " + table() + " set OWNER = ?, EXPIRES = ? where SCHED_NAME = ? and SLICE_ID = ? and EXPIRES = ?",
+                    instanceId, expires, schedName, slice, row.get("EXPIRES"));
+            if (updated > 0) {
+                owned.set(slice);
+                claimed++;
+            }
+        }
+        List<Integer> released = new ArrayList<>();
+        for (int slice = owned.length() - 1; slice >= 0 && owned.cardinality() > share; slice = owned.previousSetBit(slice - 1)) {
+            owned.clear(slice);
+            released.add(slice);
+        }
+        //先在本节点停止获取要释放的切片，再交给其它节点
+        leases.update(slices, owned, expires - clockSkew);
+        for (Integer slice : released) {
+            jdbcTemplate.update("update " + table() + " set OWNER = null, EXPIRES = 0 where SCHED_NAME = ? and SLICE_ID = ? and OWNER = ?",
+                    schedName, slice, instanceId);
+        }
+        if (claimed > 0 || !released.isEmpty()) {
+            meterRegistry.counter("quartz.cluster.lease.claimed", "scheduler", schedName).increment(claimed);
+            meterRegistry.counter("quartz.cluster.lease.released", "scheduler", schedName).increment(released.size());
+            logger.info("调度器 {} 租约重新分配：存活节点 {} 个，申请 {} 个、释放 {} 个切片，当前持有 {}/{}",
+                    schedName, liveOwners.size(), claimed, released.size(), owned.cardinality(), slices);
+        }
+    }
+
+    /**
+     * 补齐 QRTZ_LEASES 中缺少的切片行，多个节点同时插入时忽略主键冲突
+     */
+    private void insertSlices(String schedName) {
+        Set<Integer> existing = new HashSet<>(jdbcTemplate.queryForList("select SLICE_ID from " + table() + " where SCHED_NAME = ?",
+                Integer.class, schedName));
+        for (int slice = 0; slice < slices; slice++) {
+            if (!existing.contains(slice)) {
+                try {
+                    jdbcTemplate.update("insert into " + table() + " (SCHED_NAME, SLICE_ID, OWNER, EXPIRES) values (?, ?, null, 0)", schedName, slice);
+                } catch (DuplicateKeyException e) {
+                    logger.debug("切片 {} 已经由其它节点插入", slice);
+                }
+            }
+        }
+    }
+
+    /**
+     * 2 个签到周期内在 QRTZ_SCHEDULER_STATE 签到过的节点（集群模式下 quartz 每个 clusterCheckinInterval 签到一次）
+     */
+    private Set<String> checkedInInstances(String schedName, long now) {
+        Set<String> instances = new HashSet<>();
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("select INSTANCE_NAME, LAST_CHECKIN_TIME, CHECKIN_INTERVAL from "
+                + tablePrefix + "SCHEDULER_STATE where SCHED_NAME = ?", schedName);
+        for (Map<String, Object> row : rows) {
+            long lastCheckin = ((Number) row.get("LAST_CHECKIN_TIME")).longValue();
+            long checkinInterval = ((Number) row.get("CHECKIN_INTERVAL")).longValue();
+            if (now - lastCheckin <= checkinInterval * 2) {
+                instances.add((String) row.get("INSTANCE_NAME"));
+            }
+        }
+        return instances;
+    }
+
+    private static SliceLeases leasesOf(Scheduler scheduler) {
+        try {
+            return SliceLeases.get(scheduler.getSchedulerName());
+        } catch (SchedulerException e) {
+            return null;
+        }
+    }
+
+    private String table() {
+        return tablePrefix + "LEASES";
+    }
+}
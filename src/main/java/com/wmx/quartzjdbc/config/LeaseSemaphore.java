@@ -0,0 +1,33 @@
+package com.wmx.quartzjdbc.config;
+
+/**
+ * 租约模式下的 JobStore 锁，通过 org.quartz.jobStore.lockHandler.class 配置.
+ * <p>
+ * 集群模式下 quartz 获取触发器、触发、完成都要先 select ... for update 锁住 QRTZ_LOCKS 中的 TRIGGER_ACCESS 行，
+ * 整个集群同一时刻只有一个节点能获取触发器，节点与作业越多等锁越久。租约生效（{@link SliceLeases#isActive()}）后：
+ * 1、调度线程获取触发器（acquireNextTriggers）时 TRIGGER_ACCESS 改为本 JVM 内的锁，与 {@link OptimisticSemaphore} 相同；
+ * 节点之间由切片租约隔开，每个节点只获取自己持有的切片中的触发器（{@link JsonJDBCDelegate}），
+ * 切片交接期间两个节点短暂重叠时，由获取触发器时的条件更新保证只有一个节点获取成功；
+ * 2、触发、完成、暂停、恢复、修改、错过触发处理仍使用 QRTZ_LOCKS 行锁，不会与其它节点的同一个操作互相覆盖，
+ * 例如分组暂停不会被其它节点同时进行的触发改回 WAITING；
+ * 3、STATE_ACCESS（集群签到、故障节点恢复）使用 QRTZ_LOCKS 行锁，这些操作频率低.
+ * <p>
+ * 租约表不存在、或者还没有续约成功时所有锁都使用 QRTZ_LOCKS 行锁，与 quartz 原来的行为相同.
+ *
+ * @author wangmaoxiong
+ */
+public class LeaseSemaphore extends OptimisticSemaphore {
+
+    private SliceLeases leases;
+
+    @Override
+    protected boolean isLocal(String lockName) {
+        return super.isLocal(lockName) && leases != null && leases.isActive();
+    }
+
+    @Override
+    public void setSchedName(String schedName) {
+        super.setSchedName(schedName);
+        leases = SliceLeases.register(schedName);
+    }
+}
@@ -0,0 +1,102 @@
+package com.wmx.quartzjdbc.config;
+
+import org.quartz.core.QuartzSchedulerThread;
+import org.quartz.impl.jdbcjobstore.JobStoreSupport;
+import org.quartz.impl.jdbcjobstore.LockException;
+import org.quartz.impl.jdbcjobstore.Semaphore;
+import org.quartz.impl.jdbcjobstore.SimpleSemaphore;
+import org.quartz.impl.jdbcjobstore.StdRowLockSemaphore;
+import org.quartz.impl.jdbcjobstore.TablePrefixAware;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 乐观获取触发器模式下的 JobStore 锁，通过 org.quartz.jobStore.lockHandler.class 配置.
+ * <p>
+ * 集群模式下 quartz 批量获取触发器（batchTriggerAcquisitionMaxCount 大于 1）、触发、完成都要先 select ... for update
+ * 锁住 QRTZ_LOCKS 中的 TRIGGER_ACCESS 行，整个集群的触发吞吐受限于这一行，其中获取触发器（查询到期的触发器、逐个更新为 ACQUIRED）持有锁的时间最长。这里：
+ * 1、只有调度线程（{@link QuartzSchedulerThread}）获取触发器（JobStoreSupport.acquireNextTriggers）时，TRIGGER_ACCESS 改为本 JVM 内的锁（{@link SimpleSemaphore}），
+ * 只串行化本节点的多次获取；
+ * 2、节点之间由获取触发器时的条件更新决定归属（见 {@link JsonJDBCDelegate}）：
+ * update ... set TRIGGER_STATE = 'ACQUIRED' where TRIGGER_STATE = 'WAITING' and NEXT_FIRE_TIME = 查询时读到的值，
+ * 更新行数为 1 的节点获得本次触发，为 0 时说明已经被其它节点获取或者已经触发过，quartz 接着尝试下一个触发器；
+ * 相比 quartz 原来只比较 TRIGGER_STATE，加上 NEXT_FIRE_TIME 后其它节点在查询与更新之间完成了一次触发（状态又回到 WAITING）时不会重复触发；
+ * 3、其余所有加锁仍使用 QRTZ_LOCKS 行锁（{@link StdRowLockSemaphore}），与 quartz 原来相同：触发（triggersFired，确认仍为 ACQUIRED 后改为执行中，
+ * 禁止并发的作业同时把其它触发器改为 BLOCKED）、释放、完成（triggeredJobComplete）、暂停、恢复、修改、删除、错过触发处理、故障节点恢复，以及 STATE_ACCESS.
+ * 所以暂停与触发、禁止并发作业的多个触发器之间仍由行锁串行化：暂停后才触发的一方在触发时看到状态不再是 ACQUIRED 而放弃，
+ * 两个节点各自获取到同一个禁止并发作业的不同触发器时，后触发的一方看到 BLOCKED 而放弃；
+ * 4、错过触发处理持有行锁，但获取触发器不再等待它：错过触发处理更新触发器时同样以 TRIGGER_STATE = 'WAITING' 与读到的 NEXT_FIRE_TIME 为条件（见 {@link JsonJDBCDelegate}），
+ * 触发器在此期间已经被其它节点获取时放弃本次处理，不会把 ACQUIRED 改回 WAITING.
+ * <p>
+ * 获取冲突的次数见指标 quartz.trigger.claim.conflicts，冲突多时可以改用 {@link LeaseSemaphore} 按切片隔开各节点.
+ *
+ * @author wangmaoxiong
+ */
+public class OptimisticSemaphore implements Semaphore, TablePrefixAware {
+    protected static final String LOCK_TRIGGER_ACCESS = "TRIGGER_ACCESS";
+    static final String ACQUIRE_NEXT_TRIGGERS = "acquireNextTriggers";
+    static final String RECOVER_MISFIRED_JOBS = "recoverMisfiredJobs";
+    private static final String JOB_STORE_SUPPORT = JobStoreSupport.class.getName();
+
+    private final StdRowLockSemaphore rowLockSemaphore = new StdRowLockSemaphore();
+    private final SimpleSemaphore localSemaphore = new SimpleSemaphore();
+    /**
+     * 当前线程的每把锁由哪个实现获得，释放时交还给同一个实现（子类判断条件在两次加锁之间可能变化）
+     */
+    private final ThreadLocal<Map<String, Semaphore>> lockOwners = ThreadLocal.withInitial(HashMap::new);
+
+    @Override
+    public boolean obtainLock(Connection conn, String lockName) throws LockException {
+        Semaphore semaphore = this.isLocal(lockName) ? localSemaphore : rowLockSemaphore;
+        boolean obtained = semaphore.obtainLock(conn, lockName);
+        if (obtained) {
+            lockOwners.get().put(lockName, semaphore);
+        }
+        return obtained;
+    }
+
+    @Override
+    public void releaseLock(String lockName) throws LockException {
+        Semaphore semaphore = lockOwners.get().remove(lockName);
+        (semaphore == null ? rowLockSemaphore : semaphore).releaseLock(lockName);
+    }
+
+    /**
+     * 这把锁是否只在本节点内加锁：只有调度线程获取触发器时的 TRIGGER_ACCESS
+     */
+    protected boolean isLocal(String lockName) {
+        return LOCK_TRIGGER_ACCESS.equals(lockName) && Thread.currentThread() instanceof QuartzSchedulerThread
+                && calledFrom(ACQUIRE_NEXT_TRIGGERS);
+    }
+
+    /**
+     * 当前线程是否正在执行 JobStoreSupport 的 methodName 方法.
+     * quartz 加锁时不传递调用的是哪个操作，只能从调用栈判断；只在获取触发器加锁、错过触发处理等不频繁的位置调用.
+     */
+    static boolean calledFrom(String methodName) {
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            if (methodName.equals(element.getMethodName()) && JOB_STORE_SUPPORT.equals(element.getClassName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean requiresConnection() {
+        return true;
+    }
+
+    @Override
+    public void setTablePrefix(String tablePrefix) {
+        rowLockSemaphore.setTablePrefix(tablePrefix);
+    }
+
+    @Override
+    public void setSchedName(String schedName) {
+        rowLockSemaphore.setSchedName(schedName);
+        TriggerClaims.register(schedName);
+    }
+}
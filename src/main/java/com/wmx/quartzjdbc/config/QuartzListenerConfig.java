@@ -0,0 +1,34 @@
+package com.wmx.quartzjdbc.config;
+
+import org.quartz.JobListener;
+import org.quartz.SchedulerListener;
+import org.quartz.TriggerListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.quartz.SchedulerFactoryBeanCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 将容器中所有的 {@link JobListener}、{@link TriggerListener}、{@link SchedulerListener} 注册为调度器的全局监听器.
+ * 新增监听器时只需要把它交由 Spring 容器管理（如 @Component），不需要再修改这里.
+ * <p>
+ * 单独放在一个配置类中，而不是 {@link BeanConfig}：BeanConfig 依赖 SchedulerFactoryBean，
+ * 而 SchedulerFactoryBean 创建时又需要这里的 {@link SchedulerFactoryBeanCustomizer}，放在一起会循环依赖.
+ * 注意监听器本身也不能依赖 {@link org.quartz.Scheduler}，原因相同.
+ *
+ * @author wangmaoxiong
+ */
+@Configuration
+public class QuartzListenerConfig {
+
+    @Bean
+    public SchedulerFactoryBeanCustomizer listenerCustomizer(ObjectProvider<JobListener> jobListeners,
+                                                             ObjectProvider<TriggerListener> triggerListeners,
+                                                             ObjectProvider<SchedulerListener> schedulerListeners) {
+        return schedulerFactoryBean -> {
+            schedulerFactoryBean.setGlobalJobListeners(jobListeners.orderedStream().toArray(JobListener[]::new));
+            schedulerFactoryBean.setGlobalTriggerListeners(triggerListeners.orderedStream().toArray(TriggerListener[]::new));
+            schedulerFactoryBean.setSchedulerListeners(schedulerListeners.orderedStream().toArray(SchedulerListener[]::new));
+        };
+    }
+}
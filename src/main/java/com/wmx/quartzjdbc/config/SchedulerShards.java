@@ -0,0 +1,301 @@
+package com.wmx.quartzjdbc.config;
+
+import org.apache.commons.lang3.StringUtils;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.quartz.QuartzAutoConfiguration;
+import org.springframework.boot.autoconfigure.quartz.QuartzProperties;
+import org.springframework.boot.autoconfigure.quartz.SchedulerFactoryBeanCustomizer;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.scheduling.quartz.SpringBeanJobFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * 调度器分片：在同一套表上运行多个逻辑调度器（sched_name 不同），作业按 job_group、job_name 的哈希分配到其中一个.
+ * <p>
+ * 集群模式下所有节点竞争 QRTZ_LOCKS 中同一个 sched_name 的 TRIGGER_ACCESS 行锁，节点再多，同一时刻也只有一个节点在获取触发器。
+ * quartz 的锁是按 sched_name 区分的，分为 N 个逻辑调度器后，锁竞争也分散为 N 份，每个节点上都运行全部 N 个分片.
+ * <p>
+ * 第 0 个分片就是 {@link QuartzAutoConfiguration} 创建的调度器（{@link BeanConfig#scheduler()}），名称不变，
+ * 所以 quartzjdbc.shard.count 为 1（默认）时与不分片完全相同。其余分片名称为 "调度器名称_序号"，
+ * 按 {@link QuartzAutoConfiguration} 相同的方式创建，并应用所有的 {@link SchedulerFactoryBeanCustomizer}（数据源、监听器等），
+ * 线程池等 quartz 配置与第 0 个分片相同，注意每个分片都有自己的线程池.
+ * <p>
+ * 分片数变化后，已有的作业仍留在原来的分片上（管理操作会先查找作业所在的分片），只有新作业按新的分片数分配.
+ * <p>
+ * 独立线程池（bulkhead）：quartzjdbc.bulkhead.pools 按作业组（格式见 {@link GroupSettings}，值为线程数）配置专用的调度器，
+ * 名称为 "调度器名称_pool_组名"，有自己的线程池、自己的 TRIGGER_ACCESS 锁与触发器获取线程，这些组的新作业不再参与哈希分配而是注册到专用调度器，
+ * 一个组的慢作业占满的只是自己的线程池，不会让其它组的作业排队.
+ * 同样只对新注册的作业生效，已有的作业需要删除后重新注册（或者导出、删除、再导入）才会迁移到专用线程池.
+ * <p>
+ * 热层（hot tier）：quartzjdbc.hot-tier.enabled 为 true 时另外创建名称为 "调度器名称_hot" 的调度器，使用内存 JobStore（{@link HotTierJobStore}），
+ * 触发不访问数据库，用于几秒触发一次的作业。quartzjdbc.hot-tier.groups 中值为 true 的作业组（格式见 {@link GroupSettings}），
+ * 以及注册时 tier 指定为 hot 的作业进入热层，其余作业仍然保存在数据库中。热层定义的持久化与触发状态的回写见 {@link com.wmx.quartzjdbc.service.HotTierStore}.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class SchedulerShards implements SmartLifecycle, DisposableBean {
+    private static Logger logger = LoggerFactory.getLogger(SchedulerShards.class);
+
+    private final Scheduler scheduler;
+    private final QuartzProperties quartzProperties;
+    private final ObjectProvider<SchedulerFactoryBeanCustomizer> customizers;
+    private final ApplicationContext applicationContext;
+    private final int shardCount;
+    private final GroupSettings<Integer> poolSettings;
+    private final boolean hotTierEnabled;
+    private final GroupSettings<Boolean> hotGroups;
+    private final int hotThreadCount;
+
+    /**
+     * 第 0 个分片之外的调度器工厂，由这里负责启动、停止与销毁
+     */
+    private final List<SchedulerFactoryBean> factoryBeans = new ArrayList<>();
+    private final List<Scheduler> schedulers = new ArrayList<>();
+    /**
+     * 参与哈希分配的分片，不含独立线程池
+     */
+    private final List<Scheduler> shards = new ArrayList<>();
+    /**
+     * 独立线程池：配置项（作业组或者前缀*） -> 调度器
+     */
+    private final Map<String, Scheduler> pools = new LinkedHashMap<>();
+    private final Map<String, Scheduler> schedulerByName = new LinkedHashMap<>();
+    /**
+     * 热层调度器，没有启用时为 null
+     */
+    private Scheduler hotScheduler;
+    private volatile boolean running;
+
+    public SchedulerShards(Scheduler scheduler,
+                           QuartzProperties quartzProperties,
+                           ObjectProvider<SchedulerFactoryBeanCustomizer> customizers,
+                           ApplicationContext applicationContext,
+                           @Value("${quartzjdbc.shard.count:1}") int shardCount,
+                           @Value("${quartzjdbc.bulkhead.pools:}") String[] poolConfigs,
+                           @Value("${quartzjdbc.hot-tier.enabled:false}") boolean hotTierEnabled,
+                           @Value("${quartzjdbc.hot-tier.groups:}") String[] hotGroupConfigs,
+                           @Value("${quartzjdbc.hot-tier.thread-count:0}") int hotThreadCount) {
+        this.scheduler = scheduler;
+        this.quartzProperties = quartzProperties;
+        this.customizers = customizers;
+        this.applicationContext = applicationContext;
+        this.shardCount = Math.max(shardCount, 1);
+        this.poolSettings = GroupSettings.parse(poolConfigs, "quartzjdbc.bulkhead.pools");
+        this.hotTierEnabled = hotTierEnabled;
+        this.hotGroups = GroupSettings.parse(hotGroupConfigs, "quartzjdbc.hot-tier.groups", Boolean::valueOf);
+        this.hotThreadCount = hotThreadCount;
+    }
+
+    @PostConstruct
+    public void init() throws Exception {
+        String baseName = scheduler.getSchedulerName();
+        this.register(scheduler);
+        shards.add(scheduler);
+        for (int i = 1; i < shardCount; i++) {
+            shards.add(this.createScheduler(baseName + "_" + i, 0, false));
+        }
+        for (Map.Entry<String, Integer> pool : poolSettings.asMap().entrySet()) {
+            String poolName = baseName + "_pool_" + StringUtils.removeEnd(pool.getKey(), "*").replaceAll("[^A-Za-z0-9_.-]", "_");
+            pools.put(pool.getKey(), this.createScheduler(poolName, pool.getValue(), false));
+        }
+        if (hotTierEnabled) {
+            hotScheduler = this.createScheduler(baseName + "_hot", hotThreadCount, true);
+        }
+        logger.info("调度器分片：{}，独立线程池：{}，热层作业组：{}", schedulerByName.keySet(), poolSettings.asMap(),
+                hotTierEnabled ? hotGroups.asMap() : "未启用");
+    }
+
+    private Scheduler createScheduler(String schedulerName, int threadCount, boolean hot) throws Exception {
+        SchedulerFactoryBean factoryBean = this.createFactoryBean(schedulerName, threadCount, hot);
+        factoryBean.afterPropertiesSet();
+        factoryBeans.add(factoryBean);
+        Scheduler created = factoryBean.getScheduler();
+        this.register(created);
+        return created;
+    }
+
+    /**
+     * 与 QuartzAutoConfiguration.quartzScheduler() 相同的方式创建调度器工厂，只是名称不同.
+     * 不设置 JobDetail、Trigger、Calendar 类型的 bean，它们只注册到第 0 个分片.
+     *
+     * @param schedulerName
+     * @param threadCount   ：大于 0 时覆盖 org.quartz.threadPool.threadCount
+     * @param hot           ：热层调度器，去掉 org.quartz.jobStore 的数据库配置（保留 misfireThreshold），不使用数据源，
+     *                      由 {@link com.wmx.quartzjdbc.service.HotTierStore} 恢复定义后再启动
+     */
+    private SchedulerFactoryBean createFactoryBean(String schedulerName, int threadCount, boolean hot) {
+        SchedulerFactoryBean factoryBean = new SchedulerFactoryBean();
+        SpringBeanJobFactory jobFactory = new SpringBeanJobFactory();
+        jobFactory.setApplicationContext(applicationContext);
+        factoryBean.setJobFactory(jobFactory);
+        factoryBean.setApplicationContext(applicationContext);
+        factoryBean.setResourceLoader(applicationContext);
+        factoryBean.setAutoStartup(quartzProperties.isAutoStartup());
+        factoryBean.setStartupDelay((int) quartzProperties.getStartupDelay().getSeconds());
+        factoryBean.setWaitForJobsToCompleteOnShutdown(quartzProperties.isWaitForJobsToCompleteOnShutdown());
+        factoryBean.setOverwriteExistingJobs(quartzProperties.isOverwriteExistingJobs());
+        if (!quartzProperties.getProperties().isEmpty() || threadCount > 0 || hot) {
+            Properties properties = new Properties();
+            properties.putAll(quartzProperties.getProperties());
+            if (threadCount > 0) {
+                properties.put("org.quartz.threadPool.threadCount", String.valueOf(threadCount));
+            }
+            if (hot) {
+                properties.keySet().removeIf(key -> String.valueOf(key).startsWith("org.quartz.jobStore.")
+                        && !"org.quartz.jobStore.misfireThreshold".equals(key));
+                properties.put("org.quartz.jobStore.class", HotTierJobStore.class.getName());
+            }
+            factoryBean.setQuartzProperties(properties);
+        }
+        customizers.orderedStream().forEach(customizer -> customizer.customize(factoryBean));
+        if (hot) {
+            //customizer 设置的数据源会让 SchedulerFactoryBean 改用 LocalDataSourceJobStore
+            factoryBean.setDataSource(null);
+            factoryBean.setNonTransactionalDataSource(null);
+            factoryBean.setTransactionManager(null);
+            factoryBean.setAutoStartup(false);
+        }
+        //放在最后，覆盖配置中的 org.quartz.scheduler.instanceName
+        factoryBean.setSchedulerName(schedulerName);
+        return factoryBean;
+    }
+
+    private void register(Scheduler shard) throws SchedulerException {
+        schedulers.add(shard);
+        schedulerByName.put(shard.getSchedulerName(), shard);
+    }
+
+    /**
+     * 调度器个数（分片、独立线程池与热层），为 1 时作业只可能在主调度器上
+     */
+    public int getShardCount() {
+        return schedulers.size();
+    }
+
+    /**
+     * 所有调度器（分片、独立线程池与热层），第 0 个为主调度器
+     */
+    public List<Scheduler> getSchedulers() {
+        return Collections.unmodifiableList(schedulers);
+    }
+
+    /**
+     * 所有分片的名称，即表中的 sched_name
+     */
+    public Set<String> getSchedulerNames() {
+        return Collections.unmodifiableSet(schedulerByName.keySet());
+    }
+
+    /**
+     * 根据 sched_name 获取分片，不是本应用的分片时返回 null
+     */
+    public Scheduler getScheduler(String schedulerName) {
+        return schedulerByName.get(schedulerName);
+    }
+
+    /**
+     * 独立线程池：配置项（作业组或者前缀*） -> 调度器名称
+     */
+    public Map<String, String> getPoolNames() {
+        Map<String, String> poolNames = new LinkedHashMap<>();
+        for (Map.Entry<String, Scheduler> pool : pools.entrySet()) {
+            try {
+                poolNames.put(pool.getKey(), pool.getValue().getSchedulerName());
+            } catch (SchedulerException e) {
+                poolNames.put(pool.getKey(), null);
+            }
+        }
+        return poolNames;
+    }
+
+    /**
+     * 热层调度器，没有启用时返回 null
+     */
+    public Scheduler getHotScheduler() {
+        return hotScheduler;
+    }
+
+    /**
+     * 新作业应该分配到的调度器：作业组配置了独立线程池时为该线程池的调度器，
+     * 否则为 job_group + "." + job_name 的哈希对分片数取模.
+     * String.hashCode 的算法是固定的，所有节点、每次重启计算的结果都相同.
+     *
+     * @param jobKey
+     * @return
+     */
+    public Scheduler route(JobKey jobKey) {
+        return this.route(jobKey, null);
+    }
+
+    /**
+     * 新作业应该分配到的调度器，启用热层时先判断是否进入热层.
+     *
+     * @param jobKey
+     * @param hot    ：注册时指定的层，true 为热层、false 为持久化的调度器，null 时按 quartzjdbc.hot-tier.groups 判断
+     * @return
+     */
+    public Scheduler route(JobKey jobKey, Boolean hot) {
+        if (hotScheduler != null && (hot != null ? hot : hotGroups.get(jobKey.getGroup(), Boolean.FALSE))) {
+            return hotScheduler;
+        }
+        String pool = poolSettings.match(jobKey.getGroup());
+        if (pool != null) {
+            return pools.get(pool);
+        }
+        if (shards.size() == 1) {
+            return scheduler;
+        }
+        return shards.get(Math.floorMod(jobKey.toString().hashCode(), shards.size()));
+    }
+
+    @Override
+    public void start() {
+        for (SchedulerFactoryBean factoryBean : factoryBeans) {
+            if (factoryBean.isAutoStartup()) {
+                factoryBean.start();
+            }
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        for (SchedulerFactoryBean factoryBean : factoryBeans) {
+            factoryBean.stop();
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 与 SchedulerFactoryBean 在同一阶段启动、停止
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void destroy() throws SchedulerException {
+        for (SchedulerFactoryBean factoryBean : factoryBeans) {
+            factoryBean.destroy();
+        }
+    }
+}
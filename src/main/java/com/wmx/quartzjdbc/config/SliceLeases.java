@@ -0,0 +1,99 @@
+package com.wmx.quartzjdbc.config;
+
+import org.quartz.JobKey;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一个调度器（分片）在本节点持有的触发器切片租约.
+ * <p>
+ * 触发器按所属作业 floorMod(jobKey.toString().hashCode(), slices) 划分为固定数量的切片，同一个作业的触发器总在同一个切片，
+ * DisallowConcurrentExecution 作业的多个触发器只会在一个节点上获取。切片租约保存在 QRTZ_LEASES 表，
+ * 由 {@link LeaseCoordinator} 申请、续约、释放。{@link LeaseSemaphore} 与 {@link JsonJDBCDelegate} 由 quartz 实例化，
+ * 不受 spring 管理，三者通过这里按调度器名称共享状态：
+ * LeaseSemaphore 初始化时注册（只有配置了它的调度器才使用租约），LeaseCoordinator 每次续约后发布持有的切片与有效期，
+ * JsonJDBCDelegate 获取触发器、处理错过触发时只保留本节点持有的切片.
+ * <p>
+ * 租约表不可用或者还没有续约成功过时 active 为 false，调度器按 quartz 原来的方式工作（QRTZ_LOCKS 行锁、不过滤触发器）.
+ *
+ * @author wangmaoxiong
+ */
+public class SliceLeases {
+    private static final Map<String, SliceLeases> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String schedName;
+    private volatile boolean active;
+    private volatile int slices = 1;
+    private volatile BitSet owned = new BitSet();
+    /**
+     * 持有的租约在这个时间（毫秒时间戳）之后失效，续约失败时本节点不再获取这些切片的触发器.
+     * 已经减去时钟偏差余量，早于数据库中的到期时间，其它节点按自己的时钟判断过期接管时本节点已经停止获取
+     */
+    private volatile long validUntil;
+
+    private SliceLeases(String schedName) {
+        this.schedName = schedName;
+    }
+
+    static SliceLeases register(String schedName) {
+        return REGISTRY.computeIfAbsent(schedName, SliceLeases::new);
+    }
+
+    /**
+     * @return 调度器没有使用租约时返回 null
+     */
+    public static SliceLeases get(String schedName) {
+        return schedName == null ? null : REGISTRY.get(schedName);
+    }
+
+    public static int sliceOf(JobKey jobKey, int slices) {
+        return Math.floorMod(jobKey.toString().hashCode(), slices);
+    }
+
+    /**
+     * 发布续约结果
+     *
+     * @param slices     ：切片总数
+     * @param owned      ：本节点持有的切片
+     * @param validUntil ：租约有效期，已经减去时钟偏差余量
+     */
+    void update(int slices, BitSet owned, long validUntil) {
+        this.slices = slices;
+        this.owned = (BitSet) owned.clone();
+        this.validUntil = validUntil;
+        this.active = true;
+    }
+
+    void deactivate() {
+        this.active = false;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 本节点是否持有作业（及其触发器）所在切片的有效租约
+     */
+    public boolean owns(JobKey jobKey) {
+        return System.currentTimeMillis() < validUntil && owned.get(sliceOf(jobKey, slices));
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    public int getOwnedCount() {
+        return System.currentTimeMillis() < validUntil ? owned.cardinality() : 0;
+    }
+
+    public BitSet getOwned() {
+        return (BitSet) owned.clone();
+    }
+
+    public String getSchedName() {
+        return schedName;
+    }
+}
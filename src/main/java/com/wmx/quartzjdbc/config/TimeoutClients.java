@@ -0,0 +1,66 @@
+package com.wmx.quartzjdbc.config;
+
+import okhttp3.OkHttpClient;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Resource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按作业参数 connectTimeout、readTimeout 派生的 OkHttpClient、RestTemplate.
+ * <p>
+ * SpringBeanJobFactory 每次触发都新建一个作业实例，缓存放在作业里每次都是空的，所以放在这个单例中，所有作业共用.
+ * 派生的 OkHttpClient 由 {@link BeanConfig} 中共享的实例 newBuilder 得到，仍共用连接池与 Dispatcher.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class TimeoutClients {
+    @Resource
+    private RestTemplate restTemplate;
+    @Resource
+    private OkHttpClient okHttpClient;
+
+    /**
+     * key 为 "connectTimeout/readTimeout"（毫秒，未设置的一项为 -1），超时时间的组合通常只有几种
+     */
+    private final ConcurrentMap<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RestTemplate> restTemplates = new ConcurrentHashMap<>();
+
+    /**
+     * @param timeoutKey ："connectTimeout/readTimeout"，为 null 时返回共享的实例
+     * @return
+     */
+    public OkHttpClient clientFor(String timeoutKey) {
+        if (timeoutKey == null) {
+            return okHttpClient;
+        }
+        return clients.computeIfAbsent(timeoutKey, key -> {
+            String[] timeouts = key.split("/");
+            OkHttpClient.Builder builder = okHttpClient.newBuilder();
+            if (Long.parseLong(timeouts[0]) >= 0) {
+                builder.connectTimeout(Long.parseLong(timeouts[0]), TimeUnit.MILLISECONDS);
+            }
+            if (Long.parseLong(timeouts[1]) >= 0) {
+                builder.readTimeout(Long.parseLong(timeouts[1]), TimeUnit.MILLISECONDS);
+            }
+            return builder.build();
+        });
+    }
+
+    /**
+     * @param timeoutKey ："connectTimeout/readTimeout"，为 null 时返回共享的实例
+     * @return
+     */
+    public RestTemplate restTemplateFor(String timeoutKey) {
+        if (timeoutKey == null) {
+            return restTemplate;
+        }
+        return restTemplates.computeIfAbsent(timeoutKey,
+                key -> new RestTemplate(new OkHttp3ClientHttpRequestFactory(this.clientFor(key))));
+    }
+}
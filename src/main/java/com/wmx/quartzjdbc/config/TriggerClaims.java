@@ -0,0 +1,50 @@
+package com.wmx.quartzjdbc.config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个调度器（分片）以乐观方式（compare-and-set）获取触发器的统计.
+ * <p>
+ * {@link OptimisticSemaphore} 初始化时注册，{@link JsonJDBCDelegate} 查到注册信息时获取触发器改为
+ * update ... set TRIGGER_STATE = 'ACQUIRED' where TRIGGER_STATE = 'WAITING' and NEXT_FIRE_TIME = 读到的值，并在这里计数，
+ * 由 {@link com.wmx.quartzjdbc.metrics.SchedulerPoolMetrics} 输出为指标.
+ *
+ * @author wangmaoxiong
+ */
+public class TriggerClaims {
+    private static final Map<String, TriggerClaims> REGISTRY = new ConcurrentHashMap<>();
+
+    /**
+     * 更新成功（本节点获取到触发器）的次数
+     */
+    private final LongAdder won = new LongAdder();
+    /**
+     * 更新行数为 0 的次数：触发器已经被其它节点获取，或者在查询之后被触发、修改过，quartz 接着尝试下一个到期的触发器
+     */
+    private final LongAdder conflicts = new LongAdder();
+
+    static TriggerClaims register(String schedName) {
+        return REGISTRY.computeIfAbsent(schedName, name -> new TriggerClaims());
+    }
+
+    /**
+     * @return 调度器没有使用乐观获取时返回 null
+     */
+    public static TriggerClaims get(String schedName) {
+        return schedName == null ? null : REGISTRY.get(schedName);
+    }
+
+    void record(boolean claimed) {
+        (claimed ? won : conflicts).increment();
+    }
+
+    public long getWon() {
+        return won.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+}
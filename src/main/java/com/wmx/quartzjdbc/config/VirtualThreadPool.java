@@ -0,0 +1,247 @@
+package com.wmx.quartzjdbc.config;
+
+import org.quartz.SchedulerConfigException;
+import org.quartz.spi.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于虚拟线程的 quartz 线程池 {@link ThreadPool}，每次触发的作业都在一个新的虚拟线程中执行.
+ * 并发数由信号量 {@link Semaphore} 限制，许可数即 threadCount，所以 blockForAvailableThreads 返回的仍然是"可用线程数"，
+ * QuartzSchedulerThread 依旧按照 min(可用数, batchTriggerAcquisitionMaxCount) 批量获取触发器.
+ * <p>
+ * 运行时 JDK 不支持虚拟线程（低于 21）时，自动退回到按需创建的普通线程，并发数同样受信号量限制.
+ * <p>
+ * 在 application.yml 中将 org.quartz.threadPool.class 配置为本类即可切换，改回 org.quartz.simpl.SimpleThreadPool 即恢复：
+ * <pre>
+ * threadPool:
+ *   class: com.wmx.quartzjdbc.config.VirtualThreadPool
+ *   threadCount: 500  #同时执行的作业上限（信号量许可数）
+ * </pre>
+ *
+ * @author wangmaoxiong
+ * @see org.quartz.simpl.SimpleThreadPool
+ */
+public class VirtualThreadPool implements ThreadPool {
+    private static Logger logger = LoggerFactory.getLogger(VirtualThreadPool.class);
+
+    private int threadCount = -1;
+    private int threadPriority = Thread.NORM_PRIORITY;
+    private boolean inheritLoader = false;
+    private boolean preferVirtualThreads = true;
+    private String schedulerInstanceName = "QuartzScheduler";
+
+    /**
+     * 等待许可时使用的锁，许可释放或者线程池关闭时唤醒等待者.
+     */
+    private final Object permitLock = new Object();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private Semaphore permits;
+    private Executor executor;
+    private ClassLoader initLoader;
+    private volatile boolean isShutdown = false;
+
+    @Override
+    public void initialize() throws SchedulerConfigException {
+        if (threadCount <= 0) {
+            throw new SchedulerConfigException("Thread count must be > 0");
+        }
+        if (threadPriority < Thread.MIN_PRIORITY || threadPriority > Thread.MAX_PRIORITY) {
+            throw new SchedulerConfigException("Thread priority must be > 0 and <= 10");
+        }
+        if (inheritLoader) {
+            initLoader = Thread.currentThread().getContextClassLoader();
+        }
+        permits = new Semaphore(threadCount);
+        String namePrefix = schedulerInstanceName + "_Worker-";
+        ThreadFactory virtualFactory = preferVirtualThreads ? virtualThreadFactory(namePrefix) : null;
+        if (virtualFactory != null) {
+            //虚拟线程不需要池化，每个作业一个新线程
+            executor = command -> virtualFactory.newThread(command).start();
+            logger.info("VirtualThreadPool 使用虚拟线程执行作业，并发上限 {}", threadCount);
+        } else {
+            AtomicInteger threadIndex = new AtomicInteger();
+            //线程数由信号量控制，这里的最大线程数只是兜底
+            executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, namePrefix + threadIndex.incrementAndGet());
+                thread.setPriority(threadPriority);
+                thread.setDaemon(false);
+                return thread;
+            });
+            logger.info("当前 JDK 不支持虚拟线程，VirtualThreadPool 使用普通线程执行作业，并发上限 {}", threadCount);
+        }
+    }
+
+    /**
+     * 阻塞直到至少有一个许可可用，返回当前可用的许可数.
+     * QuartzSchedulerThread 会据此决定一次获取多少个触发器.
+     */
+    @Override
+    public int blockForAvailableThreads() {
+        synchronized (permitLock) {
+            while (permits.availablePermits() < 1 && !isShutdown) {
+                try {
+                    permitLock.wait(500);
+                } catch (InterruptedException ignore) {
+                }
+            }
+            return permits.availablePermits();
+        }
+    }
+
+    /**
+     * 获取一个许可后在新线程中执行作业，没有许可时阻塞等待.
+     * 与 SimpleThreadPool 一致：线程池已关闭时仍然另起线程执行，保证已获取的触发器能够完成.
+     */
+    @Override
+    public boolean runInThread(Runnable runnable) {
+        if (runnable == null) {
+            return false;
+        }
+        boolean permitted = false;
+        synchronized (permitLock) {
+            while (!isShutdown && !(permitted = permits.tryAcquire())) {
+                try {
+                    permitLock.wait(500);
+                } catch (InterruptedException ignore) {
+                }
+            }
+        }
+        final boolean release = permitted;
+        activeCount.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                if (initLoader != null) {
+                    Thread.currentThread().setContextClassLoader(initLoader);
+                }
+                try {
+                    runnable.run();
+                } finally {
+                    this.complete(release);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("作业线程启动失败：" + e.getMessage(), e);
+            this.complete(release);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 作业执行结束：归还许可，唤醒等待者.
+     */
+    private void complete(boolean release) {
+        if (release) {
+            permits.release();
+        }
+        activeCount.decrementAndGet();
+        synchronized (permitLock) {
+            permitLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void shutdown(boolean waitForJobsToComplete) {
+        isShutdown = true;
+        synchronized (permitLock) {
+            permitLock.notifyAll();
+            if (waitForJobsToComplete) {
+                while (activeCount.get() > 0) {
+                    try {
+                        permitLock.wait(100);
+                    } catch (InterruptedException ignore) {
+                    }
+                }
+            }
+        }
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+        logger.debug("VirtualThreadPool shutdown complete, active={}", activeCount.get());
+    }
+
+    @Override
+    public int getPoolSize() {
+        return threadCount;
+    }
+
+    /**
+     * 当前正在执行的作业数
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    @Override
+    public void setInstanceId(String schedInstId) {
+    }
+
+    @Override
+    public void setInstanceName(String schedName) {
+        this.schedulerInstanceName = schedName;
+    }
+
+    /**
+     * 以下 setter 由 quartz 根据 org.quartz.threadPool.* 配置反射调用，保持与 SimpleThreadPool 相同的属性名，方便来回切换.
+     */
+    public void setThreadCount(int count) {
+        this.threadCount = count;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * 只对退回到普通线程时生效，虚拟线程的优先级固定.
+     */
+    public void setThreadPriority(int prio) {
+        this.threadPriority = prio;
+    }
+
+    public int getThreadPriority() {
+        return threadPriority;
+    }
+
+    public void setThreadsInheritContextClassLoaderOfInitializingThread(boolean inheritLoader) {
+        this.inheritLoader = inheritLoader;
+    }
+
+    public boolean isThreadsInheritContextClassLoaderOfInitializingThread() {
+        return inheritLoader;
+    }
+
+    public void setPreferVirtualThreads(boolean preferVirtualThreads) {
+        this.preferVirtualThreads = preferVirtualThreads;
+    }
+
+    public boolean isPreferVirtualThreads() {
+        return preferVirtualThreads;
+    }
+
+    /**
+     * 项目按 jdk 1.8 编译，所以通过反射调用 Thread.ofVirtual().name(prefix, 0).factory()，不支持时返回 null.
+     */
+    private static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -1,9 +1,22 @@
 package com.wmx.quartzjdbc.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wmx.quartzjdbc.enums.ResultCode;
+import com.wmx.quartzjdbc.pojo.BatchResult;
+import com.wmx.quartzjdbc.pojo.GroupOperation;
+import com.wmx.quartzjdbc.pojo.ImportResult;
+import com.wmx.quartzjdbc.pojo.JobHistory;
+import com.wmx.quartzjdbc.pojo.KeysetPage;
 import com.wmx.quartzjdbc.pojo.ResultData;
 import com.wmx.quartzjdbc.pojo.SchedulerEntity;
+import com.wmx.quartzjdbc.service.GroupOperationService;
+import com.wmx.quartzjdbc.service.JobDefinitionCache;
+import com.wmx.quartzjdbc.service.JobHistoryPartitions;
+import com.wmx.quartzjdbc.service.JobHistoryService;
+import com.wmx.quartzjdbc.service.SchedulerImportService;
+import com.wmx.quartzjdbc.service.SchedulerQueryService;
 import com.wmx.quartzjdbc.service.SchedulerService;
+import com.wmx.quartzjdbc.service.SchedulerStateCache;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.quartz.JobKey;
@@ -11,11 +24,20 @@ import org.quartz.SchedulerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -34,37 +56,51 @@ public class SchedulerController {
     @Resource
     private SchedulerService schedulerService;
 
-    /**
-     * JdbcTemplate 默认已经被放在了容器中，直接使用即可.
-     */
     @Resource
-    private JdbcTemplate jdbcTemplate;
+    private SchedulerQueryService schedulerQueryService;
+
+    @Resource
+    private SchedulerImportService schedulerImportService;
+
+    @Resource
+    private GroupOperationService groupOperationService;
+
+    @Resource
+    private JobDefinitionCache jobDefinitionCache;
+
+    @Resource
+    private SchedulerStateCache schedulerStateCache;
+
+    @Resource
+    private JobHistoryService jobHistoryService;
+
+    @Resource
+    private JobHistoryPartitions jobHistoryPartitions;
+
+    @Resource
+    private ObjectMapper objectMapper;
 
     /**
      * 查询注册成功的作业信息，从 qrtz_job_details、qrtz_triggers、qrtz_cron_triggers 进行关联查询
-     * http://localhost:8080/schedule/findSchedulers?pageNum=1&pageSize=10
-     * 注意：因为一个 job 可以对应多个 trigger，所以使用左连接.
+     * http://localhost:8080/schedule/findSchedulers?pageSize=10
+     * http://localhost:8080/schedule/findSchedulers?pageSize=10&cursor=上一页返回的nextCursor&jobGroup=reqJobGroup&triggerState=PAUSED
+     * 注意：因为一个 job 可以对应多个 trigger，所以一页中的行数可能大于 pageSize（pageSize 指作业个数）.
+     * 使用键集分页，翻到任何一页的耗时都相同，详见 {@link SchedulerQueryService}
      *
-     * @param pageNum  ：查询的页码，默认为
-     * @param pageSize ：查询的每页的条数，默认为 20
+     * @param cursor       ：上一页返回的 nextCursor，为空时查询第一页
+     * @param pageSize     ：每页的作业个数，默认为 20，最大为 500
+     * @param jobGroup     ：可选，作业组
+     * @param triggerState ：可选，触发器状态，如：PAUSED、WAITING、ACQUIRED
      * @return
      */
     @GetMapping("schedule/findSchedulers")
-    public ResultData findSchedulers(Integer pageNum, Integer pageSize) {
+    public ResultData findSchedulers(String cursor, Integer pageSize, String jobGroup, String triggerState) {
         ResultData resultData = null;
         try {
-            pageNum = pageNum == null ? 1 : pageNum <= 0 ? 1 : pageNum;
-            pageSize = pageSize == null ? 1 : pageSize <= 0 ? 1 : pageSize;
-            String sql = "select t4.*,t3.cron_expression from \n" +
-                    "(select \n" +
-                    "t1.sched_name,t1.job_name,t1.job_group,t1.description as job_desc,t1.job_class_name ,t1.job_data ,\n" +
-                    "t2.trigger_name,t2.trigger_group,t2.trigger_state,t2.description as trigger_desc,t2.trigger_type , t2.job_data as trigger_data \n" +
-                    "from qrtz_job_details t1 left outer join qrtz_triggers t2 \n" +
-                    "on t1.sched_name=t2.sched_name and t1.job_name = t2.job_name and t1.job_group = t2.job_group\n" +
-                    ") t4 left outer join qrtz_cron_triggers t3 on t3.sched_name = t4.sched_name and t3.trigger_name = t4.trigger_name and t3.trigger_group = t4.trigger_group " +
-                    "limit " + ((pageNum - 1) * pageSize) + "," + (pageNum * pageSize);
-            List<Map<String, Object>> queryForList = jdbcTemplate.queryForList(sql);
-            resultData = new ResultData(ResultCode.SUCCESS, queryForList);
+            KeysetPage page = schedulerQueryService.findSchedulers(cursor, pageSize, jobGroup, triggerState);
+            resultData = new ResultData(ResultCode.SUCCESS, page);
+        } catch (IllegalArgumentException e) {
+            resultData = new ResultData(ResultCode.PARAM_IS_INVALID, "cursor");
         } catch (DataAccessException e) {
             resultData = new ResultData(ResultCode.FAIL, null);
             logger.error(e.getMessage(), e);
@@ -72,6 +108,45 @@ public class SchedulerController {
         return resultData;
     }
 
+    /**
+     * 全量导出作业及其触发器，用于备份、审计.
+     * 响应为 NDJSON（每行一个 json 对象，字段与 findSchedulers 的行相同），从数据库游标边读边写，不在内存中组装结果.
+     * http://localhost:8080/schedule/export
+     * http://localhost:8080/schedule/export?jobGroup=reqJobGroup&includeData=false
+     *
+     * @param jobGroup    ：可选，只导出指定作业组
+     * @param includeData ：是否导出 job_data、trigger_data，默认为 true
+     * @param response
+     * @throws IOException
+     */
+    @GetMapping("schedule/export")
+    public void export(String jobGroup, @RequestParam(defaultValue = "true") boolean includeData, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"schedulers.ndjson\"");
+        ServletOutputStream outputStream = response.getOutputStream();
+        try {
+            long count = schedulerQueryService.exportSchedulers(jobGroup, includeData, row -> {
+                try {
+                    outputStream.write(objectMapper.writeValueAsBytes(row));
+                    outputStream.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            logger.info("导出作业 {} 行", count);
+        } catch (UncheckedIOException e) {
+            //客户端断开连接
+            logger.warn("导出作业中断：{}", e.getMessage());
+        } catch (DataAccessException e) {
+            logger.error(e.getMessage(), e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+                response.getOutputStream().write(objectMapper.writeValueAsBytes(new ResultData(ResultCode.FAIL, null)));
+            }
+        }
+    }
+
     /**
      * 注册作业。如果 Job 或者 Trigger 已经存在，则替换它们. 否则新增。有添加和修改的功能。
      * 如：第一次 job1 与 trigger1 关联注册，第二次再新增 job1 与 trigger2，则第二次是修改了 job1,同时新增了 trigger2，此时 job1 便关联了两个触发器，依次类推.
@@ -112,6 +187,71 @@ public class SchedulerController {
         return resultData;
     }
 
+    /**
+     * 批量注册作业，每条数据的格式与 schedule/scheduleJob 相同。按 chunkSize 分块，每块在一个事务中提交.
+     * http://localhost:8080/schedule/scheduleJobs?chunkSize=500   使用 post 请求，body 正文参数如：
+     * <p>
+     * [{
+     * "job_name": "j1000",
+     * "job_group": "reqJobGroup",
+     * "job_class_name": "com.wmx.quartzjdbc.jobs.RequestJob",
+     * "job_data": {"url": "https://wangmaoxiong.blog.csdn.net/article/details/105057405"},
+     * "trigger_name": "t1000",
+     * "trigger_group": "requestGroup",
+     * "cron_expression": "0/30 * * * * ?"
+     * }]
+     *
+     * @param schedulerEntityList
+     * @param chunkSize           ：可选，每个事务提交的条数，默认使用配置 quartzjdbc.batch.chunk-size
+     * @return 逐条结果与吞吐量 {@link BatchResult}
+     */
+    @PostMapping("schedule/scheduleJobs")
+    public ResultData scheduleJobs(@RequestBody List<SchedulerEntity> schedulerEntityList, Integer chunkSize) {
+        ResultData resultData = null;
+        try {
+            if (schedulerEntityList == null || schedulerEntityList.isEmpty()) {
+                resultData = new ResultData(ResultCode.PARAM_IS_BLANK, null);
+                return resultData;
+            }
+            BatchResult batchResult = schedulerService.scheduleJobs(schedulerEntityList, chunkSize);
+            resultData = new ResultData(ResultCode.SUCCESS, batchResult);
+        } catch (Exception e) {
+            resultData = new ResultData(ResultCode.FAIL, null);
+            logger.error(e.getMessage(), e);
+        }
+        return resultData;
+    }
+
+    /**
+     * 流式导入作业，请求正文为 NDJSON（如 schedule/export 的导出文件）或者带表头的 CSV，编码为 UTF-8，边读边分块提交，详见 {@link SchedulerImportService}.
+     * http://localhost:8080/schedule/import?importId=backup-20200401&format=ndjson&chunkSize=500   使用 post 请求，如：
+     * curl -X POST -H "Content-Type: application/x-ndjson" --data-binary @schedulers.ndjson "http://localhost:8080/schedule/import?importId=backup-20200401"
+     * Content-Type 不能是表单（application/x-www-form-urlencoded），否则正文会被当作表单参数读取.
+     * 导入中断后使用相同的 importId 重新上传同一个文件，从上次提交的位置继续.
+     *
+     * @param importId  ：可选，导入标识，为空时不记录检查点
+     * @param format    ：ndjson（默认）或者 csv
+     * @param chunkSize ：可选，每个事务提交的条数，默认使用配置 quartzjdbc.batch.chunk-size
+     * @param restart   ：可选，为 true 时忽略已有的检查点，从头导入
+     * @param request
+     * @return 导入结果 {@link ImportResult}
+     */
+    @PostMapping(value = "schedule/import", consumes = {"application/x-ndjson", "text/csv", MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResultData importJobs(String importId, @RequestParam(defaultValue = SchedulerImportService.FORMAT_NDJSON) String format,
+                                 Integer chunkSize, @RequestParam(defaultValue = "false") boolean restart, HttpServletRequest request) {
+        ResultData resultData = null;
+        try (InputStreamReader reader = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8)) {
+            ImportResult importResult = schedulerImportService.importJobs(importId, format, reader, chunkSize, restart);
+            resultData = new ResultData(ResultCode.SUCCESS, importResult);
+        } catch (IllegalArgumentException e) {
+            resultData = new ResultData(ResultCode.PARAM_IS_INVALID, e.getMessage());
+        } catch (Exception e) {
+            resultData = new ResultData(ResultCode.FAIL, null);
+            logger.error(e.getMessage(), e);
+        }
+        return resultData;
+    }
+
     /**
      * 重新注册任务的触发器，如果指定的触发器不存在，则不做更新.
      * http://localhost:8080/schedule/rescheduleJob
@@ -355,4 +495,161 @@ public class SchedulerController {
         }
         return resultData;
     }
+
+    /**
+     * 暂停作业组匹配的所有作业，后台执行，返回操作 id 与进度，通过 schedule/groupOperation 查询.
+     * http://localhost:8080/schedule/pauseGroup?jobGroup=tenant1
+     * http://localhost:8080/schedule/pauseGroup?jobGroup=tenant1.&operator=STARTS_WITH
+     *
+     * @param jobGroup ：作业组名称或者名称的一部分
+     * @param operator ：可选，匹配方式：EQUALS（默认）、STARTS_WITH、ENDS_WITH、CONTAINS、ANYTHING（所有组）
+     * @return {@link GroupOperation}
+     */
+    @GetMapping("schedule/pauseGroup")
+    public ResultData pauseGroup(String jobGroup, String operator) {
+        return this.submitGroupOperation(GroupOperationService.TYPE_PAUSE, jobGroup, operator, null);
+    }
+
+    /**
+     * 恢复作业组匹配的所有作业，后台执行，参数同 schedule/pauseGroup.
+     * http://localhost:8080/schedule/resumeGroup?jobGroup=tenant1
+     *
+     * @param jobGroup
+     * @param operator
+     * @return {@link GroupOperation}
+     */
+    @GetMapping("schedule/resumeGroup")
+    public ResultData resumeGroup(String jobGroup, String operator) {
+        return this.submitGroupOperation(GroupOperationService.TYPE_RESUME, jobGroup, operator, null);
+    }
+
+    /**
+     * 删除作业组匹配的所有作业及其触发器，后台执行，每 chunkSize 个作业一个事务，参数同 schedule/pauseGroup.
+     * http://localhost:8080/schedule/deleteGroup?jobGroup=tenant1&chunkSize=500
+     *
+     * @param jobGroup
+     * @param operator
+     * @param chunkSize ：可选，每个事务删除的作业个数，默认使用配置 quartzjdbc.batch.chunk-size
+     * @return {@link GroupOperation}
+     */
+    @GetMapping("schedule/deleteGroup")
+    public ResultData deleteGroup(String jobGroup, String operator, Integer chunkSize) {
+        return this.submitGroupOperation(GroupOperationService.TYPE_DELETE, jobGroup, operator, chunkSize);
+    }
+
+    private ResultData submitGroupOperation(String type, String jobGroup, String operator, Integer chunkSize) {
+        ResultData resultData = null;
+        try {
+            GroupOperation operation = groupOperationService.submit(type, GroupOperationService.matcher(operator, jobGroup), chunkSize);
+            resultData = new ResultData(ResultCode.SUCCESS, operation);
+        } catch (IllegalArgumentException e) {
+            resultData = new ResultData(ResultCode.PARAM_IS_INVALID, "jobGroup or operator");
+        } catch (Exception e) {
+            resultData = new ResultData(ResultCode.FAIL, null);
+            logger.error(e.getMessage(), e);
+        }
+        return resultData;
+    }
+
+    /**
+     * 查询作业组批量操作的进度.
+     * http://localhost:8080/schedule/groupOperation?id=xxx
+     *
+     * @param id ：schedule/pauseGroup、resumeGroup、deleteGroup 返回的操作 id
+     * @return {@link GroupOperation}
+     */
+    @GetMapping("schedule/groupOperation")
+    public ResultData groupOperation(String id) {
+        GroupOperation operation = StringUtils.isBlank(id) ? null : groupOperationService.getOperation(id);
+        if (operation == null) {
+            return new ResultData(ResultCode.PARAM_IS_INVALID, "id");
+        }
+        return new ResultData(ResultCode.SUCCESS, operation);
+    }
+
+    /**
+     * 查询作业执行历史，按触发时间倒序.
+     * http://localhost:8080/schedule/history?jobGroup=reqJobGroup&jobName=reqJob&status=FAILURE&limit=20
+     * http://localhost:8080/schedule/history?from=1760745600000&to=1760832000000
+     *
+     * @param jobGroup ：可选，作业组
+     * @param jobName  ：可选，作业名称，需要同时指定作业组
+     * @param status   ：可选，SUCCESS、FAILURE、VETOED
+     * @param from     ：可选，触发时间的开始（毫秒时间戳），执行历史分区时只查询相关的分区
+     * @param to       ：可选，触发时间的结束（毫秒时间戳，不包含）
+     * @param limit    ：最多返回的条数，默认为 50，最大为 1000
+     * @return {@link JobHistory} 列表
+     */
+    @GetMapping("schedule/history")
+    public ResultData history(String jobGroup, String jobName, String status, Long from, Long to, Integer limit) {
+        ResultData resultData = null;
+        try {
+            int maxRows = limit == null || limit <= 0 ? 50 : Math.min(limit, 1000);
+            List<JobHistory> histories = jobHistoryService.findHistory(jobGroup, jobName, StringUtils.upperCase(status), from, to, maxRows);
+            resultData = new ResultData(ResultCode.SUCCESS, histories);
+        } catch (DataAccessException e) {
+            resultData = new ResultData(ResultCode.FAIL, null);
+            logger.error(e.getMessage(), e);
+        }
+        return resultData;
+    }
+
+    /**
+     * 查询作业最近一次执行、最近一次成功、最近一次失败的记录.
+     * http://localhost:8080/schedule/lastExecution?jobGroup=reqJobGroup&jobName=reqJob
+     *
+     * @param jobGroup ：作业组
+     * @param jobName  ：作业名称
+     * @return last、lastSuccess、lastFailure，没有时为 null
+     */
+    @GetMapping("schedule/lastExecution")
+    public ResultData lastExecution(String jobGroup, String jobName) {
+        if (StringUtils.isBlank(jobGroup) || StringUtils.isBlank(jobName)) {
+            return new ResultData(ResultCode.PARAM_IS_BLANK, null);
+        }
+        ResultData resultData = null;
+        try {
+            resultData = new ResultData(ResultCode.SUCCESS, jobHistoryService.lastExecution(jobGroup, jobName));
+        } catch (DataAccessException e) {
+            resultData = new ResultData(ResultCode.FAIL, null);
+            logger.error(e.getMessage(), e);
+        }
+        return resultData;
+    }
+
+    /**
+     * 查看执行历史的分区模式与已经存在的分区.
+     * http://localhost:8080/schedule/historyPartitions
+     *
+     * @return
+     */
+    @GetMapping("schedule/historyPartitions")
+    public ResultData historyPartitions() {
+        Map<String, Object> partitions = new LinkedHashMap<>();
+        partitions.put("mode", jobHistoryPartitions.getMode());
+        partitions.put("partitions", jobHistoryPartitions.getPartitions());
+        return new ResultData(ResultCode.SUCCESS, partitions);
+    }
+
+    /**
+     * 查看作业类、cron 表达式缓存的命中情况.
+     * http://localhost:8080/schedule/jobDefinitionCacheStats
+     *
+     * @return
+     */
+    @GetMapping("schedule/jobDefinitionCacheStats")
+    public ResultData jobDefinitionCacheStats() {
+        return new ResultData(ResultCode.SUCCESS, jobDefinitionCache.getStats());
+    }
+
+    /**
+     * 查看调度状态缓存（分页查询结果、作业/触发器所在分片）的命中情况.
+     * http://localhost:8080/schedule/stateCacheStats
+     *
+     * @return
+     */
+    @GetMapping("schedule/stateCacheStats")
+    public ResultData stateCacheStats() {
+        return new ResultData(ResultCode.SUCCESS, schedulerStateCache.getStats());
+    }
 }
@@ -0,0 +1,48 @@
+package com.wmx.quartzjdbc.enums;
+
+import org.apache.commons.lang3.StringUtils;
+import org.quartz.CronScheduleBuilder;
+
+/**
+ * cron 触发器错过触发（misfire）后的处理策略，按作业组配置（quartzjdbc.misfire.group-policies）.
+ * <p>
+ * 触发器超过 org.quartz.jobStore.misfireThreshold 仍未触发（节点宕机、调度器关闭、作业暂停、线程池饱和）即为错过触发，
+ * 恢复后由 JobStore 按触发器上保存的策略处理。策略在注册、修改触发器时写入 QRTZ_TRIGGERS.MISFIRE_INSTR，
+ * 修改配置后已有的触发器仍使用原来的策略，重新注册（rescheduleJob）后生效.
+ *
+ * @author wangmaoxiong
+ */
+public enum MisfirePolicy {
+
+    /*跳过错过的触发，等待下一次正常触发（原来的默认行为）*/
+    SKIP,
+
+    /*立即补触发一次，然后按原来的周期继续*/
+    FIRE_ONCE_NOW,
+
+    /*补上所有错过的触发，再按原来的周期继续；补触发受 quartzjdbc.misfire.catch-up-rate 限速*/
+    FIRE_ALL;
+
+    /**
+     * 为 cron 调度设置对应的错过触发指令
+     */
+    public CronScheduleBuilder apply(CronScheduleBuilder builder) {
+        switch (this) {
+            case FIRE_ONCE_NOW:
+                return builder.withMisfireHandlingInstructionFireAndProceed();
+            case FIRE_ALL:
+                return builder.withMisfireHandlingInstructionIgnoreMisfires();
+            default:
+                return builder.withMisfireHandlingInstructionDoNothing();
+        }
+    }
+
+    /**
+     * 按名称解析，忽略大小写与首尾空格
+     *
+     * @throws IllegalArgumentException 名称无效
+     */
+    public static MisfirePolicy of(String name) {
+        return MisfirePolicy.valueOf(StringUtils.upperCase(StringUtils.trim(name)));
+    }
+}
@@ -0,0 +1,134 @@
+package com.wmx.quartzjdbc.jobs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并：key 相同的请求在 window 时间内只实际发送一次，其余的共用这一次请求的结果.
+ * <p>
+ * 大量 RequestJob 使用同一个 url、同一个 cron（如每小时整点）时，整点的几百毫秒内会有大量相同的 get 请求同时发出，
+ * 下游服务与本地连接池都承受瞬时压力。开启合并后（作业参数 coalesce=true，或者全局配置 quartzjdbc.request-job.coalesce.enabled=true），
+ * 第一个请求（leader）实际发送，在它进行中、或者从它开始起 window 时间内到达的相同请求（shared）直接等待/使用它的结果，
+ * 每个作业仍各自记录状态码与耗时.
+ * <p>
+ * 请求完成后，在它开始后的 window 时刻由后台线程移除，不会无限累积.
+ * <p>
+ * 只有 get 这样没有副作用的请求才能合并，所以是可选的。指标 quartz.request.job.coalesce（result=leader|shared），
+ * quartz.request.job.coalesce.inflight 为仍在进行中（未完成）的请求数.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class RequestCoalescer {
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${quartzjdbc.request-job.coalesce.window:1s}")
+    private Duration window;
+
+    private final Map<String, InFlight> inFlights = new ConcurrentHashMap<>();
+    private Counter leaders;
+    private Counter shared;
+    /**
+     * 在 startedAt + window 时移除已经完成的请求
+     */
+    private ScheduledExecutorService expirer;
+
+    @PostConstruct
+    public void init() {
+        leaders = meterRegistry.counter("quartz.request.job.coalesce", "result", "leader");
+        shared = meterRegistry.counter("quartz.request.job.coalesce", "result", "shared");
+        Gauge.builder("quartz.request.job.coalesce.inflight", inFlights, map -> map.values().stream().filter(inFlight -> !inFlight.future.isDone()).count())
+                .description("coalesced requests still in progress")
+                .register(meterRegistry);
+        expirer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "request-coalescer-expirer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        expirer.shutdownNow();
+    }
+
+    /**
+     * 合并执行.
+     *
+     * @param key  ：相同 key 的请求才会合并，调用方保证相同 key 的 call 返回相同类型的结果
+     * @param call ：实际发送请求，只有 leader 会调用，可以同步执行（返回已完成的 future），也可以异步
+     * @return 请求结果，shared 时与 leader 是同一个 future
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String key, Supplier<CompletionStage<T>> call) {
+        long now = System.currentTimeMillis();
+        InFlight mine = new InFlight(new CompletableFuture<>(), now);
+        InFlight current = inFlights.compute(key, (k, existing) -> existing != null && existing.isShareable(now, window.toMillis()) ? existing : mine);
+        if (current != mine) {
+            shared.increment();
+            return (CompletableFuture<T>) current.future;
+        }
+        leaders.increment();
+        CompletableFuture<T> future = (CompletableFuture<T>) mine.future;
+        try {
+            call.get().whenComplete((result, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(result);
+                }
+                //完成后只在 window 内继续共用：已经超过 window 时立即移除，否则在 startedAt + window 时移除
+                long remaining = mine.startedAt + window.toMillis() - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    inFlights.remove(key, mine);
+                } else {
+                    try {
+                        expirer.schedule(() -> inFlights.remove(key, mine), remaining, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException rejected) {
+                        //应用正在关闭
+                        inFlights.remove(key, mine);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            inFlights.remove(key, mine);
+        }
+        return future;
+    }
+
+    private static class InFlight {
+        private final CompletableFuture<?> future;
+        private final long startedAt;
+
+        InFlight(CompletableFuture<?> future, long startedAt) {
+            this.future = future;
+            this.startedAt = startedAt;
+        }
+
+        /**
+         * 进行中，或者开始后不超过 window
+         */
+        boolean isShareable(long now, long window) {
+            return !future.isDone() || now - startedAt <= window;
+        }
+    }
+}
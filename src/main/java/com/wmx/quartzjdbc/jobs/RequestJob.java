@@ -1,33 +1,79 @@
 package com.wmx.quartzjdbc.jobs;
 
+import com.wmx.quartzjdbc.config.HostConcurrencyInterceptor;
+import com.wmx.quartzjdbc.config.TimeoutClients;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 import org.apache.commons.lang3.StringUtils;
 import org.quartz.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpStatusCodeException;
 
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * http get 请求作业
  * <p>
  * 当任务的执行时间过长，而触发的时间间隔小于执行时间，则会导致同一个 JobDetail 实例被并发执行，如果不想让它并发执行，
- * 则加上 @DisallowConcurrentExecution、@PersistJobDataAfterExecution
+ * 则加上 @DisallowConcurrentExecution。
+ * 本作业只读取参数 url、async，不修改 JobDataMap，所以不加 @PersistJobDataAfterExecution，避免每次执行后都重写 QRTZ_JOB_DETAILS 的 JOB_DATA；
+ * 需要在执行后保存参数的作业才加上它，此时由 {@link com.wmx.quartzjdbc.listener.JobDataDirtyTrackingListener} 在内容未变化时跳过写回.
+ * <p>
+ * 异步模式（全局配置 quartzjdbc.request-job.async=true，或者作业参数 async=true）：请求交给 OkHttp 的 enqueue 异步发送，
+ * execute 方法立即返回，不再占用 quartz 的工作线程，响应状态码在回调中记录；执行结果（JobExecutionContext.setResult）为请求的 CompletableFuture，
+ * 执行历史在请求完成后才记录（见 {@link com.wmx.quartzjdbc.listener.JobHistoryListener}），状态码大于等于 400 或者网络异常时为 FAILURE，与同步模式一致。
+ * 注意异步模式下 execute 返回时请求可能仍在进行中，所以 @DisallowConcurrentExecution 此时只能保证"提交请求"不并发.
+ * <p>
+ * 作业参数 connectTimeout、readTimeout（毫秒）可以覆盖全局的超时时间，覆盖后的 OkHttpClient 由共享实例派生，仍共用连接池与 Dispatcher，
+ * 派生的实例由 {@link TimeoutClients} 缓存（作业实例每次触发都新建，不能缓存在作业中）.
+ * <p>
+ * 请求合并（全局配置 quartzjdbc.request-job.coalesce.enabled=true，或者作业参数 coalesce=true）：同步/异步模式、超时时间、url 都相同的请求
+ * 在短时间内只发送一次，结果由各个作业共用，详见 {@link RequestCoalescer}.
  *
  * @author wangmaoxiong
  * @version 1.0
  * @date 2020/4/9 16:28
  */
 @DisallowConcurrentExecution
-@PersistJobDataAfterExecution
 @Service
 public class RequestJob implements Job {
     private static Logger logger = LoggerFactory.getLogger(RequestJob.class);
     private static final String HTTP = "http";
+    private static final String ASYNC = "async";
+    private static final String CONNECT_TIMEOUT = "connectTimeout";
+    private static final String READ_TIMEOUT = "readTimeout";
+    private static final String COALESCE = "coalesce";
+    @Resource
+    private TimeoutClients timeoutClients;
+    @Resource
+    private MeterRegistry meterRegistry;
     @Resource
-    private RestTemplate restTemplate;
+    private RequestCoalescer requestCoalescer;
+
+    /**
+     * 是否默认使用异步模式发送请求，单个作业可以通过参数 async 覆盖.
+     */
+    @Value("${quartzjdbc.request-job.async:false}")
+    private boolean async;
+
+    /**
+     * 是否默认合并相同的请求，单个作业可以通过参数 coalesce 覆盖.
+     */
+    @Value("${quartzjdbc.request-job.coalesce.enabled:false}")
+    private boolean coalesce;
 
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
@@ -43,9 +89,194 @@ public class RequestJob implements Job {
                 trigger.getDescription());
         Object url = mergedJobDataMap.get("url");
         if (url != null && StringUtils.isNotBlank(url.toString()) && url.toString().toLowerCase().startsWith(HTTP)) {
+            String timeoutKey = this.timeoutKey(jobDetail.getKey(), mergedJobDataMap);
+            boolean coalesced = this.isEnabled(mergedJobDataMap, COALESCE, coalesce);
+            if (this.isEnabled(mergedJobDataMap, ASYNC, async)) {
+                //异步发送 http 请求，不阻塞当前工作线程.
+                OkHttpClient client = timeoutClients.clientFor(timeoutKey);
+                CompletableFuture<Integer> future = coalesced
+                        ? requestCoalescer.execute("async " + timeoutKey + " " + url, () -> this.enqueue(client, url.toString()))
+                        : this.enqueue(client, url.toString());
+                this.whenResponded(future, jobDetail.getKey(), url.toString());
+                //执行结果为请求完成后的状态码，JobHistoryListener 等它完成后再记录执行历史
+                context.setResult(this.asyncStatus(future));
+                return;
+            }
             //发送 http 请求.
-            ResponseEntity<String> forEntity = restTemplate.getForEntity(url.toString(), String.class);
-            logger.info("url={},StatusCode={}", url, forEntity.getStatusCode());
+            long start = System.currentTimeMillis();
+            String status = "IO_ERROR";
+            try {
+                ResponseEntity<String> forEntity = coalesced
+                        ? this.getCoalesced(timeoutKey, url.toString())
+                        : timeoutClients.restTemplateFor(timeoutKey).getForEntity(url.toString(), String.class);
+                status = String.valueOf(forEntity.getStatusCodeValue());
+                logger.info("url={},StatusCode={}", url, forEntity.getStatusCode());
+            } catch (HttpStatusCodeException e) {
+                status = String.valueOf(e.getRawStatusCode());
+                throw e;
+            } finally {
+                this.recordHttp(jobDetail.getKey(), "sync", status, start);
+                //状态码作为执行结果，记录到作业执行历史中
+                context.setResult(status);
+            }
+        }
+    }
+
+    /**
+     * 开关类的作业参数（async、coalesce）优先，未设置时使用全局配置.
+     *
+     * @param mergedJobDataMap
+     * @param key              ：参数名
+     * @param defaultValue     ：全局配置
+     * @return
+     */
+    private boolean isEnabled(JobDataMap mergedJobDataMap, String key, boolean defaultValue) {
+        Object value = mergedJobDataMap.get(key);
+        if (value == null || StringUtils.isBlank(value.toString())) {
+            return defaultValue;
         }
+        return Boolean.parseBoolean(value.toString());
+    }
+
+    /**
+     * 合并发送同步请求：leader 在当前线程中发送，其余作业的工作线程等待它的结果.
+     * leader 的 HttpStatusCodeException 等异常原样抛给每个作业，与不合并时相同.
+     *
+     * @param timeoutKey
+     * @param url
+     * @return
+     * @throws JobExecutionException 等待时被中断
+     */
+    private ResponseEntity<String> getCoalesced(String timeoutKey, String url) throws JobExecutionException {
+        CompletableFuture<ResponseEntity<String>> future = requestCoalescer.execute("sync " + timeoutKey + " " + url,
+                () -> CompletableFuture.completedFuture(timeoutClients.restTemplateFor(timeoutKey).getForEntity(url, String.class)));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JobExecutionException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new JobExecutionException(e.getCause());
+        }
+    }
+
+    /**
+     * 读取作业参数中的超时时间（毫秒），都未设置时返回 null，表示使用全局配置.
+     *
+     * @param jobKey
+     * @param mergedJobDataMap
+     * @return "connectTimeout/readTimeout"，未设置的一项为 -1
+     */
+    private String timeoutKey(JobKey jobKey, JobDataMap mergedJobDataMap) {
+        long connectTimeout = this.millis(jobKey, mergedJobDataMap, CONNECT_TIMEOUT);
+        long readTimeout = this.millis(jobKey, mergedJobDataMap, READ_TIMEOUT);
+        if (connectTimeout < 0 && readTimeout < 0) {
+            return null;
+        }
+        return connectTimeout + "/" + readTimeout;
+    }
+
+    private long millis(JobKey jobKey, JobDataMap mergedJobDataMap, String key) {
+        Object value = mergedJobDataMap.get(key);
+        if (value == null || StringUtils.isBlank(value.toString())) {
+            return -1;
+        }
+        try {
+            return Math.max(Long.parseLong(value.toString().trim()), 0);
+        } catch (NumberFormatException e) {
+            logger.warn("jobKey={},作业参数 {}={} 不是有效的毫秒数，使用全局配置", jobKey, key, value);
+            return -1;
+        }
+    }
+
+    /**
+     * 使用 OkHttp 的 enqueue 异步发送 get 请求，请求由 OkHttp 的 Dispatcher 线程执行.
+     *
+     * @param client
+     * @param url
+     * @return 响应状态码，网络异常时为 IOException
+     */
+    private CompletableFuture<Integer> enqueue(OkHttpClient client, String url) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        //异步请求已经受 Dispatcher.maxRequestsPerHost 限制，标记后 HostConcurrencyInterceptor 不再限流
+        Request request = new Request.Builder().url(url).get().tag(HostConcurrencyInterceptor.Mode.class, HostConcurrencyInterceptor.Mode.ASYNC).build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                //响应体必须关闭，否则连接无法回到连接池.
+                try (Response ignored = response) {
+                    future.complete(response.code());
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 异步请求的执行结果：状态码小于 400 时为状态码；大于等于 400 时与同步请求（RestTemplate 抛出 HttpStatusCodeException）一样视为失败，
+     * 以 {@link AsyncStatusException} 结束，状态码在异常中；网络异常时以原来的 IOException 结束.
+     */
+    private CompletableFuture<String> asyncStatus(CompletableFuture<Integer> future) {
+        return future.thenApply(code -> {
+            if (code >= 400) {
+                throw new AsyncStatusException(code);
+            }
+            return String.valueOf(code);
+        });
+    }
+
+    /**
+     * 异步请求的响应状态码表示失败（大于等于 400）
+     */
+    public static class AsyncStatusException extends RuntimeException {
+        private final int statusCode;
+
+        public AsyncStatusException(int statusCode) {
+            super("HTTP status " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    /**
+     * 异步请求完成后记录本作业的状态码与耗时（合并时每个作业各记录一次）.
+     */
+    private void whenResponded(CompletableFuture<Integer> future, JobKey jobKey, String url) {
+        final long start = System.currentTimeMillis();
+        future.whenComplete((code, e) -> {
+            if (e == null) {
+                recordHttp(jobKey, "async", String.valueOf(code), start);
+                logger.info("async jobKey={},url={},StatusCode={},elapsed={}ms",
+                        jobKey, url, code, System.currentTimeMillis() - start);
+            } else {
+                recordHttp(jobKey, "async", "IO_ERROR", start);
+                logger.error("async jobKey={},url={},elapsed={}ms,error={}",
+                        jobKey, url, System.currentTimeMillis() - start, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * 记录 http 请求耗时，指标名 quartz.request.job.http，标签：作业组、同步/异步、状态码（网络异常时为 IO_ERROR）
+     */
+    private void recordHttp(JobKey jobKey, String mode, String status, long start) {
+        Timer.builder("quartz.request.job.http")
+                .description("RequestJob http request latency")
+                .tag("group", jobKey.getGroup())
+                .tag("mode", mode)
+                .tag("status", status)
+                .register(meterRegistry)
+                .record(System.currentTimeMillis() - start, TimeUnit.MILLISECONDS);
     }
 }
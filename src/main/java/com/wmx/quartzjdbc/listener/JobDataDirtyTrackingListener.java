@@ -0,0 +1,109 @@
+package com.wmx.quartzjdbc.listener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JobDataMap 脏检查监听器，只作用于标注了 @PersistJobDataAfterExecution 的作业.
+ * <p>
+ * quartz 在作业执行完成后，只要 JobDataMap 被 put 过（dirty 标记为 true）就会重写 QRTZ_JOB_DETAILS 表的 JOB_DATA 字段，
+ * 即使 put 进去的值与原来的相同。这里在作业执行前保存一份 JobDataMap 的快照，执行后内容没有变化时清除 dirty 标记，
+ * quartz 就不会再写数据库（省去一次 BLOB 更新以及集群下的行锁竞争）.
+ * <p>
+ * 快照是浅复制，只有所有的值都是不可变类型（字符串、数字、布尔、字符）时才做比较；
+ * 值为集合等可变对象时可能被原地修改，无法判断，此时保持 quartz 原来的行为.
+ * <p>
+ * 指标 quartz.job.data.persist：result=written 表示会写回数据库，result=skipped 表示跳过了写回.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class JobDataDirtyTrackingListener implements JobListener {
+    private static Logger logger = LoggerFactory.getLogger(JobDataDirtyTrackingListener.class);
+    public static final String NAME = "jobDataDirtyTrackingListener";
+    /**
+     * 快照保存在 JobExecutionContext 中的 key
+     */
+    private static final String SNAPSHOT_KEY = JobDataDirtyTrackingListener.class.getName() + ".snapshot";
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 是否开启脏检查，关闭时只统计不干预
+     */
+    @Value("${quartzjdbc.job.data.dirty-tracking:true}")
+    private boolean dirtyTracking;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+        JobDetail jobDetail = context.getJobDetail();
+        if (!dirtyTracking || !jobDetail.isPersistJobDataAfterExecution()) {
+            return;
+        }
+        JobDataMap jobDataMap = jobDetail.getJobDataMap();
+        if (isComparable(jobDataMap)) {
+            context.put(SNAPSHOT_KEY, new HashMap<>(jobDataMap.getWrappedMap()));
+        }
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+    }
+
+    /**
+     * 监听器的 jobWasExecuted 在 quartz 写回 JobDataMap 之前调用，所以在这里清除 dirty 标记是有效的.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        JobDetail jobDetail = context.getJobDetail();
+        if (!jobDetail.isPersistJobDataAfterExecution()) {
+            return;
+        }
+        JobDataMap jobDataMap = jobDetail.getJobDataMap();
+        Map<String, Object> snapshot = (Map<String, Object>) context.get(SNAPSHOT_KEY);
+        if (jobDataMap.isDirty() && snapshot != null && isComparable(jobDataMap)
+                && snapshot.equals(jobDataMap.getWrappedMap())) {
+            jobDataMap.clearDirtyFlag();
+            logger.debug("JobDataMap 内容未变化，跳过写回，jobKey={}", jobDetail.getKey());
+        }
+        Counter.builder("quartz.job.data.persist")
+                .description("JobDataMap write-backs after execution")
+                .tag("group", jobDetail.getKey().getGroup())
+                .tag("result", jobDataMap.isDirty() ? "written" : "skipped")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 所有的值都是不可变类型时，浅复制的快照才能用来比较内容是否变化
+     */
+    private static boolean isComparable(JobDataMap jobDataMap) {
+        for (Object value : jobDataMap.values()) {
+            if (value != null && !(value instanceof String || value instanceof Number
+                    || value instanceof Boolean || value instanceof Character)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package com.wmx.quartzjdbc.listener;
+
+import com.wmx.quartzjdbc.jobs.RequestJob;
+import com.wmx.quartzjdbc.pojo.JobHistory;
+import com.wmx.quartzjdbc.service.JobHistoryService;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobListener;
+import org.quartz.SchedulerException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 作业执行历史监听器，作为全局 {@link JobListener} 注册到所有分片.
+ * 作业执行完成（或者被否决）后组装一条 {@link JobHistory} 交给 {@link JobHistoryService}，只放入内存缓冲区，由后台线程批量写入数据库.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class JobHistoryListener implements JobListener {
+    public static final String NAME = "jobHistoryListener";
+
+    @Resource
+    private JobHistoryService jobHistoryService;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+        jobHistoryService.record(this.toHistory(context, JobHistory.STATUS_VETOED, null));
+    }
+
+    /**
+     * 作业的执行结果为 {@link CompletionStage}（如 RequestJob 的异步请求）时，execute 返回只表示请求已经提交，
+     * 等它完成后再记录：执行结果为它的值，异常结束时为 FAILURE，耗时算到完成时为止.
+     */
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        if (jobException == null && context.getResult() instanceof CompletionStage) {
+            JobHistory history = this.toHistory(context, JobHistory.STATUS_SUCCESS, null);
+            ((CompletionStage<?>) context.getResult()).whenComplete((result, e) -> {
+                history.setRun_time(Math.max(System.currentTimeMillis() - history.getFired_time(), 0));
+                if (e == null) {
+                    history.setResult_data(result == null ? null : String.valueOf(result));
+                } else {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    history.setStatus(JobHistory.STATUS_FAILURE);
+                    history.setResult_data(cause instanceof RequestJob.AsyncStatusException
+                            ? String.valueOf(((RequestJob.AsyncStatusException) cause).getStatusCode()) : null);
+                    history.setError_message(this.errorMessage(cause));
+                }
+                jobHistoryService.record(history);
+            });
+            return;
+        }
+        jobHistoryService.record(this.toHistory(context, jobException == null ? JobHistory.STATUS_SUCCESS : JobHistory.STATUS_FAILURE, jobException));
+    }
+
+    private JobHistory toHistory(JobExecutionContext context, String status, JobExecutionException jobException) {
+        JobHistory history = new JobHistory();
+        try {
+            history.setSched_name(context.getScheduler().getSchedulerName());
+            history.setInstance_name(context.getScheduler().getSchedulerInstanceId());
+        } catch (SchedulerException e) {
+            history.setSched_name("unknown");
+            history.setInstance_name("unknown");
+        }
+        history.setEntry_id(context.getFireInstanceId());
+        history.setJob_name(context.getJobDetail().getKey().getName());
+        history.setJob_group(context.getJobDetail().getKey().getGroup());
+        history.setTrigger_name(context.getTrigger().getKey().getName());
+        history.setTrigger_group(context.getTrigger().getKey().getGroup());
+        history.setSched_time(context.getScheduledFireTime() == null ? null : context.getScheduledFireTime().getTime());
+        history.setFired_time(context.getFireTime().getTime());
+        history.setRun_time(Math.max(context.getJobRunTime(), 0));
+        history.setStatus(status);
+        history.setResult_data(context.getResult() == null || context.getResult() instanceof CompletionStage ? null : String.valueOf(context.getResult()));
+        if (jobException != null) {
+            history.setError_message(this.errorMessage(jobException));
+        }
+        return history;
+    }
+
+    /**
+     * 作业抛出的异常被 quartz 包装为 JobExecutionException(SchedulerException(e))，记录最内层的原因
+     */
+    private String errorMessage(Throwable e) {
+        Throwable cause = ObjectUtils.defaultIfNull(ExceptionUtils.getRootCause(e), e);
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+}
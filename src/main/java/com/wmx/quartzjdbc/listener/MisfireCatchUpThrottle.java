@@ -0,0 +1,145 @@
+package com.wmx.quartzjdbc.listener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.quartz.CronTrigger;
+import org.quartz.JobExecutionContext;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+import org.quartz.TriggerListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.quartz.QuartzProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 错过触发后的补触发限速.
+ * <p>
+ * 节点重启、调度器关闭后恢复时，策略为 FIRE_ONCE_NOW、FIRE_ALL（见 {@link com.wmx.quartzjdbc.enums.MisfirePolicy}）的触发器会在同一时刻集中补触发，
+ * 数据库与下游 http 服务都会受到冲击。这里作为全局的 {@link TriggerListener}，在工作线程开始执行作业前（triggerFired）识别补触发，
+ * 按 quartzjdbc.misfire.catch-up-rate（每秒次数，本节点所有调度器共用，0 表示不限速）匀速放行，超出的在工作线程中等待.
+ * 工作线程被占用时调度器不会再获取新的触发器，所以补触发的积压不会无限增长.
+ * <p>
+ * 补触发的识别：
+ * 1、FIRE_ALL：计划触发时间比实际触发时间早 misfireThreshold 以上；
+ * 2、FIRE_ONCE_NOW：JobStore 处理错过触发时会把下次触发时间改为当前时间，计划时间看不出迟到，所以在 triggerMisfired 中记下触发器，下一次触发即为补触发.
+ * 错过触发由哪个节点处理，就由哪个节点记录，集群中其它节点获取到这些触发器时按第 1 条判断.
+ * <p>
+ * 指标 quartz.misfire.catchup：补触发次数；quartz.misfire.catchup.wait：补触发限速等待的时间.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class MisfireCatchUpThrottle implements TriggerListener {
+    private static Logger logger = LoggerFactory.getLogger(MisfireCatchUpThrottle.class);
+    public static final String NAME = "misfireCatchUpThrottle";
+    private static final String MISFIRE_THRESHOLD = "org.quartz.jobStore.misfireThreshold";
+    private static final long DEFAULT_MISFIRE_THRESHOLD = 60000L;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private QuartzProperties quartzProperties;
+
+    @Value("${quartzjdbc.misfire.catch-up-rate:10}")
+    private double catchUpRate;
+
+    /**
+     * 等待补触发的触发器 -> 记录时间，超过 misfireThreshold 仍未触发的（如已被删除、暂停）会被清理
+     */
+    private final Map<TriggerKey, Long> pendingCatchUps = new ConcurrentHashMap<>();
+    private long misfireThreshold;
+    /**
+     * 下一个补触发可以执行的时间（纳秒）
+     */
+    private long nextPermitNanos;
+    private Timer waitTimer;
+
+    @PostConstruct
+    public void init() {
+        misfireThreshold = NumberUtils.toLong(quartzProperties.getProperties().get(MISFIRE_THRESHOLD), DEFAULT_MISFIRE_THRESHOLD);
+        waitTimer = Timer.builder("quartz.misfire.catchup.wait")
+                .description("time catch-up fires waited for the rate limiter")
+                .register(meterRegistry);
+        nextPermitNanos = System.nanoTime();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * 只记录 FIRE_ONCE_NOW 的触发器，SKIP 的下一次是正常触发，FIRE_ALL 按计划时间判断
+     */
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+        if (trigger.getMisfireInstruction() == CronTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW) {
+            long now = System.currentTimeMillis();
+            if (pendingCatchUps.size() > 10000) {
+                pendingCatchUps.values().removeIf(recordedAt -> now - recordedAt > misfireThreshold);
+            }
+            pendingCatchUps.put(trigger.getKey(), now);
+        }
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext context) {
+        boolean misfired = pendingCatchUps.remove(trigger.getKey()) != null;
+        boolean late = context.getScheduledFireTime() != null
+                && context.getFireTime().getTime() - context.getScheduledFireTime().getTime() > misfireThreshold;
+        if (!misfired && !late) {
+            return;
+        }
+        Counter.builder("quartz.misfire.catchup")
+                .tag("group", trigger.getJobKey().getGroup())
+                .register(meterRegistry)
+                .increment();
+        if (catchUpRate <= 0) {
+            return;
+        }
+        long waitNanos = this.reserve();
+        waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+        if (waitNanos > 0) {
+            logger.debug("补触发 {} 限速等待 {} ms", trigger.getKey(), TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                //调度器关闭，不再等待
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 预约一个执行时间，返回需要等待的纳秒数。空闲时不积攒许可，恢复时的第一批补触发同样按速率放行.
+     */
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        long permitAt = Math.max(nextPermitNanos, now);
+        nextPermitNanos = permitAt + (long) (TimeUnit.SECONDS.toNanos(1) / catchUpRate);
+        return permitAt - now;
+    }
+
+    /**
+     * 这里只限速，不否决作业执行
+     */
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context) {
+        return false;
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext context, Trigger.CompletedExecutionInstruction triggerInstructionCode) {
+    }
+}
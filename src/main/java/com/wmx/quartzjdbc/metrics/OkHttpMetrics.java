@@ -0,0 +1,50 @@
+package com.wmx.quartzjdbc.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
+/**
+ * RequestJob 共享的 OkHttpClient 的连接池与调度器指标：
+ * <p>
+ * okhttp.pool.connections：连接池中的连接数，state=idle 为空闲连接，state=active 为正在使用的连接
+ * okhttp.dispatcher.calls：异步请求数，state=running 为正在执行的，state=queued 为超过并发上限在队列中等待的
+ * <p>
+ * idle 长期为 0 且 active 持续增长说明 max-idle-connections 偏小；queued 持续大于 0 说明 max-requests、max-requests-per-host 偏小.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class OkHttpMetrics {
+
+    @Resource
+    private OkHttpClient okHttpClient;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void bind() {
+        ConnectionPool pool = okHttpClient.connectionPool();
+        Gauge.builder("okhttp.pool.connections", pool, ConnectionPool::idleConnectionCount)
+                .tag("state", "idle")
+                .register(meterRegistry);
+        Gauge.builder("okhttp.pool.connections", pool, p -> p.connectionCount() - p.idleConnectionCount())
+                .tag("state", "active")
+                .register(meterRegistry);
+
+        Dispatcher dispatcher = okHttpClient.dispatcher();
+        Gauge.builder("okhttp.dispatcher.calls", dispatcher, Dispatcher::runningCallsCount)
+                .tag("state", "running")
+                .register(meterRegistry);
+        Gauge.builder("okhttp.dispatcher.calls", dispatcher, Dispatcher::queuedCallsCount)
+                .tag("state", "queued")
+                .register(meterRegistry);
+    }
+}
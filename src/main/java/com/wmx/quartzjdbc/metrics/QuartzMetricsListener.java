@@ -0,0 +1,101 @@
+package com.wmx.quartzjdbc.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.quartz.*;
+import org.quartz.listeners.SchedulerListenerSupport;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调度器指标监听器，同时作为全局的 {@link JobListener}、{@link TriggerListener} 与 {@link SchedulerListener}，
+ * 由 {@link com.wmx.quartzjdbc.config.QuartzListenerConfig} 注册到调度器中。指标都按作业组(group)打标签：
+ * <p>
+ * quartz.trigger.fire.delay：实际触发时间与计划触发时间的差值，衡量作业是否"迟到"
+ * quartz.job.execution：作业执行耗时，result 标签区分 success、failure
+ * quartz.trigger.misfire：错过触发的次数
+ * quartz.job.vetoed：被 TriggerListener 否决执行的次数
+ * quartz.scheduler.errors：调度器内部错误次数（如数据库访问失败）
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class QuartzMetricsListener extends SchedulerListenerSupport implements JobListener, TriggerListener {
+    public static final String NAME = "quartzMetricsListener";
+    private static final String TAG_GROUP = "group";
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext context) {
+        if (context.getScheduledFireTime() == null) {
+            return;
+        }
+        long delay = context.getFireTime().getTime() - context.getScheduledFireTime().getTime();
+        Timer.builder("quartz.trigger.fire.delay")
+                .description("actual fire time minus scheduled fire time")
+                .tag(TAG_GROUP, group(trigger.getJobKey()))
+                .register(meterRegistry)
+                .record(Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 这里只统计，不否决作业执行
+     */
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context) {
+        return false;
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+        Counter.builder("quartz.trigger.misfire")
+                .tag(TAG_GROUP, group(trigger.getJobKey()))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext context, Trigger.CompletedExecutionInstruction triggerInstructionCode) {
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+        Counter.builder("quartz.job.vetoed")
+                .tag(TAG_GROUP, group(context.getJobDetail().getKey()))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        Timer.builder("quartz.job.execution")
+                .description("job execution time")
+                .tag(TAG_GROUP, group(context.getJobDetail().getKey()))
+                .tag("result", jobException == null ? "success" : "failure")
+                .register(meterRegistry)
+                .record(context.getJobRunTime(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void schedulerError(String msg, SchedulerException cause) {
+        meterRegistry.counter("quartz.scheduler.errors").increment();
+    }
+
+    private static String group(JobKey jobKey) {
+        return jobKey == null || jobKey.getGroup() == null ? JobKey.DEFAULT_GROUP : jobKey.getGroup();
+    }
+}
@@ -0,0 +1,125 @@
+package com.wmx.quartzjdbc.metrics;
+
+import com.wmx.quartzjdbc.config.SchedulerShards;
+import com.wmx.quartzjdbc.config.TriggerClaims;
+import com.wmx.quartzjdbc.service.JobDefinitionCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
+/**
+ * 调度器线程池与缓存的指标：
+ * <p>
+ * quartz.threadpool.size：线程池大小（VirtualThreadPool 时为并发上限）
+ * quartz.threadpool.busy：正在执行作业的线程数，即本节点 getCurrentlyExecutingJobs 的个数
+ * quartz.threadpool.idle：空闲线程数，为 0 且持续时说明线程池已经饱和，作业会迟到
+ * quartz.threadpool.utilization：busy / size，按作业组配置独立线程池（quartzjdbc.bulkhead.pools）时用于观察每个线程池的饱和程度
+ * quartz.trigger.claims：乐观获取触发器（OptimisticSemaphore、LeaseSemaphore）时本节点获取成功的次数
+ * quartz.trigger.claim.conflicts：乐观获取时条件更新行数为 0 的次数（已被其它节点获取或已经触发，quartz 改为尝试下一个触发器），
+ * 与 claims 的比值即为集群中争抢同一批触发器的程度
+ * quartz.job.definition.cache.hits/misses：{@link JobDefinitionCache} 的命中与未命中次数
+ * <p>
+ * 这里没有实现 MeterBinder：MeterBinder 会在 MeterRegistry 创建时被实例化，而 MeterRegistry 又被调度器的监听器依赖，
+ * 此时 Scheduler 还在创建中，会循环依赖。所以在自身初始化完成后（@PostConstruct）再注册指标.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class SchedulerPoolMetrics {
+
+    @Resource
+    private SchedulerShards schedulerShards;
+
+    @Resource
+    private JobDefinitionCache jobDefinitionCache;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void bind() {
+        bindTo(meterRegistry);
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        //开启分片、独立线程池时每个调度器一组指标，以调度器名称区分
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            bindScheduler(registry, scheduler);
+        }
+        bindCache(registry, "jobClass", jobDefinitionCache.getJobClassCache());
+        bindCache(registry, "cronExpression", jobDefinitionCache.getCronCache());
+    }
+
+    /**
+     * 为调度器注册线程池指标，以调度器名称作为 scheduler 标签.
+     *
+     * @param registry
+     * @param scheduler
+     */
+    public static void bindScheduler(MeterRegistry registry, Scheduler scheduler) {
+        String schedulerName = schedulerName(scheduler);
+        Gauge.builder("quartz.threadpool.size", scheduler, SchedulerPoolMetrics::poolSize)
+                .tag("scheduler", schedulerName)
+                .register(registry);
+        Gauge.builder("quartz.threadpool.busy", scheduler, SchedulerPoolMetrics::busyCount)
+                .tag("scheduler", schedulerName)
+                .register(registry);
+        Gauge.builder("quartz.threadpool.idle", scheduler, s -> poolSize(s) - busyCount(s))
+                .tag("scheduler", schedulerName)
+                .register(registry);
+        Gauge.builder("quartz.threadpool.utilization", scheduler, s -> busyCount(s) / poolSize(s))
+                .tag("scheduler", schedulerName)
+                .register(registry);
+        TriggerClaims claims = TriggerClaims.get(schedulerName);
+        if (claims != null) {
+            FunctionCounter.builder("quartz.trigger.claims", claims, TriggerClaims::getWon)
+                    .tag("scheduler", schedulerName)
+                    .register(registry);
+            FunctionCounter.builder("quartz.trigger.claim.conflicts", claims, TriggerClaims::getConflicts)
+                    .tag("scheduler", schedulerName)
+                    .register(registry);
+        }
+    }
+
+    private static void bindCache(MeterRegistry registry, String cacheName, JobDefinitionCache.LruCache<?, ?> cache) {
+        FunctionCounter.builder("quartz.job.definition.cache.hits", cache, JobDefinitionCache.LruCache::getHits)
+                .tag("cache", cacheName)
+                .register(registry);
+        FunctionCounter.builder("quartz.job.definition.cache.misses", cache, JobDefinitionCache.LruCache::getMisses)
+                .tag("cache", cacheName)
+                .register(registry);
+        Gauge.builder("quartz.job.definition.cache.size", cache, JobDefinitionCache.LruCache::size)
+                .tag("cache", cacheName)
+                .register(registry);
+    }
+
+    private static String schedulerName(Scheduler scheduler) {
+        try {
+            return scheduler.getSchedulerName();
+        } catch (SchedulerException e) {
+            return "unknown";
+        }
+    }
+
+    private static double poolSize(Scheduler scheduler) {
+        try {
+            return scheduler.getMetaData().getThreadPoolSize();
+        } catch (SchedulerException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static double busyCount(Scheduler scheduler) {
+        try {
+            return scheduler.getCurrentlyExecutingJobs().size();
+        } catch (SchedulerException e) {
+            return Double.NaN;
+        }
+    }
+}
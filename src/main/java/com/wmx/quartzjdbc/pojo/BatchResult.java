@@ -0,0 +1,143 @@
+package com.wmx.quartzjdbc.pojo;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 批量操作结果.
+ * total：提交的条数
+ * succeeded/failed：成功、失败的条数
+ * chunkSize：每个事务提交的条数
+ * elapsedMillis：总耗时（毫秒）
+ * throughput：吞吐量，每秒处理的条数
+ * items：逐条的结果，按提交时的下标排序
+ *
+ * @author wangmaoxiong
+ */
+public class BatchResult implements Serializable {
+    private int total;
+    private int succeeded;
+    private int failed;
+    private int chunkSize;
+    private long elapsedMillis;
+    private double throughput;
+    private List<Item> items = new ArrayList<>();
+
+    public BatchResult(int total, int chunkSize) {
+        this.total = total;
+        this.chunkSize = chunkSize;
+    }
+
+    public void add(Item item) {
+        items.add(item);
+        if (item.isSuccess()) {
+            succeeded++;
+        } else {
+            failed++;
+        }
+    }
+
+    /**
+     * 统计耗时与吞吐量
+     *
+     * @param startMillis ：开始时间
+     */
+    public void finish(long startMillis) {
+        items.sort(Comparator.comparingInt(Item::getIndex));
+        this.elapsedMillis = System.currentTimeMillis() - startMillis;
+        this.throughput = elapsedMillis == 0 ? total : total * 1000.0 / elapsedMillis;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "total=" + total +
+                ", succeeded=" + succeeded +
+                ", failed=" + failed +
+                ", chunkSize=" + chunkSize +
+                ", elapsedMillis=" + elapsedMillis +
+                ", throughput=" + throughput +
+                '}';
+    }
+
+    /**
+     * 单条结果
+     */
+    public static class Item implements Serializable {
+        private int index;
+        private String job_group;
+        private String job_name;
+        private String trigger_group;
+        private String trigger_name;
+        private boolean success;
+        private String message;
+
+        public Item(int index, SchedulerEntity schedulerEntity, boolean success, String message) {
+            this.index = index;
+            this.job_group = schedulerEntity.getJob_group();
+            this.job_name = schedulerEntity.getJob_name();
+            this.trigger_group = schedulerEntity.getTrigger_group();
+            this.trigger_name = schedulerEntity.getTrigger_name();
+            this.success = success;
+            this.message = message;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getJob_group() {
+            return job_group;
+        }
+
+        public String getJob_name() {
+            return job_name;
+        }
+
+        public String getTrigger_group() {
+            return trigger_group;
+        }
+
+        public String getTrigger_name() {
+            return trigger_name;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
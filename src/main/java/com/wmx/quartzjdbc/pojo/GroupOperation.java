@@ -0,0 +1,134 @@
+package com.wmx.quartzjdbc.pojo;
+
+import java.io.Serializable;
+
+/**
+ * 按作业组批量暂停、恢复、删除的异步操作及其进度.
+ * id：操作标识，用于查询进度
+ * type：PAUSE、RESUME、DELETE
+ * operator/jobGroup：作业组的匹配方式与值，如 STARTS_WITH tenant1.
+ * status：RUNNING、SUCCEEDED、FAILED
+ * total：匹配的触发器个数（PAUSE、RESUME），或者作业个数（DELETE），每个分片开始处理时累加
+ * processed：已处理的触发器个数（PAUSE、RESUME），或者作业个数（DELETE）
+ * transactions：已提交的 JobStore 事务数
+ * startTime/endTime：开始、结束时间（毫秒时间戳），未结束时 endTime 为 0
+ * message：失败原因
+ *
+ * @author wangmaoxiong
+ */
+public class GroupOperation implements Serializable {
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private final String id;
+    private final String type;
+    private final String operator;
+    private final String jobGroup;
+    private volatile String status = STATUS_RUNNING;
+    private volatile int total;
+    private volatile int processed;
+    private volatile int transactions;
+    private final long startTime = System.currentTimeMillis();
+    private volatile long endTime;
+    private volatile String message;
+
+    public GroupOperation(String id, String type, String operator, String jobGroup) {
+        this.id = id;
+        this.type = type;
+        this.operator = operator;
+        this.jobGroup = jobGroup;
+    }
+
+    /**
+     * 一个分片开始处理，matched 为该分片中匹配的触发器（或者作业）个数
+     */
+    public void addTotal(int matched) {
+        total += matched;
+    }
+
+    /**
+     * 提交了一个事务，其中处理了 count 个触发器（或者作业）
+     */
+    public void committed(int count) {
+        processed += count;
+        transactions++;
+    }
+
+    public void succeed() {
+        endTime = System.currentTimeMillis();
+        status = STATUS_SUCCEEDED;
+    }
+
+    public void fail(String message) {
+        this.message = message;
+        endTime = System.currentTimeMillis();
+        status = STATUS_FAILED;
+    }
+
+    /**
+     * 已经成功或者失败
+     */
+    public boolean isFinished() {
+        return !STATUS_RUNNING.equals(status);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public String getJobGroup() {
+        return jobGroup;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return processed;
+    }
+
+    public int getTransactions() {
+        return transactions;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupOperation{" +
+                "id='" + id + '\'' +
+                ", type='" + type + '\'' +
+                ", operator='" + operator + '\'' +
+                ", jobGroup='" + jobGroup + '\'' +
+                ", status='" + status + '\'' +
+                ", total=" + total +
+                ", processed=" + processed +
+                ", transactions=" + transactions +
+                ", elapsedMillis=" + ((endTime == 0 ? System.currentTimeMillis() : endTime) - startTime) +
+                '}';
+    }
+}
@@ -0,0 +1,111 @@
+package com.wmx.quartzjdbc.pojo;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式导入结果.
+ * importId：导入标识，用于断点续传，为空时不记录检查点
+ * resumedFrom：从检查点恢复时跳过的记录数（上次已经提交的）
+ * processed：本次处理的记录数
+ * succeeded/failed：本次成功、失败的记录数
+ * chunkSize：每个事务提交的条数
+ * elapsedMillis：总耗时（毫秒）
+ * throughput：吞吐量，每秒处理的记录数
+ * failures：失败的记录，index 为记录在文件中的序号（从 1 开始，不含 csv 表头与空行），最多保留 quartzjdbc.import.max-reported-failures 条
+ *
+ * @author wangmaoxiong
+ */
+public class ImportResult implements Serializable {
+    private String importId;
+    private long resumedFrom;
+    private long processed;
+    private long succeeded;
+    private long failed;
+    private int chunkSize;
+    private long elapsedMillis;
+    private double throughput;
+    private List<BatchResult.Item> failures = new ArrayList<>();
+    private transient int maxFailures;
+
+    public ImportResult(String importId, long resumedFrom, int chunkSize, int maxFailures) {
+        this.importId = importId;
+        this.resumedFrom = resumedFrom;
+        this.chunkSize = chunkSize;
+        this.maxFailures = maxFailures;
+    }
+
+    public void succeed() {
+        processed++;
+        succeeded++;
+    }
+
+    public void fail(BatchResult.Item item) {
+        processed++;
+        failed++;
+        if (failures.size() < maxFailures) {
+            failures.add(item);
+        }
+    }
+
+    /**
+     * 统计耗时与吞吐量
+     *
+     * @param startMillis ：开始时间
+     */
+    public void finish(long startMillis) {
+        this.elapsedMillis = System.currentTimeMillis() - startMillis;
+        this.throughput = elapsedMillis == 0 ? processed : processed * 1000.0 / elapsedMillis;
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public long getResumedFrom() {
+        return resumedFrom;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public List<BatchResult.Item> getFailures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "importId='" + importId + '\'' +
+                ", resumedFrom=" + resumedFrom +
+                ", processed=" + processed +
+                ", succeeded=" + succeeded +
+                ", failed=" + failed +
+                ", chunkSize=" + chunkSize +
+                ", elapsedMillis=" + elapsedMillis +
+                ", throughput=" + throughput +
+                '}';
+    }
+}
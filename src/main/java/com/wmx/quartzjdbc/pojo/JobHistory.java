@@ -0,0 +1,155 @@
+package com.wmx.quartzjdbc.pojo;
+
+import java.io.Serializable;
+
+/**
+ * 作业执行历史，对应 QRTZ_JOB_HISTORY 表的一行.
+ * sched_name：调度器（分片）名称
+ * entry_id：本次触发的 fireInstanceId，集群内唯一
+ * job_name/job_group、trigger_name/trigger_group：作业与触发器
+ * instance_name：执行作业的节点（调度器实例 id）
+ * sched_time：计划触发时间（毫秒时间戳），手动触发时为空
+ * fired_time：实际触发时间（毫秒时间戳）
+ * run_time：执行耗时（毫秒）
+ * status：SUCCESS、FAILURE、VETOED
+ * result_data：作业设置的执行结果（JobExecutionContext.setResult），如 RequestJob 的响应状态码（异步请求在完成后记录）
+ * error_message：失败原因
+ *
+ * @author wangmaoxiong
+ */
+public class JobHistory implements Serializable {
+    public static final String STATUS_SUCCESS = "SUCCESS";
+    public static final String STATUS_FAILURE = "FAILURE";
+    public static final String STATUS_VETOED = "VETOED";
+
+    private String sched_name;
+    private String entry_id;
+    private String job_name;
+    private String job_group;
+    private String trigger_name;
+    private String trigger_group;
+    private String instance_name;
+    private Long sched_time;
+    private long fired_time;
+    private long run_time;
+    private String status;
+    private String result_data;
+    private String error_message;
+
+    public String getSched_name() {
+        return sched_name;
+    }
+
+    public void setSched_name(String sched_name) {
+        this.sched_name = sched_name;
+    }
+
+    public String getEntry_id() {
+        return entry_id;
+    }
+
+    public void setEntry_id(String entry_id) {
+        this.entry_id = entry_id;
+    }
+
+    public String getJob_name() {
+        return job_name;
+    }
+
+    public void setJob_name(String job_name) {
+        this.job_name = job_name;
+    }
+
+    public String getJob_group() {
+        return job_group;
+    }
+
+    public void setJob_group(String job_group) {
+        this.job_group = job_group;
+    }
+
+    public String getTrigger_name() {
+        return trigger_name;
+    }
+
+    public void setTrigger_name(String trigger_name) {
+        this.trigger_name = trigger_name;
+    }
+
+    public String getTrigger_group() {
+        return trigger_group;
+    }
+
+    public void setTrigger_group(String trigger_group) {
+        this.trigger_group = trigger_group;
+    }
+
+    public String getInstance_name() {
+        return instance_name;
+    }
+
+    public void setInstance_name(String instance_name) {
+        this.instance_name = instance_name;
+    }
+
+    public Long getSched_time() {
+        return sched_time;
+    }
+
+    public void setSched_time(Long sched_time) {
+        this.sched_time = sched_time;
+    }
+
+    public long getFired_time() {
+        return fired_time;
+    }
+
+    public void setFired_time(long fired_time) {
+        this.fired_time = fired_time;
+    }
+
+    public long getRun_time() {
+        return run_time;
+    }
+
+    public void setRun_time(long run_time) {
+        this.run_time = run_time;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getResult_data() {
+        return result_data;
+    }
+
+    public void setResult_data(String result_data) {
+        this.result_data = result_data;
+    }
+
+    public String getError_message() {
+        return error_message;
+    }
+
+    public void setError_message(String error_message) {
+        this.error_message = error_message;
+    }
+
+    @Override
+    public String toString() {
+        return "JobHistory{" +
+                "sched_name='" + sched_name + '\'' +
+                ", entry_id='" + entry_id + '\'' +
+                ", job_name='" + job_name + '\'' +
+                ", job_group='" + job_group + '\'' +
+                ", fired_time=" + fired_time +
+                ", run_time=" + run_time +
+                ", status='" + status + '\'' +
+                '}';
+    }
+}
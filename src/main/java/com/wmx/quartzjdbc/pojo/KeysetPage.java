@@ -0,0 +1,58 @@
+package com.wmx.quartzjdbc.pojo;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 键集(seek)分页结果.
+ * rows：当前页的数据，每一行是作业与触发器关联后的结果，字段与 {@link SchedulerEntity} 一致
+ * nextCursor：下一页的游标，原样传回即可查询下一页，为 null 表示已经是最后一页
+ * pageSize：每页的作业个数（一个作业有多个触发器时，rows 的行数会大于 pageSize）
+ *
+ * @author wangmaoxiong
+ */
+public class KeysetPage implements Serializable {
+    private List<Map<String, Object>> rows;
+    private String nextCursor;
+    private Integer pageSize;
+
+    public KeysetPage(List<Map<String, Object>> rows, String nextCursor, Integer pageSize) {
+        this.rows = rows;
+        this.nextCursor = nextCursor;
+        this.pageSize = pageSize;
+    }
+
+    public List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    public void setRows(List<Map<String, Object>> rows) {
+        this.rows = rows;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public String toString() {
+        return "KeysetPage{" +
+                "rows=" + rows +
+                ", nextCursor='" + nextCursor + '\'' +
+                ", pageSize=" + pageSize +
+                '}';
+    }
+}
@@ -17,6 +17,8 @@ import java.util.Map;
  * trigger_type：触发器类型，如 cron 表示 cron 触发器
  * trigger_data：触发器参数，因为参数可能有多个，所以设计成 Map 结构
  * cron_expression：cron 触发器表达式.
+ * tier：注册到哪一层，hot（热层，触发器在内存中）或者 persistent（保存在数据库中），为空时按 quartzjdbc.hot-tier.groups 配置，
+ * 只对新作业生效，没有启用热层时忽略.
  *
  * @author wangmaoxiong
  * @version 1.0
@@ -25,6 +27,9 @@ import java.util.Map;
  * @date 2020/4/10 14:41
  */
 public class SchedulerEntity {
+    public static final String TIER_HOT = "hot";
+    public static final String TIER_PERSISTENT = "persistent";
+
     private String sched_name;
     private String job_name;
     private String job_group;
@@ -38,6 +43,7 @@ public class SchedulerEntity {
     private String trigger_type;
     private Map<String, Object> trigger_data;
     private String cron_expression;
+    private String tier;
 
     public String getSched_name() {
         return sched_name;
@@ -142,4 +148,12 @@ public class SchedulerEntity {
     public void setTrigger_data(Map<String, Object> trigger_data) {
         this.trigger_data = trigger_data;
     }
+
+    public String getTier() {
+        return tier;
+    }
+
+    public void setTier(String tier) {
+        this.tier = tier;
+    }
 }
@@ -0,0 +1,97 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.config.GroupSettings;
+import org.apache.commons.lang3.StringUtils;
+import org.quartz.TriggerKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * cron 触发时间打散.
+ * <p>
+ * 成千上万个作业使用同一个 cron（如 0 0/5 * * * ?）时，它们在同一秒触发，线程池瞬间被占满，排不上的触发器错过触发（misfire），
+ * 而 MISFIRE_INSTRUCTION_DO_NOTHING 会直接跳过这一次。这里在注册触发器时，按触发器的 TriggerKey（组名.名称）的哈希为每个触发器计算一个固定的偏移量
+ * （1 ~ 窗口 - 1 秒，名称相同、组不同的触发器偏移量一般也不同），把 cron 表达式的秒（必要时连同分）整体后移，每个触发器的触发周期不变，只是在窗口内错开.
+ * <p>
+ * 规则：
+ * 1、窗口按作业组配置（quartzjdbc.jitter.group-windows，格式见 {@link GroupSettings}），未配置的组使用 quartzjdbc.jitter.default-window，0 表示不打散；
+ * 2、只处理秒为 0 的表达式（整点、整分触发才会扎堆），打散后的秒一定不为 0，所以导出后再导入、重复注册都不会再次偏移；
+ * 3、偏移不能改变触发周期：分为 * 或者列表、范围时只在秒内偏移（窗口最大 59 秒）；分为整数 m 时最多偏移到同一小时的 59 分；
+ * 分为 a/b 时最多偏移到 b - 1 分。窗口超过上限时按上限计算.
+ * <p>
+ * 打散后的表达式会保存到 QRTZ_CRON_TRIGGERS，查询时看到的就是实际的触发时间；
+ * 打散后的表达式几乎每个触发器各不相同，注册时直接解析，不进入 {@link JobDefinitionCache} 的 cron 缓存.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class CronJitter {
+    private static Logger logger = LoggerFactory.getLogger(CronJitter.class);
+
+    @Value("${quartzjdbc.jitter.default-window:0}")
+    private int defaultWindow;
+
+    @Value("${quartzjdbc.jitter.group-windows:}")
+    private String[] groupWindowConfigs;
+
+    private GroupSettings<Integer> groupWindows;
+
+    @PostConstruct
+    public void init() {
+        groupWindows = GroupSettings.parse(groupWindowConfigs, "quartzjdbc.jitter.group-windows");
+    }
+
+    /**
+     * 按作业组的窗口打散 cron 表达式，不需要或者无法打散时原样返回.
+     *
+     * @param cronExpression ：原 cron 表达式
+     * @param jobGroup       ：作业组，决定窗口大小
+     * @param triggerKey     ：按 triggerKey.toString()（组名.名称）的哈希决定偏移量，同一个触发器每次计算的结果相同
+     * @return
+     */
+    public String apply(String cronExpression, String jobGroup, TriggerKey triggerKey) {
+        int window = groupWindows.get(jobGroup, defaultWindow);
+        if (window <= 1 || StringUtils.isBlank(cronExpression)) {
+            return cronExpression;
+        }
+        String[] fields = StringUtils.split(cronExpression.trim());
+        if (fields.length < 6 || !"0".equals(fields[0])) {
+            return cronExpression;
+        }
+        int limit;
+        int minuteStart = -1;
+        int minuteStep = -1;
+        String minutes = fields[1];
+        if (StringUtils.isNumeric(minutes)) {
+            minuteStart = Integer.parseInt(minutes);
+            limit = (60 - minuteStart) * 60;
+        } else if (minutes.matches("\\d+/\\d+")) {
+            minuteStart = Integer.parseInt(StringUtils.substringBefore(minutes, "/"));
+            minuteStep = Integer.parseInt(StringUtils.substringAfter(minutes, "/"));
+            limit = Math.max(minuteStep - minuteStart, 1) * 60;
+        } else {
+            limit = 60;
+        }
+        window = Math.min(window, limit);
+        if (window <= 1) {
+            return cronExpression;
+        }
+        //偏移 1 ~ window - 1 秒，且不落在整分上，保证打散后的秒不为 0
+        int offset = 1 + Math.floorMod(triggerKey.toString().hashCode(), window - 1);
+        if (offset % 60 == 0) {
+            offset = offset + 1 < window ? offset + 1 : offset - 1;
+        }
+        fields[0] = String.valueOf(offset % 60);
+        int carry = offset / 60;
+        if (carry > 0) {
+            fields[1] = minuteStep > 0 ? (minuteStart + carry) + "/" + minuteStep : String.valueOf(minuteStart + carry);
+        }
+        String jittered = String.join(" ", fields);
+        logger.debug("触发器 {} 的 cron 表达式 {} 打散为 {}", triggerKey, cronExpression, jittered);
+        return jittered;
+    }
+}
@@ -0,0 +1,159 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.pojo.GroupOperation;
+import org.apache.commons.lang3.StringUtils;
+import org.quartz.JobKey;
+import org.quartz.SchedulerException;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.impl.matchers.StringMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按作业组批量暂停、恢复、删除.
+ * <p>
+ * 一个租户的上万个作业逐个调用 pauseJob 时，每个作业都是一次 http 请求、一次 TRIGGER_ACCESS 加锁；
+ * 这里通过 {@link GroupMatcher} 一次匹配整个组（或者组名前缀、后缀、包含），暂停/恢复每个分片中每个作业组一个事务，删除每 chunkSize 个作业一个事务.
+ * <p>
+ * 操作在后台线程（quartzjdbc.group-operation.threads 个）中执行，提交后立即返回操作 id，通过 {@link #getOperation(String)} 查询进度。
+ * 最近结束的 quartzjdbc.group-operation.history 个操作保留在内存中，只能在提交操作的节点上查询；
+ * 未结束（RUNNING）的操作不受个数限制，不会被淘汰，结束后才参与淘汰.
+ *
+ * @author wangmaoxiong
+ */
+@Service
+public class GroupOperationService {
+    private static Logger logger = LoggerFactory.getLogger(GroupOperationService.class);
+    public static final String TYPE_PAUSE = "PAUSE";
+    public static final String TYPE_RESUME = "RESUME";
+    public static final String TYPE_DELETE = "DELETE";
+
+    @Resource
+    private SchedulerService schedulerService;
+
+    @Value("${quartzjdbc.group-operation.threads:2}")
+    private int threads;
+
+    private final int history;
+    /**
+     * 按提交顺序保存，访问时加锁
+     */
+    private final Map<String, GroupOperation> operations = new LinkedHashMap<>();
+    private ExecutorService executor;
+
+    public GroupOperationService(@Value("${quartzjdbc.group-operation.history:100}") int history) {
+        this.history = history;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+            Thread thread = new Thread(runnable, "group-operation-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 构建作业组匹配条件.
+     *
+     * @param operator ：EQUALS（默认）、STARTS_WITH、ENDS_WITH、CONTAINS、ANYTHING（所有组）
+     * @param jobGroup ：作业组名称或者名称的一部分，operator 为 ANYTHING 时忽略
+     * @return
+     * @throws IllegalArgumentException operator 无效，或者 jobGroup 为空
+     */
+    public static GroupMatcher<JobKey> matcher(String operator, String jobGroup) {
+        StringMatcher.StringOperatorName operatorName = StringUtils.isBlank(operator) ? StringMatcher.StringOperatorName.EQUALS
+                : StringMatcher.StringOperatorName.valueOf(StringUtils.upperCase(StringUtils.trim(operator)));
+        if (operatorName == StringMatcher.StringOperatorName.ANYTHING) {
+            return GroupMatcher.anyJobGroup();
+        }
+        if (StringUtils.isBlank(jobGroup)) {
+            throw new IllegalArgumentException("jobGroup is blank");
+        }
+        switch (operatorName) {
+            case STARTS_WITH:
+                return GroupMatcher.jobGroupStartsWith(jobGroup);
+            case ENDS_WITH:
+                return GroupMatcher.jobGroupEndsWith(jobGroup);
+            case CONTAINS:
+                return GroupMatcher.jobGroupContains(jobGroup);
+            default:
+                return GroupMatcher.jobGroupEquals(jobGroup);
+        }
+    }
+
+    /**
+     * 提交批量操作，立即返回.
+     *
+     * @param type      ：PAUSE、RESUME、DELETE
+     * @param matcher   ：{@link #matcher(String, String)}
+     * @param chunkSize ：DELETE 时每个事务删除的作业个数，可以为空
+     * @return 操作，此时状态为 RUNNING
+     */
+    public GroupOperation submit(String type, GroupMatcher<JobKey> matcher, Integer chunkSize) {
+        GroupOperation operation = new GroupOperation(UUID.randomUUID().toString(), type,
+                matcher.getCompareWithOperator().name(), matcher.getCompareToValue());
+        this.addOperation(operation);
+        executor.execute(() -> {
+            try {
+                if (TYPE_PAUSE.equals(type)) {
+                    schedulerService.pauseJobs(matcher, operation);
+                } else if (TYPE_RESUME.equals(type)) {
+                    schedulerService.resumeJobs(matcher, operation);
+                } else {
+                    schedulerService.deleteJobs(matcher, chunkSize, operation);
+                }
+                operation.succeed();
+            } catch (SchedulerException | RuntimeException e) {
+                operation.fail(e.getMessage());
+                logger.error("作业组批量操作失败：" + operation, e);
+            }
+        });
+        return operation;
+    }
+
+    /**
+     * 查询操作进度，不存在（或者已经被淘汰）时返回 null
+     */
+    public GroupOperation getOperation(String id) {
+        synchronized (operations) {
+            return operations.get(id);
+        }
+    }
+
+    /**
+     * 保存新操作，超过 history 个时从最早的开始淘汰已经结束的操作，RUNNING 的操作保留
+     */
+    private void addOperation(GroupOperation operation) {
+        synchronized (operations) {
+            operations.put(operation.getId(), operation);
+            int excess = operations.size() - history;
+            for (Iterator<GroupOperation> iterator = operations.values().iterator(); excess > 0 && iterator.hasNext(); ) {
+                if (iterator.next().isFinished()) {
+                    iterator.remove();
+                    excess--;
+                }
+            }
+        }
+    }
+}
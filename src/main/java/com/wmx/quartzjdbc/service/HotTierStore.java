@@ -0,0 +1,543 @@
+package com.wmx.quartzjdbc.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wmx.quartzjdbc.config.HotTierJobStore;
+import com.wmx.quartzjdbc.config.SchedulerShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.quartz.*;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.spi.OperableTrigger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热层作业的持久化：定义同步写入（write-through），触发状态异步回写（write-behind），启动、节点切换时从数据库恢复.
+ * <p>
+ * 热层调度器（{@link SchedulerShards} 中的 "调度器名称_hot"）使用内存 JobStore（{@link HotTierJobStore}），获取、触发、完成都不访问数据库。
+ * 1、注册、修改、删除、暂停、恢复时立即写入 QRTZ_HOT_TRIGGERS（每个触发器一行，包含作业的定义），只支持 cron 触发器；
+ * 2、每次触发后的上次、下次触发时间放入内存，同一个触发器只保留最新的一次，后台线程每隔 flush-interval 毫秒批量更新，
+ * 1 秒触发一次的作业每个周期只写一行；节点宕机时最多丢失一个周期的触发状态，恢复时按上次触发时间补偿（见下）；
+ * 3、启动时（集群模式下为取得热层的归属时）从表中恢复所有定义，触发器从上次触发时间之后开始计算，
+ * 期间错过的触发按触发器的错过触发策略处理，然后再启动热层调度器.
+ * <p>
+ * 集群模式下热层作业只在一个节点上触发：归属记录在 QRTZ_LEASES（SCHED_NAME 为热层调度器名称，SLICE_ID 为 0），
+ * 每隔 clusterCheckinInterval 毫秒续约，有效期 3 倍签到间隔，持有者宕机后由其它节点接管；
+ * 所有节点每个周期按 UPDATED_TIME 同步其它节点写入的定义，所以在任何节点上注册、暂停、删除热层作业都会在一个周期内生效.
+ * <p>
+ * 表不存在时输出警告，热层作业只保存在内存中，重启后丢失（集群模式下只在接收注册请求的节点上运行）.
+ * 热层作业不在 QRTZ_TRIGGERS 等表中，分页查询、导出不包含它们，可以直接查询 QRTZ_HOT_TRIGGERS.
+ * 指标：quartz.hot.tier.triggers（内存中的触发器数）、quartz.hot.tier.owner（本节点是否触发热层作业）、
+ * quartz.hot.tier.pending（等待回写的触发状态）、quartz.hot.tier.fire.updates（result=written|coalesced）、quartz.hot.tier.write.errors.
+ *
+ * @author wangmaoxiong
+ */
+@Service
+public class HotTierStore {
+    private static Logger logger = LoggerFactory.getLogger(HotTierStore.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int LEASE_SLICE = 0;
+
+    @Resource
+    private SchedulerShards schedulerShards;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private JobDefinitionCache jobDefinitionCache;
+
+    @Value("${quartzjdbc.hot-tier.flush-interval:1000}")
+    private long flushInterval;
+
+    @Value("${spring.quartz.properties.org.quartz.jobStore.isClustered:false}")
+    private boolean clustered;
+
+    @Value("${spring.quartz.properties.org.quartz.jobStore.clusterCheckinInterval:7500}")
+    private long checkinInterval;
+
+    @Value("${spring.quartz.properties.org.quartz.jobStore.tablePrefix:QRTZ_}")
+    private String tablePrefix;
+
+    private Scheduler hotScheduler;
+    private String schedName;
+    private String instanceId;
+    /**
+     * 表不存在时为 false，只在内存中运行
+     */
+    private volatile boolean available = true;
+    /**
+     * 本节点是否触发热层作业：非集群模式下始终为 true
+     */
+    private volatile boolean owner;
+    /**
+     * 内存中的触发器 -> 它在表中的 UPDATED_TIME，同步时据此判断其它节点是否修改过
+     */
+    private final Map<TriggerKey, Long> known = new ConcurrentHashMap<>();
+    /**
+     * 等待回写的触发状态：触发器 -> {上次触发时间, 下次触发时间}，同一个触发器只保留最新的
+     */
+    private final Map<TriggerKey, Long[]> pendingFires = new ConcurrentHashMap<>();
+    private ScheduledExecutorService writer;
+    private ScheduledExecutorService coordinator;
+    private Counter written;
+    private Counter coalesced;
+    private Counter writeErrors;
+
+    @PostConstruct
+    public void init() throws SchedulerException {
+        hotScheduler = schedulerShards.getHotScheduler();
+        if (hotScheduler == null) {
+            return;
+        }
+        schedName = hotScheduler.getSchedulerName();
+        instanceId = hotScheduler.getSchedulerInstanceId();
+        HotTierJobStore jobStore = HotTierJobStore.get(schedName);
+        Gauge.builder("quartz.hot.tier.triggers", jobStore, HotTierJobStore::getNumberOfTriggers)
+                .description("triggers held in the in-memory hot tier")
+                .register(meterRegistry);
+        Gauge.builder("quartz.hot.tier.owner", this, store -> store.owner ? 1 : 0)
+                .description("whether this node fires the hot tier triggers")
+                .register(meterRegistry);
+        Gauge.builder("quartz.hot.tier.pending", pendingFires, Map::size)
+                .description("hot tier fire states waiting to be written")
+                .register(meterRegistry);
+        written = meterRegistry.counter("quartz.hot.tier.fire.updates", "result", "written");
+        coalesced = meterRegistry.counter("quartz.hot.tier.fire.updates", "result", "coalesced");
+        writeErrors = meterRegistry.counter("quartz.hot.tier.write.errors");
+        try {
+            jdbcTemplate.queryForObject("select count(*) from " + table() + " where SCHED_NAME = ?", Integer.class, schedName);
+            if (clustered) {
+                jdbcTemplate.queryForObject("select count(*) from " + tablePrefix + "LEASES where SCHED_NAME = ?", Integer.class, schedName);
+            }
+        } catch (BadSqlGrammarException e) {
+            available = false;
+            logger.warn("{}HOT_TRIGGERS 或者 {}LEASES 表不可用，热层作业只保存在内存中，重启后丢失：{}", tablePrefix, tablePrefix, e.getMessage());
+        }
+        jobStore.bind(this);
+        if (available) {
+            this.reload();
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hot-tier-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            writer.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+        coordinator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-tier-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        coordinator.scheduleWithFixedDelay(this::coordinateQuietly, 0, checkinInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 后台线程中抛出异常会停止后续的周期，这里全部记录下来
+     */
+    private void coordinateQuietly() {
+        try {
+            this.coordinate();
+        } catch (RuntimeException e) {
+            logger.error("热层调度器 {} 同步失败", schedName, e);
+        }
+    }
+
+    /**
+     * 非集群模式下启动热层调度器；集群模式下申请、续约热层的归属，同步其它节点修改的定义，取得归属后启动、失去后暂停.
+     * 由独立的后台线程 hot-tier-coordinator 每隔 clusterCheckinInterval 毫秒执行，不占用 spring 的定时任务线程，
+     * 其它定时任务执行慢时不会耽误续约而让归属过期.
+     */
+    public void coordinate() {
+        if (hotScheduler == null) {
+            return;
+        }
+        try {
+            boolean nowOwner = !clustered || !available || this.renewOwnership();
+            if (clustered && available) {
+                if (nowOwner && !owner) {
+                    //接管前其它节点可能还有未回写的触发状态，全量恢复，从表中的上次触发时间继续
+                    this.reload();
+                } else {
+                    this.sync();
+                }
+            }
+            //应用关闭时 SchedulerShards 已经停止所有调度器，不再启动
+            if (nowOwner && schedulerShards.isRunning() && hotScheduler.isInStandbyMode()) {
+                hotScheduler.start();
+                logger.info("热层调度器 {} 启动，触发器 {} 个", schedName, known.size());
+            } else if (!nowOwner && owner) {
+                hotScheduler.standby();
+                this.flush();
+                logger.info("热层调度器 {} 的归属已转移到其它节点，本节点暂停触发", schedName);
+            }
+            owner = nowOwner;
+        } catch (DataAccessException | SchedulerException e) {
+            //已经持有的归属在有效期内继续使用，过期后由其它节点接管
+            logger.error("热层调度器 {} 同步失败", schedName, e);
+        }
+    }
+
+    /**
+     * 正常关闭时写完触发状态并释放归属，其它节点下一个周期即可接管
+     */
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (coordinator != null) {
+            //等待正在进行的同步结束，避免释放归属之后又续约
+            coordinator.shutdown();
+            coordinator.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+        this.flush();
+        if (clustered && owner) {
+            try {
+                jdbcTemplate.update("update " + tablePrefix + "LEASES set OWNER = null, EXPIRES = 0 where SCHED_NAME = ? and SLICE_ID = ? and OWNER = ?",
+                        schedName, LEASE_SLICE, instanceId);
+            } catch (DataAccessException e) {
+                logger.warn("热层调度器 {} 释放归属失败，等待过期后由其它节点接管：{}", schedName, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 写入（新增或者覆盖）一个触发器及其作业的定义，由 {@link HotTierJobStore} 在内存修改之后调用.
+     *
+     * @throws DataAccessException      写入数据库失败
+     * @throws IllegalArgumentException 作业、触发器参数无法转为 json
+     */
+    public void save(OperableTrigger trigger, JobDetail jobDetail, TriggerState state) {
+        if (!available) {
+            return;
+        }
+        if (!(trigger instanceof CronTrigger)) {
+            logger.warn("热层只持久化 cron 触发器，{} 只保存在内存中", trigger.getKey());
+            return;
+        }
+        CronTrigger cronTrigger = (CronTrigger) trigger;
+        TriggerKey key = trigger.getKey();
+        long now = System.currentTimeMillis();
+        Object[] values = {jobDetail.getKey().getName(), jobDetail.getKey().getGroup(), jobDetail.getJobClass().getName(),
+                jobDetail.getDescription(), trigger.getDescription(), cronTrigger.getCronExpression(),
+                cronTrigger.getTimeZone() == null ? null : cronTrigger.getTimeZone().getID(), trigger.getMisfireInstruction(),
+                trigger.getPriority(), stateOf(state), toJson(jobDetail.getJobDataMap()), toJson(trigger.getJobDataMap()),
+                timeOf(trigger.getPreviousFireTime()), timeOf(trigger.getNextFireTime()), now,
+                schedName, key.getName(), key.getGroup()};
+        //先记下本节点写入的时间，同步时不会把自己的修改当作其它节点的
+        known.put(key, now);
+        String update = "update " + table() + " set JOB_NAME = ?, JOB_GROUP = ?, JOB_CLASS_NAME = ?, JOB_DESC = ?, TRIGGER_DESC = ?, " +
+                "CRON_EXPRESSION = ?, TIME_ZONE_ID = ?, MISFIRE_INSTR = ?, PRIORITY = ?, TRIGGER_STATE = ?, JOB_DATA = ?, TRIGGER_DATA = ?, " +
+                "PREV_FIRE_TIME = ?, NEXT_FIRE_TIME = ?, UPDATED_TIME = ? where SCHED_NAME = ? and TRIGGER_NAME = ? and TRIGGER_GROUP = ?";
+        String insert = "insert into " + table() + " (JOB_NAME, JOB_GROUP, JOB_CLASS_NAME, JOB_DESC, TRIGGER_DESC, CRON_EXPRESSION, " +
+                "TIME_ZONE_ID, MISFIRE_INSTR, PRIORITY, TRIGGER_STATE, JOB_DATA, TRIGGER_DATA, PREV_FIRE_TIME, NEXT_FIRE_TIME, UPDATED_TIME, " +
+                "SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try {
+            if (jdbcTemplate.update(update, values) == 0) {
+                try {
+                    jdbcTemplate.update(insert, values);
+                } catch (DuplicateKeyException e) {
+                    jdbcTemplate.update(update, values);
+                }
+            }
+        } catch (DataAccessException e) {
+            writeErrors.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * 删除触发器的定义
+     */
+    public void delete(TriggerKey key) {
+        known.remove(key);
+        pendingFires.remove(key);
+        if (!available) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("delete from " + table() + " where SCHED_NAME = ? and TRIGGER_NAME = ? and TRIGGER_GROUP = ?",
+                    schedName, key.getName(), key.getGroup());
+        } catch (DataAccessException e) {
+            writeErrors.increment();
+            logger.error("删除热层触发器 {} 失败，重启后会重新出现", key, e);
+        }
+    }
+
+    /**
+     * 暂停、恢复后更新触发器状态
+     */
+    public void updateState(TriggerKey key, TriggerState state) {
+        if (!available || !known.containsKey(key)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        known.put(key, now);
+        try {
+            jdbcTemplate.update("update " + table() + " set TRIGGER_STATE = ?, UPDATED_TIME = ? where SCHED_NAME = ? and TRIGGER_NAME = ? and TRIGGER_GROUP = ?",
+                    stateOf(state), now, schedName, key.getName(), key.getGroup());
+        } catch (DataAccessException e) {
+            writeErrors.increment();
+            logger.error("更新热层触发器 {} 的状态为 {} 失败", key, state, e);
+        }
+    }
+
+    /**
+     * 记录一次触发后的触发时间，只放入内存，由后台线程回写
+     */
+    public void recordFire(OperableTrigger trigger) {
+        if (!available) {
+            return;
+        }
+        Long[] fireTimes = {timeOf(trigger.getPreviousFireTime()), timeOf(trigger.getNextFireTime())};
+        if (pendingFires.put(trigger.getKey(), fireTimes) != null) {
+            coalesced.increment();
+        }
+    }
+
+    /**
+     * 批量回写触发状态。不修改 UPDATED_TIME，不会触发其它节点的同步
+     */
+    private void flush() {
+        if (pendingFires.isEmpty()) {
+            return;
+        }
+        List<Object[]> batch = new ArrayList<>(pendingFires.size());
+        for (TriggerKey key : new ArrayList<>(pendingFires.keySet())) {
+            Long[] fireTimes = pendingFires.remove(key);
+            if (fireTimes != null) {
+                batch.add(new Object[]{fireTimes[0], fireTimes[1], schedName, key.getName(), key.getGroup()});
+            }
+        }
+        try {
+            jdbcTemplate.batchUpdate("update " + table() + " set PREV_FIRE_TIME = ?, NEXT_FIRE_TIME = ? " +
+                    "where SCHED_NAME = ? and TRIGGER_NAME = ? and TRIGGER_GROUP = ?", batch);
+            written.increment(batch.size());
+        } catch (DataAccessException e) {
+            //放回去下个周期重试，期间有更新的触发状态时以新的为准
+            for (Object[] row : batch) {
+                pendingFires.putIfAbsent(TriggerKey.triggerKey((String) row[3], (String) row[4]), new Long[]{(Long) row[0], (Long) row[1]});
+            }
+            writeErrors.increment();
+            logger.error("回写热层触发状态失败，{} 条下个周期重试", batch.size(), e);
+        }
+    }
+
+    /**
+     * 申请或者续约热层的归属，多个节点同时申请时 update ... where EXPIRES = 读到的值 只有一个成功.
+     *
+     * @return 本节点是否持有归属
+     */
+    private boolean renewOwnership() {
+        String leases = tablePrefix + "LEASES";
+        long now = System.currentTimeMillis();
+        long expires = now + checkinInterval * 3;
+        if (jdbcTemplate.update("update " + leases + " set EXPIRES = ? where SCHED_NAME = ? and SLICE_ID = ? and OWNER = ? and EXPIRES > ?",
+                expires, schedName, LEASE_SLICE, instanceId, now) > 0) {
+            return true;
+        }
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("select OWNER, EXPIRES from " + leases + " where SCHED_NAME = ? and SLICE_ID = ?",
+                schedName, LEASE_SLICE);
+        if (rows.isEmpty()) {
+            try {
+                return jdbcTemplate.update("insert into " + leases + " (SCHED_NAME, SLICE_ID, OWNER, EXPIRES) values (?, ?, ?, ?)",
+                        schedName, LEASE_SLICE, instanceId, expires) > 0;
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+        Object rowExpires = rows.get(0).get("EXPIRES");
+        if (((Number) rowExpires).longValue() > now) {
+            return false;
+        }
+        return jdbcTemplate.update("update " + leases + " set OWNER = ?, EXPIRES = ? where SCHED_NAME = ? and SLICE_ID = ? and EXPIRES = ?",
+                instanceId, expires, schedName, LEASE_SLICE, rowExpires) > 0;
+    }
+
+    /**
+     * 从表中恢复所有定义，替换内存中的数据
+     */
+    private void reload() throws SchedulerException {
+        if (!available) {
+            return;
+        }
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("select * from " + table() + " where SCHED_NAME = ?", schedName);
+        HotTierJobStore.get(schedName).replay(() -> {
+            hotScheduler.clear();
+            known.clear();
+            for (Map<String, Object> row : rows) {
+                this.schedule(row);
+            }
+        });
+        logger.info("热层调度器 {} 从 {}HOT_TRIGGERS 恢复触发器 {} 个", schedName, tablePrefix, known.size());
+    }
+
+    /**
+     * 同步其它节点修改的定义：UPDATED_TIME 与内存中记录的不同时重新加载该行，表中已经没有的从内存中删除
+     */
+    private void sync() throws SchedulerException {
+        long syncStart = System.currentTimeMillis();
+        Map<TriggerKey, Long> current = new HashMap<>();
+        jdbcTemplate.query("select TRIGGER_NAME, TRIGGER_GROUP, UPDATED_TIME from " + table() + " where SCHED_NAME = ?",
+                rs -> {
+                    current.put(TriggerKey.triggerKey(rs.getString(1), rs.getString(2)), rs.getLong(3));
+                }, schedName);
+        List<TriggerKey> changed = new ArrayList<>();
+        current.forEach((key, updatedTime) -> {
+            if (!updatedTime.equals(known.get(key))) {
+                changed.add(key);
+            }
+        });
+        List<TriggerKey> removed = new ArrayList<>();
+        known.forEach((key, updatedTime) -> {
+            //查询之后本节点新写入的不算删除
+            if (!current.containsKey(key) && updatedTime < syncStart) {
+                removed.add(key);
+            }
+        });
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        HotTierJobStore.get(schedName).replay(() -> {
+            for (TriggerKey key : changed) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList("select * from " + table()
+                        + " where SCHED_NAME = ? and TRIGGER_NAME = ? and TRIGGER_GROUP = ?", schedName, key.getName(), key.getGroup());
+                if (!rows.isEmpty()) {
+                    this.schedule(rows.get(0));
+                }
+            }
+            for (TriggerKey key : removed) {
+                Trigger trigger = hotScheduler.getTrigger(key);
+                hotScheduler.unscheduleJob(key);
+                known.remove(key);
+                if (trigger != null && hotScheduler.getTriggersOfJob(trigger.getJobKey()).isEmpty()) {
+                    hotScheduler.deleteJob(trigger.getJobKey());
+                }
+            }
+        });
+        logger.info("热层调度器 {} 同步其它节点的修改：更新 {} 个、删除 {} 个触发器", schedName, changed.size(), removed.size());
+    }
+
+    /**
+     * 按表中的一行注册到内存中。触发器从上次触发时间之后开始计算，宕机、切换期间错过的触发交给错过触发策略
+     */
+    private void schedule(Map<String, Object> row) throws SchedulerException {
+        TriggerKey triggerKey = TriggerKey.triggerKey((String) row.get("TRIGGER_NAME"), (String) row.get("TRIGGER_GROUP"));
+        JobKey jobKey = JobKey.jobKey((String) row.get("JOB_NAME"), (String) row.get("JOB_GROUP"));
+        try {
+            JobDetail jobDetail = JobBuilder.newJob(jobDefinitionCache.getJobClass((String) row.get("JOB_CLASS_NAME")))
+                    .withIdentity(jobKey)
+                    .withDescription((String) row.get("JOB_DESC"))
+                    .usingJobData(new JobDataMap(fromJson((String) row.get("JOB_DATA"))))
+                    .storeDurably(true)
+                    .requestRecovery(true)
+                    .build();
+            String cronExpression = (String) row.get("CRON_EXPRESSION");
+            String timeZoneId = (String) row.get("TIME_ZONE_ID");
+            CronScheduleBuilder cronSchedule;
+            if (timeZoneId == null) {
+                cronSchedule = CronScheduleBuilder.cronSchedule(jobDefinitionCache.getCronExpression(cronExpression));
+            } else {
+                //inTimeZone 会修改 CronExpression 的时区，不能用缓存中共用的实例，重新解析一个
+                cronSchedule = CronScheduleBuilder.cronSchedule(cronExpression).inTimeZone(TimeZone.getTimeZone(timeZoneId));
+            }
+            TriggerBuilder<CronTrigger> triggerBuilder = TriggerBuilder.newTrigger()
+                    .withIdentity(triggerKey)
+                    .forJob(jobKey)
+                    .withDescription((String) row.get("TRIGGER_DESC"))
+                    .usingJobData(new JobDataMap(fromJson((String) row.get("TRIGGER_DATA"))))
+                    .withPriority(((Number) row.get("PRIORITY")).intValue())
+                    .withSchedule(withMisfireInstruction(cronSchedule, ((Number) row.get("MISFIRE_INSTR")).intValue()));
+            //内存中的触发器比表中的新（回写还没有完成）时以内存为准
+            long prevFireTime = row.get("PREV_FIRE_TIME") == null ? 0 : ((Number) row.get("PREV_FIRE_TIME")).longValue();
+            Trigger existing = hotScheduler.getTrigger(triggerKey);
+            if (existing != null && existing.getPreviousFireTime() != null) {
+                prevFireTime = Math.max(prevFireTime, existing.getPreviousFireTime().getTime());
+            }
+            if (prevFireTime > 0) {
+                triggerBuilder.startAt(new Date(prevFireTime + 1));
+            }
+            hotScheduler.scheduleJob(jobDetail, Collections.singleton(triggerBuilder.build()), true);
+            if (TriggerState.PAUSED.name().equals(row.get("TRIGGER_STATE"))) {
+                hotScheduler.pauseTrigger(triggerKey);
+            }
+            known.put(triggerKey, ((Number) row.get("UPDATED_TIME")).longValue());
+        } catch (ClassNotFoundException | IllegalArgumentException | IOException e) {
+            //跳过这一行，记下时间，不在每个同步周期重复报错
+            known.put(triggerKey, ((Number) row.get("UPDATED_TIME")).longValue());
+            logger.error("热层触发器 {} 的定义无效，跳过：{}", triggerKey, e.toString());
+        }
+    }
+
+    private static CronScheduleBuilder withMisfireInstruction(CronScheduleBuilder builder, int misfireInstruction) {
+        switch (misfireInstruction) {
+            case Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY:
+                return builder.withMisfireHandlingInstructionIgnoreMisfires();
+            case CronTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW:
+                return builder.withMisfireHandlingInstructionFireAndProceed();
+            case CronTrigger.MISFIRE_INSTRUCTION_DO_NOTHING:
+                return builder.withMisfireHandlingInstructionDoNothing();
+            default:
+                return builder;
+        }
+    }
+
+    /**
+     * 暂停的保存为 PAUSED，其余（包括禁止并发时的 BLOCKED）保存为 WAITING
+     */
+    private static String stateOf(TriggerState state) {
+        return state == TriggerState.PAUSED ? TriggerState.PAUSED.name() : "WAITING";
+    }
+
+    private static Long timeOf(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    private static String toJson(JobDataMap jobDataMap) {
+        if (jobDataMap == null || jobDataMap.isEmpty()) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.writeValueAsString(jobDataMap.getWrappedMap());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("job data of hot tier job must be serializable as json: " + e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, Object> fromJson(String json) throws IOException {
+        if (json == null || json.isEmpty()) {
+            return new HashMap<>();
+        }
+        return OBJECT_MAPPER.readValue(json, new TypeReference<Map<String, Object>>() {
+        });
+    }
+
+    private String table() {
+        return tablePrefix + "HOT_TRIGGERS";
+    }
+}
@@ -0,0 +1,205 @@
+package com.wmx.quartzjdbc.service;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.quartz.CronExpression;
+import org.quartz.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 注册作业时使用的缓存：job_class_name 解析后的 Job 类、cron_expression 解析后的 {@link CronExpression}.
+ * 批量注册时同一个类名、同一个 cron 表达式会被反复使用，缓存后省去 Class.forName 与 cron 解析.
+ * <p>
+ * 两个缓存都是容量固定的 LRU，超过 quartzjdbc.job.cache-size 时淘汰最久未使用的.
+ * quartzjdbc.job.allowed-classes 为允许注册的作业类白名单（逗号分隔），为空时允许所有实现了 {@link Job} 的类.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class JobDefinitionCache {
+    private static Logger logger = LoggerFactory.getLogger(JobDefinitionCache.class);
+
+    @Value("${quartzjdbc.job.allowed-classes:}")
+    private String[] allowedClasses;
+
+    private final LruCache<String, Class<? extends Job>> jobClassCache;
+    private final LruCache<String, CronExpression> cronCache;
+
+    public JobDefinitionCache(@Value("${quartzjdbc.job.cache-size:1000}") int cacheSize) {
+        this.jobClassCache = new LruCache<>(cacheSize);
+        this.cronCache = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * 解析作业类，先查缓存，未命中时 Class.forName 加载并校验白名单.
+     * 类名去掉首尾空白后再作为缓存的键，缓存中只有通过白名单校验的类，所以命中时不必再次校验.
+     *
+     * @param className
+     * @return
+     * @throws ClassNotFoundException   类不存在
+     * @throws IllegalArgumentException 类不在白名单中，或者没有实现 {@link Job}
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends Job> getJobClass(String className) throws ClassNotFoundException {
+        String name = StringUtils.trimToEmpty(className);
+        Class<? extends Job> jobClass = jobClassCache.get(name);
+        if (jobClass != null) {
+            return jobClass;
+        }
+        if (!this.isAllowed(name)) {
+            throw new IllegalArgumentException("job class is not allowed: " + name);
+        }
+        logger.debug("加载作业类 {}", name);
+        Class<?> clazz = Class.forName(name);
+        if (!Job.class.isAssignableFrom(clazz)) {
+            throw new IllegalArgumentException("job class must implement org.quartz.Job: " + name);
+        }
+        jobClass = (Class<? extends Job>) clazz;
+        jobClassCache.put(name, jobClass);
+        return jobClass;
+    }
+
+    private boolean isAllowed(String className) {
+        if (ArrayUtils.isEmpty(allowedClasses)) {
+            return true;
+        }
+        for (String allowedClass : allowedClasses) {
+            if (StringUtils.equals(StringUtils.trim(allowedClass), className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析 cron 表达式，先查缓存.
+     * 直接返回缓存的实例：new CronExpression(CronExpression) 内部也是重新解析，复制没有意义。
+     * CronTrigger 构建时只会把时区设置为默认时区，其余都是只读计算，所以多个触发器共用是安全的；
+     * 需要指定时区的触发器不能使用这里的实例（CronScheduleBuilder.inTimeZone 会修改共用实例的时区），应使用 CronScheduleBuilder.cronSchedule(String)；
+     * JDBC 存储时只保存表达式字符串，从数据库读出的触发器会重新解析，不会共用.
+     *
+     * @param cronExpression
+     * @return
+     * @throws RuntimeException 表达式无效，与 CronScheduleBuilder.cronSchedule(String) 的行为一致
+     */
+    public CronExpression getCronExpression(String cronExpression) {
+        CronExpression cached = cronCache.get(cronExpression);
+        if (cached == null) {
+            try {
+                cached = new CronExpression(cronExpression);
+            } catch (ParseException e) {
+                throw new RuntimeException("CronExpression '" + cronExpression + "' is invalid.", e);
+            }
+            cronCache.put(cronExpression, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * 缓存命中统计
+     *
+     * @return
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("jobClass", jobClassCache.getStats());
+        stats.put("cronExpression", cronCache.getStats());
+        return stats;
+    }
+
+    public LruCache<String, Class<? extends Job>> getJobClassCache() {
+        return jobClassCache;
+    }
+
+    public LruCache<String, CronExpression> getCronCache() {
+        return cronCache;
+    }
+
+    /**
+     * 线程安全、容量固定的 LRU 缓存，带命中/未命中计数.
+     */
+    public static class LruCache<K, V> {
+        private final int maxSize;
+        private final Map<K, V> map;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        LruCache(int maxSize) {
+            this.maxSize = maxSize;
+            this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > LruCache.this.maxSize;
+                }
+            };
+        }
+
+        public synchronized V get(K key) {
+            V value = map.get(key);
+            if (value == null) {
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return value;
+        }
+
+        /**
+         * 只有 valid 判断为有效的值才算命中，无效（如已过期）的值按未命中计数并返回 null
+         */
+        public synchronized V get(K key, Predicate<? super V> valid) {
+            V value = map.get(key);
+            if (value == null || !valid.test(value)) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return value;
+        }
+
+        public synchronized void put(K key, V value) {
+            map.put(key, value);
+        }
+
+        public synchronized void remove(K key) {
+            map.remove(key);
+        }
+
+        public synchronized void clear() {
+            map.clear();
+        }
+
+        public synchronized int size() {
+            return map.size();
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public Map<String, Object> getStats() {
+            long hit = hits.get();
+            long miss = misses.get();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("size", size());
+            stats.put("maxSize", maxSize);
+            stats.put("hits", hit);
+            stats.put("misses", miss);
+            stats.put("hitRatio", hit + miss == 0 ? 0 : hit * 1.0 / (hit + miss));
+            return stats;
+        }
+    }
+}
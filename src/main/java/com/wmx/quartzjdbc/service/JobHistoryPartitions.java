@@ -0,0 +1,281 @@
+package com.wmx.quartzjdbc.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 作业执行历史按天分区.
+ * <p>
+ * 高频作业每天产生数百万条执行历史，单表按 fired_time 分块 delete 清理时仍要逐行删除、产生大量 undo 与行锁。
+ * 分区后过期数据整个分区 drop，与数据量无关；按时间范围查询时也只访问相关的分区。模式（quartzjdbc.history.partition.mode）：
+ * <p>
+ * 1、NONE：单表 QRTZ_JOB_HISTORY，由 {@link JobHistoryService#purge()} 分块删除（默认）；
+ * 2、NATIVE：数据库原生分区，支持 MySQL（RANGE 分区）与 PostgreSQL（声明式分区，11 及以上：分区表上的主键、索引需要 11），
+ * 需要先用 sql/job_history_partitioned_mysql.sql 或 sql/job_history_partitioned_postgres.sql 把 QRTZ_JOB_HISTORY 重建为分区表，
+ * 分区名为 p + yyyyMMdd（PostgreSQL 为子表 qrtz_job_history_p + yyyyMMdd）；
+ * 3、ROLLING：按天分表 QRTZ_JOB_HISTORY_yyyyMMdd，以 QRTZ_JOB_HISTORY 为模板（create table as select）建表，所有数据库通用.
+ * 其它数据库配置为 NATIVE 时按 ROLLING 处理.
+ * <p>
+ * 日期按 UTC 计算，集群中所有节点的分区边界相同。维护任务（启动时以及每隔 maintenance-interval 毫秒）提前创建未来 days-ahead 天的分区，
+ * 删除整天都早于 quartzjdbc.history.retention 的分区。集群中每个节点都会维护，已经存在、已经删除的分区跳过.
+ * 写入时如果当天的分区还不存在（如维护任务还没有执行），先创建再写入.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class JobHistoryPartitions {
+    private static Logger logger = LoggerFactory.getLogger(JobHistoryPartitions.class);
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    public enum Mode {
+        NONE, NATIVE, ROLLING
+    }
+
+    private enum Dialect {
+        MYSQL, POSTGRES, OTHER
+    }
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${quartzjdbc.history.partition.mode:NONE}")
+    private String modeConfig;
+
+    @Value("${quartzjdbc.history.partition.days-ahead:3}")
+    private int daysAhead;
+
+    @Value("${quartzjdbc.history.retention:7d}")
+    private Duration retention;
+
+    @Value("${spring.quartz.properties.org.quartz.jobStore.tablePrefix:QRTZ_}")
+    private String tablePrefix;
+
+    private Mode mode = Mode.NONE;
+    private Dialect dialect = Dialect.OTHER;
+    /**
+     * 已经存在的分区（日期），按需创建、删除时直接增减；维护任务从数据库重新加载后整体替换，
+     * 读取方（写入线程、查询）始终看到一个完整的集合，不会在清空与重新加入之间看到空集合
+     */
+    private volatile NavigableSet<LocalDate> partitions = new ConcurrentSkipListSet<>();
+
+    @PostConstruct
+    public void init() {
+        mode = Mode.valueOf(StringUtils.upperCase(StringUtils.trim(modeConfig)));
+        if (mode == Mode.NONE) {
+            return;
+        }
+        try {
+            String productName = jdbcTemplate.execute((ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+            dialect = StringUtils.containsIgnoreCase(productName, "mysql") ? Dialect.MYSQL
+                    : StringUtils.containsIgnoreCase(productName, "postgres") ? Dialect.POSTGRES : Dialect.OTHER;
+            if (mode == Mode.NATIVE && dialect == Dialect.OTHER) {
+                logger.warn("{} 不支持原生分区，执行历史改为按天分表（ROLLING）", productName);
+                mode = Mode.ROLLING;
+            }
+            this.maintain();
+        } catch (DataAccessException e) {
+            logger.warn("执行历史分区初始化失败，不再分区，按单表处理：{}", e.getMessage());
+            mode = Mode.NONE;
+        }
+    }
+
+    public boolean isPartitioned() {
+        return mode != Mode.NONE;
+    }
+
+    /**
+     * 写入 firedTime 这一条记录的表，分区不存在时先创建.
+     * NATIVE 模式下始终是 QRTZ_JOB_HISTORY，由数据库路由到分区.
+     */
+    public String tableFor(long firedTime) {
+        if (mode == Mode.NONE) {
+            return baseTable();
+        }
+        LocalDate day = dayOf(firedTime);
+        if (!partitions.contains(day)) {
+            this.create(day);
+        }
+        return mode == Mode.ROLLING ? rollingTable(day) : baseTable();
+    }
+
+    /**
+     * 查询时间范围 [from, to) 需要访问的表，按日期从新到旧.
+     * 不分区、原生分区时只有 QRTZ_JOB_HISTORY 一张表，由调用方加上 fired_time 条件让数据库裁剪分区.
+     *
+     * @param from ：可选，开始时间（毫秒时间戳）
+     * @param to   ：可选，结束时间（毫秒时间戳，不包含）
+     * @return
+     */
+    public List<String> tablesFor(Long from, Long to) {
+        if (mode != Mode.ROLLING) {
+            return Collections.singletonList(baseTable());
+        }
+        List<String> tables = new ArrayList<>();
+        for (LocalDate day : partitions.descendingSet()) {
+            if ((to == null || day.atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli() < to)
+                    && (from == null || day.plusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli() > from)) {
+                tables.add(rollingTable(day));
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * 创建未来的分区，删除过期的分区.
+     */
+    @Scheduled(initialDelayString = "${quartzjdbc.history.partition.maintenance-interval:3600000}",
+            fixedDelayString = "${quartzjdbc.history.partition.maintenance-interval:3600000}")
+    public void maintain() {
+        if (mode == Mode.NONE) {
+            return;
+        }
+        try {
+            partitions = new ConcurrentSkipListSet<>(this.loadPartitions());
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            for (int i = 0; i <= daysAhead; i++) {
+                if (!partitions.contains(today.plusDays(i))) {
+                    this.create(today.plusDays(i));
+                }
+            }
+            //整天都早于保留时间的分区
+            LocalDate expiredBefore = dayOf(System.currentTimeMillis() - retention.toMillis());
+            for (LocalDate day : new ArrayList<>(partitions.headSet(expiredBefore, false))) {
+                this.drop(day);
+            }
+        } catch (DataAccessException e) {
+            logger.error("执行历史分区维护失败", e);
+        }
+    }
+
+    /**
+     * 当前已经存在的分区（日期）
+     */
+    public List<String> getPartitions() {
+        List<String> names = new ArrayList<>();
+        for (LocalDate day : partitions) {
+            names.add(mode == Mode.ROLLING ? rollingTable(day) : "p" + DAY_FORMAT.format(day));
+        }
+        return names;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    private synchronized void create(LocalDate day) {
+        if (partitions.contains(day)) {
+            return;
+        }
+        String suffix = DAY_FORMAT.format(day);
+        long start = day.atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        long end = day.plusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        try {
+            if (mode == Mode.ROLLING) {
+                String table = rollingTable(day);
+                jdbcTemplate.execute("create table " + table + " as select * from " + baseTable() + " where 1 = 0");
+                jdbcTemplate.execute("alter table " + table + " add constraint PK_" + table + " primary key (SCHED_NAME, ENTRY_ID)");
+                jdbcTemplate.execute("create index IDX_" + tablePrefix + "JH_" + suffix + " on " + table + "(JOB_GROUP, JOB_NAME, FIRED_TIME)");
+            } else if (dialect == Dialect.MYSQL) {
+                //RANGE 分区只能在最后追加，所以按日期从早到晚创建
+                jdbcTemplate.execute("alter table " + baseTable() + " add partition (partition p" + suffix + " values less than (" + end + "))");
+            } else {
+                jdbcTemplate.execute("create table " + baseTable() + "_p" + suffix + " partition of " + baseTable()
+                        + " for values from (" + start + ") to (" + end + ")");
+            }
+            logger.info("创建执行历史分区 {}", suffix);
+        } catch (DataAccessException e) {
+            //集群中其它节点可能已经创建，重新加载确认
+            if (!this.loadPartitions().contains(day)) {
+                throw e;
+            }
+        }
+        partitions.add(day);
+    }
+
+    private void drop(LocalDate day) {
+        String suffix = DAY_FORMAT.format(day);
+        try {
+            if (mode == Mode.ROLLING) {
+                jdbcTemplate.execute("drop table " + rollingTable(day));
+            } else if (dialect == Dialect.MYSQL) {
+                jdbcTemplate.execute("alter table " + baseTable() + " drop partition p" + suffix);
+            } else {
+                jdbcTemplate.execute("drop table " + baseTable() + "_p" + suffix);
+            }
+            logger.info("删除过期的执行历史分区 {}", suffix);
+        } catch (DataAccessException e) {
+            if (this.loadPartitions().contains(day)) {
+                throw e;
+            }
+        }
+        partitions.remove(day);
+    }
+
+    /**
+     * 从数据库读取已经存在的分区
+     */
+    private Set<LocalDate> loadPartitions() {
+        List<String> names;
+        if (mode == Mode.ROLLING) {
+            names = jdbcTemplate.execute((ConnectionCallback<List<String>>) con -> {
+                List<String> tables = new ArrayList<>();
+                DatabaseMetaData metaData = con.getMetaData();
+                try (ResultSet rs = metaData.getTables(con.getCatalog(), con.getSchema(), null, new String[]{"TABLE"})) {
+                    while (rs.next()) {
+                        tables.add(rs.getString("TABLE_NAME"));
+                    }
+                }
+                return tables;
+            });
+        } else if (dialect == Dialect.MYSQL) {
+            names = jdbcTemplate.queryForList("select partition_name from information_schema.partitions" +
+                    " where table_schema = database() and lower(table_name) = lower(?) and partition_name is not null", String.class, baseTable());
+        } else {
+            names = jdbcTemplate.queryForList("select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid" +
+                    " join pg_class p on p.oid = i.inhparent where p.relname = lower(?)", String.class, baseTable());
+        }
+        Pattern pattern = mode == Mode.ROLLING ? Pattern.compile("(?i)^" + Pattern.quote(baseTable() + "_") + "(\\d{8})$")
+                : Pattern.compile("(?i)^(?:" + Pattern.quote(baseTable() + "_") + ")?p(\\d{8})$");
+        Set<LocalDate> days = new TreeSet<>();
+        for (String name : names) {
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.matches()) {
+                days.add(LocalDate.parse(matcher.group(1), DAY_FORMAT));
+            }
+        }
+        return days;
+    }
+
+    private String baseTable() {
+        return tablePrefix + "JOB_HISTORY";
+    }
+
+    private String rollingTable(LocalDate day) {
+        return baseTable() + "_" + DAY_FORMAT.format(day);
+    }
+
+    private static LocalDate dayOf(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+}
@@ -0,0 +1,375 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.pojo.JobHistory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 作业执行历史：写入、查询与过期清理.
+ * <p>
+ * 写入：{@link com.wmx.quartzjdbc.listener.JobHistoryListener} 在作业执行完成后调用 {@link #record(JobHistory)}，
+ * 只是放入内存中的环形缓冲区（容量 quartzjdbc.history.buffer-size，满时丢弃最旧的记录），不访问数据库，不延长作业的执行时间；
+ * 后台线程每隔 flush-interval 毫秒把缓冲区中的记录以 JDBC 批量插入（每批 batch-size 条）写入 QRTZ_JOB_HISTORY.
+ * 节点宕机时缓冲区中尚未写入的记录会丢失，正常关闭时会先写完.
+ * 一批中有主键（SCHED_NAME, ENTRY_ID）冲突的记录时改为逐条插入，只丢弃冲突的记录，不影响同一批的其它记录.
+ * <p>
+ * 清理：每隔 purge-interval 毫秒删除 fired_time 早于 retention 的记录，每次最多删除 purge-chunk 条、各自提交，避免长事务与大量行锁.
+ * 集群中每个节点都会清理，按主键删除，重复删除没有影响.
+ * <p>
+ * 按天分区时（见 {@link JobHistoryPartitions}）过期数据整个分区删除，不再分块 delete.
+ * <p>
+ * 表不存在时输出警告，不再记录历史.
+ * 指标：quartz.job.history.buffer（缓冲区中的记录数）、quartz.job.history.written、quartz.job.history.dropped（reason=overflow|error）、
+ * quartz.job.history.flush（每批写入耗时）、quartz.job.history.purged.
+ *
+ * @author wangmaoxiong
+ */
+@Service
+public class JobHistoryService {
+    private static Logger logger = LoggerFactory.getLogger(JobHistoryService.class);
+    private static final int RESULT_DATA_LENGTH = 250;
+    private static final int ERROR_MESSAGE_LENGTH = 1000;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private JobHistoryPartitions jobHistoryPartitions;
+
+    @Value("${quartzjdbc.history.enabled:true}")
+    private boolean enabled;
+
+    @Value("${quartzjdbc.history.batch-size:500}")
+    private int batchSize;
+
+    @Value("${quartzjdbc.history.flush-interval:1000}")
+    private long flushInterval;
+
+    @Value("${quartzjdbc.history.retention:7d}")
+    private Duration retention;
+
+    @Value("${quartzjdbc.history.purge-chunk:5000}")
+    private int purgeChunk;
+
+    @Value("${spring.quartz.properties.org.quartz.jobStore.tablePrefix:QRTZ_}")
+    private String tablePrefix;
+
+    private final BlockingQueue<JobHistory> buffer;
+    /**
+     * 表不存在时为 false，不再记录
+     */
+    private volatile boolean tableAvailable = true;
+    private ScheduledExecutorService writer;
+    private Counter written;
+    private Counter overflow;
+    private Counter writeErrors;
+    private Counter purged;
+    private Timer flushTimer;
+
+    public JobHistoryService(@Value("${quartzjdbc.history.buffer-size:10000}") int bufferSize) {
+        this.buffer = new ArrayBlockingQueue<>(Math.max(bufferSize, 1));
+    }
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("quartz.job.history.buffer", buffer, Collection::size)
+                .description("execution history records waiting to be written")
+                .register(meterRegistry);
+        written = meterRegistry.counter("quartz.job.history.written");
+        overflow = meterRegistry.counter("quartz.job.history.dropped", "reason", "overflow");
+        writeErrors = meterRegistry.counter("quartz.job.history.dropped", "reason", "error");
+        purged = meterRegistry.counter("quartz.job.history.purged");
+        flushTimer = Timer.builder("quartz.job.history.flush")
+                .description("execution history batch insert time")
+                .register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台线程，把缓冲区中剩余的记录写完
+     */
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (writer != null) {
+            writer.shutdown();
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+            this.flush();
+        }
+    }
+
+    /**
+     * 记录一次执行，只放入缓冲区。缓冲区满时丢弃最旧的记录.
+     */
+    public void record(JobHistory history) {
+        if (!enabled || !tableAvailable) {
+            return;
+        }
+        while (!buffer.offer(history)) {
+            if (buffer.poll() != null) {
+                overflow.increment();
+            }
+        }
+    }
+
+    /**
+     * 把缓冲区中的记录分批写入数据库，直到缓冲区为空.
+     */
+    private void flush() {
+        List<JobHistory> batch = new ArrayList<>(batchSize);
+        while (tableAvailable && buffer.drainTo(batch, batchSize) > 0) {
+            try {
+                long start = System.nanoTime();
+                this.insert(batch);
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                written.increment(batch.size());
+            } catch (BadSqlGrammarException e) {
+                tableAvailable = false;
+                buffer.clear();
+                logger.warn("{}JOB_HISTORY 表不可用，不再记录作业执行历史：{}", tablePrefix, e.getMessage());
+            } catch (DuplicateKeyException e) {
+                this.insertEach(batch);
+            } catch (DataAccessException e) {
+                writeErrors.increment(batch.size());
+                logger.error("写入作业执行历史失败，丢弃 " + batch.size() + " 条记录", e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 批量插入遇到主键冲突时逐条插入，跳过冲突的记录.
+     * 批量插入中途失败时驱动可能已经插入了一部分行，它们这里也会报主键冲突：表中的行与本条记录的作业、触发时间相同时视为已经写入.
+     */
+    private void insertEach(List<JobHistory> batch) {
+        int inserted = 0;
+        for (JobHistory history : batch) {
+            try {
+                this.insert(Collections.singletonList(history));
+                inserted++;
+            } catch (DuplicateKeyException e) {
+                if (this.isWritten(history)) {
+                    inserted++;
+                } else {
+                    writeErrors.increment();
+                    logger.warn("作业执行历史主键冲突，丢弃：sched_name={},entry_id={}", history.getSched_name(), history.getEntry_id());
+                }
+            } catch (DataAccessException e) {
+                writeErrors.increment();
+                logger.error("写入作业执行历史失败，丢弃 entry_id=" + history.getEntry_id(), e);
+            }
+        }
+        written.increment(inserted);
+    }
+
+    private boolean isWritten(JobHistory history) {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from " + jobHistoryPartitions.tableFor(history.getFired_time())
+                        + " where sched_name = ? and entry_id = ? and job_name = ? and job_group = ? and fired_time = ?", Integer.class,
+                history.getSched_name(), history.getEntry_id(), history.getJob_name(), history.getJob_group(), history.getFired_time());
+        return count != null && count > 0;
+    }
+
+    private void insert(List<JobHistory> batch) {
+        //分表时按触发日期分组，一个表一批
+        Map<String, List<JobHistory>> batchByTable = new LinkedHashMap<>();
+        for (JobHistory history : batch) {
+            batchByTable.computeIfAbsent(jobHistoryPartitions.tableFor(history.getFired_time()), table -> new ArrayList<>()).add(history);
+        }
+        for (Map.Entry<String, List<JobHistory>> entry : batchByTable.entrySet()) {
+            this.insert(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void insert(String table, List<JobHistory> batch) {
+        String sql = "insert into " + table + " (sched_name, entry_id, job_name, job_group, trigger_name, trigger_group, " +
+                "instance_name, sched_time, fired_time, run_time, status, result_data, error_message) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        jdbcTemplate.batchUpdate(sql, batch, batch.size(), (ps, history) -> {
+            ps.setString(1, history.getSched_name());
+            ps.setString(2, history.getEntry_id());
+            ps.setString(3, history.getJob_name());
+            ps.setString(4, history.getJob_group());
+            ps.setString(5, history.getTrigger_name());
+            ps.setString(6, history.getTrigger_group());
+            ps.setString(7, history.getInstance_name());
+            if (history.getSched_time() != null) {
+                ps.setLong(8, history.getSched_time());
+            } else {
+                ps.setNull(8, Types.BIGINT);
+            }
+            ps.setLong(9, history.getFired_time());
+            ps.setLong(10, history.getRun_time());
+            ps.setString(11, history.getStatus());
+            ps.setString(12, StringUtils.abbreviate(history.getResult_data(), RESULT_DATA_LENGTH));
+            ps.setString(13, StringUtils.abbreviate(history.getError_message(), ERROR_MESSAGE_LENGTH));
+        });
+    }
+
+    /**
+     * 查询执行历史，按触发时间倒序.
+     *
+     * @param jobGroup ：可选，作业组
+     * @param jobName  ：可选，作业名称，需要同时指定作业组
+     * @param status   ：可选，SUCCESS、FAILURE、VETOED
+     * @param from     ：可选，触发时间的开始（毫秒时间戳），分区时只查询相关的分区
+     * @param to       ：可选，触发时间的结束（毫秒时间戳，不包含）
+     * @param limit    ：最多返回的条数
+     * @return
+     */
+    public List<JobHistory> findHistory(String jobGroup, String jobName, String status, Long from, Long to, int limit) {
+        StringBuilder where = new StringBuilder(" where 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (StringUtils.isNotBlank(jobGroup)) {
+            where.append(" and job_group = ?");
+            args.add(jobGroup);
+            if (StringUtils.isNotBlank(jobName)) {
+                where.append(" and job_name = ?");
+                args.add(jobName);
+            }
+        }
+        if (StringUtils.isNotBlank(status)) {
+            where.append(" and status = ?");
+            args.add(status);
+        }
+        if (from != null) {
+            where.append(" and fired_time >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            where.append(" and fired_time < ?");
+            args.add(to);
+        }
+        //按天分表时从最新的表开始查，够 limit 条后不再查更早的表
+        List<JobHistory> histories = new ArrayList<>();
+        for (String table : jobHistoryPartitions.tablesFor(from, to)) {
+            String sql = "select * from " + table + where + " order by fired_time desc";
+            int maxRows = limit - histories.size();
+            histories.addAll(jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                ps.setMaxRows(maxRows);
+                for (int i = 0; i < args.size(); i++) {
+                    ps.setObject(i + 1, args.get(i));
+                }
+                return ps;
+            }, historyRowMapper()));
+            if (histories.size() >= limit) {
+                break;
+            }
+        }
+        return histories;
+    }
+
+    /**
+     * 作业最近一次执行、最近一次成功、最近一次失败，没有时为 null.
+     *
+     * @param jobGroup
+     * @param jobName
+     * @return
+     */
+    public Map<String, JobHistory> lastExecution(String jobGroup, String jobName) {
+        Map<String, JobHistory> last = new LinkedHashMap<>();
+        last.put("last", first(this.findHistory(jobGroup, jobName, null, null, null, 1)));
+        last.put("lastSuccess", first(this.findHistory(jobGroup, jobName, JobHistory.STATUS_SUCCESS, null, null, 1)));
+        last.put("lastFailure", first(this.findHistory(jobGroup, jobName, JobHistory.STATUS_FAILURE, null, null, 1)));
+        return last;
+    }
+
+    private static JobHistory first(List<JobHistory> histories) {
+        return histories.isEmpty() ? null : histories.get(0);
+    }
+
+    /**
+     * 分块删除过期的执行历史：每次查询 purge-chunk 条的主键后按主键批量删除，直到没有过期的记录.
+     * 分区时由 {@link JobHistoryPartitions#maintain()} 删除过期的分区，这里不做处理.
+     *
+     * @return 删除的条数
+     */
+    @Scheduled(initialDelayString = "${quartzjdbc.history.purge-interval:3600000}", fixedDelayString = "${quartzjdbc.history.purge-interval:3600000}")
+    public int purge() {
+        if (!enabled || !tableAvailable || jobHistoryPartitions.isPartitioned()) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - retention.toMillis();
+        String selectSql = "select sched_name, entry_id from " + tablePrefix + "JOB_HISTORY where fired_time < ?";
+        String deleteSql = "delete from " + tablePrefix + "JOB_HISTORY where sched_name = ? and entry_id = ?";
+        int total = 0;
+        try {
+            List<Object[]> keys;
+            do {
+                keys = jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(selectSql);
+                    ps.setMaxRows(purgeChunk);
+                    ps.setLong(1, cutoff);
+                    return ps;
+                }, (rs, rowNum) -> new Object[]{rs.getString(1), rs.getString(2)});
+                if (!keys.isEmpty()) {
+                    jdbcTemplate.batchUpdate(deleteSql, keys);
+                    total += keys.size();
+                    purged.increment(keys.size());
+                }
+            } while (keys.size() >= purgeChunk);
+        } catch (DataAccessException e) {
+            logger.error("清理作业执行历史失败，已删除 " + total + " 条", e);
+        }
+        if (total > 0) {
+            logger.info("清理作业执行历史 {} 条，保留 {} 之后的记录", total, new Date(cutoff));
+        }
+        return total;
+    }
+
+    private static RowMapper<JobHistory> historyRowMapper() {
+        return (rs, rowNum) -> {
+            JobHistory history = new JobHistory();
+            history.setSched_name(rs.getString("sched_name"));
+            history.setEntry_id(rs.getString("entry_id"));
+            history.setJob_name(rs.getString("job_name"));
+            history.setJob_group(rs.getString("job_group"));
+            history.setTrigger_name(rs.getString("trigger_name"));
+            history.setTrigger_group(rs.getString("trigger_group"));
+            history.setInstance_name(rs.getString("instance_name"));
+            long schedTime = rs.getLong("sched_time");
+            history.setSched_time(rs.wasNull() ? null : schedTime);
+            history.setFired_time(rs.getLong("fired_time"));
+            history.setRun_time(rs.getLong("run_time"));
+            history.setStatus(rs.getString("status"));
+            history.setResult_data(rs.getString("result_data"));
+            history.setError_message(rs.getString("error_message"));
+            return history;
+        };
+    }
+}
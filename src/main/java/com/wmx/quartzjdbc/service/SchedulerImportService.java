@@ -0,0 +1,257 @@
+package com.wmx.quartzjdbc.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wmx.quartzjdbc.pojo.BatchResult;
+import com.wmx.quartzjdbc.pojo.ImportResult;
+import com.wmx.quartzjdbc.pojo.SchedulerEntity;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * 流式导入作业，用于从 schedule/export 导出的备份中恢复，或者一次导入大量作业.
+ * <p>
+ * 1、逐行读取、解析请求正文，只在内存中保留一块（chunkSize 条）记录，读取速度受提交速度限制（背压），内存占用与文件大小无关；
+ * 2、每块通过 {@link SchedulerService#scheduleJobs(List, Integer)} 提交：先解析 cron 表达式、加载作业类（在白名单中校验），
+ * 通过校验的记录再按分片在一个 JobStore 事务中写入。同一块中触发器重复的记录只注册第一条，其余记为失败；
+ * 不同块中的重复触发器不做检查（只在内存中保留一块），后面的记录替换前面的；
+ * 3、指定 importId 时，每块提交后把已处理的记录数写入 QRTZ_IMPORT_CHECKPOINT 表。导入中断（连接断开、节点重启）后用相同的 importId 重新上传同一个文件，
+ * 跳过已提交的记录（只读行、不解析）继续导入。检查点与作业不在同一个事务中，中断时最后一块可能被重复提交，
+ * 注册时 replace=true，重复提交的结果相同。表不存在时只输出警告，不记录检查点.
+ * <p>
+ * 支持两种格式：
+ * ndjson：每行一个 json 对象，字段与 {@link SchedulerEntity} 相同，即 schedule/export 的输出，多余的字段（如 trigger_state）被忽略；
+ * csv：第一行为表头（字段名同上），job_data、trigger_data 列为 json 字符串，字段值中含有逗号、双引号时使用双引号包围，不支持字段值中换行.
+ *
+ * @author wangmaoxiong
+ */
+@Service
+public class SchedulerImportService {
+    private static Logger logger = LoggerFactory.getLogger(SchedulerImportService.class);
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    @Resource
+    private SchedulerService schedulerService;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Value("${quartzjdbc.batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    @Value("${quartzjdbc.import.max-reported-failures:1000}")
+    private int maxReportedFailures;
+
+    @Value("${spring.quartz.properties.org.quartz.jobStore.tablePrefix:QRTZ_}")
+    private String tablePrefix;
+
+    /**
+     * 导入作业.
+     *
+     * @param importId  ：可选，导入标识，相同的 importId 从上次的检查点继续
+     * @param format    ：ndjson 或者 csv
+     * @param reader    ：请求正文
+     * @param chunkSize ：可选，每个事务提交的条数，默认使用配置 quartzjdbc.batch.chunk-size
+     * @param restart   ：为 true 时删除 importId 的检查点，从头开始导入
+     * @return
+     * @throws IOException              读取请求正文失败，已经提交的块记录在检查点中
+     * @throws IllegalArgumentException format 不支持，或者 csv 没有表头
+     */
+    public ImportResult importJobs(String importId, String format, Reader reader, Integer chunkSize, boolean restart) throws IOException {
+        boolean csv = FORMAT_CSV.equalsIgnoreCase(format);
+        if (!csv && !FORMAT_NDJSON.equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("unsupported format: " + format);
+        }
+        long start = System.currentTimeMillis();
+        int size = chunkSize == null || chunkSize <= 0 ? batchChunkSize : chunkSize;
+        boolean checkpoint = StringUtils.isNotBlank(importId);
+        if (checkpoint && restart) {
+            checkpoint = this.deleteCheckpoint(importId);
+        }
+        long resumeFrom = checkpoint ? this.loadCheckpoint(importId) : 0;
+        if (resumeFrom < 0) {
+            checkpoint = false;
+            resumeFrom = 0;
+        }
+        ImportResult importResult = new ImportResult(importId, resumeFrom, size, maxReportedFailures);
+        logger.info("开始导入作业，importId={},format={},从第 {} 条之后开始", importId, format, resumeFrom);
+
+        BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String[] header = null;
+        List<SchedulerEntity> chunk = new ArrayList<>(size);
+        List<Long> recordNos = new ArrayList<>(size);
+        long recordNo = 0;
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            if (csv && header == null) {
+                header = parseCsvLine(line).toArray(new String[0]);
+                continue;
+            }
+            recordNo++;
+            if (recordNo <= resumeFrom) {
+                continue;
+            }
+            SchedulerEntity schedulerEntity;
+            try {
+                schedulerEntity = csv ? this.readCsv(header, line) : objectMapper.readValue(line, SchedulerEntity.class);
+            } catch (IOException | IllegalArgumentException e) {
+                importResult.fail(new BatchResult.Item((int) recordNo, new SchedulerEntity(), false, "unparseable record: " + e.getMessage()));
+                continue;
+            }
+            chunk.add(schedulerEntity);
+            recordNos.add(recordNo);
+            if (chunk.size() >= size) {
+                this.flush(chunk, recordNos, importResult);
+                if (checkpoint) {
+                    checkpoint = this.saveCheckpoint(importId, recordNo);
+                }
+            }
+        }
+        if (csv && header == null) {
+            throw new IllegalArgumentException("csv header is missing");
+        }
+        this.flush(chunk, recordNos, importResult);
+        if (checkpoint && recordNo > resumeFrom) {
+            this.saveCheckpoint(importId, recordNo);
+        }
+        importResult.finish(start);
+        logger.info("导入作业完成:{}", importResult);
+        return importResult;
+    }
+
+    /**
+     * 提交一块记录，成功后清空 chunk、recordNos.
+     */
+    private void flush(List<SchedulerEntity> chunk, List<Long> recordNos, ImportResult importResult) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        BatchResult batchResult = schedulerService.scheduleJobs(chunk, chunk.size());
+        for (BatchResult.Item item : batchResult.getItems()) {
+            if (item.isSuccess()) {
+                importResult.succeed();
+            } else {
+                int index = recordNos.get(item.getIndex()).intValue();
+                importResult.fail(new BatchResult.Item(index, chunk.get(item.getIndex()), false, item.getMessage()));
+            }
+        }
+        chunk.clear();
+        recordNos.clear();
+    }
+
+    private SchedulerEntity readCsv(String[] header, String line) throws IOException {
+        List<String> values = parseCsvLine(line);
+        Map<String, Object> record = new LinkedHashMap<>();
+        for (int i = 0; i < header.length && i < values.size(); i++) {
+            String value = StringUtils.trimToNull(values.get(i));
+            if (value == null) {
+                continue;
+            }
+            if ("job_data".equals(header[i]) || "trigger_data".equals(header[i])) {
+                record.put(header[i], objectMapper.readValue(value, new TypeReference<LinkedHashMap<String, Object>>() {
+                }));
+            } else {
+                record.put(header[i], value);
+            }
+        }
+        return objectMapper.convertValue(record, SchedulerEntity.class);
+    }
+
+    /**
+     * 解析一行 csv：逗号分隔，双引号包围的字段中可以包含逗号，两个双引号表示一个双引号.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * 读取检查点：已提交的记录数，没有检查点时返回 0，表不可用时返回 -1.
+     */
+    private long loadCheckpoint(String importId) {
+        try {
+            List<Long> records = jdbcTemplate.queryForList("select records from " + tablePrefix + "IMPORT_CHECKPOINT where import_id = ?", Long.class, importId);
+            return records.isEmpty() ? 0 : records.get(0);
+        } catch (DataAccessException e) {
+            this.warnUnavailable(e);
+            return -1;
+        }
+    }
+
+    private boolean saveCheckpoint(String importId, long records) {
+        try {
+            String updateSql = "update " + tablePrefix + "IMPORT_CHECKPOINT set records = ?, updated_time = ? where import_id = ?";
+            long now = System.currentTimeMillis();
+            if (jdbcTemplate.update(updateSql, records, now, importId) == 0) {
+                try {
+                    jdbcTemplate.update("insert into " + tablePrefix + "IMPORT_CHECKPOINT (import_id, records, updated_time) values (?, ?, ?)", importId, records, now);
+                } catch (DuplicateKeyException e) {
+                    jdbcTemplate.update(updateSql, records, now, importId);
+                }
+            }
+            return true;
+        } catch (DataAccessException e) {
+            this.warnUnavailable(e);
+            return false;
+        }
+    }
+
+    private boolean deleteCheckpoint(String importId) {
+        try {
+            jdbcTemplate.update("delete from " + tablePrefix + "IMPORT_CHECKPOINT where import_id = ?", importId);
+            return true;
+        } catch (DataAccessException e) {
+            this.warnUnavailable(e);
+            return false;
+        }
+    }
+
+    private void warnUnavailable(DataAccessException e) {
+        logger.warn("{}IMPORT_CHECKPOINT 表不可用，本次导入不记录检查点，中断后无法续传：{}", tablePrefix, e.getMessage());
+    }
+}
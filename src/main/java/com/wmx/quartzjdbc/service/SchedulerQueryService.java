@@ -0,0 +1,408 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.config.JsonJDBCDelegate;
+import com.wmx.quartzjdbc.config.SchedulerShards;
+import com.wmx.quartzjdbc.pojo.KeysetPage;
+import org.apache.commons.lang3.StringUtils;
+import org.quartz.JobKey;
+import org.quartz.TriggerKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 调度信息查询业务层，直接查询 quartz 的 qrtz_job_details、qrtz_triggers、qrtz_cron_triggers 表.
+ * <p>
+ * 分页使用键集(seek)分页：按 (sched_name, job_group, job_name) 排序，下一页从上一页最后一个作业之后开始查找，不使用 offset.
+ * 只查询本应用的调度器（{@link SchedulerShards#getSchedulerNames()}），按名称顺序逐个查询，每条 sql 都是 sched_name = ? 加上
+ * (job_group, job_name) 大于游标的条件，正好是索引 IDX_QRTZ_J_GRP_NAME (SCHED_NAME,JOB_GROUP,JOB_NAME) 上的一段范围，
+ * 数据库从游标位置顺着索引读取，而不是先找出全部满足条件的行再由客户端截断。
+ * 每页条数使用 {@link PreparedStatement#setMaxRows(int)}、{@link PreparedStatement#setFetchSize(int)} 限制，并且读够行数就关闭结果集，
+ * 而不是 limit/top/rownum，这样 sql 在各个数据库中通用，驱动也只会取回一页的数据.
+ * job_data、trigger_data 由 {@link JsonJDBCDelegate#readJobData(byte[])} 转为 Map 返回.
+ * <p>
+ * 全量导出（备份、审计）不分页，见 {@link #exportSchedulers(String, boolean, Consumer)}.
+ *
+ * @author wangmaoxiong
+ */
+@Service
+public class SchedulerQueryService {
+    private static Logger logger = LoggerFactory.getLogger(SchedulerQueryService.class);
+    /**
+     * 每页最多的作业个数，同时也限制了第二步查询触发器时 or 条件的个数.
+     */
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    private static final String CURSOR_SEPARATOR = "\n";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private SchedulerStateCache schedulerStateCache;
+
+    @Resource
+    private SchedulerShards schedulerShards;
+
+    /**
+     * 与 quartz 配置的表前缀保持一致
+     */
+    @Value("${spring.quartz.properties.org.quartz.jobStore.tablePrefix:QRTZ_}")
+    private String tablePrefix;
+
+    /**
+     * 全量导出时每次从数据库取回的行数
+     */
+    @Value("${quartzjdbc.export.fetch-size:500}")
+    private int exportFetchSize;
+
+    /**
+     * 键集分页查询作业及其触发器.
+     * 第一步：按游标在 qrtz_job_details 上取 pageSize + 1 个作业（多取一个用于判断是否还有下一页）；
+     * 第二步：只为这一页的作业查询 qrtz_triggers 与 qrtz_cron_triggers，再按作业顺序组装，没有触发器的作业同样返回一行.
+     *
+     * @param cursor       ：上一页返回的 nextCursor，为空时查询第一页
+     * @param pageSize     ：每页作业个数
+     * @param jobGroup     ：可选，只查询指定作业组
+     * @param triggerState ：可选，只查询存在该状态触发器的作业，如 PAUSED、WAITING
+     * @return
+     * @throws IllegalArgumentException 游标无法解析时抛出
+     */
+    public KeysetPage findSchedulers(String cursor, Integer pageSize, String jobGroup, String triggerState) {
+        int size = pageSize == null || pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+        String key = StringUtils.defaultString(cursor) + "|" + size + "|" + StringUtils.defaultString(jobGroup) + "|" + StringUtils.defaultString(triggerState);
+        return schedulerStateCache.getPage(key, () -> this.loadSchedulers(cursor, size, jobGroup, triggerState));
+    }
+
+    private KeysetPage loadSchedulers(String cursor, int size, String jobGroup, String triggerState) {
+        String[] seek = StringUtils.isBlank(cursor) ? null : decodeCursor(cursor);
+        NavigableSet<String> schedNames = new TreeSet<>(schedulerShards.getSchedulerNames());
+        if (seek != null) {
+            schedNames = schedNames.tailSet(seek[0], true);
+        }
+
+        //多取一个用于判断是否还有下一页
+        List<Map<String, Object>> jobs = new ArrayList<>(size + 1);
+        for (String schedName : schedNames) {
+            if (jobs.size() > size) {
+                break;
+            }
+            List<Object> args = new ArrayList<>();
+            StringBuilder sql = new StringBuilder("select j.sched_name,j.job_name,j.job_group,j.description,j.job_class_name,j.job_data from ")
+                    .append(tablePrefix).append("JOB_DETAILS j where j.sched_name = ?");
+            args.add(schedName);
+            if (seek != null && seek[0].equals(schedName)) {
+                //(job_group, job_name) > (?, ?) 的展开写法，行值比较并不是所有数据库都支持
+                sql.append(" and (j.job_group > ? or (j.job_group = ? and j.job_name > ?))");
+                Collections.addAll(args, seek[1], seek[1], seek[2]);
+            }
+            if (StringUtils.isNotBlank(jobGroup)) {
+                sql.append(" and j.job_group = ?");
+                args.add(jobGroup);
+            }
+            if (StringUtils.isNotBlank(triggerState)) {
+                sql.append(" and exists (select 1 from ").append(tablePrefix).append("TRIGGERS t")
+                        .append(" where t.sched_name = j.sched_name and t.job_name = j.job_name and t.job_group = j.job_group and t.trigger_state = ?)");
+                args.add(triggerState);
+            }
+            sql.append(" order by j.job_group,j.job_name");
+
+            jobs.addAll(this.query(sql.toString(), args, size + 1 - jobs.size(), (rs, rowNum) -> {
+                Map<String, Object> job = new LinkedHashMap<>();
+                job.put("sched_name", rs.getString(1));
+                job.put("job_name", rs.getString(2));
+                job.put("job_group", rs.getString(3));
+                job.put("job_desc", rs.getString(4));
+                job.put("job_class_name", rs.getString(5));
+                job.put("job_data", JsonJDBCDelegate.readJobData(rs.getBytes(6)));
+                return job;
+            }));
+        }
+        String nextCursor = null;
+        if (jobs.size() > size) {
+            jobs = jobs.subList(0, size);
+            Map<String, Object> last = jobs.get(size - 1);
+            nextCursor = encodeCursor((String) last.get("sched_name"), (String) last.get("job_group"), (String) last.get("job_name"));
+        }
+        return new KeysetPage(this.joinTriggers(jobs, triggerState), nextCursor, size);
+    }
+
+    /**
+     * 查询一页作业对应的触发器，并按作业顺序展开成 作业 + 触发器 的行.
+     *
+     * @param jobs
+     * @param triggerState
+     * @return
+     */
+    private List<Map<String, Object>> joinTriggers(List<Map<String, Object>> jobs, String triggerState) {
+        List<Map<String, Object>> rows = new ArrayList<>(jobs.size());
+        if (jobs.isEmpty()) {
+            return rows;
+        }
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("select t.sched_name,t.job_name,t.job_group,t.trigger_name,t.trigger_group,t.trigger_state,")
+                .append("t.description,t.trigger_type,t.job_data,c.cron_expression from ")
+                .append(tablePrefix).append("TRIGGERS t left outer join ").append(tablePrefix).append("CRON_TRIGGERS c")
+                .append(" on c.sched_name = t.sched_name and c.trigger_name = t.trigger_name and c.trigger_group = t.trigger_group where (");
+        for (int i = 0; i < jobs.size(); i++) {
+            Map<String, Object> job = jobs.get(i);
+            sql.append(i == 0 ? "" : " or ").append("(t.sched_name = ? and t.job_name = ? and t.job_group = ?)");
+            Collections.addAll(args, job.get("sched_name"), job.get("job_name"), job.get("job_group"));
+        }
+        sql.append(")");
+        if (StringUtils.isNotBlank(triggerState)) {
+            sql.append(" and t.trigger_state = ?");
+            args.add(triggerState);
+        }
+        sql.append(" order by t.trigger_group,t.trigger_name");
+
+        Map<String, List<Map<String, Object>>> triggersByJob = new HashMap<>();
+        this.query(sql.toString(), args, 0, (rs, rowNum) -> {
+            Map<String, Object> trigger = new LinkedHashMap<>();
+            trigger.put("trigger_name", rs.getString(4));
+            trigger.put("trigger_group", rs.getString(5));
+            trigger.put("trigger_state", rs.getString(6));
+            trigger.put("trigger_desc", rs.getString(7));
+            trigger.put("trigger_type", rs.getString(8));
+            trigger.put("trigger_data", JsonJDBCDelegate.readJobData(rs.getBytes(9)));
+            trigger.put("cron_expression", rs.getString(10));
+            triggersByJob.computeIfAbsent(jobId(rs.getString(1), rs.getString(3), rs.getString(2)), k -> new ArrayList<>()).add(trigger);
+            return null;
+        });
+        for (Map<String, Object> job : jobs) {
+            List<Map<String, Object>> triggers = triggersByJob.get(jobId((String) job.get("sched_name"), (String) job.get("job_group"), (String) job.get("job_name")));
+            if (triggers == null) {
+                //与原来的左连接一致，没有触发器的作业也返回一行
+                Map<String, Object> row = new LinkedHashMap<>(job);
+                for (String column : new String[]{"trigger_name", "trigger_group", "trigger_state", "trigger_desc", "trigger_type", "trigger_data", "cron_expression"}) {
+                    row.put(column, null);
+                }
+                rows.add(row);
+                continue;
+            }
+            for (Map<String, Object> trigger : triggers) {
+                Map<String, Object> row = new LinkedHashMap<>(job);
+                row.putAll(trigger);
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 全量导出本应用的调度器（{@link SchedulerShards#getSchedulerNames()}）中的作业及其触发器，
+     * 每一行（作业 + 触发器，没有触发器的作业同样一行，字段与 findSchedulers 相同）交给 rowConsumer 处理.
+     * <p>
+     * 使用一条左连接查询、只进（forward only）只读的结果集，并设置 fetchSize，驱动每次只从数据库取回 fetchSize 行，
+     * 处理完一行即可丢弃，内存占用与作业个数无关.
+     * 注意：mysql 的驱动会忽略正数的 fetchSize 一次读取全部结果，所以对 mysql 只在这条语句上设置 fetchSize 为 Integer.MIN_VALUE，
+     * 驱动逐行读取（流式结果集），不需要在连接地址中加上 useCursorFetch=true（那样会影响连接池中所有连接上的所有语句，包括 quartz 的）；
+     * postgresql 只在事务中使用游标，所以这里开启只读事务.
+     *
+     * @param jobGroup    ：可选，只导出指定作业组
+     * @param includeData ：是否导出 job_data、trigger_data 两个 BLOB 字段，为 false 时不查询这两个字段
+     * @param rowConsumer ：处理每一行，如写入响应流
+     * @return 导出的行数
+     */
+    @Transactional(readOnly = true)
+    public long exportSchedulers(String jobGroup, boolean includeData, Consumer<Map<String, Object>> rowConsumer) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("select j.sched_name,j.job_name,j.job_group,j.description,j.job_class_name,")
+                .append(includeData ? "j.job_data," : "")
+                .append("t.trigger_name,t.trigger_group,t.trigger_state,t.description,t.trigger_type,")
+                .append(includeData ? "t.job_data," : "")
+                .append("c.cron_expression from ").append(tablePrefix).append("JOB_DETAILS j left outer join ").append(tablePrefix).append("TRIGGERS t")
+                .append(" on t.sched_name = j.sched_name and t.job_name = j.job_name and t.job_group = j.job_group left outer join ")
+                .append(tablePrefix).append("CRON_TRIGGERS c")
+                .append(" on c.sched_name = t.sched_name and c.trigger_name = t.trigger_name and c.trigger_group = t.trigger_group");
+        Set<String> schedNames = new TreeSet<>(schedulerShards.getSchedulerNames());
+        sql.append(" where j.sched_name in (").append(StringUtils.repeat("?", ",", schedNames.size())).append(")");
+        args.addAll(schedNames);
+        if (StringUtils.isNotBlank(jobGroup)) {
+            sql.append(" and j.job_group = ?");
+            args.add(jobGroup);
+        }
+        //只按主键排序，数据库可以顺着主键索引边读边返回
+        sql.append(" order by j.sched_name,j.job_group,j.job_name");
+        logger.debug("{} <- {}", sql, args);
+
+        long[] count = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            boolean mysql = StringUtils.containsIgnoreCase(connection.getMetaData().getDatabaseProductName(), "mysql");
+            ps.setFetchSize(mysql ? Integer.MIN_VALUE : exportFetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, (ResultSet rs) -> {
+            int column = 0;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("sched_name", rs.getString(++column));
+            row.put("job_name", rs.getString(++column));
+            row.put("job_group", rs.getString(++column));
+            row.put("job_desc", rs.getString(++column));
+            row.put("job_class_name", rs.getString(++column));
+            if (includeData) {
+                row.put("job_data", JsonJDBCDelegate.readJobData(rs.getBytes(++column)));
+            }
+            row.put("trigger_name", rs.getString(++column));
+            row.put("trigger_group", rs.getString(++column));
+            row.put("trigger_state", rs.getString(++column));
+            row.put("trigger_desc", rs.getString(++column));
+            row.put("trigger_type", rs.getString(++column));
+            if (includeData) {
+                row.put("trigger_data", JsonJDBCDelegate.readJobData(rs.getBytes(++column)));
+            }
+            row.put("cron_expression", rs.getString(++column));
+            rowConsumer.accept(row);
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    /**
+     * 查询作业已经存在于哪个调度器（sched_name）中，用于分片时找到作业所在的分片.
+     * 每次最多 MAX_PAGE_SIZE 个作业组成一个 or 条件，走主键索引.
+     *
+     * @param jobKeys    ：待查询的作业
+     * @param schedNames ：只在这些调度器中查找
+     * @return 存在的作业 -> sched_name，不存在的作业不在结果中
+     */
+    public Map<JobKey, String> findJobSchedNames(Collection<JobKey> jobKeys, Collection<String> schedNames) {
+        Map<JobKey, String> result = new HashMap<>();
+        List<JobKey> keys = new ArrayList<>(new LinkedHashSet<>(jobKeys));
+        for (int from = 0; from < keys.size(); from += MAX_PAGE_SIZE) {
+            List<JobKey> part = keys.subList(from, Math.min(from + MAX_PAGE_SIZE, keys.size()));
+            List<Object> args = new ArrayList<>(schedNames);
+            StringBuilder sql = new StringBuilder("select j.sched_name,j.job_name,j.job_group from ")
+                    .append(tablePrefix).append("JOB_DETAILS j where j.sched_name in (")
+                    .append(StringUtils.repeat("?", ",", schedNames.size())).append(") and (");
+            for (int i = 0; i < part.size(); i++) {
+                sql.append(i == 0 ? "" : " or ").append("(j.job_name = ? and j.job_group = ?)");
+                Collections.addAll(args, part.get(i).getName(), part.get(i).getGroup());
+            }
+            sql.append(") order by j.sched_name");
+            this.query(sql.toString(), args, 0, (rs, rowNum) ->
+                    result.putIfAbsent(JobKey.jobKey(rs.getString(2), rs.getString(3)), rs.getString(1)));
+        }
+        return result;
+    }
+
+    /**
+     * 查询触发器已经存在于哪个调度器（sched_name）中，用于分片时保证触发器在所有分片中唯一.
+     * 每次最多 MAX_PAGE_SIZE 个触发器组成一个 or 条件，走主键索引.
+     *
+     * @param triggerKeys ：待查询的触发器
+     * @param schedNames  ：只在这些调度器中查找
+     * @return 存在的触发器 -> sched_name，不存在的触发器不在结果中
+     */
+    public Map<TriggerKey, String> findTriggerSchedNames(Collection<TriggerKey> triggerKeys, Collection<String> schedNames) {
+        Map<TriggerKey, String> result = new HashMap<>();
+        List<TriggerKey> keys = new ArrayList<>(new LinkedHashSet<>(triggerKeys));
+        for (int from = 0; from < keys.size(); from += MAX_PAGE_SIZE) {
+            List<TriggerKey> part = keys.subList(from, Math.min(from + MAX_PAGE_SIZE, keys.size()));
+            List<Object> args = new ArrayList<>(schedNames);
+            StringBuilder sql = new StringBuilder("select t.sched_name,t.trigger_name,t.trigger_group from ")
+                    .append(tablePrefix).append("TRIGGERS t where t.sched_name in (")
+                    .append(StringUtils.repeat("?", ",", schedNames.size())).append(") and (");
+            for (int i = 0; i < part.size(); i++) {
+                sql.append(i == 0 ? "" : " or ").append("(t.trigger_name = ? and t.trigger_group = ?)");
+                Collections.addAll(args, part.get(i).getName(), part.get(i).getGroup());
+            }
+            sql.append(") order by t.sched_name");
+            this.query(sql.toString(), args, 0, (rs, rowNum) ->
+                    result.putIfAbsent(TriggerKey.triggerKey(rs.getString(2), rs.getString(3)), rs.getString(1)));
+        }
+        return result;
+    }
+
+    /**
+     * 统计调度器中 noLaterThan 之前到期、仍处于 WAITING 状态（尚未被获取）的触发器个数，
+     * 走 quartz 自带的索引 IDX_QRTZ_T_NFT_ST (SCHED_NAME,TRIGGER_STATE,NEXT_FIRE_TIME).
+     *
+     * @param schedName   ：调度器名称
+     * @param noLaterThan ：毫秒时间戳
+     * @return
+     */
+    public long countDueTriggers(String schedName, long noLaterThan) {
+        String sql = "select count(*) from " + tablePrefix + "TRIGGERS where sched_name = ? and trigger_state = 'WAITING' and next_fire_time <= ?";
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, schedName, noLaterThan);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 按作业组统计调度器中的触发器个数，一次 group by 查询代替逐个作业 getTriggersOfJob，
+     * 走 quartz 自带的索引 IDX_QRTZ_T_JG (SCHED_NAME,JOB_GROUP)，只读不加锁.
+     *
+     * @param schedName ：调度器名称
+     * @return 作业组 -> 触发器个数，没有触发器的作业组不在结果中
+     */
+    public Map<String, Integer> countTriggersByJobGroup(String schedName) {
+        Map<String, Integer> counts = new HashMap<>();
+        jdbcTemplate.query("select job_group, count(*) from " + tablePrefix + "TRIGGERS where sched_name = ? group by job_group",
+                rs -> {
+                    counts.put(rs.getString(1), rs.getInt(2));
+                }, schedName);
+        return counts;
+    }
+
+    /**
+     * 执行查询，maxRows 大于 0 时最多读取 maxRows 行：驱动按 maxRows 限制返回的行数、每次只取回 maxRows 行，读够后不再调用 next.
+     */
+    private <T> List<T> query(String sql, List<Object> args, int maxRows, RowMapper<T> rowMapper) {
+        logger.debug("{} <- {}", sql, args);
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (maxRows > 0) {
+                ps.setMaxRows(maxRows);
+                ps.setFetchSize(maxRows);
+            }
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, (ResultSet rs) -> {
+            List<T> rows = new ArrayList<>();
+            while ((maxRows <= 0 || rows.size() < maxRows) && rs.next()) {
+                rows.add(rowMapper.mapRow(rs, rows.size()));
+            }
+            return rows;
+        });
+    }
+
+    private static String jobId(String schedName, String jobGroup, String jobName) {
+        return schedName + CURSOR_SEPARATOR + jobGroup + CURSOR_SEPARATOR + jobName;
+    }
+
+    /**
+     * 游标为 sched_name、job_group、job_name 以换行符拼接后的 url 安全 Base64 编码.
+     */
+    static String encodeCursor(String schedName, String jobGroup, String jobName) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(jobId(schedName, jobGroup, jobName).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String[] decodeCursor(String cursor) {
+        try {
+            String[] seek = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(CURSOR_SEPARATOR, 3);
+            if (seek.length == 3) {
+                return seek;
+            }
+        } catch (IllegalArgumentException e) {
+            logger.warn("游标无法解析：{}", cursor);
+        }
+        throw new IllegalArgumentException("invalid cursor: " + cursor);
+    }
+}
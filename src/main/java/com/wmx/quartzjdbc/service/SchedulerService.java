@@ -1,19 +1,33 @@
 package com.wmx.quartzjdbc.service;
 
 import com.wmx.quartzjdbc.config.BeanConfig;
+import com.wmx.quartzjdbc.config.GroupSettings;
+import com.wmx.quartzjdbc.config.SchedulerShards;
+import com.wmx.quartzjdbc.enums.MisfirePolicy;
+import com.wmx.quartzjdbc.pojo.BatchResult;
+import com.wmx.quartzjdbc.pojo.GroupOperation;
 import com.wmx.quartzjdbc.pojo.SchedulerEntity;
 import org.apache.commons.lang3.StringUtils;
 import org.quartz.*;
+import org.quartz.impl.matchers.GroupMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.io.IOException;
 import java.util.*;
 
 /**
  * Scheduler 调度业务层，用于启动、暂停、删除作业(Job)
+ * <p>
+ * 开启分片（quartzjdbc.shard.count 大于 1）时，每个作业属于其中一个分片（逻辑调度器），见 {@link SchedulerShards}：
+ * 已经存在的作业在它所在的分片上操作，新作业按哈希分配；pauseAll、resumeAll、clear、shutdown 对所有分片执行.
+ * 启用热层时，新作业按 {@link SchedulerEntity#getTier()} 或者作业组配置进入热层（内存中）或者持久化的调度器，已经存在的作业留在原来的层.
+ * quartz 只在一个调度器内保证触发器名称唯一，分片后注册触发器前检查其它分片中是否已经存在同名的触发器（属于其它作业），存在时注册失败，
+ * 保证按触发器查找（修改、暂停触发器）时只会找到一个.
  *
  * @author wangmaoxiong
  * @version 1.0
@@ -25,10 +39,55 @@ public class SchedulerService {
 
     private static Logger logger = LoggerFactory.getLogger(SchedulerService.class);
     /**
-     * @see BeanConfig
+     * 调度器分片，第 0 个分片即 {@link BeanConfig#scheduler()}
      */
     @Resource
-    private Scheduler scheduler;
+    private SchedulerShards schedulerShards;
+
+    @Resource
+    private SchedulerQueryService schedulerQueryService;
+
+    @Resource
+    private JobDefinitionCache jobDefinitionCache;
+
+    @Resource
+    private SchedulerStateCache schedulerStateCache;
+
+    @Resource
+    private CronJitter cronJitter;
+
+    /**
+     * 批量注册时，每个事务提交的作业条数
+     */
+    @Value("${quartzjdbc.batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    /**
+     * 按作业组的触发器优先级，同一时刻到期的触发器优先级高的先获取线程，格式见 {@link GroupSettings}
+     */
+    @Value("${quartzjdbc.bulkhead.priorities:}")
+    private String[] priorityConfigs;
+
+    private GroupSettings<Integer> priorities;
+
+    /**
+     * 错过触发策略：未单独配置的作业组使用 default-policy，见 {@link MisfirePolicy}
+     */
+    @Value("${quartzjdbc.misfire.default-policy:SKIP}")
+    private String defaultMisfirePolicyConfig;
+
+    @Value("${quartzjdbc.misfire.group-policies:}")
+    private String[] misfirePolicyConfigs;
+
+    private MisfirePolicy defaultMisfirePolicy;
+    private GroupSettings<MisfirePolicy> misfirePolicies;
+
+    @PostConstruct
+    public void init() {
+        priorities = GroupSettings.parse(priorityConfigs, "quartzjdbc.bulkhead.priorities");
+        defaultMisfirePolicy = MisfirePolicy.of(defaultMisfirePolicyConfig);
+        misfirePolicies = GroupSettings.parse(misfirePolicyConfigs, "quartzjdbc.misfire.group-policies", MisfirePolicy::of);
+    }
 
     /**
      * 注册并启动作业。如果 Job 或者 Trigger 已经存在，则替换它们.
@@ -38,6 +97,7 @@ public class SchedulerService {
      * @throws SchedulerException
      */
     public void scheduleJob(SchedulerEntity schedulerEntity) throws IOException, SchedulerException, ClassNotFoundException {
+        Boolean hot = tierOf(schedulerEntity);
         JobDetail jobDetail = this.getJobDetail(schedulerEntity);
         Trigger trigger = this.getTrigger(schedulerEntity, null);
 
@@ -47,10 +107,156 @@ public class SchedulerService {
         //因为全局配置文件中配置了 spring.quartz.uto-startup=true，所以不再需要手动启动：scheduler.start()
         Set<Trigger> triggerSet = new HashSet<>();
         triggerSet.add(trigger);
+        Scheduler scheduler = this.locate(jobDetail.getKey(), hot);
+        this.checkTriggerUnique(trigger, scheduler);
         scheduler.scheduleJob(jobDetail, triggerSet, true);
         logger.info("注册并启动作业:{}", schedulerEntity);
     }
 
+    /**
+     * 批量注册并启动作业。如果 Job 或者 Trigger 已经存在，则替换它们.
+     * 按 chunkSize 分块，每块通过 scheduleJobs(Map<JobDetail, Set<? extends Trigger>>, boolean) 在一个 JobStore 事务（一次加锁）中提交，
+     * 而不是每个作业一个事务。某一块提交失败时，再逐条注册该块，找出具体失败的条目，其余条目不受影响.
+     * 列表中触发器（trigger_group、trigger_name）重复时只注册第一条，其余各条记为失败，
+     * 否则同一块中的重复触发器会被合并为一个，而每一条都报告成功.
+     *
+     * @param schedulerEntityList
+     * @param chunkSize           ：每个事务提交的条数，为空或者小于等于 0 时使用配置 quartzjdbc.batch.chunk-size
+     * @return 逐条结果与吞吐量
+     */
+    public BatchResult scheduleJobs(List<SchedulerEntity> schedulerEntityList, Integer chunkSize) {
+        long start = System.currentTimeMillis();
+        int size = chunkSize == null || chunkSize <= 0 ? batchChunkSize : chunkSize;
+        BatchResult batchResult = new BatchResult(schedulerEntityList.size(), size);
+        Set<TriggerKey> triggerKeys = new HashSet<>();
+        for (int from = 0; from < schedulerEntityList.size(); from += size) {
+            List<SchedulerEntity> chunk = schedulerEntityList.subList(from, Math.min(from + size, schedulerEntityList.size()));
+            this.scheduleChunk(chunk, from, batchResult, triggerKeys);
+        }
+        batchResult.finish(start);
+        logger.info("批量注册作业完成:{}", batchResult);
+        return batchResult;
+    }
+
+    /**
+     * 提交一块作业。先按作业所在的分片分组，每个分片的作业在一个事务中提交.
+     *
+     * @param chunk
+     * @param offset      ：该块第一条在整个列表中的下标
+     * @param batchResult
+     * @param triggerKeys ：本次批量注册中已经出现过的触发器，用于找出重复的触发器
+     */
+    private void scheduleChunk(List<SchedulerEntity> chunk, int offset, BatchResult batchResult, Set<TriggerKey> triggerKeys) {
+        //下标 -> 构建好的作业与触发器，失败回退逐条注册时使用
+        Map<Integer, Object[]> builtMap = new LinkedHashMap<>();
+        Map<JobKey, Boolean> tiers = new HashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            SchedulerEntity schedulerEntity = chunk.get(i);
+            if (StringUtils.isBlank(schedulerEntity.getCron_expression()) || StringUtils.isBlank(schedulerEntity.getJob_class_name())) {
+                batchResult.add(new BatchResult.Item(offset + i, schedulerEntity, false, "cron_expression or job_class_name is blank"));
+                continue;
+            }
+            try {
+                Boolean hot = tierOf(schedulerEntity);
+                JobDetail jobDetail = this.getJobDetail(schedulerEntity);
+                Trigger trigger = this.getTrigger(schedulerEntity, null);
+                if (!triggerKeys.add(trigger.getKey())) {
+                    batchResult.add(new BatchResult.Item(offset + i, schedulerEntity, false, "duplicate trigger in batch: " + trigger.getKey()));
+                    continue;
+                }
+                builtMap.put(i, new Object[]{jobDetail, trigger});
+                if (hot != null) {
+                    tiers.put(jobDetail.getKey(), hot);
+                }
+            } catch (Exception e) {
+                batchResult.add(new BatchResult.Item(offset + i, schedulerEntity, false, e.getClass().getSimpleName() + ": " + e.getMessage()));
+            }
+        }
+        if (builtMap.isEmpty()) {
+            return;
+        }
+        Set<JobKey> jobKeys = new LinkedHashSet<>();
+        for (Object[] built : builtMap.values()) {
+            jobKeys.add(((JobDetail) built[0]).getKey());
+        }
+        Map<JobKey, Scheduler> shardMap = this.locateAll(jobKeys, tiers);
+        Map<Scheduler, Map<Integer, Object[]>> builtByShard = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Object[]> entry : builtMap.entrySet()) {
+            Scheduler shard = shardMap.get(((JobDetail) entry.getValue()[0]).getKey());
+            builtByShard.computeIfAbsent(shard, k -> new LinkedHashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Scheduler, Map<Integer, Object[]>> entry : builtByShard.entrySet()) {
+            Map<Integer, Object[]> shardBuilt = entry.getValue();
+            List<TriggerKey> triggerKeyList = new ArrayList<>(shardBuilt.size());
+            for (Object[] built : shardBuilt.values()) {
+                triggerKeyList.add(((Trigger) built[1]).getKey());
+            }
+            Map<TriggerKey, String> elsewhere;
+            try {
+                elsewhere = this.findTriggersElsewhere(triggerKeyList, entry.getKey());
+            } catch (SchedulerException e) {
+                for (Integer i : shardBuilt.keySet()) {
+                    batchResult.add(new BatchResult.Item(offset + i, chunk.get(i), false, e.getMessage()));
+                }
+                continue;
+            }
+            for (Iterator<Map.Entry<Integer, Object[]>> it = shardBuilt.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Integer, Object[]> built = it.next();
+                String schedName = elsewhere.get(((Trigger) built.getValue()[1]).getKey());
+                if (schedName != null) {
+                    batchResult.add(new BatchResult.Item(offset + built.getKey(), chunk.get(built.getKey()), false,
+                            "trigger " + ((Trigger) built.getValue()[1]).getKey() + " already exists in scheduler " + schedName));
+                    it.remove();
+                }
+            }
+            if (!shardBuilt.isEmpty()) {
+                this.scheduleChunk(entry.getKey(), chunk, offset, shardBuilt, batchResult);
+            }
+        }
+    }
+
+    /**
+     * 在一个分片上提交一块作业。同一块中 JobKey 相同的作业合并为一个 JobDetail，触发器合并到同一个集合中.
+     *
+     * @param shard       ：作业所在的分片
+     * @param chunk
+     * @param offset      ：该块第一条在整个列表中的下标
+     * @param builtMap    ：下标 -> 构建好的作业与触发器
+     * @param batchResult
+     */
+    private void scheduleChunk(Scheduler shard, List<SchedulerEntity> chunk, int offset, Map<Integer, Object[]> builtMap, BatchResult batchResult) {
+        Map<JobKey, JobDetail> jobDetailMap = new LinkedHashMap<>();
+        Map<JobKey, Set<Trigger>> triggersMap = new HashMap<>();
+        for (Object[] built : builtMap.values()) {
+            JobDetail jobDetail = (JobDetail) built[0];
+            jobDetailMap.put(jobDetail.getKey(), jobDetail);
+            triggersMap.computeIfAbsent(jobDetail.getKey(), k -> new HashSet<>()).add((Trigger) built[1]);
+        }
+        Map<JobDetail, Set<? extends Trigger>> triggersAndJobs = new LinkedHashMap<>();
+        for (Map.Entry<JobKey, JobDetail> entry : jobDetailMap.entrySet()) {
+            triggersAndJobs.put(entry.getValue(), triggersMap.get(entry.getKey()));
+        }
+        try {
+            shard.scheduleJobs(triggersAndJobs, true);
+            for (Integer i : builtMap.keySet()) {
+                batchResult.add(new BatchResult.Item(offset + i, chunk.get(i), true, null));
+            }
+        } catch (SchedulerException e) {
+            logger.warn("批量注册作业失败，改为逐条注册该块({} 条)：{}", builtMap.size(), e.getMessage());
+            for (Map.Entry<Integer, Object[]> entry : builtMap.entrySet()) {
+                SchedulerEntity schedulerEntity = chunk.get(entry.getKey());
+                try {
+                    Set<Trigger> triggerSet = new HashSet<>();
+                    triggerSet.add((Trigger) entry.getValue()[1]);
+                    shard.scheduleJob((JobDetail) entry.getValue()[0], triggerSet, true);
+                    batchResult.add(new BatchResult.Item(offset + entry.getKey(), schedulerEntity, true, null));
+                } catch (SchedulerException ex) {
+                    batchResult.add(new BatchResult.Item(offset + entry.getKey(), schedulerEntity, false, ex.getMessage()));
+                }
+            }
+        }
+    }
+
     /**
      * 修改作业的 cron 触发器规则，并重新注册。
      * 比如任务开始定义的是每1小时执行一次，现在想让它每2小时执行一次，就可以修改触发器规则，然后重新注册.
@@ -61,20 +267,26 @@ public class SchedulerService {
     public Date rescheduleJob(SchedulerEntity schedulerEntity) throws SchedulerException, IOException {
         //触发器参数
         TriggerKey triggerKey = TriggerKey.triggerKey(schedulerEntity.getTrigger_name(), schedulerEntity.getTrigger_group());
-        // scheduler.getTrigger(TriggerKey triggerKey)：从调度器中获取指定的触发器
-        //修改任务的触发器时，触发器必须存在再修改.
-        CronTrigger trigger = (CronTrigger) scheduler.getTrigger(triggerKey);
-        if (trigger == null) {
+        //修改任务的触发器时，触发器必须存在再修改：触发器所在的分片与关联的作业先查缓存，未缓存时 scheduler.getTrigger(TriggerKey) 从调度器中获取
+        SchedulerStateCache.TriggerLocation location = this.locate(triggerKey);
+        if (location == null) {
             logger.warn("根据 {} -> {} 未查到对应触发器..", triggerKey.getGroup(), triggerKey.getName());
             return null;
         }
-        Trigger triggerNew = this.getTrigger(schedulerEntity, null);
+        Scheduler scheduler = schedulerShards.getScheduler(location.getSchedName());
+        //关联原来的作业，rescheduleJob 本身也会使用原触发器的作业
+        Trigger triggerNew = this.getTrigger(schedulerEntity, location.getJobKey());
         /**
          * rescheduleJob(TriggerKey triggerKey, Trigger newTrigger)：重新注册作业
          *      先根据 triggerKey 删除指定的触发器，然后存储新触发器(newTrigger)，并关联相同的作业.
          * 一个触发器只能关联一个 Job，而 一个 Job 可以关联多个触发器.
+         * 触发器不存在时（缓存之后被其它节点删除）返回 null，与未查到触发器相同.
          */
         Date nextDate = scheduler.rescheduleJob(triggerKey, triggerNew);
+        if (nextDate != null) {
+            //调度器事件会移除位置缓存（监听器不知道是哪个分片），分片与作业都没有变化，重新放入
+            schedulerStateCache.putTriggerLocation(triggerKey, location);
+        }
         logger.info("重新绑定作业触发器.{} -> {}." + triggerKey.getGroup(), triggerKey.getName());
         return nextDate;
     }
@@ -92,8 +304,10 @@ public class SchedulerService {
         //1)注册 job 作业
         String job_class_name = schedulerEntity.getJob_class_name();
         JobDetail jobDetail = null;
+        Scheduler scheduler = null;
         if (StringUtils.isNotBlank(job_class_name)) {
             jobDetail = this.getJobDetail(schedulerEntity);
+            scheduler = this.locate(jobDetail.getKey(), tierOf(schedulerEntity));
             //往调度器中添加作业.
             scheduler.addJob(jobDetail, true);
             logger.info("往调度器中添加作业 {}," + jobDetail.getKey());
@@ -102,6 +316,7 @@ public class SchedulerService {
         String job_name = schedulerEntity.getJob_name();
         String job_group = schedulerEntity.getJob_group();
         if (jobDetail == null && StringUtils.isNotBlank(job_group) && StringUtils.isNotBlank(job_name)) {
+            scheduler = this.locate(JobKey.jobKey(job_name, job_group));
             jobDetail = scheduler.getJobDetail(JobKey.jobKey(job_name, job_group));
         }
         String cron_expression = schedulerEntity.getCron_expression();
@@ -112,15 +327,24 @@ public class SchedulerService {
         if (trigger == null) {
             return;
         }
-        //注册触发器。如果触发器不存在，则新增，否则修改
-        boolean checkExists = scheduler.checkExists(trigger.getKey());
-        if (checkExists) {
-            //rescheduleJob(TriggerKey triggerKey, Trigger newTrigger)：更新指定的触发器.
-            scheduler.rescheduleJob(trigger.getKey(), trigger);
-        } else {
-            //scheduleJob(Trigger trigger)：注册触发器，如果触发器已经存在，则报错.
+        //注册触发器。如果触发器不存在，则新增，否则修改。触发器与作业在同一个分片上
+        this.checkTriggerUnique(trigger, scheduler);
+        //触发器是否已经存在，先查缓存
+        SchedulerStateCache.TriggerLocation location = schedulerStateCache.getTriggerLocation(trigger.getKey());
+        boolean checkExists = location != null && location.getSchedName().equals(scheduler.getSchedulerName());
+        if (!checkExists) {
+            Trigger existing = scheduler.getTrigger(trigger.getKey());
+            if (existing != null) {
+                schedulerStateCache.putTriggerLocation(trigger.getKey(), new SchedulerStateCache.TriggerLocation(scheduler.getSchedulerName(), existing.getJobKey()));
+                checkExists = true;
+            }
+        }
+        //rescheduleJob(TriggerKey triggerKey, Trigger newTrigger)：更新指定的触发器，触发器不存在时（缓存之后被其它节点删除）返回 null.
+        //scheduleJob(Trigger trigger)：注册触发器，如果触发器已经存在，则报错.
+        if (!checkExists || scheduler.rescheduleJob(trigger.getKey(), trigger) == null) {
             scheduler.scheduleJob(trigger);
         }
+        schedulerStateCache.putTriggerLocation(trigger.getKey(), new SchedulerStateCache.TriggerLocation(scheduler.getSchedulerName(), trigger.getJobKey()));
     }
 
     /**
@@ -133,7 +357,7 @@ public class SchedulerService {
     public void deleteJob(JobKey jobKey) throws SchedulerException {
         //如果 JobKey 指定的作业不存在，则 deleteJob(JobKey jobKey) 无实质性操作，不会抛异常.
         //删除作业的同时，关联的触发器也会一起被删除.
-        scheduler.deleteJob(jobKey);
+        this.locate(jobKey).deleteJob(jobKey);
         logger.info("删除作业 {} -> {}" + jobKey.getGroup(), jobKey.getName());
     }
 
@@ -146,7 +370,13 @@ public class SchedulerService {
     public void deleteJobList(List<JobKey> jobKeyList) throws SchedulerException {
         //如果 JobKey 指定的作业不存在，则 deleteJob(JobKey jobKey) 无实质性操作，不会抛异常.
         //删除作业的同时，关联的触发器也会一起被删除.
-        scheduler.deleteJobs(jobKeyList);
+        Map<Scheduler, List<JobKey>> jobKeysByShard = new LinkedHashMap<>();
+        for (Map.Entry<JobKey, Scheduler> entry : this.locateAll(jobKeyList).entrySet()) {
+            jobKeysByShard.computeIfAbsent(entry.getValue(), k -> new ArrayList<>()).add(entry.getKey());
+        }
+        for (Map.Entry<Scheduler, List<JobKey>> entry : jobKeysByShard.entrySet()) {
+            entry.getKey().deleteJobs(entry.getValue());
+        }
         logger.info("删除作业 {}", jobKeyList);
     }
 
@@ -157,7 +387,9 @@ public class SchedulerService {
      * @throws SchedulerException
      */
     public void clear() throws SchedulerException {
-        scheduler.clear();
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            scheduler.clear();
+        }
         logger.info("清除/删除所有计划数据，包括所有的 Job，所有的 Trigger，所有的 日历。");
     }
 
@@ -171,7 +403,7 @@ public class SchedulerService {
      * @throws SchedulerException
      */
     public void pauseJob(JobKey jobKey) throws SchedulerException {
-        scheduler.pauseJob(jobKey);
+        this.locate(jobKey).pauseJob(jobKey);
         logger.info("暂停作业 {} -> {}" + jobKey.getGroup(), jobKey.getName());
     }
 
@@ -182,7 +414,9 @@ public class SchedulerService {
      * @throws SchedulerException
      */
     public void pauseAll() throws SchedulerException {
-        scheduler.pauseAll();
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            scheduler.pauseAll();
+        }
         logger.info("暂停所有作业.");
     }
 
@@ -197,7 +431,7 @@ public class SchedulerService {
     public void resumeJob(JobKey jobKey) throws SchedulerException {
         //resumeTrigger(TriggerKey triggerKey)：恢复指定触发器
         //resumeJobs(GroupMatcher<JobKey> matcher)：恢复匹配的整个组下的所有作业.
-        scheduler.resumeJob(jobKey);
+        this.locate(jobKey).resumeJob(jobKey);
         logger.info("恢复指定作业 {}", jobKey);
     }
 
@@ -208,10 +442,100 @@ public class SchedulerService {
      * @throws SchedulerException
      */
     public void resumeAll() throws SchedulerException {
-        scheduler.resumeAll();
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            scheduler.resumeAll();
+        }
         logger.info("恢复所有作业.");
     }
 
+    /**
+     * 暂停作业组匹配的所有作业，每个分片中每个作业组一个事务：pauseJobs(GroupMatcher<JobKey>) 在一次加锁中暂停该组所有作业的触发器.
+     * 进度按触发器个数统计，见 {@link #applyByGroup(GroupMatcher, GroupOperation, boolean)}.
+     *
+     * @param matcher   ：作业组匹配条件，如 GroupMatcher.jobGroupStartsWith("tenant1.")
+     * @param operation ：记录进度
+     * @throws SchedulerException
+     */
+    public void pauseJobs(GroupMatcher<JobKey> matcher, GroupOperation operation) throws SchedulerException {
+        this.applyByGroup(matcher, operation, true);
+        logger.info("暂停作业组 {}", operation);
+    }
+
+    /**
+     * 恢复作业组匹配的所有作业，每个分片中每个作业组一个事务，进度按触发器个数统计.
+     *
+     * @param matcher
+     * @param operation ：记录进度
+     * @throws SchedulerException
+     */
+    public void resumeJobs(GroupMatcher<JobKey> matcher, GroupOperation operation) throws SchedulerException {
+        this.applyByGroup(matcher, operation, false);
+        logger.info("恢复作业组 {}", operation);
+    }
+
+    /**
+     * 逐个分片暂停/恢复匹配的作业：先查出分片中匹配的作业组，再用一次 group by 查询统计这些组的触发器个数（只读，不加锁），累加到总数；
+     * 热层的触发器不在数据库中，在内存中逐个作业统计；
+     * 再按作业组逐个调用 pauseJobs/resumeJobs(GroupMatcher.jobGroupEquals)，每个作业组提交后累加该组的触发器个数，
+     * 前缀匹配到多个组（如多个租户）时进度随每个组推进，而不是整个分片完成后一次跳到终值.
+     *
+     * @param matcher
+     * @param operation
+     * @param pause     ：true 暂停，false 恢复
+     * @throws SchedulerException
+     */
+    private void applyByGroup(GroupMatcher<JobKey> matcher, GroupOperation operation, boolean pause) throws SchedulerException {
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            Set<JobKey> jobKeys = scheduler.getJobKeys(matcher);
+            Map<String, Integer> triggersByGroup = new TreeMap<>();
+            if (scheduler == schedulerShards.getHotScheduler()) {
+                for (JobKey jobKey : jobKeys) {
+                    triggersByGroup.merge(jobKey.getGroup(), scheduler.getTriggersOfJob(jobKey).size(), Integer::sum);
+                }
+            } else if (!jobKeys.isEmpty()) {
+                Map<String, Integer> counts = schedulerQueryService.countTriggersByJobGroup(scheduler.getSchedulerName());
+                for (JobKey jobKey : jobKeys) {
+                    triggersByGroup.put(jobKey.getGroup(), counts.getOrDefault(jobKey.getGroup(), 0));
+                }
+            }
+            if (triggersByGroup.isEmpty()) {
+                continue;
+            }
+            operation.addTotal(triggersByGroup.values().stream().mapToInt(Integer::intValue).sum());
+            for (Map.Entry<String, Integer> entry : triggersByGroup.entrySet()) {
+                if (pause) {
+                    scheduler.pauseJobs(GroupMatcher.jobGroupEquals(entry.getKey()));
+                } else {
+                    scheduler.resumeJobs(GroupMatcher.jobGroupEquals(entry.getKey()));
+                }
+                operation.committed(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 删除作业组匹配的所有作业及其触发器。每个分片先查出匹配的作业，再按 chunkSize 分块通过 deleteJobs(List<JobKey>) 删除，
+     * 每块一个事务，既不会一个事务删除过多的行长时间持有锁，也不会每个作业一个事务.
+     *
+     * @param matcher
+     * @param chunkSize ：每个事务删除的作业个数，为空或者小于等于 0 时使用配置 quartzjdbc.batch.chunk-size
+     * @param operation ：记录进度
+     * @throws SchedulerException
+     */
+    public void deleteJobs(GroupMatcher<JobKey> matcher, Integer chunkSize, GroupOperation operation) throws SchedulerException {
+        int size = chunkSize == null || chunkSize <= 0 ? batchChunkSize : chunkSize;
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            List<JobKey> jobKeys = new ArrayList<>(scheduler.getJobKeys(matcher));
+            operation.addTotal(jobKeys.size());
+            for (int from = 0; from < jobKeys.size(); from += size) {
+                List<JobKey> chunk = jobKeys.subList(from, Math.min(from + size, jobKeys.size()));
+                scheduler.deleteJobs(chunk);
+                operation.committed(chunk.size());
+            }
+        }
+        logger.info("删除作业组 {}", operation);
+    }
+
     /**
      * 停止/关闭 quartz 调度程序，关闭了整个调度的线程池，意味者所有作业都不会继续执行。
      * 可以反复调用，即使当时已经被 shutdown
@@ -219,7 +543,177 @@ public class SchedulerService {
      * @throws SchedulerException
      */
     public void shutdown() throws SchedulerException {
-        scheduler.shutdown(true);
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            scheduler.shutdown(true);
+        }
+    }
+
+    /**
+     * 作业所在的分片：已经存在的作业返回它所在的分片，不存在时返回按哈希分配的分片.
+     *
+     * @param jobKey
+     * @return
+     */
+    private Scheduler locate(JobKey jobKey) {
+        return this.locate(jobKey, null);
+    }
+
+    /**
+     * 作业所在的分片，不存在时返回注册时指定的层（见 {@link SchedulerShards#route(JobKey, Boolean)}）中分配的分片.
+     *
+     * @param jobKey
+     * @param hot    ：为 null 时按作业组配置
+     * @return
+     */
+    private Scheduler locate(JobKey jobKey, Boolean hot) {
+        Set<JobKey> jobKeys = Collections.singleton(jobKey);
+        return this.locateAll(jobKeys, hot == null ? Collections.emptyMap() : Collections.singletonMap(jobKey, hot)).get(jobKey);
+    }
+
+    private Map<JobKey, Scheduler> locateAll(Collection<JobKey> jobKeys) {
+        return this.locateAll(jobKeys, Collections.emptyMap());
+    }
+
+    /**
+     * 批量查找作业所在的分片，只有一个分片时不查询数据库.
+     * 热层的作业在内存中查找；其余先查 {@link SchedulerStateCache}，只为未缓存的作业查询数据库，查到的（已存在的作业）放入缓存.
+     *
+     * @param jobKeys
+     * @param tiers   ：新作业注册时指定的层，true 为热层，没有指定的按作业组配置
+     * @return
+     */
+    private Map<JobKey, Scheduler> locateAll(Collection<JobKey> jobKeys, Map<JobKey, Boolean> tiers) {
+        Map<JobKey, String> existing = new HashMap<>();
+        Set<JobKey> hotKeys = new HashSet<>();
+        if (schedulerShards.getShardCount() > 1) {
+            List<JobKey> uncached = new ArrayList<>();
+            for (JobKey jobKey : jobKeys) {
+                if (this.isHot(jobKey)) {
+                    hotKeys.add(jobKey);
+                    continue;
+                }
+                String schedName = schedulerStateCache.getJobLocation(jobKey);
+                if (schedName != null && schedulerShards.getScheduler(schedName) != null) {
+                    existing.put(jobKey, schedName);
+                } else {
+                    uncached.add(jobKey);
+                }
+            }
+            if (!uncached.isEmpty()) {
+                Map<JobKey, String> found = schedulerQueryService.findJobSchedNames(uncached, schedulerShards.getSchedulerNames());
+                found.forEach(schedulerStateCache::putJobLocation);
+                existing.putAll(found);
+            }
+        }
+        Map<JobKey, Scheduler> shardMap = new LinkedHashMap<>();
+        for (JobKey jobKey : jobKeys) {
+            if (hotKeys.contains(jobKey)) {
+                shardMap.put(jobKey, schedulerShards.getHotScheduler());
+                continue;
+            }
+            String schedName = existing.get(jobKey);
+            shardMap.put(jobKey, schedName == null ? schedulerShards.route(jobKey, tiers.get(jobKey)) : schedulerShards.getScheduler(schedName));
+        }
+        return shardMap;
+    }
+
+    /**
+     * 作业是否已经在热层中（内存查找，不访问数据库）
+     */
+    private boolean isHot(JobKey jobKey) {
+        Scheduler hotScheduler = schedulerShards.getHotScheduler();
+        try {
+            return hotScheduler != null && hotScheduler.checkExists(jobKey);
+        } catch (SchedulerException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 注册时指定的层：hot 为 true，persistent 为 false，为空时返回 null（按作业组配置）
+     */
+    private static Boolean tierOf(SchedulerEntity schedulerEntity) {
+        String tier = StringUtils.trimToNull(schedulerEntity.getTier());
+        if (tier == null) {
+            return null;
+        }
+        if (SchedulerEntity.TIER_HOT.equalsIgnoreCase(tier)) {
+            return Boolean.TRUE;
+        }
+        if (SchedulerEntity.TIER_PERSISTENT.equalsIgnoreCase(tier)) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("tier must be " + SchedulerEntity.TIER_HOT + " or " + SchedulerEntity.TIER_PERSISTENT + ": " + tier);
+    }
+
+    /**
+     * 触发器已经存在于其它分片中时抛出异常，见 {@link #findTriggersElsewhere(Collection, Scheduler)}.
+     *
+     * @param trigger
+     * @param target  ：触发器将要注册到的分片
+     * @throws ObjectAlreadyExistsException
+     */
+    private void checkTriggerUnique(Trigger trigger, Scheduler target) throws SchedulerException {
+        String schedName = this.findTriggersElsewhere(Collections.singletonList(trigger.getKey()), target).get(trigger.getKey());
+        if (schedName != null) {
+            throw new ObjectAlreadyExistsException("trigger " + trigger.getKey() + " already exists in scheduler " + schedName);
+        }
+    }
+
+    /**
+     * 查找已经存在于 target 之外的分片中的触发器，只有一个分片时不查询.
+     * 持久化的分片一次查询数据库（不使用缓存，缓存中可能有已经删除的触发器），热层在内存中查找.
+     *
+     * @param triggerKeys
+     * @param target      ：触发器将要注册到的分片
+     * @return 触发器 -> 所在的其它分片的名称，不存在或者就在 target 中的触发器不在结果中
+     */
+    private Map<TriggerKey, String> findTriggersElsewhere(Collection<TriggerKey> triggerKeys, Scheduler target) throws SchedulerException {
+        Map<TriggerKey, String> elsewhere = new HashMap<>();
+        if (schedulerShards.getShardCount() <= 1 || triggerKeys.isEmpty()) {
+            return elsewhere;
+        }
+        String targetName = target.getSchedulerName();
+        Scheduler hotScheduler = schedulerShards.getHotScheduler();
+        if (hotScheduler != null && hotScheduler != target) {
+            for (TriggerKey triggerKey : triggerKeys) {
+                if (hotScheduler.checkExists(triggerKey)) {
+                    elsewhere.put(triggerKey, hotScheduler.getSchedulerName());
+                }
+            }
+        }
+        Set<String> schedNames = new LinkedHashSet<>(schedulerShards.getSchedulerNames());
+        schedNames.remove(targetName);
+        if (hotScheduler != null) {
+            schedNames.remove(hotScheduler.getSchedulerName());
+        }
+        if (!schedNames.isEmpty()) {
+            elsewhere.putAll(schedulerQueryService.findTriggerSchedNames(triggerKeys, schedNames));
+        }
+        return elsewhere;
+    }
+
+    /**
+     * 触发器所在的分片与关联的作业，先查缓存，未缓存时在各个分片中查找，触发器不存在时返回 null.
+     *
+     * @param triggerKey
+     * @return
+     * @throws SchedulerException
+     */
+    private SchedulerStateCache.TriggerLocation locate(TriggerKey triggerKey) throws SchedulerException {
+        SchedulerStateCache.TriggerLocation cached = schedulerStateCache.getTriggerLocation(triggerKey);
+        if (cached != null && schedulerShards.getScheduler(cached.getSchedName()) != null) {
+            return cached;
+        }
+        for (Scheduler scheduler : schedulerShards.getSchedulers()) {
+            Trigger trigger = scheduler.getTrigger(triggerKey);
+            if (trigger != null) {
+                SchedulerStateCache.TriggerLocation location = new SchedulerStateCache.TriggerLocation(scheduler.getSchedulerName(), trigger.getJobKey());
+                schedulerStateCache.putTriggerLocation(triggerKey, location);
+                return location;
+            }
+        }
+        return null;
     }
 
     /**
@@ -231,16 +725,13 @@ public class SchedulerService {
     private Trigger getTrigger(SchedulerEntity schedulerEntity, JobKey jobKey) {
         //触发器参数
         //schedulerEntity 中 job_data 属性值必须设置为 json 字符串格式，所以这里转为 JobDataMap 对象.
-        JobDataMap triggerDataMap = new JobDataMap();
         Map<String, Object> triggerData = schedulerEntity.getTrigger_data();
-        if (triggerData != null && triggerData.size() > 0) {
-            triggerDataMap.putAll(triggerData);
-        }
+        JobDataMap triggerDataMap = triggerData != null && triggerData.size() > 0 ? new JobDataMap(triggerData) : new JobDataMap();
         //如果触发器名称为空，则使用 UUID 随机生成. group 为null时，会默认为 default.
         if (StringUtils.isBlank(schedulerEntity.getTrigger_name())) {
             schedulerEntity.setTrigger_name(UUID.randomUUID().toString());
         }
-        //过期执行策略采用：MISFIRE_INSTRUCTION_DO_NOTHING
+        //过期执行策略按作业组配置，默认 MISFIRE_INSTRUCTION_DO_NOTHING
         //forJob：为触发器关联作业. 一个触发器只能关联一个作业.
         TriggerBuilder<Trigger> triggerBuilder = TriggerBuilder.newTrigger();
         triggerBuilder.withIdentity(schedulerEntity.getTrigger_name(), schedulerEntity.getTrigger_group());
@@ -249,8 +740,18 @@ public class SchedulerService {
         if (jobKey != null && jobKey.getName() != null) {
             triggerBuilder.forJob(jobKey);
         }
-        triggerBuilder.withSchedule(CronScheduleBuilder.cronSchedule(schedulerEntity.getCron_expression())
-                .withMisfireHandlingInstructionDoNothing());
+        //按作业组的窗口打散触发时间，作业组以关联的作业为准
+        TriggerKey triggerKey = TriggerKey.triggerKey(schedulerEntity.getTrigger_name(), schedulerEntity.getTrigger_group());
+        String jobGroup = jobKey != null ? jobKey.getGroup() : StringUtils.defaultIfBlank(schedulerEntity.getJob_group(), JobKey.DEFAULT_GROUP);
+        String cronExpression = cronJitter.apply(schedulerEntity.getCron_expression(), jobGroup, triggerKey);
+        //优先级同样按作业组配置，未配置时为默认的 5
+        triggerBuilder.withPriority(priorities.get(jobGroup, Trigger.DEFAULT_PRIORITY));
+        //未打散的 cron 表达式从缓存中获取，避免重复解析；打散后的表达式几乎每个触发器都不同，直接解析，不进入缓存，以免挤掉共用的表达式
+        MisfirePolicy misfirePolicy = misfirePolicies.get(jobGroup, defaultMisfirePolicy);
+        CronScheduleBuilder cronSchedule = cronExpression.equals(schedulerEntity.getCron_expression())
+                ? CronScheduleBuilder.cronSchedule(jobDefinitionCache.getCronExpression(cronExpression))
+                : CronScheduleBuilder.cronSchedule(cronExpression);
+        triggerBuilder.withSchedule(misfirePolicy.apply(cronSchedule));
         return triggerBuilder.build();
     }
 
@@ -268,13 +769,11 @@ public class SchedulerService {
         if (StringUtils.isBlank(schedulerEntity.getJob_name())) {
             schedulerEntity.setJob_name(UUID.randomUUID().toString());
         }
-        Class<? extends Job> jobClass = (Class<? extends Job>) Class.forName(schedulerEntity.getJob_class_name());
-        //作业参数
-        JobDataMap jobDataMap = new JobDataMap();
+        //作业类从缓存中获取，同时校验白名单
+        Class<? extends Job> jobClass = jobDefinitionCache.getJobClass(schedulerEntity.getJob_class_name());
+        //作业参数，直接以 map 构造，只复制一次
         Map<String, Object> jobData = schedulerEntity.getJob_data();
-        if (jobData != null && jobData.size() > 0) {
-            jobDataMap.putAll(jobData);
-        }
+        JobDataMap jobDataMap = jobData != null && jobData.size() > 0 ? new JobDataMap(jobData) : new JobDataMap();
         //设置任务详情.
         return JobBuilder.newJob(jobClass)
                 .withIdentity(schedulerEntity.getJob_name(), schedulerEntity.getJob_group())
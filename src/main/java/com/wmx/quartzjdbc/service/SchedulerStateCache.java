@@ -0,0 +1,366 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.pojo.KeysetPage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.quartz.*;
+import org.quartz.listeners.SchedulerListenerSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 调度状态缓存：findSchedulers 的分页结果、作业所在的分片（sched_name）、触发器所在的分片与关联的作业.
+ * 看板轮询 findSchedulers、管理接口查找作业/触发器（rescheduleJob 的 getTrigger、scheduleJobOrTrigger 的 checkExists）时
+ * 不再每次都查询数据库，避免与调度器获取触发器的查询争用 QRTZ_TRIGGERS.
+ * <p>
+ * 失效：
+ * 1、本节点：作为全局 {@link SchedulerListener}（由 {@link com.wmx.quartzjdbc.config.QuartzListenerConfig} 注册到所有分片），
+ * 作业、触发器的新增、删除、暂停、恢复时清空分页缓存并移除相关的位置缓存；
+ * 2、集群其它节点：本节点发生变化时把 QRTZ_CACHE_VERSION 表中的版本号加 1（每隔 version-check-interval 合并提交一次，批量注册时不会每条都写），
+ * 加 1 与读取在同一个事务中，读到的是本节点加 1 后的值，它比上次看到的值大不止 1 说明其间其它节点也修改过；没有变化时只读取版本号，
+ * 与上次看到的不同说明其它节点修改过。其它节点修改过时清空全部缓存。
+ * 表不存在（sql 语法错误）时只做本节点失效（输出警告），连接断开、超时等暂时性的错误下次检查时重试；
+ * 3、触发器每次触发时状态（WAITING、ACQUIRED、EXECUTING）都会变化，但没有 SchedulerListener 事件，所以分页结果另有存活时间 ttl.
+ * <p>
+ * 指标：quartz.state.cache.hits/misses/size（cache 标签区分 page、jobLocation、triggerLocation，过期的分页结果按未命中计数），
+ * quartz.state.cache.staleness（命中时缓存数据的年龄），quartz.state.cache.invalidations（source=local|remote）.
+ *
+ * @author wangmaoxiong
+ */
+@Component
+public class SchedulerStateCache extends SchedulerListenerSupport {
+    private static Logger logger = LoggerFactory.getLogger(SchedulerStateCache.class);
+    private static final String CACHE_NAME = "SCHEDULER_STATE";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${quartzjdbc.state-cache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 分页结果的存活时间（毫秒）
+     */
+    @Value("${quartzjdbc.state-cache.ttl:5000}")
+    private long ttl;
+
+    @Value("${spring.quartz.properties.org.quartz.jobStore.tablePrefix:QRTZ_}")
+    private String tablePrefix;
+
+    private final JobDefinitionCache.LruCache<String, PageEntry> pageCache;
+    private final JobDefinitionCache.LruCache<JobKey, String> jobLocationCache;
+    private final JobDefinitionCache.LruCache<TriggerKey, TriggerLocation> triggerLocationCache;
+
+    /**
+     * 本节点有变化、尚未写入版本表；检查时 getAndSet(false) 取走，取走之后发生的变化留到下次检查
+     */
+    private final AtomicBoolean pendingChange = new AtomicBoolean();
+    /**
+     * 版本表不存在时为 false，只做本节点失效
+     */
+    private volatile boolean versionTableAvailable = true;
+    private long lastSeenVersion = -1;
+
+    private Timer staleness;
+    private Counter localInvalidations;
+    private Counter remoteInvalidations;
+
+    public SchedulerStateCache(@Value("${quartzjdbc.state-cache.size:1000}") int cacheSize) {
+        this.pageCache = new JobDefinitionCache.LruCache<>(cacheSize);
+        this.jobLocationCache = new JobDefinitionCache.LruCache<>(cacheSize);
+        this.triggerLocationCache = new JobDefinitionCache.LruCache<>(cacheSize);
+    }
+
+    @PostConstruct
+    public void init() {
+        bindCache("page", pageCache);
+        bindCache("jobLocation", jobLocationCache);
+        bindCache("triggerLocation", triggerLocationCache);
+        staleness = Timer.builder("quartz.state.cache.staleness")
+                .description("age of cached scheduler state when served")
+                .register(meterRegistry);
+        localInvalidations = meterRegistry.counter("quartz.state.cache.invalidations", "source", "local");
+        remoteInvalidations = meterRegistry.counter("quartz.state.cache.invalidations", "source", "remote");
+    }
+
+    private void bindCache(String cacheName, JobDefinitionCache.LruCache<?, ?> cache) {
+        FunctionCounter.builder("quartz.state.cache.hits", cache, JobDefinitionCache.LruCache::getHits)
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+        FunctionCounter.builder("quartz.state.cache.misses", cache, JobDefinitionCache.LruCache::getMisses)
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+        Gauge.builder("quartz.state.cache.size", cache, JobDefinitionCache.LruCache::size)
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 分页查询结果，未命中或者超过存活时间时由 loader 查询数据库.
+     *
+     * @param key    ：查询条件组成的 key
+     * @param loader ：实际的查询
+     * @return
+     */
+    public KeysetPage getPage(String key, Supplier<KeysetPage> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long now = System.currentTimeMillis();
+        PageEntry entry = pageCache.get(key, cached -> now - cached.loadedAt <= ttl);
+        if (entry != null) {
+            staleness.record(now - entry.loadedAt, TimeUnit.MILLISECONDS);
+            return entry.page;
+        }
+        KeysetPage page = loader.get();
+        pageCache.put(key, new PageEntry(page, now));
+        return page;
+    }
+
+    /**
+     * 作业所在的分片，未缓存时返回 null
+     */
+    public String getJobLocation(JobKey jobKey) {
+        return enabled ? jobLocationCache.get(jobKey) : null;
+    }
+
+    /**
+     * 缓存已存在的作业所在的分片，不存在的作业不缓存
+     */
+    public void putJobLocation(JobKey jobKey, String schedName) {
+        if (enabled) {
+            jobLocationCache.put(jobKey, schedName);
+        }
+    }
+
+    /**
+     * 触发器所在的分片与关联的作业，未缓存时返回 null
+     */
+    public TriggerLocation getTriggerLocation(TriggerKey triggerKey) {
+        return enabled ? triggerLocationCache.get(triggerKey) : null;
+    }
+
+    /**
+     * 缓存已存在的触发器所在的分片与关联的作业，不存在的触发器不缓存
+     */
+    public void putTriggerLocation(TriggerKey triggerKey, TriggerLocation location) {
+        if (enabled) {
+            triggerLocationCache.put(triggerKey, location);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("page", pageCache.getStats());
+        stats.put("jobLocation", jobLocationCache.getStats());
+        stats.put("triggerLocation", triggerLocationCache.getStats());
+        stats.put("versionTableAvailable", versionTableAvailable);
+        stats.put("lastSeenVersion", lastSeenVersion);
+        return stats;
+    }
+
+    /**
+     * 提交本节点的变化、检查其它节点的变化.
+     */
+    @Scheduled(fixedDelayString = "${quartzjdbc.state-cache.version-check-interval:1000}")
+    public void checkVersion() {
+        if (!enabled || !versionTableAvailable) {
+            return;
+        }
+        boolean ownChange = pendingChange.getAndSet(false);
+        try {
+            long version;
+            boolean remoteChange;
+            if (ownChange) {
+                //本节点的变化，分页缓存在事件发生时已经清空
+                version = transactionTemplate.execute(status -> this.increaseVersion());
+                remoteChange = version != lastSeenVersion + 1;
+            } else {
+                version = this.selectVersion();
+                remoteChange = version != lastSeenVersion;
+            }
+            if (remoteChange && lastSeenVersion >= 0) {
+                this.clear();
+                remoteInvalidations.increment();
+            }
+            lastSeenVersion = version;
+        } catch (BadSqlGrammarException e) {
+            versionTableAvailable = false;
+            logger.warn("{}CACHE_VERSION 表不可用，调度状态缓存只在本节点失效，集群下其它节点的修改要等 ttl 过期后才可见：{}",
+                    tablePrefix, e.getMessage());
+        } catch (DataAccessException e) {
+            if (ownChange) {
+                pendingChange.set(true);
+            }
+            logger.warn("检查调度状态缓存版本失败，下次重试：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 版本号加 1 并读取，需要在事务中调用：update 锁住的行在提交前其它节点无法修改，读到的就是本节点加 1 后的值.
+     * 行不存在时插入，版本号为 1；其它节点同时插入时抛出 DuplicateKeyException，由下次检查重试.
+     */
+    private long increaseVersion() {
+        int updated = jdbcTemplate.update("update " + tablePrefix + "CACHE_VERSION set version = version + 1 where cache_name = ?", CACHE_NAME);
+        if (updated == 0) {
+            jdbcTemplate.update("insert into " + tablePrefix + "CACHE_VERSION (cache_name, version) values (?, 1)", CACHE_NAME);
+            return 1;
+        }
+        return this.selectVersion();
+    }
+
+    private long selectVersion() {
+        List<Long> versions = jdbcTemplate.queryForList("select version from " + tablePrefix + "CACHE_VERSION where cache_name = ?", Long.class, CACHE_NAME);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    private void clear() {
+        pageCache.clear();
+        jobLocationCache.clear();
+        triggerLocationCache.clear();
+    }
+
+    /**
+     * 本节点发生变化：清空分页缓存，下次检查时写入版本表
+     */
+    private void changed() {
+        pageCache.clear();
+        pendingChange.set(true);
+        localInvalidations.increment();
+    }
+
+    @Override
+    public void jobScheduled(Trigger trigger) {
+        //监听器被所有分片共用，无法知道是哪个分片，移除后下次重新查找
+        triggerLocationCache.remove(trigger.getKey());
+        this.changed();
+    }
+
+    @Override
+    public void jobUnscheduled(TriggerKey triggerKey) {
+        triggerLocationCache.remove(triggerKey);
+        this.changed();
+    }
+
+    @Override
+    public void triggerFinalized(Trigger trigger) {
+        triggerLocationCache.remove(trigger.getKey());
+        this.changed();
+    }
+
+    @Override
+    public void triggerPaused(TriggerKey triggerKey) {
+        this.changed();
+    }
+
+    @Override
+    public void triggersPaused(String triggerGroup) {
+        this.changed();
+    }
+
+    @Override
+    public void triggerResumed(TriggerKey triggerKey) {
+        this.changed();
+    }
+
+    @Override
+    public void triggersResumed(String triggerGroup) {
+        this.changed();
+    }
+
+    @Override
+    public void jobAdded(JobDetail jobDetail) {
+        jobLocationCache.remove(jobDetail.getKey());
+        this.changed();
+    }
+
+    @Override
+    public void jobDeleted(JobKey jobKey) {
+        jobLocationCache.remove(jobKey);
+        //作业的触发器一起被删除，但这里不知道是哪些触发器
+        triggerLocationCache.clear();
+        this.changed();
+    }
+
+    @Override
+    public void jobPaused(JobKey jobKey) {
+        this.changed();
+    }
+
+    @Override
+    public void jobsPaused(String jobGroup) {
+        this.changed();
+    }
+
+    @Override
+    public void jobResumed(JobKey jobKey) {
+        this.changed();
+    }
+
+    @Override
+    public void jobsResumed(String jobGroup) {
+        this.changed();
+    }
+
+    @Override
+    public void schedulingDataCleared() {
+        this.clear();
+        this.changed();
+    }
+
+    /**
+     * 触发器所在的分片（sched_name）与关联的作业
+     */
+    public static class TriggerLocation {
+        private final String schedName;
+        private final JobKey jobKey;
+
+        public TriggerLocation(String schedName, JobKey jobKey) {
+            this.schedName = schedName;
+            this.jobKey = jobKey;
+        }
+
+        public String getSchedName() {
+            return schedName;
+        }
+
+        public JobKey getJobKey() {
+            return jobKey;
+        }
+    }
+
+    private static class PageEntry {
+        private final KeysetPage page;
+        private final long loadedAt;
+
+        PageEntry(KeysetPage page, long loadedAt) {
+            this.page = page;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+#
+# 把作业执行历史表 QRTZ_JOB_HISTORY 重建为按 FIRED_TIME（毫秒时间戳）RANGE 分区的表，配合 quartzjdbc.history.partition.mode=NATIVE 使用.
+# 在 tables_mysql_innodb.sql 之后执行，原表中的数据会被删除.
+# 分区名为 p + yyyyMMdd（UTC），VALUES LESS THAN 为第二天 0 点的毫秒时间戳，由应用的维护任务提前创建、过期删除.
+# 分区列必须包含在每个唯一键中，所以主键加上 FIRED_TIME.
+#
+
+DROP TABLE IF EXISTS QRTZ_JOB_HISTORY;
+
+CREATE TABLE QRTZ_JOB_HISTORY (
+SCHED_NAME VARCHAR(120) NOT NULL,
+ENTRY_ID VARCHAR(95) NOT NULL,
+JOB_NAME VARCHAR(190) NOT NULL,
+JOB_GROUP VARCHAR(190) NOT NULL,
+TRIGGER_NAME VARCHAR(190) NULL,
+TRIGGER_GROUP VARCHAR(190) NULL,
+INSTANCE_NAME VARCHAR(200) NOT NULL,
+SCHED_TIME BIGINT(13) NULL,
+FIRED_TIME BIGINT(13) NOT NULL,
+RUN_TIME BIGINT(19) NOT NULL,
+STATUS VARCHAR(16) NOT NULL,
+RESULT_DATA VARCHAR(250) NULL,
+ERROR_MESSAGE VARCHAR(1000) NULL,
+PRIMARY KEY (SCHED_NAME,ENTRY_ID,FIRED_TIME))
+ENGINE=InnoDB
+PARTITION BY RANGE (FIRED_TIME) (
+PARTITION p19700101 VALUES LESS THAN (86400000)
+);
+
+CREATE INDEX IDX_QRTZ_JH_J_FT ON QRTZ_JOB_HISTORY(JOB_GROUP,JOB_NAME,FIRED_TIME);
+
+commit;
@@ -0,0 +1,28 @@
+-- 把作业执行历史表 qrtz_job_history 重建为按 FIRED_TIME（毫秒时间戳）范围分区的表（PostgreSQL 11 及以上），
+-- 配合 quartzjdbc.history.partition.mode=NATIVE 使用. 在 tables_postgres.sql 之后执行，原表中的数据会被删除.
+-- 分区为子表 qrtz_job_history_p + yyyyMMdd（UTC），由应用的维护任务提前创建、过期删除.
+-- 分区表的主键必须包含分区列，所以主键加上 FIRED_TIME；父表上的索引会自动创建到每个分区.
+
+DROP TABLE IF EXISTS qrtz_job_history;
+
+CREATE TABLE qrtz_job_history
+  (
+    SCHED_NAME VARCHAR(120) NOT NULL,
+    ENTRY_ID VARCHAR(95) NOT NULL,
+    JOB_NAME VARCHAR(200) NOT NULL,
+    JOB_GROUP VARCHAR(200) NOT NULL,
+    TRIGGER_NAME VARCHAR(200) NULL,
+    TRIGGER_GROUP VARCHAR(200) NULL,
+    INSTANCE_NAME VARCHAR(200) NOT NULL,
+    SCHED_TIME BIGINT NULL,
+    FIRED_TIME BIGINT NOT NULL,
+    RUN_TIME BIGINT NOT NULL,
+    STATUS VARCHAR(16) NOT NULL,
+    RESULT_DATA VARCHAR(250) NULL,
+    ERROR_MESSAGE VARCHAR(1000) NULL,
+    PRIMARY KEY (SCHED_NAME,ENTRY_ID,FIRED_TIME)
+) PARTITION BY RANGE (FIRED_TIME);
+
+create index idx_qrtz_jh_j_ft on qrtz_job_history(JOB_GROUP,JOB_NAME,FIRED_TIME);
+
+commit;
@@ -55,6 +55,61 @@ CREATE TABLE QRTZ_LOCKS (
   LOCK_NAME VARCHAR (40)  NOT NULL 
 );
 
+CREATE TABLE QRTZ_CACHE_VERSION (
+  CACHE_NAME VARCHAR(120) NOT NULL,
+  VERSION BIGINT NOT NULL
+);
+
+CREATE TABLE QRTZ_IMPORT_CHECKPOINT (
+  IMPORT_ID VARCHAR(200) NOT NULL,
+  RECORDS BIGINT NOT NULL,
+  UPDATED_TIME BIGINT NOT NULL
+);
+
+CREATE TABLE QRTZ_JOB_HISTORY (
+  SCHED_NAME VARCHAR(120) NOT NULL,
+  ENTRY_ID VARCHAR(95) NOT NULL,
+  JOB_NAME VARCHAR(200) NOT NULL,
+  JOB_GROUP VARCHAR(200) NOT NULL,
+  TRIGGER_NAME VARCHAR(200) NULL,
+  TRIGGER_GROUP VARCHAR(200) NULL,
+  INSTANCE_NAME VARCHAR(200) NOT NULL,
+  SCHED_TIME BIGINT NULL,
+  FIRED_TIME BIGINT NOT NULL,
+  RUN_TIME BIGINT NOT NULL,
+  STATUS VARCHAR(16) NOT NULL,
+  RESULT_DATA VARCHAR(250) NULL,
+  ERROR_MESSAGE VARCHAR(1000) NULL
+);
+
+CREATE TABLE QRTZ_LEASES (
+  SCHED_NAME VARCHAR(120) NOT NULL,
+  SLICE_ID INTEGER NOT NULL,
+  OWNER VARCHAR(200) NULL,
+  EXPIRES BIGINT NOT NULL
+);
+
+CREATE TABLE QRTZ_HOT_TRIGGERS (
+  SCHED_NAME VARCHAR(120) NOT NULL,
+  TRIGGER_NAME VARCHAR(200) NOT NULL,
+  TRIGGER_GROUP VARCHAR(200) NOT NULL,
+  JOB_NAME VARCHAR(200) NOT NULL,
+  JOB_GROUP VARCHAR(200) NOT NULL,
+  JOB_CLASS_NAME VARCHAR(250) NOT NULL,
+  JOB_DESC VARCHAR(250) NULL,
+  TRIGGER_DESC VARCHAR(250) NULL,
+  CRON_EXPRESSION VARCHAR(120) NOT NULL,
+  TIME_ZONE_ID VARCHAR(80) NULL,
+  MISFIRE_INSTR SMALLINT NOT NULL,
+  PRIORITY INTEGER NOT NULL,
+  TRIGGER_STATE VARCHAR(16) NOT NULL,
+  JOB_DATA VARCHAR(2000) NULL,
+  TRIGGER_DATA VARCHAR(2000) NULL,
+  PREV_FIRE_TIME BIGINT NULL,
+  NEXT_FIRE_TIME BIGINT NULL,
+  UPDATED_TIME BIGINT NOT NULL
+);
+
 CREATE TABLE QRTZ_JOB_DETAILS (
   SCHED_NAME VARCHAR(120) NOT NULL,
   JOB_NAME VARCHAR (200)  NOT NULL ,
@@ -164,6 +219,40 @@ ALTER TABLE QRTZ_LOCKS  ADD
     LOCK_NAME
   );
 
+ALTER TABLE QRTZ_CACHE_VERSION  ADD
+  CONSTRAINT PK_QRTZ_CACHE_VERSION PRIMARY KEY  
+  (
+    CACHE_NAME
+  );
+
+ALTER TABLE QRTZ_IMPORT_CHECKPOINT  ADD
+  CONSTRAINT PK_QRTZ_IMPORT_CHECKPOINT PRIMARY KEY  
+  (
+    IMPORT_ID
+  );
+
+ALTER TABLE QRTZ_JOB_HISTORY  ADD
+  CONSTRAINT PK_QRTZ_JOB_HISTORY PRIMARY KEY  
+  (
+    SCHED_NAME,
+    ENTRY_ID
+  );
+
+ALTER TABLE QRTZ_LEASES  ADD
+  CONSTRAINT PK_QRTZ_LEASES PRIMARY KEY  
+  (
+    SCHED_NAME,
+    SLICE_ID
+  );
+
+ALTER TABLE QRTZ_HOT_TRIGGERS  ADD
+  CONSTRAINT PK_QRTZ_HOT_TRIGGERS PRIMARY KEY  
+  (
+    SCHED_NAME,
+    TRIGGER_NAME,
+    TRIGGER_GROUP
+  );
+
 ALTER TABLE QRTZ_JOB_DETAILS  ADD
   CONSTRAINT PK_QRTZ_JOB_DETAILS PRIMARY KEY  
   (
@@ -246,4 +335,8 @@ ALTER TABLE QRTZ_TRIGGERS ADD
     JOB_GROUP
   );
   
+CREATE INDEX IDX_QRTZ_J_GRP_NAME ON QRTZ_JOB_DETAILS(SCHED_NAME,JOB_GROUP,JOB_NAME);
+CREATE INDEX IDX_QRTZ_JH_J_FT ON QRTZ_JOB_HISTORY(JOB_GROUP,JOB_NAME,FIRED_TIME);
+CREATE INDEX IDX_QRTZ_JH_FT ON QRTZ_JOB_HISTORY(FIRED_TIME);
+
 COMMIT;
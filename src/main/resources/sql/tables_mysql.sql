@@ -11,6 +11,11 @@ DROP TABLE IF EXISTS QRTZ_FIRED_TRIGGERS;
 DROP TABLE IF EXISTS QRTZ_PAUSED_TRIGGER_GRPS;
 DROP TABLE IF EXISTS QRTZ_SCHEDULER_STATE;
 DROP TABLE IF EXISTS QRTZ_LOCKS;
+DROP TABLE IF EXISTS QRTZ_CACHE_VERSION;
+DROP TABLE IF EXISTS QRTZ_IMPORT_CHECKPOINT;
+DROP TABLE IF EXISTS QRTZ_JOB_HISTORY;
+DROP TABLE IF EXISTS QRTZ_LEASES;
+DROP TABLE IF EXISTS QRTZ_HOT_TRIGGERS;
 DROP TABLE IF EXISTS QRTZ_SIMPLE_TRIGGERS;
 DROP TABLE IF EXISTS QRTZ_SIMPROP_TRIGGERS;
 DROP TABLE IF EXISTS QRTZ_CRON_TRIGGERS;
@@ -164,5 +169,75 @@ CREATE TABLE QRTZ_LOCKS
     PRIMARY KEY (SCHED_NAME,LOCK_NAME)
 );
 
+CREATE TABLE QRTZ_CACHE_VERSION
+  (
+    CACHE_NAME VARCHAR(120) NOT NULL,
+    VERSION BIGINT(19) NOT NULL,
+    PRIMARY KEY (CACHE_NAME)
+);
+
+CREATE TABLE QRTZ_IMPORT_CHECKPOINT
+  (
+    IMPORT_ID VARCHAR(200) NOT NULL,
+    RECORDS BIGINT(19) NOT NULL,
+    UPDATED_TIME BIGINT(13) NOT NULL,
+    PRIMARY KEY (IMPORT_ID)
+);
+
+CREATE TABLE QRTZ_JOB_HISTORY
+  (
+    SCHED_NAME VARCHAR(120) NOT NULL,
+    ENTRY_ID VARCHAR(95) NOT NULL,
+    JOB_NAME VARCHAR(200) NOT NULL,
+    JOB_GROUP VARCHAR(200) NOT NULL,
+    TRIGGER_NAME VARCHAR(200) NULL,
+    TRIGGER_GROUP VARCHAR(200) NULL,
+    INSTANCE_NAME VARCHAR(200) NOT NULL,
+    SCHED_TIME BIGINT(13) NULL,
+    FIRED_TIME BIGINT(13) NOT NULL,
+    RUN_TIME BIGINT(19) NOT NULL,
+    STATUS VARCHAR(16) NOT NULL,
+    RESULT_DATA VARCHAR(250) NULL,
+    ERROR_MESSAGE VARCHAR(1000) NULL,
+    PRIMARY KEY (SCHED_NAME,ENTRY_ID)
+);
+
+CREATE INDEX IDX_QRTZ_JH_J_FT ON QRTZ_JOB_HISTORY(JOB_GROUP,JOB_NAME,FIRED_TIME);
+CREATE INDEX IDX_QRTZ_JH_FT ON QRTZ_JOB_HISTORY(FIRED_TIME);
+
+CREATE TABLE QRTZ_LEASES
+  (
+    SCHED_NAME VARCHAR(120) NOT NULL,
+    SLICE_ID INTEGER NOT NULL,
+    OWNER VARCHAR(200) NULL,
+    EXPIRES BIGINT(13) NOT NULL,
+    PRIMARY KEY (SCHED_NAME,SLICE_ID)
+);
+
+CREATE TABLE QRTZ_HOT_TRIGGERS
+  (
+    SCHED_NAME VARCHAR(120) NOT NULL,
+    TRIGGER_NAME VARCHAR(200) NOT NULL,
+    TRIGGER_GROUP VARCHAR(200) NOT NULL,
+    JOB_NAME VARCHAR(200) NOT NULL,
+    JOB_GROUP VARCHAR(200) NOT NULL,
+    JOB_CLASS_NAME VARCHAR(250) NOT NULL,
+    JOB_DESC VARCHAR(250) NULL,
+    TRIGGER_DESC VARCHAR(250) NULL,
+    CRON_EXPRESSION VARCHAR(120) NOT NULL,
+    TIME_ZONE_ID VARCHAR(80) NULL,
+    MISFIRE_INSTR SMALLINT(2) NOT NULL,
+    PRIORITY INTEGER NOT NULL,
+    TRIGGER_STATE VARCHAR(16) NOT NULL,
+    JOB_DATA VARCHAR(2000) NULL,
+    TRIGGER_DATA VARCHAR(2000) NULL,
+    PREV_FIRE_TIME BIGINT(13) NULL,
+    NEXT_FIRE_TIME BIGINT(13) NULL,
+    UPDATED_TIME BIGINT(13) NOT NULL,
+    PRIMARY KEY (SCHED_NAME,TRIGGER_NAME,TRIGGER_GROUP)
+);
+
+CREATE INDEX IDX_QRTZ_J_GRP_NAME ON QRTZ_JOB_DETAILS(SCHED_NAME,JOB_GROUP,JOB_NAME);
+
 
 commit;
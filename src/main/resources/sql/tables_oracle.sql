@@ -30,6 +30,11 @@ drop table qrtz_triggers;
 drop table qrtz_job_details;
 drop table qrtz_paused_trigger_grps;
 drop table qrtz_locks;
+drop table qrtz_cache_version;
+drop table qrtz_import_checkpoint;
+drop table qrtz_job_history;
+drop table qrtz_leases;
+drop table qrtz_hot_triggers;
 drop table qrtz_scheduler_state;
 
 
@@ -166,9 +171,76 @@ CREATE TABLE qrtz_locks
     LOCK_NAME  VARCHAR2(40) NOT NULL, 
     CONSTRAINT QRTZ_LOCKS_PK PRIMARY KEY (SCHED_NAME,LOCK_NAME)
 );
+CREATE TABLE qrtz_cache_version
+  (
+    CACHE_NAME VARCHAR2(120) NOT NULL,
+    VERSION NUMBER(19) NOT NULL,
+    CONSTRAINT QRTZ_CACHE_VERSION_PK PRIMARY KEY (CACHE_NAME)
+);
+CREATE TABLE qrtz_import_checkpoint
+  (
+    IMPORT_ID VARCHAR2(200) NOT NULL,
+    RECORDS NUMBER(19) NOT NULL,
+    UPDATED_TIME NUMBER(13) NOT NULL,
+    CONSTRAINT QRTZ_IMPORT_CHECKPOINT_PK PRIMARY KEY (IMPORT_ID)
+);
+
+CREATE TABLE qrtz_job_history
+  (
+    SCHED_NAME VARCHAR2(120) NOT NULL,
+    ENTRY_ID VARCHAR2(95) NOT NULL,
+    JOB_NAME VARCHAR2(200) NOT NULL,
+    JOB_GROUP VARCHAR2(200) NOT NULL,
+    TRIGGER_NAME VARCHAR2(200) NULL,
+    TRIGGER_GROUP VARCHAR2(200) NULL,
+    INSTANCE_NAME VARCHAR2(200) NOT NULL,
+    SCHED_TIME NUMBER(13) NULL,
+    FIRED_TIME NUMBER(13) NOT NULL,
+    RUN_TIME NUMBER(19) NOT NULL,
+    STATUS VARCHAR2(16) NOT NULL,
+    RESULT_DATA VARCHAR2(250) NULL,
+    ERROR_MESSAGE VARCHAR2(1000) NULL,
+    CONSTRAINT QRTZ_JOB_HISTORY_PK PRIMARY KEY (SCHED_NAME,ENTRY_ID)
+);
+
+create index idx_qrtz_jh_J_FT ON qrtz_job_history(JOB_GROUP,JOB_NAME,FIRED_TIME);
+create index idx_qrtz_jh_FT ON qrtz_job_history(FIRED_TIME);
+
+CREATE TABLE qrtz_leases
+  (
+    SCHED_NAME VARCHAR2(120) NOT NULL,
+    SLICE_ID NUMBER(10) NOT NULL,
+    OWNER VARCHAR2(200) NULL,
+    EXPIRES NUMBER(13) NOT NULL,
+    CONSTRAINT QRTZ_LEASES_PK PRIMARY KEY (SCHED_NAME,SLICE_ID)
+);
+
+CREATE TABLE qrtz_hot_triggers
+  (
+    SCHED_NAME VARCHAR2(120) NOT NULL,
+    TRIGGER_NAME VARCHAR2(200) NOT NULL,
+    TRIGGER_GROUP VARCHAR2(200) NOT NULL,
+    JOB_NAME VARCHAR2(200) NOT NULL,
+    JOB_GROUP VARCHAR2(200) NOT NULL,
+    JOB_CLASS_NAME VARCHAR2(250) NOT NULL,
+    JOB_DESC VARCHAR2(250) NULL,
+    TRIGGER_DESC VARCHAR2(250) NULL,
+    CRON_EXPRESSION VARCHAR2(120) NOT NULL,
+    TIME_ZONE_ID VARCHAR2(80) NULL,
+    MISFIRE_INSTR NUMBER(2) NOT NULL,
+    PRIORITY NUMBER(13) NOT NULL,
+    TRIGGER_STATE VARCHAR2(16) NOT NULL,
+    JOB_DATA VARCHAR2(2000) NULL,
+    TRIGGER_DATA VARCHAR2(2000) NULL,
+    PREV_FIRE_TIME NUMBER(13) NULL,
+    NEXT_FIRE_TIME NUMBER(13) NULL,
+    UPDATED_TIME NUMBER(13) NOT NULL,
+    CONSTRAINT QRTZ_HOT_TRIGGERS_PK PRIMARY KEY (SCHED_NAME,TRIGGER_NAME,TRIGGER_GROUP)
+);
 
 create index idx_qrtz_j_req_recovery on qrtz_job_details(SCHED_NAME,REQUESTS_RECOVERY);
 create index idx_qrtz_j_grp on qrtz_job_details(SCHED_NAME,JOB_GROUP);
+create index idx_qrtz_j_grp_name on qrtz_job_details(SCHED_NAME,JOB_GROUP,JOB_NAME);
 
 create index idx_qrtz_t_j on qrtz_triggers(SCHED_NAME,JOB_NAME,JOB_GROUP);
 create index idx_qrtz_t_jg on qrtz_triggers(SCHED_NAME,JOB_GROUP);
@@ -7,6 +7,11 @@ DROP TABLE IF EXISTS  qrtz_fired_trigger`s;
 DROP TABLE IF EXISTS  QRTZ_PAUSED_TRIGGER_GRPS;
 DROP TABLE IF EXISTS  QRTZ_SCHEDULER_STATE;
 DROP TABLE IF EXISTS  QRTZ_LOCKS;
+DROP TABLE IF EXISTS  qrtz_cache_version;
+DROP TABLE IF EXISTS  qrtz_import_checkpoint;
+DROP TABLE IF EXISTS  qrtz_job_history;
+DROP TABLE IF EXISTS  qrtz_leases;
+DROP TABLE IF EXISTS  qrtz_hot_triggers;
 DROP TABLE IF EXISTS  qrtz_simple_triggers;
 DROP TABLE IF EXISTS  qrtz_cron_triggers;
 DROP TABLE IF EXISTS  qrtz_simprop_triggers;
@@ -160,8 +165,77 @@ CREATE TABLE qrtz_locks
     PRIMARY KEY (SCHED_NAME,LOCK_NAME)
 );
 
+CREATE TABLE qrtz_cache_version
+  (
+    CACHE_NAME VARCHAR(120) NOT NULL,
+    VERSION BIGINT NOT NULL,
+    PRIMARY KEY (CACHE_NAME)
+);
+
+CREATE TABLE qrtz_import_checkpoint
+  (
+    IMPORT_ID VARCHAR(200) NOT NULL,
+    RECORDS BIGINT NOT NULL,
+    UPDATED_TIME BIGINT NOT NULL,
+    PRIMARY KEY (IMPORT_ID)
+);
+
+CREATE TABLE qrtz_job_history
+  (
+    SCHED_NAME VARCHAR(120) NOT NULL,
+    ENTRY_ID VARCHAR(95) NOT NULL,
+    JOB_NAME VARCHAR(200) NOT NULL,
+    JOB_GROUP VARCHAR(200) NOT NULL,
+    TRIGGER_NAME VARCHAR(200) NULL,
+    TRIGGER_GROUP VARCHAR(200) NULL,
+    INSTANCE_NAME VARCHAR(200) NOT NULL,
+    SCHED_TIME BIGINT NULL,
+    FIRED_TIME BIGINT NOT NULL,
+    RUN_TIME BIGINT NOT NULL,
+    STATUS VARCHAR(16) NOT NULL,
+    RESULT_DATA VARCHAR(250) NULL,
+    ERROR_MESSAGE VARCHAR(1000) NULL,
+    PRIMARY KEY (SCHED_NAME,ENTRY_ID)
+);
+
+create index idx_qrtz_jh_J_FT ON qrtz_job_history(JOB_GROUP,JOB_NAME,FIRED_TIME);
+create index idx_qrtz_jh_FT ON qrtz_job_history(FIRED_TIME);
+
+CREATE TABLE qrtz_leases
+  (
+    SCHED_NAME VARCHAR(120) NOT NULL,
+    SLICE_ID INTEGER NOT NULL,
+    OWNER VARCHAR(200) NULL,
+    EXPIRES BIGINT NOT NULL,
+    PRIMARY KEY (SCHED_NAME,SLICE_ID)
+);
+
+CREATE TABLE qrtz_hot_triggers
+  (
+    SCHED_NAME VARCHAR(120) NOT NULL,
+    TRIGGER_NAME VARCHAR(200) NOT NULL,
+    TRIGGER_GROUP VARCHAR(200) NOT NULL,
+    JOB_NAME VARCHAR(200) NOT NULL,
+    JOB_GROUP VARCHAR(200) NOT NULL,
+    JOB_CLASS_NAME VARCHAR(250) NOT NULL,
+    JOB_DESC VARCHAR(250) NULL,
+    TRIGGER_DESC VARCHAR(250) NULL,
+    CRON_EXPRESSION VARCHAR(120) NOT NULL,
+    TIME_ZONE_ID VARCHAR(80) NULL,
+    MISFIRE_INSTR SMALLINT NOT NULL,
+    PRIORITY INTEGER NOT NULL,
+    TRIGGER_STATE VARCHAR(16) NOT NULL,
+    JOB_DATA VARCHAR(2000) NULL,
+    TRIGGER_DATA VARCHAR(2000) NULL,
+    PREV_FIRE_TIME BIGINT NULL,
+    NEXT_FIRE_TIME BIGINT NULL,
+    UPDATED_TIME BIGINT NOT NULL,
+    PRIMARY KEY (SCHED_NAME,TRIGGER_NAME,TRIGGER_GROUP)
+);
+
 create index idx_qrtz_j_req_recovery on qrtz_job_details(SCHED_NAME,REQUESTS_RECOVERY);
 create index idx_qrtz_j_grp on qrtz_job_details(SCHED_NAME,JOB_GROUP);
+create index idx_qrtz_j_grp_name on qrtz_job_details(SCHED_NAME,JOB_GROUP,JOB_NAME);
 
 create index idx_qrtz_t_j on qrtz_triggers(SCHED_NAME,JOB_NAME,JOB_GROUP);
 create index idx_qrtz_t_jg on qrtz_triggers(SCHED_NAME,JOB_GROUP);
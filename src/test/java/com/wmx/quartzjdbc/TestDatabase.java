@@ -0,0 +1,33 @@
+package com.wmx.quartzjdbc;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+/**
+ * 测试用的 h2 内存数据库，表结构与应用相同（resources/sql/tables_h2.sql）.
+ *
+ * @author wangmaoxiong
+ */
+public final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    /**
+     * 创建一个新的内存数据库，库名随机，各个测试之间互不影响；最后一个连接关闭后数据库仍然保留，直到虚拟机退出.
+     * 等待行锁最多 10 秒（默认 1 秒），多个节点争用 QRTZ_LOCKS 行锁的测试需要等待对方提交.
+     */
+    public static DataSource create() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url(), "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("sql/tables_h2.sql")).execute(dataSource);
+        return dataSource;
+    }
+
+    private static String url() {
+        return "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+    }
+}
@@ -0,0 +1,49 @@
+package com.wmx.quartzjdbc;
+
+import com.wmx.quartzjdbc.config.JsonJDBCDelegate;
+import org.quartz.Scheduler;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+
+import javax.sql.DataSource;
+import java.util.Properties;
+
+/**
+ * 测试用的 jdbc 调度器：与应用相同，由 {@link SchedulerFactoryBean} 使用 Spring 的数据源创建，代理为 {@link JsonJDBCDelegate}.
+ *
+ * @author wangmaoxiong
+ */
+public final class TestSchedulers {
+
+    private TestSchedulers() {
+    }
+
+    /**
+     * 创建调度器，不启动.
+     *
+     * @param dataSource    ：{@link TestDatabase#create()}
+     * @param schedulerName ：sched_name，集群的各个节点相同
+     * @param instanceId    ：节点标识，集群的各个节点不同
+     * @param properties    ：额外的 quartz 配置，覆盖默认值
+     * @return
+     */
+    public static Scheduler create(DataSource dataSource, String schedulerName, String instanceId, Properties properties) throws Exception {
+        Properties quartzProperties = new Properties();
+        quartzProperties.setProperty("org.quartz.scheduler.instanceId", instanceId);
+        quartzProperties.setProperty("org.quartz.threadPool.threadCount", "4");
+        quartzProperties.setProperty("org.quartz.threadPool.makeThreadsDaemons", "true");
+        quartzProperties.setProperty("org.quartz.jobStore.driverDelegateClass", JsonJDBCDelegate.class.getName());
+        quartzProperties.setProperty("org.quartz.jobStore.tablePrefix", "QRTZ_");
+        quartzProperties.setProperty("org.quartz.jobStore.isClustered", "true");
+        quartzProperties.setProperty("org.quartz.jobStore.clusterCheckinInterval", "1000");
+        quartzProperties.setProperty("org.quartz.jobStore.misfireThreshold", "1000");
+        quartzProperties.putAll(properties);
+
+        SchedulerFactoryBean factoryBean = new SchedulerFactoryBean();
+        factoryBean.setSchedulerName(schedulerName);
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setQuartzProperties(quartzProperties);
+        factoryBean.setAutoStartup(false);
+        factoryBean.afterPropertiesSet();
+        return factoryBean.getObject();
+    }
+}
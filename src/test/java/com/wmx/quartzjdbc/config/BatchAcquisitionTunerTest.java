@@ -0,0 +1,81 @@
+package com.wmx.quartzjdbc.config;
+
+import com.wmx.quartzjdbc.TestDatabase;
+import com.wmx.quartzjdbc.TestSchedulers;
+import com.wmx.quartzjdbc.service.SchedulerQueryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.core.QuartzScheduler;
+import org.quartz.core.QuartzSchedulerResources;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 批量获取只在获取触发器不加 QRTZ_LOCKS 行锁时调节.
+ *
+ * @author wangmaoxiong
+ */
+public class BatchAcquisitionTunerTest {
+    private Scheduler rowLocked;
+    private Scheduler optimistic;
+
+    @Before
+    public void setUp() throws Exception {
+        DataSource dataSource = TestDatabase.create();
+        rowLocked = TestSchedulers.create(dataSource, "rowLocked", "nodeA", new Properties());
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.jobStore.lockHandler.class", OptimisticSemaphore.class.getName());
+        optimistic = TestSchedulers.create(dataSource, "optimisticTuned", "nodeA", properties);
+        rowLocked.start();
+        optimistic.start();
+    }
+
+    @After
+    public void tearDown() throws SchedulerException {
+        rowLocked.shutdown();
+        optimistic.shutdown();
+    }
+
+    @Test
+    public void batchGrowsOnlyWithoutClusterRowLock() {
+        SchedulerShards schedulerShards = mock(SchedulerShards.class);
+        when(schedulerShards.getSchedulers()).thenReturn(Arrays.asList(rowLocked, optimistic));
+        SchedulerQueryService schedulerQueryService = mock(SchedulerQueryService.class);
+        when(schedulerQueryService.countDueTriggers(anyString(), anyLong())).thenReturn(100L);
+        BatchAcquisitionTuner tuner = new BatchAcquisitionTuner();
+        ReflectionTestUtils.setField(tuner, "schedulerShards", schedulerShards);
+        ReflectionTestUtils.setField(tuner, "schedulerQueryService", schedulerQueryService);
+        ReflectionTestUtils.setField(tuner, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tuner, "adaptive", true);
+        ReflectionTestUtils.setField(tuner, "minBatchSize", 1);
+        ReflectionTestUtils.setField(tuner, "maxBatchSize", 50);
+        ReflectionTestUtils.setField(tuner, "maxFireAheadWindow", 1000L);
+        tuner.init();
+
+        tuner.tune();
+
+        //集群默认的行锁：批量大于 1 会让每次获取都锁住 TRIGGER_ACCESS，保持配置的 1
+        assertThat(resources(rowLocked).getMaxBatchSize()).isEqualTo(1);
+        assertThat(resources(rowLocked).getBatchTimeWindow()).isZero();
+        assertThat(resources(optimistic).getMaxBatchSize()).isGreaterThan(1);
+        assertThat(resources(optimistic).getBatchTimeWindow()).isPositive();
+    }
+
+    private static QuartzSchedulerResources resources(Scheduler scheduler) {
+        QuartzScheduler quartzScheduler = (QuartzScheduler) ReflectionTestUtils.getField(scheduler, "sched");
+        return (QuartzSchedulerResources) ReflectionTestUtils.getField(quartzScheduler, "resources");
+    }
+}
@@ -0,0 +1,137 @@
+package com.wmx.quartzjdbc.config;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 按主机限制同步请求的并发数：许可在响应体关闭时释放，异步请求不重复限流.
+ *
+ * @author wangmaoxiong
+ */
+public class HostConcurrencyInterceptorTest {
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private CountDownLatch slowArrivals;
+    private CountDownLatch slowRelease;
+    private HostConcurrencyInterceptor interceptor;
+    private OkHttpClient client;
+    private String host;
+
+    @Before
+    public void setUp() throws IOException {
+        slowArrivals = new CountDownLatch(2);
+        slowRelease = new CountDownLatch(1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fast", exchange -> {
+            byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            slowArrivals.countDown();
+            try {
+                slowRelease.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        host = "127.0.0.1:" + server.getAddress().getPort();
+
+        interceptor = new HostConcurrencyInterceptor(1, 200);
+        client = new OkHttpClient.Builder().addInterceptor(interceptor).build();
+    }
+
+    @After
+    public void tearDown() {
+        slowRelease.countDown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        client.dispatcher().executorService().shutdownNow();
+    }
+
+    @Test
+    public void permitIsHeldUntilBodyIsRead() throws IOException {
+        Response response = client.newCall(request("/fast")).execute();
+        assertThat(interceptor.inFlight(host)).isEqualTo(1);
+
+        assertThat(response.body().string()).isEqualTo("hello");
+        assertThat(interceptor.inFlight(host)).isZero();
+    }
+
+    @Test
+    public void permitIsReleasedOnceWhenResponseIsClosed() throws IOException {
+        Response response = client.newCall(request("/fast")).execute();
+        response.close();
+        response.close();
+        assertThat(interceptor.inFlight(host)).isZero();
+
+        //许可只释放了一次，上限仍然是 1
+        Response first = client.newCall(request("/fast")).execute();
+        assertThatThrownBy(() -> client.newCall(request("/fast")).execute())
+                .isInstanceOf(IOException.class).hasMessageContaining("too many concurrent requests");
+        first.close();
+    }
+
+    @Test
+    public void openBodyBlocksNextSyncRequestToSameHost() throws IOException {
+        Response first = client.newCall(request("/fast")).execute();
+        assertThatThrownBy(() -> client.newCall(request("/fast")).execute()).isInstanceOf(IOException.class);
+
+        first.close();
+        try (Response second = client.newCall(request("/fast")).execute()) {
+            assertThat(second.code()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    public void asyncRequestsAreLeftToTheDispatcher() throws InterruptedException {
+        Callback ignore = new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            Request request = new Request.Builder().url(this.url("/slow"))
+                    .tag(HostConcurrencyInterceptor.Mode.class, HostConcurrencyInterceptor.Mode.ASYNC).build();
+            client.newCall(request).enqueue(ignore);
+        }
+        //上限为 1，两个异步请求仍同时到达服务端（Dispatcher 默认每个主机 5 个）
+        assertThat(slowArrivals.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(interceptor.inFlight(host)).isZero();
+    }
+
+    private Request request(String path) {
+        return new Request.Builder().url(this.url(path)).build();
+    }
+
+    private String url(String path) {
+        return "http://" + host + path;
+    }
+}
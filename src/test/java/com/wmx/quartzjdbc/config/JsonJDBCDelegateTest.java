@@ -0,0 +1,97 @@
+package com.wmx.quartzjdbc.config;
+
+import com.wmx.quartzjdbc.TestDatabase;
+import com.wmx.quartzjdbc.TestSchedulers;
+import com.wmx.quartzjdbc.service.SchedulerServiceTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.quartz.JobBuilder.newJob;
+
+/**
+ * JobDataMap 以 json 保存、读取，不能写成 json 的值仍使用 java 序列化.
+ *
+ * @author wangmaoxiong
+ */
+public class JsonJDBCDelegateTest {
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private Scheduler scheduler;
+
+    @Before
+    public void setUp() {
+        dataSource = TestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void jsonCompatibleDataIsStoredAsJsonAndReadBackWithSameTypes() throws Exception {
+        scheduler = TestSchedulers.create(dataSource, "json", "node1", new Properties());
+        JobDataMap data = new JobDataMap();
+        data.put("url", "http://localhost/a");
+        data.put("count", 3);
+        data.put("big", 10_000_000_000L);
+        data.put("list", Arrays.asList("a", "b"));
+        scheduler.addJob(durableJob("json", data), true);
+
+        assertThat(this.jobData("json")[0]).isEqualTo((byte) '{');
+        JobDataMap read = scheduler.getJobDetail(JobKey.jobKey("json")).getJobDataMap();
+        assertThat(read.get("url")).isEqualTo("http://localhost/a");
+        assertThat(read.get("count")).isEqualTo(3);
+        assertThat(read.get("big")).isEqualTo(10_000_000_000L);
+        assertThat(read.get("list")).isEqualTo(Arrays.asList("a", "b"));
+        assertThat(JsonJDBCDelegate.readJobData(this.jobData("json"))).isEqualTo(read.getWrappedMap());
+    }
+
+    @Test
+    public void valuesJsonCannotRestoreFallBackToJavaSerialization() throws Exception {
+        scheduler = TestSchedulers.create(dataSource, "java", "node1", new Properties());
+        JobDataMap data = new JobDataMap();
+        //在 int 范围内的 Long 从 json 读回时为 Integer
+        data.put("small", 1L);
+        data.put("date", new Date(0));
+        scheduler.addJob(durableJob("java", data), true);
+
+        assertThat(this.jobData("java")[0]).isNotEqualTo((byte) '{');
+        JobDataMap read = scheduler.getJobDetail(JobKey.jobKey("java")).getJobDataMap();
+        assertThat(read.get("small")).isEqualTo(1L);
+        assertThat(read.get("date")).isEqualTo(new Date(0));
+    }
+
+    @Test
+    public void propertiesModeReadsBlobAsBytes() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.jobStore.useProperties", "true");
+        scheduler = TestSchedulers.create(dataSource, "props", "node1", properties);
+        JobDataMap data = new JobDataMap();
+        data.put("url", "http://localhost/b");
+        scheduler.addJob(durableJob("props", data), true);
+
+        assertThat(scheduler.getJobDetail(JobKey.jobKey("props")).getJobDataMap().getString("url")).isEqualTo("http://localhost/b");
+    }
+
+    private byte[] jobData(String jobName) {
+        return jdbcTemplate.queryForObject("select JOB_DATA from QRTZ_JOB_DETAILS where JOB_NAME = ?", byte[].class, jobName);
+    }
+
+    private static JobDetail durableJob(String name, JobDataMap data) {
+        return newJob(SchedulerServiceTest.NoopJob.class).withIdentity(name).usingJobData(data).storeDurably().build();
+    }
+}
@@ -0,0 +1,162 @@
+package com.wmx.quartzjdbc.config;
+
+import com.wmx.quartzjdbc.TestDatabase;
+import com.wmx.quartzjdbc.TestSchedulers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.*;
+import org.quartz.core.QuartzScheduler;
+import org.quartz.core.QuartzSchedulerResources;
+import org.quartz.impl.jdbcjobstore.DriverDelegate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 切片租约：按作业划分切片、提前时钟偏差余量停止使用租约、续约在独立的后台线程执行.
+ *
+ * @author wangmaoxiong
+ */
+public class LeaseCoordinatorTest {
+    private static final int SLICES = 4;
+
+    private DataSource dataSource;
+    private Scheduler scheduler;
+    private String schedName;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = TestDatabase.create();
+        //SliceLeases 按调度器名称静态登记，每个测试使用不同的名称
+        schedName = "leased-" + UUID.randomUUID();
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.jobStore.lockHandler.class", LeaseSemaphore.class.getName());
+        scheduler = TestSchedulers.create(dataSource, schedName, "nodeA", properties);
+    }
+
+    @After
+    public void tearDown() throws SchedulerException {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void triggersOfOneJobAreAcquiredTogether() throws Exception {
+        SliceLeases leases = SliceLeases.get(schedName);
+        BitSet owned = new BitSet();
+        owned.set(0);
+        owned.set(1);
+        leases.update(SLICES, owned, System.currentTimeMillis() + 60000);
+
+        Set<TriggerKey> expected = new HashSet<>();
+        Date startAt = new Date(System.currentTimeMillis() - 1000);
+        for (int job = 0; job < 8; job++) {
+            JobDetail jobDetail = JobBuilder.newJob(NoopJob.class).withIdentity("job" + job).storeDurably().build();
+            scheduler.addJob(jobDetail, false);
+            for (int trigger = 0; trigger < 3; trigger++) {
+                Trigger t = TriggerBuilder.newTrigger().withIdentity("job" + job + "-t" + trigger).forJob(jobDetail)
+                        .startAt(startAt).withSchedule(SimpleScheduleBuilder.repeatSecondlyForever(60)).build();
+                scheduler.scheduleJob(t);
+                if (leases.owns(jobDetail.getKey())) {
+                    expected.add(t.getKey());
+                }
+            }
+        }
+        assertThat(expected.size()).isBetween(1, 23);
+
+        DriverDelegate delegate = ReflectionTestUtils.invokeMethod(jobStore(), "getDelegate");
+        try (Connection connection = dataSource.getConnection()) {
+            List<TriggerKey> acquirable = delegate.selectTriggerToAcquire(connection, System.currentTimeMillis(), 0, 100);
+            assertThat(acquirable).containsExactlyInAnyOrderElementsOf(expected);
+
+            List<TriggerKey> misfired = new ArrayList<>();
+            boolean hasMore = delegate.hasMisfiredTriggersInState(connection, "WAITING", System.currentTimeMillis(), 100, misfired);
+            assertThat(misfired).containsExactlyInAnyOrderElementsOf(expected);
+            assertThat(hasMore).isFalse();
+        }
+    }
+
+    @Test
+    public void leasesStopBeforeDatabaseExpiryByClockSkew() throws Exception {
+        LeaseCoordinator coordinator = coordinator(60000, 3000, 1500);
+        coordinator.init();
+        try {
+            SliceLeases leases = SliceLeases.get(schedName);
+            assertThat(leases.isActive()).isTrue();
+            assertThat(leases.getOwnedCount()).isEqualTo(SLICES);
+
+            Thread.sleep(1700);
+            assertThat(leases.getOwnedCount()).isZero();
+            //数据库中的租约仍然有效，其它节点不会在本节点停止之前接管
+            Long expires = new JdbcTemplate(dataSource).queryForObject("select min(EXPIRES) from QRTZ_LEASES where SCHED_NAME = ?",
+                    Long.class, schedName);
+            assertThat(expires).isGreaterThan(System.currentTimeMillis());
+        } finally {
+            coordinator.release();
+        }
+    }
+
+    @Test
+    public void renewRunsOnItsOwnDaemonThread() throws Exception {
+        SchedulerShards schedulerShards = mock(SchedulerShards.class);
+        Thread caller = Thread.currentThread();
+        CountDownLatch renewed = new CountDownLatch(1);
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        when(schedulerShards.getSchedulers()).thenAnswer(invocation -> {
+            //init 在当前线程中注册指标、第一次续约，之后的续约由后台线程执行
+            if (Thread.currentThread() != caller) {
+                threads.add(Thread.currentThread());
+                renewed.countDown();
+            }
+            return Collections.singletonList(scheduler);
+        });
+        LeaseCoordinator coordinator = coordinator(50, 0, 0);
+        ReflectionTestUtils.setField(coordinator, "schedulerShards", schedulerShards);
+        coordinator.init();
+        try {
+            assertThat(renewed.await(5, TimeUnit.SECONDS)).isTrue();
+            Thread renewer = threads.get(0);
+            assertThat(renewer.getName()).isEqualTo("lease-coordinator");
+            assertThat(renewer.isDaemon()).isTrue();
+        } finally {
+            coordinator.release();
+        }
+    }
+
+    private LeaseCoordinator coordinator(long renewInterval, long ttl, long clockSkew) {
+        SchedulerShards schedulerShards = mock(SchedulerShards.class);
+        when(schedulerShards.getSchedulers()).thenReturn(Collections.singletonList(scheduler));
+        LeaseCoordinator coordinator = new LeaseCoordinator();
+        ReflectionTestUtils.setField(coordinator, "schedulerShards", schedulerShards);
+        ReflectionTestUtils.setField(coordinator, "jdbcTemplate", new JdbcTemplate(dataSource));
+        ReflectionTestUtils.setField(coordinator, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coordinator, "slices", SLICES);
+        ReflectionTestUtils.setField(coordinator, "renewInterval", renewInterval);
+        ReflectionTestUtils.setField(coordinator, "ttl", ttl);
+        ReflectionTestUtils.setField(coordinator, "clockSkew", clockSkew);
+        ReflectionTestUtils.setField(coordinator, "tablePrefix", "QRTZ_");
+        return coordinator;
+    }
+
+    private Object jobStore() {
+        QuartzScheduler quartzScheduler = (QuartzScheduler) ReflectionTestUtils.getField(scheduler, "sched");
+        QuartzSchedulerResources resources = (QuartzSchedulerResources) ReflectionTestUtils.getField(quartzScheduler, "resources");
+        return resources.getJobStore();
+    }
+
+    public static class NoopJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+}
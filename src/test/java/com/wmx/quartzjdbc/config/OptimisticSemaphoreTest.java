@@ -0,0 +1,241 @@
+package com.wmx.quartzjdbc.config;
+
+import com.wmx.quartzjdbc.TestDatabase;
+import com.wmx.quartzjdbc.TestSchedulers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.*;
+import org.quartz.core.QuartzScheduler;
+import org.quartz.core.QuartzSchedulerResources;
+import org.quartz.impl.jdbcjobstore.Constants;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredResult;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 两个节点（同一个 sched_name、不同 instanceId）共用一个数据库，使用 {@link OptimisticSemaphore}：
+ * 获取触发器之外的操作仍由 QRTZ_LOCKS 行锁串行化，暂停不会被并发的触发覆盖，禁止并发的作业不会在两个节点上同时执行；
+ * 错过触发处理不会把其它节点刚获取的触发器改回 WAITING.
+ * <p>
+ * 节点 A 的触发（triggersFired）在读到触发器状态后停住（{@link PausingDelegate}），此时节点 B 执行操作，
+ * 行锁生效时 B 等到 A 提交后才继续.
+ *
+ * @author wangmaoxiong
+ */
+public class OptimisticSemaphoreTest {
+    private static final String SCHED_NAME = "optimistic";
+
+    private DataSource dataSource;
+    private Scheduler nodeA;
+    private Scheduler nodeB;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = TestDatabase.create();
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.jobStore.lockHandler.class", OptimisticSemaphore.class.getName());
+        properties.setProperty("org.quartz.jobStore.driverDelegateClass", PausingDelegate.class.getName());
+        nodeA = TestSchedulers.create(dataSource, SCHED_NAME, "nodeA", properties);
+        nodeB = TestSchedulers.create(dataSource, SCHED_NAME, "nodeB", properties);
+    }
+
+    @After
+    public void tearDown() throws SchedulerException {
+        PausingDelegate.pausedThread = null;
+        PausingDelegate.afterSelectThread = null;
+        nodeA.shutdown();
+        nodeB.shutdown();
+    }
+
+    @Test
+    public void pauseIsNotOverwrittenByConcurrentFire() throws Exception {
+        nodeA.scheduleJob(JobBuilder.newJob(NoopJob.class).withIdentity("job").build(), dueTrigger("t1", null));
+        List<OperableTrigger> acquired = jobStore(nodeA).acquireNextTriggers(System.currentTimeMillis() + 5000, 10, 0);
+        assertThat(acquired).hasSize(1);
+
+        List<TriggerFiredResult> fired = this.whileFiring(acquired, () -> nodeB.pauseTrigger(TriggerKey.triggerKey("t1")));
+
+        assertThat(fired.get(0).getTriggerFiredBundle()).isNotNull();
+        assertThat(nodeB.getTriggerState(TriggerKey.triggerKey("t1"))).isEqualTo(Trigger.TriggerState.PAUSED);
+    }
+
+    @Test
+    public void disallowConcurrentJobFiresOnOneNodeOnly() throws Exception {
+        JobDetail job = JobBuilder.newJob(NonConcurrentJob.class).withIdentity("job").storeDurably().build();
+        nodeA.addJob(job, false);
+        nodeA.scheduleJob(dueTrigger("t1", job.getKey()));
+        nodeA.scheduleJob(dueTrigger("t2", job.getKey()));
+        //每个节点一次获取中同一个禁止并发的作业只取一个触发器
+        List<OperableTrigger> acquiredA = jobStore(nodeA).acquireNextTriggers(System.currentTimeMillis() + 5000, 10, 0);
+        List<OperableTrigger> acquiredB = jobStore(nodeB).acquireNextTriggers(System.currentTimeMillis() + 5000, 10, 0);
+        assertThat(acquiredA).hasSize(1);
+        assertThat(acquiredB).hasSize(1);
+
+        AtomicReference<List<TriggerFiredResult>> firedB = new AtomicReference<>();
+        List<TriggerFiredResult> firedA = this.whileFiring(acquiredA, () -> firedB.set(jobStore(nodeB).triggersFired(acquiredB)));
+
+        assertThat(firedA.get(0).getTriggerFiredBundle()).isNotNull();
+        assertThat(firedB.get().get(0).getTriggerFiredBundle()).isNull();
+    }
+
+    @Test
+    public void misfireHandlingSkipsTriggerAcquiredByAnotherNode() throws Exception {
+        Trigger misfired = TriggerBuilder.newTrigger().withIdentity("t1")
+                .startAt(new Date(System.currentTimeMillis() - 10000))
+                .withSchedule(SimpleScheduleBuilder.repeatHourlyForever()).build();
+        nodeA.scheduleJob(JobBuilder.newJob(NoopJob.class).withIdentity("job").build(), misfired);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Long nextFireTime = jdbcTemplate.queryForObject("select NEXT_FIRE_TIME from QRTZ_TRIGGERS where TRIGGER_NAME = 't1'", Long.class);
+
+        //节点 A 的错过触发处理读出触发器之后，节点 B 获取了它
+        Thread misfireHandler = new Thread(() -> ReflectionTestUtils.invokeMethod(jobStore(nodeA), "doRecoverMisfires"));
+        PausingDelegate.afterSelectThread = misfireHandler;
+        PausingDelegate.afterSelect = () -> jdbcTemplate.update("update QRTZ_TRIGGERS set TRIGGER_STATE = ? where TRIGGER_NAME = 't1'", Constants.STATE_ACQUIRED);
+        misfireHandler.start();
+        misfireHandler.join(10000);
+
+        assertThat(jdbcTemplate.queryForObject("select TRIGGER_STATE from QRTZ_TRIGGERS where TRIGGER_NAME = 't1'", String.class))
+                .isEqualTo(Constants.STATE_ACQUIRED);
+        assertThat(jdbcTemplate.queryForObject("select NEXT_FIRE_TIME from QRTZ_TRIGGERS where TRIGGER_NAME = 't1'", Long.class))
+                .isEqualTo(nextFireTime);
+    }
+
+    @Test
+    public void startedNodesFireThroughLocalAcquisitionLock() throws Exception {
+        CountingJob.executed = new CountDownLatch(2);
+        nodeA.start();
+        nodeB.start();
+        nodeA.scheduleJob(JobBuilder.newJob(CountingJob.class).withIdentity("job1").build(), dueTrigger("t1", null));
+        nodeA.scheduleJob(JobBuilder.newJob(CountingJob.class).withIdentity("job2").build(), dueTrigger("t2", null));
+
+        assertThat(CountingJob.executed.await(20, TimeUnit.SECONDS)).isTrue();
+        assertThat(TriggerClaims.get(SCHED_NAME).getWon()).isGreaterThanOrEqualTo(2);
+    }
+
+    /**
+     * 在另一个线程中让节点 A 触发，A 读到触发器状态后停住，执行 action（节点 B 的操作），等待最多 500 毫秒后让 A 继续.
+     * 行锁生效时 action 在 A 提交前一直等待，A 提交后才执行.
+     */
+    private List<TriggerFiredResult> whileFiring(List<OperableTrigger> triggers, Action action) throws Exception {
+        PausingDelegate.reached = new CountDownLatch(1);
+        PausingDelegate.release = new CountDownLatch(1);
+        AtomicReference<List<TriggerFiredResult>> fired = new AtomicReference<>();
+        Thread firing = new Thread(() -> {
+            PausingDelegate.pausedThread = Thread.currentThread();
+            try {
+                fired.set(jobStore(nodeA).triggersFired(triggers));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        firing.start();
+        assertThat(PausingDelegate.reached.await(10, TimeUnit.SECONDS)).isTrue();
+
+        Thread other = new Thread(() -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        other.start();
+        other.join(500);
+        PausingDelegate.release.countDown();
+        firing.join(10000);
+        other.join(10000);
+        return fired.get();
+    }
+
+    private static Trigger dueTrigger(String name, JobKey jobKey) {
+        TriggerBuilder<SimpleTrigger> builder = TriggerBuilder.newTrigger().withIdentity(name)
+                .startAt(new Date(System.currentTimeMillis() + 100))
+                .withSchedule(SimpleScheduleBuilder.repeatHourlyForever());
+        return jobKey == null ? builder.build() : builder.forJob(jobKey).build();
+    }
+
+    private static JobStore jobStore(Scheduler scheduler) {
+        QuartzScheduler quartzScheduler = (QuartzScheduler) ReflectionTestUtils.getField(scheduler, "sched");
+        return ((QuartzSchedulerResources) ReflectionTestUtils.getField(quartzScheduler, "resources")).getJobStore();
+    }
+
+    @FunctionalInterface
+    interface Action {
+        void run() throws Exception;
+    }
+
+    /**
+     * 测试用的代理：pausedThread 读取触发器状态后停住，直到测试放行；afterSelectThread 读出触发器后执行 afterSelect
+     */
+    public static class PausingDelegate extends JsonJDBCDelegate {
+        static volatile Thread pausedThread;
+        static volatile CountDownLatch reached;
+        static volatile CountDownLatch release;
+        static volatile Thread afterSelectThread;
+        static volatile Action afterSelect;
+
+        @Override
+        public OperableTrigger selectTrigger(Connection conn, TriggerKey triggerKey) throws SQLException, ClassNotFoundException, IOException, JobPersistenceException {
+            OperableTrigger trigger = super.selectTrigger(conn, triggerKey);
+            if (Thread.currentThread() == afterSelectThread) {
+                afterSelectThread = null;
+                try {
+                    afterSelect.run();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return trigger;
+        }
+
+        @Override
+        public String selectTriggerState(Connection conn, TriggerKey triggerKey) throws SQLException {
+            String state = super.selectTriggerState(conn, triggerKey);
+            if (Thread.currentThread() == pausedThread) {
+                pausedThread = null;
+                reached.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return state;
+        }
+    }
+
+    public static class NoopJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+
+    public static class CountingJob implements Job {
+        static volatile CountDownLatch executed;
+
+        @Override
+        public void execute(JobExecutionContext context) {
+            executed.countDown();
+        }
+    }
+
+    @DisallowConcurrentExecution
+    public static class NonConcurrentJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+}
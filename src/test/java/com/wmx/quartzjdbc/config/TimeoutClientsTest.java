@@ -0,0 +1,49 @@
+package com.wmx.quartzjdbc.config;
+
+import okhttp3.OkHttpClient;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 按超时时间派生的客户端在多次触发之间复用.
+ *
+ * @author wangmaoxiong
+ */
+public class TimeoutClientsTest {
+    private OkHttpClient okHttpClient;
+    private RestTemplate restTemplate;
+    private TimeoutClients timeoutClients;
+
+    @Before
+    public void setUp() {
+        okHttpClient = new OkHttpClient();
+        restTemplate = new RestTemplate();
+        timeoutClients = new TimeoutClients();
+        ReflectionTestUtils.setField(timeoutClients, "okHttpClient", okHttpClient);
+        ReflectionTestUtils.setField(timeoutClients, "restTemplate", restTemplate);
+    }
+
+    @Test
+    public void derivedClientsAreCachedPerTimeoutKey() {
+        OkHttpClient client = timeoutClients.clientFor("1500/-1");
+        assertThat(timeoutClients.clientFor("1500/-1")).isSameAs(client);
+        assertThat(client.connectTimeoutMillis()).isEqualTo(1500);
+        assertThat(client.readTimeoutMillis()).isEqualTo(okHttpClient.readTimeoutMillis());
+        assertThat(client.connectionPool()).isSameAs(okHttpClient.connectionPool());
+        assertThat(client.dispatcher()).isSameAs(okHttpClient.dispatcher());
+
+        RestTemplate derived = timeoutClients.restTemplateFor("1500/-1");
+        assertThat(timeoutClients.restTemplateFor("1500/-1")).isSameAs(derived);
+        assertThat(timeoutClients.restTemplateFor("1500/3000")).isNotSameAs(derived);
+    }
+
+    @Test
+    public void noOverrideUsesSharedInstances() {
+        assertThat(timeoutClients.clientFor(null)).isSameAs(okHttpClient);
+        assertThat(timeoutClients.restTemplateFor(null)).isSameAs(restTemplate);
+    }
+}
@@ -0,0 +1,79 @@
+package com.wmx.quartzjdbc.jobs;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 合并窗口内共用结果；完成的请求在 startedAt + window 时移除，inflight 指标只统计未完成的请求.
+ *
+ * @author wangmaoxiong
+ */
+public class RequestCoalescerTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+    private RequestCoalescer requestCoalescer;
+
+    @Before
+    public void setUp() {
+        requestCoalescer = new RequestCoalescer();
+        ReflectionTestUtils.setField(requestCoalescer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(requestCoalescer, "window", Duration.ofMillis(300));
+        requestCoalescer.init();
+    }
+
+    @After
+    public void tearDown() {
+        requestCoalescer.destroy();
+    }
+
+    @Test
+    public void completedRequestIsSharedWithinWindowThenRemoved() throws Exception {
+        assertThat(requestCoalescer.execute("k", this::completed).get()).isEqualTo(1);
+        assertThat(requestCoalescer.execute("k", this::completed).get()).isEqualTo(1);
+        assertThat(this.inflight()).isZero();
+        assertThat(this.tracked()).isEqualTo(1);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.tracked() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(this.tracked()).isZero();
+        assertThat(requestCoalescer.execute("k", this::completed).get()).isEqualTo(2);
+    }
+
+    @Test
+    public void inflightCountsOnlyPendingRequests() {
+        CompletableFuture<Integer> pending = new CompletableFuture<>();
+        CompletableFuture<Integer> leader = requestCoalescer.execute("a", () -> pending);
+        CompletableFuture<Integer> shared = requestCoalescer.execute("a", () -> pending);
+        requestCoalescer.execute("b", this::completed);
+
+        assertThat(shared).isSameAs(leader);
+        assertThat(this.inflight()).isEqualTo(1);
+        pending.complete(7);
+        assertThat(leader.join()).isEqualTo(7);
+        assertThat(this.inflight()).isZero();
+    }
+
+    private CompletableFuture<Integer> completed() {
+        return CompletableFuture.completedFuture(calls.incrementAndGet());
+    }
+
+    private double inflight() {
+        return meterRegistry.get("quartz.request.job.coalesce.inflight").gauge().value();
+    }
+
+    private int tracked() {
+        return ((Map<?, ?>) ReflectionTestUtils.getField(requestCoalescer, "inFlights")).size();
+    }
+}
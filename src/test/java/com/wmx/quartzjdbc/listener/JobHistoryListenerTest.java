@@ -0,0 +1,87 @@
+package com.wmx.quartzjdbc.listener;
+
+import com.wmx.quartzjdbc.jobs.RequestJob;
+import com.wmx.quartzjdbc.pojo.JobHistory;
+import com.wmx.quartzjdbc.service.JobHistoryService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.quartz.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 同步作业在执行完成时记录；执行结果为 CompletionStage（异步请求）时在它完成后记录结果与状态.
+ *
+ * @author wangmaoxiong
+ */
+public class JobHistoryListenerTest {
+    private JobHistoryService jobHistoryService;
+    private JobHistoryListener jobHistoryListener;
+
+    @Before
+    public void setUp() {
+        jobHistoryService = mock(JobHistoryService.class);
+        jobHistoryListener = new JobHistoryListener();
+        ReflectionTestUtils.setField(jobHistoryListener, "jobHistoryService", jobHistoryService);
+    }
+
+    @Test
+    public void syncResultIsRecordedImmediately() throws Exception {
+        jobHistoryListener.jobWasExecuted(this.context("200"), null);
+
+        JobHistory history = this.recorded();
+        assertThat(history.getStatus()).isEqualTo(JobHistory.STATUS_SUCCESS);
+        assertThat(history.getResult_data()).isEqualTo("200");
+    }
+
+    @Test
+    public void asyncResultIsRecordedWhenCompleted() throws Exception {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        jobHistoryListener.jobWasExecuted(this.context(future), null);
+        verify(jobHistoryService, never()).record(any());
+
+        future.complete("204");
+        JobHistory history = this.recorded();
+        assertThat(history.getStatus()).isEqualTo(JobHistory.STATUS_SUCCESS);
+        assertThat(history.getResult_data()).isEqualTo("204");
+    }
+
+    @Test
+    public void asyncErrorStatusIsRecordedAsFailure() throws Exception {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        jobHistoryListener.jobWasExecuted(this.context(future), null);
+
+        future.completeExceptionally(new RequestJob.AsyncStatusException(503));
+        JobHistory history = this.recorded();
+        assertThat(history.getStatus()).isEqualTo(JobHistory.STATUS_FAILURE);
+        assertThat(history.getResult_data()).isEqualTo("503");
+        assertThat(history.getError_message()).contains("HTTP status 503");
+    }
+
+    private JobHistory recorded() {
+        ArgumentCaptor<JobHistory> captor = ArgumentCaptor.forClass(JobHistory.class);
+        verify(jobHistoryService).record(captor.capture());
+        return captor.getValue();
+    }
+
+    private JobExecutionContext context(Object result) throws SchedulerException {
+        Scheduler scheduler = mock(Scheduler.class);
+        when(scheduler.getSchedulerName()).thenReturn("sched");
+        when(scheduler.getSchedulerInstanceId()).thenReturn("node1");
+        JobExecutionContext context = mock(JobExecutionContext.class);
+        when(context.getScheduler()).thenReturn(scheduler);
+        when(context.getFireInstanceId()).thenReturn("fire1");
+        when(context.getJobDetail()).thenReturn(JobBuilder.newJob(RequestJob.class).withIdentity("job", "group").build());
+        when(context.getTrigger()).thenReturn(TriggerBuilder.newTrigger().withIdentity("trigger", "group").build());
+        when(context.getFireTime()).thenReturn(new Date());
+        when(context.getResult()).thenReturn(result);
+        return context;
+    }
+}
@@ -0,0 +1,56 @@
+package com.wmx.quartzjdbc.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.CronExpression;
+import org.quartz.TriggerKey;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 打散：偏移量由 TriggerKey（组名.名称）决定，同一个触发器每次相同，打散后的秒不为 0，不会重复偏移.
+ *
+ * @author wangmaoxiong
+ */
+public class CronJitterTest {
+    private CronJitter cronJitter;
+
+    @Before
+    public void setUp() {
+        cronJitter = new CronJitter();
+        ReflectionTestUtils.setField(cronJitter, "defaultWindow", 60);
+        ReflectionTestUtils.setField(cronJitter, "groupWindowConfigs", new String[]{"nojitter=0"});
+        cronJitter.init();
+    }
+
+    @Test
+    public void offsetDependsOnGroupAndName() {
+        String cron = "0 0/5 * * * ?";
+        TriggerKey triggerKey = TriggerKey.triggerKey("t1", "g1");
+        String jittered = cronJitter.apply(cron, "g1", triggerKey);
+
+        assertThat(jittered).isEqualTo(cronJitter.apply(cron, "g1", TriggerKey.triggerKey("t1", "g1")));
+        assertThat(CronExpression.isValidExpression(jittered)).isTrue();
+        int expected = 1 + Math.floorMod("g1.t1".hashCode(), 59);
+        assertThat(jittered).isEqualTo(expected + " 0/5 * * * ?");
+
+        Set<String> byGroup = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            byGroup.add(cronJitter.apply(cron, "g1", TriggerKey.triggerKey("t1", "g" + i)));
+        }
+        assertThat(byGroup.size()).isGreaterThan(1);
+    }
+
+    @Test
+    public void jitteredOrUnconfiguredExpressionsAreUnchanged() {
+        TriggerKey triggerKey = TriggerKey.triggerKey("t1", "g1");
+        String jittered = cronJitter.apply("0 0/5 * * * ?", "g1", triggerKey);
+
+        assertThat(cronJitter.apply(jittered, "g1", triggerKey)).isEqualTo(jittered);
+        assertThat(cronJitter.apply("0 0/5 * * * ?", "nojitter", triggerKey)).isEqualTo("0 0/5 * * * ?");
+    }
+}
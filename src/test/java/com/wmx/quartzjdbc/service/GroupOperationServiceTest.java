@@ -0,0 +1,71 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.pojo.GroupOperation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 操作历史超过个数限制时只淘汰已经结束的操作，RUNNING 的操作始终可以查询.
+ *
+ * @author wangmaoxiong
+ */
+public class GroupOperationServiceTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private GroupOperationService groupOperationService;
+
+    @Before
+    public void setUp() throws Exception {
+        SchedulerService schedulerService = mock(SchedulerService.class);
+        //暂停一直阻塞到测试放行，恢复立即完成
+        doAnswer(invocation -> release.await(10, TimeUnit.SECONDS)).when(schedulerService).pauseJobs(any(), any());
+
+        groupOperationService = new GroupOperationService(1);
+        ReflectionTestUtils.setField(groupOperationService, "schedulerService", schedulerService);
+        ReflectionTestUtils.setField(groupOperationService, "threads", 4);
+        groupOperationService.init();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        groupOperationService.destroy();
+    }
+
+    @Test
+    public void runningOperationsAreNeverEvicted() throws Exception {
+        GroupOperation first = groupOperationService.submit(GroupOperationService.TYPE_PAUSE, GroupMatcher.jobGroupEquals("a"), null);
+        GroupOperation second = groupOperationService.submit(GroupOperationService.TYPE_PAUSE, GroupMatcher.jobGroupEquals("b"), null);
+
+        assertThat(groupOperationService.getOperation(first.getId())).isSameAs(first);
+        assertThat(groupOperationService.getOperation(second.getId())).isSameAs(second);
+
+        release.countDown();
+        this.awaitFinished(first);
+        this.awaitFinished(second);
+        GroupOperation third = groupOperationService.submit(GroupOperationService.TYPE_RESUME, GroupMatcher.jobGroupEquals("a"), null);
+
+        //history 为 1：结束的两个被淘汰
+        assertThat(groupOperationService.getOperation(first.getId())).isNull();
+        assertThat(groupOperationService.getOperation(second.getId())).isNull();
+        assertThat(groupOperationService.getOperation(third.getId())).isSameAs(third);
+    }
+
+    private void awaitFinished(GroupOperation operation) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!operation.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(operation.getStatus()).isEqualTo(GroupOperation.STATUS_SUCCEEDED);
+    }
+}
@@ -0,0 +1,188 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.TestDatabase;
+import com.wmx.quartzjdbc.config.HotTierJobStore;
+import com.wmx.quartzjdbc.config.SchedulerShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.*;
+import org.quartz.spi.OperableTrigger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 热层：触发状态在内存中合并、批量回写，持有者宕机后其它节点从表中接管.
+ *
+ * @author wangmaoxiong
+ */
+public class HotTierStoreTest {
+    private static final long CHECKIN_INTERVAL = 200;
+    private static final String CRON = "0 0 0 * * ?";
+
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private JobDefinitionCache jobDefinitionCache;
+    private String schedName;
+    private final List<Scheduler> schedulers = new ArrayList<>();
+    private final List<HotTierStore> stores = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        dataSource = TestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jobDefinitionCache = new JobDefinitionCache(10);
+        ReflectionTestUtils.setField(jobDefinitionCache, "allowedClasses", new String[0]);
+        //HotTierJobStore 按调度器名称静态登记，每个测试使用不同的名称
+        schedName = "test-" + UUID.randomUUID() + "_hot";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (HotTierStore store : stores) {
+            store.destroy();
+        }
+        for (Scheduler scheduler : schedulers) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void fireStatesAreCoalescedAndWrittenBehind() throws Exception {
+        HotTierStore store = node("nodeA", 60000);
+        Scheduler scheduler = schedulers.get(0);
+        awaitOwner(store);
+        TriggerKey triggerKey = this.scheduleDaily(scheduler, null);
+
+        OperableTrigger trigger = (OperableTrigger) scheduler.getTrigger(triggerKey);
+        long base = System.currentTimeMillis();
+        for (int i = 1; i <= 3; i++) {
+            trigger.setPreviousFireTime(new Date(base + i * 1000));
+            trigger.setNextFireTime(new Date(base + (i + 1) * 1000));
+            store.recordFire(trigger);
+        }
+        //触发只记录在内存中
+        assertThat(fireTimes(triggerKey).get("PREV_FIRE_TIME")).isNull();
+
+        ReflectionTestUtils.invokeMethod(store, "flush");
+        Map<String, Object> row = fireTimes(triggerKey);
+        assertThat(((Number) row.get("PREV_FIRE_TIME")).longValue()).isEqualTo(base + 3000);
+        assertThat(((Number) row.get("NEXT_FIRE_TIME")).longValue()).isEqualTo(base + 4000);
+        SimpleMeterRegistry meterRegistry = (SimpleMeterRegistry) ReflectionTestUtils.getField(store, "meterRegistry");
+        assertThat(meterRegistry.counter("quartz.hot.tier.fire.updates", "result", "written").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("quartz.hot.tier.fire.updates", "result", "coalesced").count()).isEqualTo(2);
+    }
+
+    @Test
+    public void anotherNodeTakesOverFromLastWrittenFireTime() throws Exception {
+        HotTierStore storeA = node("nodeA", 60000);
+        Scheduler schedulerA = schedulers.get(0);
+        awaitOwner(storeA);
+        CronExpression cached = jobDefinitionCache.getCronExpression(CRON);
+        TimeZone defaultTimeZone = cached.getTimeZone();
+        TriggerKey triggerKey = this.scheduleDaily(schedulerA, TimeZone.getTimeZone("Asia/Tokyo"));
+
+        OperableTrigger trigger = (OperableTrigger) schedulerA.getTrigger(triggerKey);
+        long prevFireTime = System.currentTimeMillis() - 1000;
+        trigger.setPreviousFireTime(new Date(prevFireTime));
+        storeA.recordFire(trigger);
+        ReflectionTestUtils.invokeMethod(storeA, "flush");
+        //宕机：不释放归属、不回写，等待归属过期
+        ((ScheduledExecutorService) ReflectionTestUtils.getField(storeA, "coordinator")).shutdownNow();
+        ((ScheduledExecutorService) ReflectionTestUtils.getField(storeA, "writer")).shutdownNow();
+        stores.remove(storeA);
+        schedulerA.shutdown();
+
+        HotTierStore storeB = node("nodeB", 60000);
+        Scheduler schedulerB = schedulers.get(1);
+        awaitOwner(storeB);
+        assertThat(schedulerB.isStarted()).isTrue();
+        CronTrigger recovered = (CronTrigger) schedulerB.getTrigger(triggerKey);
+        assertThat(recovered).isNotNull();
+        //从 A 回写的上次触发时间之后继续（CronTrigger 的开始时间精确到秒）
+        assertThat(recovered.getStartTime().getTime()).isBetween(prevFireTime - 1000, prevFireTime + 1);
+        assertThat(recovered.getNextFireTime()).isAfter(new Date(prevFireTime));
+        assertThat(recovered.getTimeZone().getID()).isEqualTo("Asia/Tokyo");
+        assertThat(schedulerB.getJobDetail(recovered.getJobKey()).getJobDataMap().getString("url")).isEqualTo("http://localhost/ping");
+        //带时区的触发器重新解析表达式，缓存中共用的实例不受影响
+        assertThat(jobDefinitionCache.getCronExpression(CRON)).isSameAs(cached);
+        assertThat(cached.getTimeZone()).isEqualTo(defaultTimeZone);
+    }
+
+    @Test
+    public void fireInstanceIdsArePrefixedWithInstanceId() throws Exception {
+        node("nodeA", 60000);
+        HotTierJobStore jobStore = HotTierJobStore.get(schedName);
+        String first = ReflectionTestUtils.invokeMethod(jobStore, "getFiredTriggerRecordId");
+        String second = ReflectionTestUtils.invokeMethod(jobStore, "getFiredTriggerRecordId");
+        //热层调度器在每个节点上同名，执行历史的 ENTRY_ID 靠 instanceId 前缀区分
+        assertThat(first).startsWith("nodeA").isNotEqualTo(second);
+        assertThat(second).startsWith("nodeA");
+    }
+
+    private HotTierStore node(String instanceId, long flushInterval) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceId", instanceId);
+        properties.setProperty("org.quartz.threadPool.threadCount", "2");
+        properties.setProperty("org.quartz.threadPool.makeThreadsDaemons", "true");
+        properties.setProperty("org.quartz.jobStore.class", HotTierJobStore.class.getName());
+        SchedulerFactoryBean factoryBean = new SchedulerFactoryBean();
+        factoryBean.setSchedulerName(schedName);
+        factoryBean.setQuartzProperties(properties);
+        factoryBean.setAutoStartup(false);
+        factoryBean.afterPropertiesSet();
+        Scheduler scheduler = factoryBean.getObject();
+        schedulers.add(scheduler);
+
+        SchedulerShards schedulerShards = mock(SchedulerShards.class);
+        when(schedulerShards.getHotScheduler()).thenReturn(scheduler);
+        when(schedulerShards.isRunning()).thenReturn(true);
+        HotTierStore store = new HotTierStore();
+        ReflectionTestUtils.setField(store, "schedulerShards", schedulerShards);
+        ReflectionTestUtils.setField(store, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(store, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "jobDefinitionCache", jobDefinitionCache);
+        ReflectionTestUtils.setField(store, "flushInterval", flushInterval);
+        ReflectionTestUtils.setField(store, "clustered", true);
+        ReflectionTestUtils.setField(store, "checkinInterval", CHECKIN_INTERVAL);
+        ReflectionTestUtils.setField(store, "tablePrefix", "QRTZ_");
+        store.init();
+        stores.add(store);
+        return store;
+    }
+
+    private TriggerKey scheduleDaily(Scheduler scheduler, TimeZone timeZone) throws SchedulerException {
+        JobDetail jobDetail = JobBuilder.newJob(SchedulerServiceTest.NoopJob.class).withIdentity("ping", "heartbeat")
+                .usingJobData("url", "http://localhost/ping").build();
+        CronScheduleBuilder cronSchedule = CronScheduleBuilder.cronSchedule(CRON);
+        if (timeZone != null) {
+            cronSchedule.inTimeZone(timeZone);
+        }
+        Trigger trigger = TriggerBuilder.newTrigger().withIdentity("ping", "heartbeat").withSchedule(cronSchedule).build();
+        scheduler.scheduleJob(jobDetail, trigger);
+        return trigger.getKey();
+    }
+
+    private Map<String, Object> fireTimes(TriggerKey triggerKey) {
+        return jdbcTemplate.queryForMap("select PREV_FIRE_TIME, NEXT_FIRE_TIME from QRTZ_HOT_TRIGGERS where SCHED_NAME = ? and TRIGGER_NAME = ? and TRIGGER_GROUP = ?",
+                schedName, triggerKey.getName(), triggerKey.getGroup());
+    }
+
+    private static void awaitOwner(HotTierStore store) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!(Boolean) ReflectionTestUtils.getField(store, "owner") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat((Boolean) ReflectionTestUtils.getField(store, "owner")).isTrue();
+    }
+}
@@ -0,0 +1,56 @@
+package com.wmx.quartzjdbc.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.CronExpression;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 作业类缓存的白名单校验、cron 表达式缓存.
+ *
+ * @author wangmaoxiong
+ */
+public class JobDefinitionCacheTest {
+    private static final String JOB_CLASS = SchedulerServiceTest.NoopJob.class.getName();
+
+    private JobDefinitionCache jobDefinitionCache;
+
+    @Before
+    public void setUp() {
+        jobDefinitionCache = new JobDefinitionCache(10);
+        ReflectionTestUtils.setField(jobDefinitionCache, "allowedClasses", new String[]{" " + JOB_CLASS});
+    }
+
+    @Test
+    public void classNamesDifferingOnlyInWhitespaceShareOneEntry() throws ClassNotFoundException {
+        assertThat(jobDefinitionCache.getJobClass(JOB_CLASS)).isEqualTo(SchedulerServiceTest.NoopJob.class);
+        assertThat(jobDefinitionCache.getJobClass("  " + JOB_CLASS + " ")).isEqualTo(SchedulerServiceTest.NoopJob.class);
+
+        assertThat(jobDefinitionCache.getJobClassCache().size()).isEqualTo(1);
+        assertThat(jobDefinitionCache.getJobClassCache().getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void classOutsideTheWhitelistIsRejectedEvenWithWhitespace() {
+        String other = JobDefinitionCacheTest.class.getName();
+        assertThatThrownBy(() -> jobDefinitionCache.getJobClass(" " + other)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> jobDefinitionCache.getJobClass(other)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(jobDefinitionCache.getJobClassCache().size()).isZero();
+    }
+
+    @Test
+    public void classThatIsNotAJobIsRejected() {
+        ReflectionTestUtils.setField(jobDefinitionCache, "allowedClasses", new String[0]);
+        assertThatThrownBy(() -> jobDefinitionCache.getJobClass(String.class.getName())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void cronExpressionIsParsedOnce() {
+        CronExpression first = jobDefinitionCache.getCronExpression("0 0/5 * * * ?");
+        assertThat(jobDefinitionCache.getCronExpression("0 0/5 * * * ?")).isSameAs(first);
+        assertThatThrownBy(() -> jobDefinitionCache.getCronExpression("invalid")).isInstanceOf(RuntimeException.class);
+    }
+}
@@ -0,0 +1,84 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.TestDatabase;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 按天分表（H2 不支持原生分区，NATIVE 按 ROLLING 处理）：提前创建、过期删除；维护任务重新加载分区时查询方不会看到空集合.
+ *
+ * @author wangmaoxiong
+ */
+public class JobHistoryPartitionsTest {
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private JdbcTemplate jdbcTemplate;
+    private JobHistoryPartitions jobHistoryPartitions;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(TestDatabase.create());
+        jobHistoryPartitions = new JobHistoryPartitions();
+        ReflectionTestUtils.setField(jobHistoryPartitions, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(jobHistoryPartitions, "modeConfig", "NATIVE");
+        ReflectionTestUtils.setField(jobHistoryPartitions, "daysAhead", 2);
+        ReflectionTestUtils.setField(jobHistoryPartitions, "retention", Duration.ofDays(3));
+        ReflectionTestUtils.setField(jobHistoryPartitions, "tablePrefix", "QRTZ_");
+    }
+
+    @Test
+    public void createsFuturePartitionsAndDropsExpiredOnes() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        String expired = "QRTZ_JOB_HISTORY_" + DAY_FORMAT.format(today.minusDays(10));
+        jdbcTemplate.execute("create table " + expired + " as select * from QRTZ_JOB_HISTORY where 1 = 0");
+
+        jobHistoryPartitions.init();
+
+        assertThat(jobHistoryPartitions.getMode()).isEqualTo(JobHistoryPartitions.Mode.ROLLING);
+        assertThat(jobHistoryPartitions.getPartitions()).containsExactly(
+                "QRTZ_JOB_HISTORY_" + DAY_FORMAT.format(today),
+                "QRTZ_JOB_HISTORY_" + DAY_FORMAT.format(today.plusDays(1)),
+                "QRTZ_JOB_HISTORY_" + DAY_FORMAT.format(today.plusDays(2)));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from information_schema.tables where table_name = ?", Integer.class, expired)).isZero();
+
+        long now = System.currentTimeMillis();
+        assertThat(jobHistoryPartitions.tableFor(now)).isEqualTo("QRTZ_JOB_HISTORY_" + DAY_FORMAT.format(today));
+        assertThat(jobHistoryPartitions.tablesFor(now, null)).containsExactly(
+                "QRTZ_JOB_HISTORY_" + DAY_FORMAT.format(today.plusDays(2)),
+                "QRTZ_JOB_HISTORY_" + DAY_FORMAT.format(today.plusDays(1)),
+                "QRTZ_JOB_HISTORY_" + DAY_FORMAT.format(today));
+    }
+
+    @Test
+    public void readersNeverSeeEmptyPartitionsDuringMaintenance() throws Exception {
+        jobHistoryPartitions.init();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger empty = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                if (jobHistoryPartitions.tablesFor(null, null).isEmpty()) {
+                    empty.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 50; i++) {
+            jobHistoryPartitions.maintain();
+        }
+        running.set(false);
+        reader.join();
+
+        assertThat(empty.get()).isZero();
+    }
+}
@@ -0,0 +1,101 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.TestDatabase;
+import com.wmx.quartzjdbc.pojo.JobHistory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 查询执行历史：跨调度器（分片）按作业查询，按触发时间倒序，使用 (JOB_GROUP, JOB_NAME, FIRED_TIME) 索引.
+ *
+ * @author wangmaoxiong
+ */
+public class JobHistoryServiceTest {
+    private JdbcTemplate jdbcTemplate;
+    private JobHistoryService jobHistoryService;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(TestDatabase.create());
+        JobHistoryPartitions jobHistoryPartitions = new JobHistoryPartitions();
+        ReflectionTestUtils.setField(jobHistoryPartitions, "tablePrefix", "QRTZ_");
+
+        jobHistoryService = new JobHistoryService(10);
+        ReflectionTestUtils.setField(jobHistoryService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(jobHistoryService, "jobHistoryPartitions", jobHistoryPartitions);
+        ReflectionTestUtils.setField(jobHistoryService, "tablePrefix", "QRTZ_");
+
+        this.insert("sched", "e1", 1000, JobHistory.STATUS_SUCCESS);
+        this.insert("sched_1", "e2", 3000, JobHistory.STATUS_FAILURE);
+        this.insert("sched", "e3", 2000, JobHistory.STATUS_SUCCESS);
+    }
+
+    @Test
+    public void findsHistoryOfJobAcrossSchedulers() {
+        List<JobHistory> histories = jobHistoryService.findHistory("group", "job", null, null, null, 10);
+        assertThat(histories).extracting(JobHistory::getEntry_id).containsExactly("e2", "e3", "e1");
+
+        Map<String, JobHistory> last = jobHistoryService.lastExecution("group", "job");
+        assertThat(last.get("last").getEntry_id()).isEqualTo("e2");
+        assertThat(last.get("lastSuccess").getEntry_id()).isEqualTo("e3");
+        assertThat(last.get("lastFailure").getEntry_id()).isEqualTo("e2");
+    }
+
+    @Test
+    public void jobQueryUsesJobIndexWithoutSchedName() {
+        String plan = jdbcTemplate.queryForObject("explain select * from QRTZ_JOB_HISTORY where 1 = 1 and job_group = ? and job_name = ? order by fired_time desc",
+                String.class, "group", "job");
+        assertThat(plan).contains("IDX_QRTZ_JH_J_FT");
+    }
+
+    @Test
+    public void duplicateEntryIdDropsOnlyThatRecord() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(jobHistoryService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(jobHistoryService, "enabled", true);
+        ReflectionTestUtils.setField(jobHistoryService, "batchSize", 10);
+        ReflectionTestUtils.setField(jobHistoryService, "flushInterval", 60000L);
+        jobHistoryService.init();
+        try {
+            jobHistoryService.record(this.history("e4"));
+            //与 setUp 中已有的记录主键冲突
+            jobHistoryService.record(this.history("e1"));
+            jobHistoryService.record(this.history("e5"));
+            ReflectionTestUtils.invokeMethod(jobHistoryService, "flush");
+
+            assertThat(jdbcTemplate.queryForList("select ENTRY_ID from QRTZ_JOB_HISTORY where SCHED_NAME = 'sched' order by ENTRY_ID", String.class))
+                    .containsExactly("e1", "e3", "e4", "e5");
+            assertThat(meterRegistry.counter("quartz.job.history.written").count()).isEqualTo(2);
+            assertThat(meterRegistry.counter("quartz.job.history.dropped", "reason", "error").count()).isEqualTo(1);
+        } finally {
+            jobHistoryService.destroy();
+        }
+    }
+
+    private JobHistory history(String entryId) {
+        JobHistory history = new JobHistory();
+        history.setSched_name("sched");
+        history.setEntry_id(entryId);
+        history.setJob_name("job");
+        history.setJob_group("group");
+        history.setTrigger_name("trigger");
+        history.setTrigger_group("group");
+        history.setInstance_name("node1");
+        history.setFired_time(System.currentTimeMillis());
+        history.setStatus(JobHistory.STATUS_SUCCESS);
+        return history;
+    }
+
+    private void insert(String schedName, String entryId, long firedTime, String status) {
+        jdbcTemplate.update("insert into QRTZ_JOB_HISTORY (SCHED_NAME,ENTRY_ID,JOB_NAME,JOB_GROUP,TRIGGER_NAME,TRIGGER_GROUP,INSTANCE_NAME,FIRED_TIME,RUN_TIME,STATUS)"
+                + " values (?,?,'job','group','trigger','group','node1',?,0,?)", schedName, entryId, firedTime, status);
+    }
+}
@@ -0,0 +1,135 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.TestDatabase;
+import com.wmx.quartzjdbc.config.SchedulerShards;
+import com.wmx.quartzjdbc.pojo.KeysetPage;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.TriggerKey;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 键集分页：按调度器名称逐个查询，翻页不重复、不遗漏，并且只返回本应用的调度器中的作业；全量导出同样只导出本应用的调度器.
+ *
+ * @author wangmaoxiong
+ */
+public class SchedulerQueryServiceTest {
+    private JdbcTemplate jdbcTemplate;
+    private SchedulerQueryService schedulerQueryService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(TestDatabase.create());
+        SchedulerShards schedulerShards = mock(SchedulerShards.class);
+        when(schedulerShards.getSchedulerNames()).thenReturn(new LinkedHashSet<>(Arrays.asList("sched", "sched_1")));
+        SchedulerStateCache schedulerStateCache = mock(SchedulerStateCache.class);
+        when(schedulerStateCache.getPage(anyString(), any())).thenAnswer(invocation -> ((Supplier<KeysetPage>) invocation.getArgument(1)).get());
+
+        schedulerQueryService = new SchedulerQueryService();
+        ReflectionTestUtils.setField(schedulerQueryService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(schedulerQueryService, "schedulerStateCache", schedulerStateCache);
+        ReflectionTestUtils.setField(schedulerQueryService, "schedulerShards", schedulerShards);
+        ReflectionTestUtils.setField(schedulerQueryService, "tablePrefix", "QRTZ_");
+        ReflectionTestUtils.setField(schedulerQueryService, "exportFetchSize", 2);
+
+        for (int i = 0; i < 5; i++) {
+            this.insertJob("sched", "groupA", "job" + i);
+            this.insertJob("sched_1", "groupB", "job" + i);
+        }
+        //其它应用的调度器
+        this.insertJob("other", "groupA", "job0");
+        jdbcTemplate.update("insert into QRTZ_TRIGGERS (SCHED_NAME,TRIGGER_NAME,TRIGGER_GROUP,JOB_NAME,JOB_GROUP,TRIGGER_STATE,TRIGGER_TYPE,START_TIME)"
+                + " values ('sched','trigger1','groupA','job1','groupA','PAUSED','CRON',0)");
+    }
+
+    @Test
+    public void pagesAcrossSchedulersWithoutGapsOrDuplicates() {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            KeysetPage page = schedulerQueryService.findSchedulers(cursor, 3, null, null);
+            assertThat(page.getRows().size()).isLessThanOrEqualTo(3);
+            for (Map<String, Object> row : page.getRows()) {
+                seen.add(row.get("sched_name") + "." + row.get("job_group") + "." + row.get("job_name"));
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(4);
+        assertThat(seen).containsExactly(
+                "sched.groupA.job0", "sched.groupA.job1", "sched.groupA.job2", "sched.groupA.job3", "sched.groupA.job4",
+                "sched_1.groupB.job0", "sched_1.groupB.job1", "sched_1.groupB.job2", "sched_1.groupB.job3", "sched_1.groupB.job4");
+    }
+
+    @Test
+    public void lastPageOfSchedulerEndsExactlyAtPageSize() {
+        KeysetPage page = schedulerQueryService.findSchedulers(null, 5, null, null);
+        assertThat(page.getRows()).hasSize(5);
+        assertThat(page.getNextCursor()).isNotNull();
+
+        KeysetPage next = schedulerQueryService.findSchedulers(page.getNextCursor(), 5, null, null);
+        assertThat(next.getRows()).extracting(row -> row.get("sched_name")).containsOnly("sched_1");
+        assertThat(next.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void filtersByTriggerState() {
+        KeysetPage page = schedulerQueryService.findSchedulers(null, 10, null, "PAUSED");
+        assertThat(page.getRows()).hasSize(1);
+        assertThat(page.getRows().get(0)).containsEntry("job_name", "job1").containsEntry("trigger_name", "trigger1");
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void findsTriggerSchedulersOnlyAmongGivenNames() {
+        TriggerKey existing = TriggerKey.triggerKey("trigger1", "groupA");
+        TriggerKey missing = TriggerKey.triggerKey("trigger2", "groupA");
+
+        assertThat(schedulerQueryService.findTriggerSchedNames(Arrays.asList(existing, missing), Arrays.asList("sched", "sched_1")))
+                .containsOnly(entry(existing, "sched"));
+        assertThat(schedulerQueryService.findTriggerSchedNames(Collections.singletonList(existing), Collections.singletonList("sched_1"))).isEmpty();
+    }
+
+    @Test
+    public void exportsOnlyOwnSchedulers() {
+        List<String> exported = new ArrayList<>();
+        long count = schedulerQueryService.exportSchedulers(null, false, row -> exported.add(row.get("sched_name") + "." + row.get("job_group") + "." + row.get("job_name")));
+
+        assertThat(count).isEqualTo(10);
+        assertThat(exported).hasSize(10).doesNotContain("other.groupA.job0");
+
+        exported.clear();
+        assertThat(schedulerQueryService.exportSchedulers("groupA", false, row -> exported.add(row.get("sched_name") + "." + row.get("job_name")))).isEqualTo(5);
+        assertThat(exported).allMatch(row -> row.startsWith("sched."));
+    }
+
+    @Test
+    public void countsTriggersPerJobGroupInOneScheduler() {
+        jdbcTemplate.update("insert into QRTZ_TRIGGERS (SCHED_NAME,TRIGGER_NAME,TRIGGER_GROUP,JOB_NAME,JOB_GROUP,TRIGGER_STATE,TRIGGER_TYPE,START_TIME)"
+                + " values ('sched','trigger2','other','job2','groupA','WAITING','CRON',0)");
+        jdbcTemplate.update("insert into QRTZ_TRIGGERS (SCHED_NAME,TRIGGER_NAME,TRIGGER_GROUP,JOB_NAME,JOB_GROUP,TRIGGER_STATE,TRIGGER_TYPE,START_TIME)"
+                + " values ('sched_1','trigger1','groupB','job1','groupB','WAITING','CRON',0)");
+
+        assertThat(schedulerQueryService.countTriggersByJobGroup("sched")).containsOnly(entry("groupA", 2));
+        assertThat(schedulerQueryService.countTriggersByJobGroup("sched_1")).containsOnly(entry("groupB", 1));
+    }
+
+    private void insertJob(String schedName, String jobGroup, String jobName) {
+        jdbcTemplate.update("insert into QRTZ_JOB_DETAILS (SCHED_NAME,JOB_NAME,JOB_GROUP,JOB_CLASS_NAME,IS_DURABLE,IS_NONCONCURRENT,IS_UPDATE_DATA,REQUESTS_RECOVERY)"
+                + " values (?,?,?,'com.wmx.quartzjdbc.jobs.RequestJob',true,false,false,false)", schedName, jobName, jobGroup);
+    }
+}
@@ -0,0 +1,206 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.config.SchedulerShards;
+import com.wmx.quartzjdbc.pojo.BatchResult;
+import com.wmx.quartzjdbc.pojo.GroupOperation;
+import com.wmx.quartzjdbc.pojo.SchedulerEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.*;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static com.wmx.quartzjdbc.service.SchedulerServiceTest.entity;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 分片时触发器在所有分片中唯一：其它分片中已经存在同名触发器时注册失败；按作业组暂停、恢复时进度按触发器个数统计.
+ * 两个内存调度器作为分片，作业名以 a 开头的分配到第一个分片，其余分配到第二个；查询所在分片时直接查看两个调度器.
+ *
+ * @author wangmaoxiong
+ */
+public class SchedulerServiceShardsTest {
+    private final Map<String, Scheduler> schedulers = new LinkedHashMap<>();
+    private SchedulerService schedulerService;
+    private SchedulerQueryService schedulerQueryService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws SchedulerException {
+        for (String name : new String[]{"shard0", "shard1"}) {
+            Properties properties = new Properties();
+            properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, name + "_" + UUID.randomUUID());
+            properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+            properties.setProperty("org.quartz.threadPool.threadCount", "1");
+            Scheduler scheduler = new StdSchedulerFactory(properties).getScheduler();
+            schedulers.put(scheduler.getSchedulerName(), scheduler);
+        }
+        List<Scheduler> list = new ArrayList<>(schedulers.values());
+
+        SchedulerShards schedulerShards = mock(SchedulerShards.class);
+        when(schedulerShards.getShardCount()).thenReturn(2);
+        when(schedulerShards.getSchedulers()).thenReturn(list);
+        when(schedulerShards.getSchedulerNames()).thenReturn(schedulers.keySet());
+        when(schedulerShards.getScheduler(anyString())).thenAnswer(invocation -> schedulers.get(invocation.<String>getArgument(0)));
+        when(schedulerShards.route(any(JobKey.class), any())).thenAnswer(invocation ->
+                invocation.<JobKey>getArgument(0).getName().startsWith("a") ? list.get(0) : list.get(1));
+
+        schedulerQueryService = mock(SchedulerQueryService.class);
+        when(schedulerQueryService.findJobSchedNames(anyCollection(), anyCollection())).thenAnswer(invocation -> {
+            Map<JobKey, String> found = new HashMap<>();
+            for (JobKey jobKey : invocation.<Collection<JobKey>>getArgument(0)) {
+                for (String schedName : invocation.<Collection<String>>getArgument(1)) {
+                    if (schedulers.get(schedName).checkExists(jobKey)) {
+                        found.put(jobKey, schedName);
+                    }
+                }
+            }
+            return found;
+        });
+        when(schedulerQueryService.findTriggerSchedNames(anyCollection(), anyCollection())).thenAnswer(invocation -> {
+            Map<TriggerKey, String> found = new HashMap<>();
+            for (TriggerKey triggerKey : invocation.<Collection<TriggerKey>>getArgument(0)) {
+                for (String schedName : invocation.<Collection<String>>getArgument(1)) {
+                    if (schedulers.get(schedName).checkExists(triggerKey)) {
+                        found.put(triggerKey, schedName);
+                    }
+                }
+            }
+            return found;
+        });
+        when(schedulerQueryService.countTriggersByJobGroup(anyString())).thenAnswer(invocation -> {
+            Scheduler scheduler = schedulers.get(invocation.<String>getArgument(0));
+            Map<String, Integer> counts = new HashMap<>();
+            for (TriggerKey triggerKey : scheduler.getTriggerKeys(GroupMatcher.anyTriggerGroup())) {
+                counts.merge(scheduler.getTrigger(triggerKey).getJobKey().getGroup(), 1, Integer::sum);
+            }
+            return counts;
+        });
+        CronJitter cronJitter = mock(CronJitter.class);
+        when(cronJitter.apply(anyString(), anyString(), any(TriggerKey.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        schedulerService = new SchedulerService();
+        ReflectionTestUtils.setField(schedulerService, "schedulerShards", schedulerShards);
+        ReflectionTestUtils.setField(schedulerService, "schedulerQueryService", schedulerQueryService);
+        ReflectionTestUtils.setField(schedulerService, "schedulerStateCache", mock(SchedulerStateCache.class));
+        ReflectionTestUtils.setField(schedulerService, "jobDefinitionCache", new JobDefinitionCache(100));
+        ReflectionTestUtils.setField(schedulerService, "cronJitter", cronJitter);
+        ReflectionTestUtils.setField(schedulerService, "batchChunkSize", 500);
+        ReflectionTestUtils.setField(schedulerService, "priorityConfigs", new String[0]);
+        ReflectionTestUtils.setField(schedulerService, "defaultMisfirePolicyConfig", "SKIP");
+        ReflectionTestUtils.setField(schedulerService, "misfirePolicyConfigs", new String[0]);
+        schedulerService.init();
+    }
+
+    @After
+    public void tearDown() throws SchedulerException {
+        for (Scheduler scheduler : schedulers.values()) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void triggerOfAnotherJobOnAnotherShardIsRejected() throws Exception {
+        schedulerService.scheduleJob(entity("a1", "t1"));
+
+        assertThatThrownBy(() -> schedulerService.scheduleJob(entity("b1", "t1")))
+                .isInstanceOf(ObjectAlreadyExistsException.class).hasMessageContaining("already exists");
+        assertThat(this.countTrigger("t1")).isEqualTo(1);
+    }
+
+    @Test
+    public void reschedulingTheSameJobOnItsShardStillReplaces() throws Exception {
+        schedulerService.scheduleJob(entity("b1", "t1"));
+        SchedulerEntity changed = entity("b1", "t1");
+        changed.setCron_expression("0 0 0 1 2 ? 2099");
+        schedulerService.scheduleJob(changed);
+
+        assertThat(this.countTrigger("t1")).isEqualTo(1);
+    }
+
+    @Test
+    public void batchFailsOnlyTriggersExistingOnOtherShards() throws Exception {
+        schedulerService.scheduleJob(entity("a1", "t1"));
+
+        BatchResult result = schedulerService.scheduleJobs(Arrays.asList(entity("b1", "t1"), entity("b2", "t2"), entity("a2", "t3")), 10);
+
+        assertThat(result.getSucceeded()).isEqualTo(2);
+        assertThat(result.getItems().get(0).isSuccess()).isFalse();
+        assertThat(result.getItems().get(0).getMessage()).contains("already exists");
+        assertThat(this.countTrigger("t1")).isEqualTo(1);
+        assertThat(this.countTrigger("t2")).isEqualTo(1);
+    }
+
+    @Test
+    public void triggerRegisteredForExistingJobMustBeUnique() throws Exception {
+        schedulerService.scheduleJob(entity("a1", "t1"));
+        schedulerService.scheduleJob(entity("b1", "t2"));
+        SchedulerEntity trigger = entity("b1", "t1");
+        trigger.setJob_class_name(null);
+
+        assertThatThrownBy(() -> schedulerService.scheduleJobOrTrigger(trigger)).isInstanceOf(ObjectAlreadyExistsException.class);
+    }
+
+    @Test
+    public void pauseAndResumeCountTriggersPerGroup() throws Exception {
+        schedulerService.scheduleJob(entity("a1", "t1"));
+        schedulerService.scheduleJob(entity("b1", "t2"));
+        SchedulerEntity second = entity("b1", "t3");
+        second.setJob_class_name(null);
+        schedulerService.scheduleJobOrTrigger(second);
+        SchedulerEntity tenant = entity("b2", "t4");
+        tenant.setJob_group("tenant");
+        tenant.setTrigger_group("tenant");
+        schedulerService.scheduleJob(tenant);
+
+        GroupOperation pause = new GroupOperation("1", GroupOperationService.TYPE_PAUSE, "ANYTHING", null);
+        schedulerService.pauseJobs(GroupMatcher.anyJobGroup(), pause);
+        assertThat(pause.getTotal()).isEqualTo(4);
+        assertThat(pause.getProcessed()).isEqualTo(4);
+        //shard0：group；shard1：group、tenant
+        assertThat(pause.getTransactions()).isEqualTo(3);
+        //每个分片一次统计查询，不逐个作业读取触发器
+        verify(schedulerQueryService, times(2)).countTriggersByJobGroup(anyString());
+        for (Scheduler scheduler : schedulers.values()) {
+            for (TriggerKey triggerKey : scheduler.getTriggerKeys(GroupMatcher.anyTriggerGroup())) {
+                assertThat(scheduler.getTriggerState(triggerKey)).isEqualTo(Trigger.TriggerState.PAUSED);
+            }
+        }
+
+        GroupOperation resume = new GroupOperation("2", GroupOperationService.TYPE_RESUME, "EQUALS", "group");
+        schedulerService.resumeJobs(GroupMatcher.jobGroupEquals("group"), resume);
+        assertThat(resume.getTotal()).isEqualTo(3);
+        assertThat(resume.getTransactions()).isEqualTo(2);
+        assertThat(schedulers.values().stream().mapToInt(scheduler -> this.countState(scheduler, Trigger.TriggerState.PAUSED)).sum()).isEqualTo(1);
+    }
+
+    private int countState(Scheduler scheduler, Trigger.TriggerState state) {
+        try {
+            int count = 0;
+            for (TriggerKey triggerKey : scheduler.getTriggerKeys(GroupMatcher.anyTriggerGroup())) {
+                count += scheduler.getTriggerState(triggerKey) == state ? 1 : 0;
+            }
+            return count;
+        } catch (SchedulerException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int countTrigger(String name) throws SchedulerException {
+        int count = 0;
+        for (Scheduler scheduler : schedulers.values()) {
+            count += scheduler.checkExists(TriggerKey.triggerKey(name, "group")) ? 1 : 0;
+        }
+        return count;
+    }
+}
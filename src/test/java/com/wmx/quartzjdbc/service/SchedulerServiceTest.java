@@ -0,0 +1,191 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.config.SchedulerShards;
+import com.wmx.quartzjdbc.pojo.BatchResult;
+import com.wmx.quartzjdbc.pojo.SchedulerEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.*;
+import org.quartz.impl.StdSchedulerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 批量注册：分块提交、重复触发器的处理；打散后的 cron 表达式不进入缓存.
+ *
+ * @author wangmaoxiong
+ */
+public class SchedulerServiceTest {
+    private static final String CRON = "0 0 0 1 1 ? 2099";
+
+    private Scheduler scheduler;
+    private SchedulerService schedulerService;
+
+    @Before
+    public void setUp() throws SchedulerException {
+        Properties properties = new Properties();
+        properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "test_" + UUID.randomUUID());
+        properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+        scheduler = spy(new StdSchedulerFactory(properties).getScheduler());
+
+        SchedulerShards schedulerShards = mock(SchedulerShards.class);
+        when(schedulerShards.getShardCount()).thenReturn(1);
+        when(schedulerShards.getSchedulers()).thenReturn(Collections.singletonList(scheduler));
+        when(schedulerShards.route(any(JobKey.class), any())).thenReturn(scheduler);
+        when(schedulerShards.getScheduler(scheduler.getSchedulerName())).thenReturn(scheduler);
+        SchedulerStateCache schedulerStateCache = new SchedulerStateCache(100);
+        ReflectionTestUtils.setField(schedulerStateCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(schedulerStateCache, "enabled", true);
+        schedulerStateCache.init();
+        CronJitter cronJitter = mock(CronJitter.class);
+        when(cronJitter.apply(anyString(), anyString(), any(TriggerKey.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        schedulerService = new SchedulerService();
+        ReflectionTestUtils.setField(schedulerService, "schedulerShards", schedulerShards);
+        ReflectionTestUtils.setField(schedulerService, "schedulerStateCache", schedulerStateCache);
+        ReflectionTestUtils.setField(schedulerService, "jobDefinitionCache", new JobDefinitionCache(100));
+        ReflectionTestUtils.setField(schedulerService, "cronJitter", cronJitter);
+        ReflectionTestUtils.setField(schedulerService, "batchChunkSize", 500);
+        ReflectionTestUtils.setField(schedulerService, "priorityConfigs", new String[0]);
+        ReflectionTestUtils.setField(schedulerService, "defaultMisfirePolicyConfig", "SKIP");
+        ReflectionTestUtils.setField(schedulerService, "misfirePolicyConfigs", new String[0]);
+        schedulerService.init();
+    }
+
+    @After
+    public void tearDown() throws SchedulerException {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void schedulesEveryItemOfEveryChunk() throws SchedulerException {
+        List<SchedulerEntity> entities = Arrays.asList(entity("job1", "t1"), entity("job2", "t2"), entity("job3", "t3"));
+
+        BatchResult result = schedulerService.scheduleJobs(entities, 2);
+
+        assertThat(result.getSucceeded()).isEqualTo(3);
+        assertThat(result.getFailed()).isZero();
+        for (String trigger : new String[]{"t1", "t2", "t3"}) {
+            assertThat(scheduler.checkExists(TriggerKey.triggerKey(trigger, "group"))).isTrue();
+        }
+    }
+
+    @Test
+    public void duplicateTriggerInChunkFailsAllButTheFirst() throws SchedulerException {
+        List<SchedulerEntity> entities = Arrays.asList(entity("job1", "t1"), entity("job2", "t1"), entity("job1", "t1"));
+
+        BatchResult result = schedulerService.scheduleJobs(entities, 10);
+
+        assertThat(result.getSucceeded()).isEqualTo(1);
+        assertThat(result.getFailed()).isEqualTo(2);
+        assertThat(result.getItems().get(0).isSuccess()).isTrue();
+        assertThat(result.getItems().get(1).getMessage()).contains("duplicate trigger");
+        assertThat(result.getItems().get(2).getMessage()).contains("duplicate trigger");
+        assertThat(scheduler.getTrigger(TriggerKey.triggerKey("t1", "group")).getJobKey()).isEqualTo(JobKey.jobKey("job1", "group"));
+    }
+
+    @Test
+    public void duplicateTriggerAcrossChunksFailsAllButTheFirst() throws SchedulerException {
+        List<SchedulerEntity> entities = Arrays.asList(entity("job1", "t1"), entity("job2", "t2"), entity("job3", "t1"));
+
+        BatchResult result = schedulerService.scheduleJobs(entities, 2);
+
+        assertThat(result.getSucceeded()).isEqualTo(2);
+        assertThat(result.getItems().get(2).isSuccess()).isFalse();
+        assertThat(scheduler.getTrigger(TriggerKey.triggerKey("t1", "group")).getJobKey()).isEqualTo(JobKey.jobKey("job1", "group"));
+        assertThat(scheduler.checkExists(JobKey.jobKey("job3", "group"))).isFalse();
+    }
+
+    @Test
+    public void invalidItemDoesNotFailTheChunk() throws SchedulerException {
+        SchedulerEntity invalid = entity("job2", "t2");
+        invalid.setCron_expression("not a cron");
+        List<SchedulerEntity> entities = Arrays.asList(entity("job1", "t1"), invalid, entity("job3", "t3"));
+
+        BatchResult result = schedulerService.scheduleJobs(entities, 10);
+
+        assertThat(result.getSucceeded()).isEqualTo(2);
+        assertThat(result.getItems().get(1).isSuccess()).isFalse();
+        assertThat(scheduler.checkExists(TriggerKey.triggerKey("t3", "group"))).isTrue();
+    }
+
+    @Test
+    public void rescheduleLooksUpTheTriggerOnlyOnce() throws Exception {
+        schedulerService.scheduleJob(entity("job1", "t1"));
+        TriggerKey triggerKey = TriggerKey.triggerKey("t1", "group");
+        SchedulerEntity changed = entity("job1", "t1");
+        changed.setCron_expression("0 0 0 1 2 ? 2099");
+
+        assertThat(schedulerService.rescheduleJob(changed)).isNotNull();
+        changed.setCron_expression("0 0 0 1 3 ? 2099");
+        assertThat(schedulerService.rescheduleJob(changed)).isNotNull();
+
+        verify(scheduler, times(1)).getTrigger(triggerKey);
+        assertThat(((CronTrigger) scheduler.getTrigger(triggerKey)).getCronExpression()).isEqualTo("0 0 0 1 3 ? 2099");
+    }
+
+    @Test
+    public void rescheduleOfMissingTriggerReturnsNull() throws Exception {
+        assertThat(schedulerService.rescheduleJob(entity("job1", "missing"))).isNull();
+    }
+
+    @Test
+    public void staleTriggerLocationFallsBackToScheduling() throws Exception {
+        schedulerService.scheduleJob(entity("job1", "t1"));
+        SchedulerEntity trigger = entity("job1", "t2");
+        trigger.setJob_class_name(null);
+        schedulerService.scheduleJobOrTrigger(trigger);
+        //另一个节点删除了触发器（缓存没有注册为监听器），本节点的位置缓存仍然存在
+        scheduler.unscheduleJob(TriggerKey.triggerKey("t2", "group"));
+
+        schedulerService.scheduleJobOrTrigger(trigger);
+
+        assertThat(scheduler.checkExists(TriggerKey.triggerKey("t2", "group"))).isTrue();
+    }
+
+    @Test
+    public void jitteredCronExpressionsBypassTheCronCache() throws Exception {
+        CronJitter cronJitter = (CronJitter) ReflectionTestUtils.getField(schedulerService, "cronJitter");
+        when(cronJitter.apply(anyString(), anyString(), any(TriggerKey.class))).thenAnswer(invocation -> "7" + invocation.<String>getArgument(0).substring(1));
+        JobDefinitionCache jobDefinitionCache = (JobDefinitionCache) ReflectionTestUtils.getField(schedulerService, "jobDefinitionCache");
+
+        schedulerService.scheduleJob(entity("job1", "t1"));
+
+        assertThat(((CronTrigger) scheduler.getTrigger(TriggerKey.triggerKey("t1", "group"))).getCronExpression()).isEqualTo("7 0 0 1 1 ? 2099");
+        assertThat(jobDefinitionCache.getCronCache().size()).isZero();
+    }
+
+    static SchedulerEntity entity(String jobName, String triggerName) {
+        SchedulerEntity entity = new SchedulerEntity();
+        entity.setJob_name(jobName);
+        entity.setJob_group("group");
+        entity.setJob_class_name(NoopJob.class.getName());
+        entity.setTrigger_name(triggerName);
+        entity.setTrigger_group("group");
+        entity.setCron_expression(CRON);
+        return entity;
+    }
+
+    public static class NoopJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+}
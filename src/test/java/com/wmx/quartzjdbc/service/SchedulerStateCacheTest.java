@@ -0,0 +1,172 @@
+package com.wmx.quartzjdbc.service;
+
+import com.wmx.quartzjdbc.TestDatabase;
+import com.wmx.quartzjdbc.pojo.KeysetPage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.JobBuilder;
+import org.quartz.JobKey;
+import org.quartz.TriggerKey;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * 调度状态缓存：过期的分页结果不算命中；两个节点共用版本表时互相失效；版本表的错误处理.
+ *
+ * @author wangmaoxiong
+ */
+public class SchedulerStateCacheTest {
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        dataSource = TestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    public void expiredPageIsReloadedAndCountedAsMiss() {
+        SchedulerStateCache cache = this.node(jdbcTemplate, 0);
+        AtomicInteger loads = new AtomicInteger();
+        cache.getPage("p", () -> page(loads.incrementAndGet()));
+        ReflectionTestUtils.setField(cache, "ttl", -1L);
+        cache.getPage("p", () -> page(loads.incrementAndGet()));
+
+        assertThat(loads).hasValue(2);
+        assertThat(this.pageStats(cache)).containsEntry("hits", 0L).containsEntry("misses", 2L);
+    }
+
+    @Test
+    public void freshPageIsServedFromMemory() {
+        SchedulerStateCache cache = this.node(jdbcTemplate, 60000);
+        AtomicInteger loads = new AtomicInteger();
+        cache.getPage("p", () -> page(loads.incrementAndGet()));
+        KeysetPage cached = cache.getPage("p", () -> page(loads.incrementAndGet()));
+
+        assertThat(loads).hasValue(1);
+        assertThat(cached.getPageSize()).isEqualTo(1);
+        assertThat(this.pageStats(cache)).containsEntry("hits", 1L);
+    }
+
+    @Test
+    public void changeOnOneNodeInvalidatesTheOther() {
+        SchedulerStateCache nodeA = this.node(jdbcTemplate, 60000);
+        SchedulerStateCache nodeB = this.node(jdbcTemplate, 60000);
+        nodeA.jobAdded(JobBuilder.newJob(SchedulerServiceTest.NoopJob.class).withIdentity("j").build());
+        nodeA.checkVersion();
+        nodeB.checkVersion();
+        nodeB.putJobLocation(JobKey.jobKey("j"), "sched");
+
+        //本节点的变化不清空其余缓存
+        nodeA.putJobLocation(JobKey.jobKey("j"), "sched");
+        nodeA.triggerPaused(TriggerKey.triggerKey("t"));
+        nodeA.checkVersion();
+        assertThat(nodeA.getJobLocation(JobKey.jobKey("j"))).isEqualTo("sched");
+
+        nodeB.checkVersion();
+        assertThat(nodeB.getJobLocation(JobKey.jobKey("j"))).isNull();
+    }
+
+    @Test
+    public void concurrentChangesOnBothNodesInvalidateBoth() {
+        SchedulerStateCache nodeA = this.node(jdbcTemplate, 60000);
+        SchedulerStateCache nodeB = this.node(jdbcTemplate, 60000);
+        nodeA.checkVersion();
+        nodeB.checkVersion();
+        nodeA.putJobLocation(JobKey.jobKey("a"), "sched");
+        nodeB.putJobLocation(JobKey.jobKey("b"), "sched");
+
+        //两个节点在同一个检查周期内都有变化
+        nodeA.triggerPaused(TriggerKey.triggerKey("t1"));
+        nodeB.triggerPaused(TriggerKey.triggerKey("t2"));
+        nodeA.checkVersion();
+        nodeB.checkVersion();
+        assertThat(nodeB.getJobLocation(JobKey.jobKey("b"))).isNull();
+
+        nodeA.checkVersion();
+        assertThat(nodeA.getJobLocation(JobKey.jobKey("a"))).isNull();
+        assertThat(jdbcTemplate.queryForObject("select version from QRTZ_CACHE_VERSION", Long.class)).isEqualTo(2L);
+    }
+
+    @Test
+    public void missingVersionTableDisablesRemoteInvalidation() {
+        jdbcTemplate.execute("drop table QRTZ_CACHE_VERSION");
+        SchedulerStateCache cache = this.node(jdbcTemplate, 60000);
+        cache.checkVersion();
+        assertThat(cache.getStats()).containsEntry("versionTableAvailable", false);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void transientErrorKeepsVersionTableAndPendingChange() {
+        JdbcTemplate failing = mock(JdbcTemplate.class);
+        when(failing.update(anyString(), (Object) any())).thenThrow(new QueryTimeoutException("timeout"));
+        when(failing.queryForList(anyString(), any(Class.class), (Object) any())).thenThrow(new QueryTimeoutException("timeout"));
+        SchedulerStateCache cache = this.node(failing, 60000);
+        cache.triggerPaused(TriggerKey.triggerKey("t"));
+        cache.checkVersion();
+
+        assertThat(cache.getStats()).containsEntry("versionTableAvailable", true);
+        //连接恢复后补写本节点的变化
+        ReflectionTestUtils.setField(cache, "jdbcTemplate", jdbcTemplate);
+        cache.checkVersion();
+        assertThat(jdbcTemplate.queryForObject("select version from QRTZ_CACHE_VERSION", Long.class)).isEqualTo(1L);
+    }
+
+    @Test
+    public void changeDuringVersionWriteIsKeptForNextCheck() {
+        JdbcTemplate spied = spy(jdbcTemplate);
+        SchedulerStateCache cache = this.node(spied, 60000);
+        AtomicInteger writes = new AtomicInteger();
+        doAnswer(invocation -> {
+            //写版本表的同时另一个线程修改了调度器
+            if (writes.incrementAndGet() == 1) {
+                cache.triggerPaused(TriggerKey.triggerKey("t2"));
+            }
+            return invocation.callRealMethod();
+        }).when(spied).update(anyString(), (Object) any());
+        cache.triggerPaused(TriggerKey.triggerKey("t1"));
+        cache.checkVersion();
+        cache.checkVersion();
+        assertThat(jdbcTemplate.queryForObject("select version from QRTZ_CACHE_VERSION", Long.class)).isEqualTo(2L);
+    }
+
+    private SchedulerStateCache node(JdbcTemplate template, long ttl) {
+        SchedulerStateCache cache = new SchedulerStateCache(100);
+        ReflectionTestUtils.setField(cache, "jdbcTemplate", template);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "transactionTemplate", new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "ttl", ttl);
+        ReflectionTestUtils.setField(cache, "tablePrefix", "QRTZ_");
+        cache.init();
+        return cache;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> pageStats(SchedulerStateCache cache) {
+        return (Map<String, Object>) cache.getStats().get("page");
+    }
+
+    private static KeysetPage page(int pageSize) {
+        return new KeysetPage(Collections.emptyList(), null, pageSize);
+    }
+}